@@ -0,0 +1,70 @@
+package io.ifar.skidroad.benchmarks.compression;
+
+import io.ifar.skidroad.compression.ParallelGzipOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression time for a {@link #payloadMegabytes} MB file of JSON-ish request log lines, written in 4KB pieces as
+ * {@code IOUtils.copy} does in the prep stage.
+ *
+ * parallelism 0 is the existing CompressPrepper path ({@link GZIPOutputStream}); other values use
+ * {@link ParallelGzipOutputStream} on a pool of that many threads, as ParallelCompressPrepper does.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelGzipOutputStreamBenchmark {
+
+    @Param({"64"})
+    public int payloadMegabytes;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    private byte[] payload;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(42);
+        while (sb.length() < payloadMegabytes * 1024 * 1024) {
+            sb.append("{\"timestamp\":\"2015-03-0").append(random.nextInt(10))
+                    .append("T12:").append(random.nextInt(60)).append(":00Z\",\"path\":\"/api/v1/items/")
+                    .append(random.nextInt(100000)).append("\",\"status\":").append(random.nextBoolean() ? 200 : 404)
+                    .append(",\"duration_ms\":").append(random.nextInt(500)).append("}\n");
+        }
+        payload = sb.toString().getBytes(StandardCharsets.UTF_8);
+        if (parallelism > 0)
+            pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Benchmark
+    public DeflaterOutputStream compress() throws IOException {
+        DeflaterOutputStream gz = parallelism == 0
+                ? new GZIPOutputStream(new NullOutputStream())
+                : new ParallelGzipOutputStream(new NullOutputStream(), pool, parallelism * 2);
+        for (int offset = 0; offset < payload.length; offset += 4096)
+            gz.write(payload, offset, Math.min(4096, payload.length - offset));
+        gz.close();
+        return gz;
+    }
+}
@@ -0,0 +1,136 @@
+package io.ifar.skidroad.benchmarks.crypto;
+
+import io.ifar.skidroad.crypto.AESInputStream;
+import io.ifar.skidroad.crypto.AESOutputStream;
+import io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decryption throughput of {@link AESInputStream} over an on-disk fixture of {@link #fixtureMegabytes} MB.
+ * Each operation decrypts the whole fixture; MB/s is fixtureMegabytes divided by the reported time.
+ *
+ * The "legacy" implementation reproduces the former AESInputStream, which pulled one ciphertext byte at a time
+ * from the underlying stream. It is given a BufferedInputStream so that the comparison is of decryption cost
+ * rather than of syscalls.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AESInputStreamBenchmark {
+
+    @Param({"256"})
+    public int fixtureMegabytes;
+
+    @Param({"legacy", "bulk"})
+    public String implementation;
+
+    private Path fixture;
+    private byte[] key;
+    private byte[] iv;
+
+    @Setup(Level.Trial)
+    public void writeFixture() throws IOException, InvalidCipherTextException {
+        key = StreamingBouncyCastleAESWithSIC.generateRandomKey();
+        iv = StreamingBouncyCastleAESWithSIC.generateRandomIV();
+        fixture = Files.createTempFile(AESInputStreamBenchmark.class.getSimpleName(), ".aes-sic");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (OutputStream fileOut = Files.newOutputStream(fixture);
+             AESOutputStream aes = new AESOutputStream(fileOut, key, iv)) {
+            for (int i = 0; i < fixtureMegabytes; i++) {
+                random.nextBytes(block);
+                aes.write(block);
+            }
+            aes.finish();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() throws IOException {
+        Files.deleteIfExists(fixture);
+    }
+
+    @Benchmark
+    public long decrypt() throws IOException {
+        InputStream fileIn = new BufferedInputStream(Files.newInputStream(fixture), 8192);
+        long total = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = "legacy".equals(implementation)
+                ? new LegacyAESInputStream(fileIn, key, iv)
+                : new AESInputStream(fileIn, key, iv)) {
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) >= 0)
+                total += n;
+        }
+        return total;
+    }
+
+    /**
+     * The byte-at-a-time algorithm AESInputStream used before bulk reads were supported.
+     */
+    static class LegacyAESInputStream extends InputStream {
+        private final InputStream in;
+        private final PaddedBufferedBlockCipher cipher;
+        private final byte[] outputBuffer;
+        private int outputBufferOffset = 0;
+        private int outputBufferEnd = 0;
+        private boolean inputStreamIsDone = false;
+
+        LegacyAESInputStream(InputStream in, byte[] key, byte[] iv) {
+            this.in = in;
+            this.cipher = StreamingBouncyCastleAESWithSIC.makeDecryptionCipher(key, iv);
+            this.outputBuffer = new byte[cipher.getOutputSize(1)];
+        }
+
+        private int getNextByteFromBuffer() {
+            if (outputBufferEnd == outputBufferOffset)
+                return -1;
+            int result = outputBuffer[outputBufferOffset++] & 0xFF;
+            if (outputBufferOffset == outputBufferEnd)
+                outputBufferOffset = outputBufferEnd = 0;
+            return result;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (outputBufferEnd > 0)
+                return getNextByteFromBuffer();
+            if (inputStreamIsDone)
+                return -1;
+            while (true) {
+                int maybeByte = in.read();
+                if (maybeByte < 0) {
+                    inputStreamIsDone = true;
+                    try {
+                        outputBufferEnd = cipher.doFinal(outputBuffer, 0);
+                    } catch (InvalidCipherTextException e) {
+                        throw new IOException(e);
+                    }
+                    return getNextByteFromBuffer();
+                }
+                outputBufferEnd = cipher.processByte((byte) maybeByte, outputBuffer, 0);
+                if (outputBufferEnd > 0)
+                    return getNextByteFromBuffer();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
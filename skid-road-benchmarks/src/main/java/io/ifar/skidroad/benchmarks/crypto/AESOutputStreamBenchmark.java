@@ -0,0 +1,56 @@
+package io.ifar.skidroad.benchmarks.crypto;
+
+import io.ifar.skidroad.crypto.AESOutputStream;
+import io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encryption throughput of {@link AESOutputStream}. Each operation encrypts {@link #PAYLOAD_BYTES} (1 MiB), so the
+ * reported ops/s is MB/s.
+ *
+ * writeSize 0 reproduces the former behavior, where every byte went through {@code write(int)} regardless of how
+ * the caller wrote. 512 matches {@code GZIPOutputStream}'s default deflate buffer as used in the prep stage; 4096
+ * matches {@code IOUtils.copy}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AESOutputStreamBenchmark {
+    public static final int PAYLOAD_BYTES = 1024 * 1024;
+
+    @Param({"0", "512", "4096", "65536"})
+    public int writeSize;
+
+    private byte[] payload;
+    private byte[] key;
+    private byte[] iv;
+
+    @Setup
+    public void setup() {
+        payload = new byte[PAYLOAD_BYTES];
+        new Random(42).nextBytes(payload);
+        key = StreamingBouncyCastleAESWithSIC.generateRandomKey();
+        iv = StreamingBouncyCastleAESWithSIC.generateRandomIV();
+    }
+
+    @Benchmark
+    public AESOutputStream encrypt() throws Exception {
+        AESOutputStream aes = new AESOutputStream(new NullOutputStream(), key, iv);
+        if (writeSize == 0) {
+            for (byte b : payload)
+                aes.write(b);
+        } else {
+            for (int offset = 0; offset < payload.length; offset += writeSize)
+                aes.write(payload, offset, Math.min(writeSize, payload.length - offset));
+        }
+        aes.finish();
+        return aes;
+    }
+}
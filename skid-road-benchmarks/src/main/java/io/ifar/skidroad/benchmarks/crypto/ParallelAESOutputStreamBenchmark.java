@@ -0,0 +1,76 @@
+package io.ifar.skidroad.benchmarks.crypto;
+
+import io.ifar.skidroad.crypto.AESOutputStream;
+import io.ifar.skidroad.crypto.ParallelAESOutputStream;
+import io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of {@link ParallelAESOutputStream} with pool parallelism. Each operation encrypts {@link #payloadMegabytes}
+ * MB written in 512 byte pieces, as GZIPOutputStream does in the prep stage. Parallelism 0 is the single-threaded
+ * {@link AESOutputStream} baseline.
+ *
+ * Run with e.g. {@code -p parallelism=0,1,2,4,8,16} to cover the cores available.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelAESOutputStreamBenchmark {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"64"})
+    public int payloadMegabytes;
+
+    private byte[] payload;
+    private byte[] key;
+    private byte[] iv;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        payload = new byte[payloadMegabytes * 1024 * 1024];
+        new Random(42).nextBytes(payload);
+        key = StreamingBouncyCastleAESWithSIC.generateRandomKey();
+        iv = StreamingBouncyCastleAESWithSIC.generateRandomIV();
+        if (parallelism > 0)
+            pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Benchmark
+    public OutputStream encrypt() throws Exception {
+        OutputStream sink = new NullOutputStream();
+        if (parallelism == 0) {
+            AESOutputStream aes = new AESOutputStream(sink, key, iv);
+            write(aes);
+            aes.finish();
+            return aes;
+        } else {
+            ParallelAESOutputStream aes = new ParallelAESOutputStream(sink, key, iv, pool);
+            write(aes);
+            aes.finish();
+            return aes;
+        }
+    }
+
+    private void write(OutputStream out) throws Exception {
+        for (int offset = 0; offset < payload.length; offset += 512)
+            out.write(payload, offset, Math.min(512, payload.length - offset));
+    }
+}
@@ -0,0 +1,83 @@
+package io.ifar.skidroad.benchmarks.writing;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.WritingWorkerFactory;
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds workers which take items off their queue and throw them away until interrupted, so benchmarks measure the
+ * manager and its queues rather than disk.
+ */
+class DiscardingWorkerFactory<T> implements WritingWorkerFactory<T> {
+    private final AtomicInteger running = new AtomicInteger();
+
+    @Override
+    public Runnable buildWorker(final BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                running.incrementAndGet();
+                List<T> batch = new ArrayList<>();
+                try {
+                    while (true) {
+                        batch.add(queue.take());
+                        queue.drainTo(batch);
+                        batch.clear();
+                    }
+                } catch (InterruptedException e) {
+                    //done
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return workers which have started and not yet exited
+     */
+    int running() {
+        return running.get();
+    }
+
+    /**
+     * Tracker which hands out empty LogFiles, finds nothing and reports every update as successful.
+     */
+    static LogFileTracker nullTracker() {
+        return (LogFileTracker) Proxy.newProxyInstance(LogFileTracker.class.getClassLoader(),
+                new Class<?>[]{LogFileTracker.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("open"))
+                            return new LogFile();
+                        if (method.getReturnType() == ResultIterator.class)
+                            return emptyIterator();
+                        return method.getReturnType() == int.class ? 1 : null;
+                    }
+                });
+    }
+
+    private static ResultIterator<?> emptyIterator() {
+        return (ResultIterator<?>) Proxy.newProxyInstance(ResultIterator.class.getClassLoader(),
+                new Class<?>[]{ResultIterator.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("hasNext"))
+                            return false;
+                        if (method.getName().equals("next"))
+                            throw new NoSuchElementException();
+                        return null;
+                    }
+                });
+    }
+}
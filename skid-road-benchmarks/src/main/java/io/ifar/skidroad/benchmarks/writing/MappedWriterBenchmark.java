@@ -0,0 +1,100 @@
+package io.ifar.skidroad.benchmarks.writing;
+
+import io.ifar.skidroad.writing.MappedFileOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Time to write a {@link #fileMegabytes} MB log file of JSON-ish lines one line at a time, as a FileWritingWorker
+ * does, through {@code Files.newBufferedWriter} or through a {@link MappedFileOutputStream}, including closing the
+ * file. flushEveryLines 0 never flushes until close; otherwise the writer is flushed every that many lines, which
+ * for the mapped writer forces pages to disk.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappedWriterBenchmark {
+
+    public enum WriterType { BUFFERED, MAPPED }
+
+    @Param({"BUFFERED", "MAPPED"})
+    public WriterType writerType;
+
+    @Param({"256"})
+    public int fileMegabytes;
+
+    @Param({"0", "100000"})
+    public int flushEveryLines;
+
+    private String[] lines;
+    private int lineCount;
+    private Path dir;
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        lines = new String[1024];
+        int bytesPerCycle = 0;
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "{\"timestamp\":\"2015-03-0" + random.nextInt(10) + "T12:" + random.nextInt(60)
+                    + ":00Z\",\"path\":\"/api/v1/items/" + random.nextInt(100000) + "\",\"status\":"
+                    + (random.nextBoolean() ? 200 : 404) + ",\"duration_ms\":" + random.nextInt(500) + "}";
+            bytesPerCycle += lines[i].length() + 1;
+        }
+        lineCount = (int) ((long) fileMegabytes * 1024 * 1024 * lines.length / bytesPerCycle);
+        dir = Files.createTempDirectory("mapped-writer-benchmark");
+    }
+
+    @Setup(Level.Invocation)
+    public void newFile() {
+        path = dir.resolve("bench.log");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        try (Writer writer = open()) {
+            for (int i = 0; i < lineCount; i++) {
+                writer.write(lines[i & (lines.length - 1)]);
+                writer.write("\n");
+                if (flushEveryLines > 0 && i % flushEveryLines == flushEveryLines - 1)
+                    writer.flush();
+            }
+        }
+        return Files.size(path);
+    }
+
+    private Writer open() throws IOException {
+        switch (writerType) {
+            case MAPPED:
+                //as FileWritingWorker.openForWriting does over openOutputStream
+                return new BufferedWriter(new OutputStreamWriter(new MappedFileOutputStream(path), StandardCharsets.UTF_8.newEncoder()));
+            default:
+                return Files.newBufferedWriter(path, StandardCharsets.UTF_8, CREATE, WRITE, APPEND);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.ifar.skidroad.benchmarks.writing;
+
+import io.ifar.skidroad.rolling.BasicFileRollingScheme;
+import io.ifar.skidroad.writing.QueueFullPolicy;
+import io.ifar.skidroad.writing.QueueType;
+import io.ifar.skidroad.writing.WritingWorkerManager;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WritingWorkerManager#record(long, Object)} through each {@link QueueType}, with the same capacity and a
+ * single worker discarding items as fast as it can take them. Producers that outrun the worker block, so throughput
+ * is bounded by the consumer once there are enough of them.
+ *
+ * Run with {@code -t 1}, {@code -t 8} and {@code -t 64} to vary the number of producer threads, and with
+ * {@code -bm sample} for latency percentiles.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class QueueTypeBenchmark {
+
+    @Param({"LINKED", "RING_BUFFER"})
+    public QueueType queueType;
+
+    @Param({"65536"})
+    public int capacity;
+
+    private WritingWorkerManager<String> manager;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BasicFileRollingScheme rollingScheme = new BasicFileRollingScheme(
+                Files.createTempDirectory("queue-type-benchmark").toString(), "bench-", ".log", 30, Duration.standardHours(1));
+        manager = new WritingWorkerManager<>(rollingScheme, DiscardingWorkerFactory.nullTracker(),
+                new DiscardingWorkerFactory<String>(), 5,
+                Integer.MAX_VALUE, Integer.MAX_VALUE)
+                .withQueueType(queueType)
+                .withBoundedQueues(capacity, QueueFullPolicy.BLOCK, TimeUnit.SECONDS.toMillis(10));
+        manager.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        manager.stop();
+    }
+
+    @Benchmark
+    public void record() {
+        manager.record(System.currentTimeMillis(), "item");
+    }
+}
@@ -0,0 +1,92 @@
+package io.ifar.skidroad.benchmarks.writing;
+
+import io.ifar.skidroad.rolling.BasicFileRollingScheme;
+import io.ifar.skidroad.rolling.FileRollingScheme;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.ifar.skidroad.writing.WritingWorkerManager;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contended {@link WritingWorkerManager#record(long, Object)} with hourly rolling. Workers discard what they take, so
+ * queues stay short. {@link #lockedLookup()} repeats the cohort lookup record() used to do, a getStartTime call and a
+ * HashMap behind a single monitor, as a baseline.
+ *
+ * Run with e.g. {@code -t 1} and {@code -t 8} to vary the number of recording threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class RecordBenchmark {
+
+    private FileRollingScheme rollingScheme;
+    private DiscardingWorkerFactory<String> factory;
+    private WritingWorkerManager<String> manager;
+    private Map<DateTime,BlockingQueue<String>> lockedQueues;
+    private ExecutorService workerExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        rollingScheme = new BasicFileRollingScheme(Files.createTempDirectory("record-benchmark").toString(),
+                "bench-", ".log", 30, Duration.standardHours(1));
+        factory = new DiscardingWorkerFactory<>();
+        workerExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).build());
+        manager = new WritingWorkerManager<>(rollingScheme, DiscardingWorkerFactory.nullTracker(), factory, 5, Integer.MAX_VALUE, Integer.MAX_VALUE)
+                .withWorkerExecutor(workerExecutor);
+        lockedQueues = new HashMap<>();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        workerExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void record() {
+        manager.record(System.currentTimeMillis(), "item");
+    }
+
+    /**
+     * Alternates between this hour and the next, so that every other item misses the current-cohort shortcut and goes
+     * through the cohort map.
+     */
+    @Benchmark
+    public void recordTwoCohorts(Alternation alternation) {
+        long now = System.currentTimeMillis();
+        manager.record((alternation.next++ & 1) == 0 ? now : now + TimeUnit.HOURS.toMillis(1), "item");
+    }
+
+    @Benchmark
+    public void lockedLookup() {
+        DateTime startTime = rollingScheme.getStartTime(System.currentTimeMillis());
+        BlockingQueue<String> queue;
+        synchronized (lockedQueues) {
+            queue = lockedQueues.get(startTime);
+            if (queue == null) {
+                queue = new LinkedBlockingQueue<>();
+                lockedQueues.put(startTime, queue);
+                workerExecutor.execute(factory.buildWorker(queue, null, null));
+            }
+        }
+        queue.add("item");
+    }
+
+    @State(Scope.Thread)
+    public static class Alternation {
+        int next;
+    }
+}
@@ -0,0 +1,52 @@
+package io.ifar.skidroad.benchmarks.writing;
+
+import io.ifar.skidroad.rolling.BasicFileRollingScheme;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping a timestamp to its cohort start time with {@link BasicFileRollingScheme}, for minutely, hourly
+ * and daily rolling, as a DateTime and as epoch millis. Timestamps are drawn from a pre-generated spread over a week so that no result is constant.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class StartTimeBenchmark {
+
+    /**
+     * Rolling period in minutes.
+     */
+    @Param({"5", "60", "1440"})
+    public int minutes;
+
+    private BasicFileRollingScheme rollingScheme;
+    private long[] timeStamps;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rollingScheme = new BasicFileRollingScheme("/tmp", "bench-", ".log", 30, Duration.standardMinutes(minutes));
+        Random random = new Random(42L);
+        long now = System.currentTimeMillis();
+        timeStamps = new long[1024];
+        for (int i = 0; i < timeStamps.length; i++)
+            timeStamps[i] = now - (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(7));
+    }
+
+    @Benchmark
+    public DateTime getStartTime() {
+        return rollingScheme.getStartTime(timeStamps[next++ & 1023]);
+    }
+
+    @Benchmark
+    public long getStartTimeMillis() {
+        return rollingScheme.getStartTimeMillis(timeStamps[next++ & 1023]);
+    }
+}
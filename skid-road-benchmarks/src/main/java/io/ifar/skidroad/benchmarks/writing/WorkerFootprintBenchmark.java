@@ -0,0 +1,123 @@
+package io.ifar.skidroad.benchmarks.writing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.ifar.skidroad.rolling.BasicFileRollingScheme;
+import io.ifar.skidroad.writing.WritingWorkerManager;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link #cohorts} open cohorts, one worker each, spread over {@link #managers} minutely-rolling managers.
+ * The score is the time to start all the workers. Once they are all waiting on their queues, the live thread count,
+ * heap in use after a GC and resident set size (Linux only, else -1) are taken outside the timed section and printed
+ * at the end of each iteration. Managers are stopped between invocations, so the time also reflects thread reuse
+ * where an executor keeps threads.
+ *
+ * executor OWN gives each manager its default pool; SHARED gives all managers one cached pool; VIRTUAL runs each
+ * worker on a virtual thread and needs a runtime which has them (JDK 21+), e.g. {@code -p executor=VIRTUAL}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkerFootprintBenchmark {
+
+    public enum ExecutorType { OWN, SHARED, VIRTUAL }
+
+    @Param({"OWN", "SHARED"})
+    public ExecutorType executor;
+
+    @Param({"500"})
+    public int cohorts;
+
+    @Param({"10"})
+    public int managers;
+
+    private Path dir;
+    private ExecutorService sharedExecutor;
+    private DiscardingWorkerFactory<String> factory;
+    private List<WritingWorkerManager<String>> running;
+    private String footprint;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("worker-footprint-benchmark");
+        factory = new DiscardingWorkerFactory<>();
+        if (executor == ExecutorType.SHARED)
+            sharedExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).build());
+        else if (executor == ExecutorType.VIRTUAL)
+            sharedExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (sharedExecutor != null)
+            sharedExecutor.shutdownNow();
+        Files.deleteIfExists(dir);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printFootprint() {
+        System.out.println(footprint);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopManagers() throws Exception {
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        footprint = String.format("footprint: %d threads, %d KB heap, %d KB resident",
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                memory.getHeapMemoryUsage().getUsed() / 1024, residentBytes() / 1024);
+        for (WritingWorkerManager<String> manager : running)
+            manager.stop();
+        running = null;
+    }
+
+    @Benchmark
+    public int startWorkers() throws Exception {
+        running = new ArrayList<>();
+        for (int m = 0; m < managers; m++) {
+            WritingWorkerManager<String> manager = new WritingWorkerManager<>(
+                    new BasicFileRollingScheme(dir.toString(), "bench-" + m + "-", ".log", 30, Duration.standardMinutes(1)),
+                    DiscardingWorkerFactory.nullTracker(), factory, 5, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            if (sharedExecutor != null)
+                manager.withWorkerExecutor(sharedExecutor);
+            manager.start();
+            running.add(manager);
+        }
+        //Future minutes, so that no cohort is due to close while the benchmark runs.
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        long first = (System.currentTimeMillis() / minute + 1) * minute;
+        for (int c = 0; c < cohorts; c++)
+            running.get(c % managers).record(first + c * minute, "item");
+        while (factory.running() < cohorts)
+            Thread.sleep(1L);
+        return factory.running();
+    }
+
+    /**
+     * @return resident set size from /proc, or -1 where there is no /proc
+     */
+    private static long residentBytes() throws IOException {
+        //statm counts pages; assume 4 KB
+        Path statm = Paths.get("/proc/self/statm");
+        if (!Files.exists(statm))
+            return -1L;
+        String[] fields = new String(Files.readAllBytes(statm), "US-ASCII").trim().split("\\s+");
+        return Long.parseLong(fields[1]) * 4096L;
+    }
+}
@@ -0,0 +1,64 @@
+package io.ifar.skidroad.dropwizard;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.setup.Environment;
+import io.ifar.skidroad.dropwizard.config.RequestLogWriterConfiguration;
+import io.ifar.skidroad.prepping.StreamingPrepper;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.PreSerializingRecorder;
+import io.ifar.skidroad.writing.QueueFullRejectionHandler;
+import io.ifar.skidroad.writing.WritingWorkerManager;
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import io.ifar.skidroad.writing.file.RawBytesSerializer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * PreSerializingRecorder whose metrics are registered with Dropwizard and whose serialization pool, if any, is a
+ * managed executor stopped before the writer manager it feeds.
+ */
+public class ManagedPreSerializingRecorder<T> extends PreSerializingRecorder<T> {
+
+    public ManagedPreSerializingRecorder(WritingWorkerManager<byte[]> writerManager, ByteSerializer<T> serializer,
+                                         ExecutorService executor, Environment environment) {
+        super(writerManager, serializer, executor);
+
+        environment.metrics().register(MetricRegistry.name(PreSerializingRecorder.class, "serialization_time"), this.serializationTimer);
+        environment.metrics().register(MetricRegistry.name(PreSerializingRecorder.class, "serialization_errors", "errors"), this.serializationErrorMeter);
+    }
+
+    /**
+     * Builds a recorder and the byte-writing {@link ManagedWritingWorkerManager} behind it.
+     * @param serializerThreads size of a dedicated serialization pool, or 0 to serialize on the calling thread
+     * @param streamingPrepper if not null, files are prepared while being written
+     */
+    public static <T> ManagedPreSerializingRecorder<T> build(LogFileTracker tracker, ByteSerializer<T> serializer,
+                                                             int serializerThreads, StreamingPrepper streamingPrepper,
+                                                             RequestLogWriterConfiguration logConf,
+                                                             Environment environment)
+    {
+        ManagedWritingWorkerManager<byte[]> writerManager = ManagedWritingWorkerManager.buildForBytes(
+                tracker, RawBytesSerializer.INSTANCE, streamingPrepper, logConf, environment);
+        //Managed after the writer manager, so stopped (and drained) before it.
+        ExecutorService executor = serializerThreads > 0
+                ? environment.lifecycle().executorService("skid-road-serializer-%d")
+                    .minThreads(serializerThreads)
+                    .maxThreads(serializerThreads)
+                    .workQueue(new LinkedBlockingQueue<Runnable>(serializerQueueCapacity(writerManager)))
+                    .rejectedExecutionHandler(new QueueFullRejectionHandler(writerManager))
+                    .build()
+                : null;
+        return new ManagedPreSerializingRecorder<>(writerManager, serializer, executor, environment);
+    }
+
+    /**
+     * Items waiting to be serialized may number as many as fit in one of the manager's queues, or the default ring
+     * buffer capacity if those are unbounded; beyond that the manager's queue full policy applies.
+     */
+    private static int serializerQueueCapacity(WritingWorkerManager<byte[]> writerManager) {
+        return writerManager.getQueueCapacity() == Integer.MAX_VALUE
+                ? WritingWorkerManager.DEFAULT_RING_BUFFER_CAPACITY
+                : writerManager.getQueueCapacity();
+    }
+}
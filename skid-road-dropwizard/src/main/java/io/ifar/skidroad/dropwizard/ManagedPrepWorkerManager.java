@@ -6,9 +6,15 @@ import io.dropwizard.setup.Environment;
 import io.ifar.skidroad.dropwizard.config.RequestLogPrepConfiguration;
 import io.ifar.skidroad.dropwizard.config.SkidRoadConfiguration;
 import io.ifar.skidroad.prepping.CompressPrepWorkerFactory;
+import io.ifar.skidroad.prepping.CompressionCodec;
+import io.ifar.skidroad.prepping.CompressionCodecs;
 import io.ifar.skidroad.prepping.EncryptAndCompressPrepWorkerFactory;
+import io.ifar.skidroad.prepping.GzipCodec;
+import io.ifar.skidroad.prepping.ParallelCompressPrepWorkerFactory;
+import io.ifar.skidroad.prepping.ParallelEncryptAndCompressPrepWorkerFactory;
 import io.ifar.skidroad.prepping.PrepWorkerFactory;
 import io.ifar.skidroad.prepping.PrepWorkerManager;
+import io.ifar.skidroad.prepping.StreamingPrepper;
 import io.ifar.skidroad.tracking.LogFileTracker;
 
 public class ManagedPrepWorkerManager extends PrepWorkerManager implements Managed {
@@ -44,10 +50,19 @@ public class ManagedPrepWorkerManager extends PrepWorkerManager implements Manag
     public static ManagedPrepWorkerManager buildWithEncryptAndCompress(RequestLogPrepConfiguration prepConfiguration,
                                                                        Environment environment, LogFileTracker tracker)
     {
-
-        PrepWorkerFactory workerFactory = new EncryptAndCompressPrepWorkerFactory(
-                prepConfiguration.getMasterKey()
-        );
+        PrepWorkerFactory workerFactory;
+        if (prepConfiguration.getEncryptionParallelism() > 1) {
+            workerFactory = new ParallelEncryptAndCompressPrepWorkerFactory(
+                    prepConfiguration.getMasterKey(),
+                    prepConfiguration.getEncryptionParallelism(),
+                    buildCodec(prepConfiguration)
+            );
+        } else {
+            workerFactory = new EncryptAndCompressPrepWorkerFactory(
+                    prepConfiguration.getMasterKey(),
+                    buildCodec(prepConfiguration)
+            );
+        }
 
         return build(workerFactory, prepConfiguration, environment, tracker);
     }
@@ -55,10 +70,33 @@ public class ManagedPrepWorkerManager extends PrepWorkerManager implements Manag
     public static ManagedPrepWorkerManager buildWithCompress(RequestLogPrepConfiguration prepConfiguration,
                                                              Environment environment, LogFileTracker tracker)
     {
-        PrepWorkerFactory workerFactory = new CompressPrepWorkerFactory();
+        PrepWorkerFactory workerFactory;
+        if (prepConfiguration.getCompressionParallelism() > 1 && GzipCodec.NAME.equals(prepConfiguration.getCompressionCodec())) {
+            workerFactory = new ParallelCompressPrepWorkerFactory(prepConfiguration.getCompressionParallelism());
+        } else {
+            workerFactory = new CompressPrepWorkerFactory(buildCodec(prepConfiguration));
+        }
         return build(workerFactory, prepConfiguration, environment, tracker);
     }
 
+    /**
+     * Builds a StreamingPrepper for {@link ManagedWritingWorkerManager}, so that files are prepared while they are
+     * written. A prep worker manager is still useful alongside, to handle files written without it.
+     */
+    public static StreamingPrepper buildStreamingEncryptAndCompress(RequestLogPrepConfiguration prepConfiguration) {
+        return new StreamingPrepper(buildCodec(prepConfiguration), prepConfiguration.getMasterKey());
+    }
+
+    public static StreamingPrepper buildStreamingCompress(RequestLogPrepConfiguration prepConfiguration) {
+        return new StreamingPrepper(buildCodec(prepConfiguration));
+    }
+
+    private static CompressionCodec buildCodec(RequestLogPrepConfiguration prepConfiguration) {
+        if (GzipCodec.NAME.equals(prepConfiguration.getCompressionCodec()))
+            return new GzipCodec(prepConfiguration.getCompressionBlockSize());
+        return CompressionCodecs.forName(prepConfiguration.getCompressionCodec());
+    }
+
     public static ManagedPrepWorkerManager buildWithEncryptAndCompress(SkidRoadConfiguration skidRoadConfiguration,
                                                                        Environment environment, LogFileTracker tracker)
     {
@@ -6,13 +6,29 @@ import io.dropwizard.setup.Environment;
 import io.ifar.goodies.Tuple;
 import io.ifar.skidroad.dropwizard.config.RequestLogWriterConfiguration;
 import io.ifar.skidroad.dropwizard.config.SkidRoadConfiguration;
+import io.ifar.skidroad.prepping.StreamingPrepper;
 import io.ifar.skidroad.rolling.*;
 import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.AbstractWritingWorkerFactory;
+import io.ifar.skidroad.writing.MultiplexedFileWriter;
+import io.ifar.skidroad.writing.OverflowSpillFile;
+import io.ifar.skidroad.writing.QueueFullPolicy;
+import io.ifar.skidroad.writing.SpillJournal;
 import io.ifar.skidroad.writing.WritingWorkerFactory;
 import io.ifar.skidroad.writing.WritingWorkerManager;
 import io.ifar.skidroad.writing.csv.CSVWritingWorkerFactory;
+import io.ifar.skidroad.writing.file.ByteDeserializer;
+import io.ifar.skidroad.writing.file.ByteFileWritingWorkerFactory;
+import io.ifar.skidroad.writing.file.ByteSerializer;
 import io.ifar.skidroad.writing.file.FileWritingWorkerFactory;
+import io.ifar.skidroad.writing.file.MultiplexedWritingWorkerFactory;
 import io.ifar.skidroad.writing.file.Serializer;
+import io.ifar.skidroad.writing.file.StringByteSerializer;
+import org.joda.time.Duration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class ManagedWritingWorkerManager<T> extends WritingWorkerManager<T> implements Managed {
 
@@ -24,15 +40,72 @@ public class ManagedWritingWorkerManager<T> extends WritingWorkerManager<T> impl
         environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "queue_count"), this.queueCountGauge);
         environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "queue_depth"), this.queueDepthGauge);
         environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "worker_count"), this.workerCountGauge);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "dropped_items"), this.droppedMeter);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "spilled_items"), this.spilledMeter);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "queue_latency_millis"), this.queueLatencyHistogram);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "worker_throughput"), this.workerThroughputHistogram);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "workers_added"), this.workersAddedMeter);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "workers_retired"), this.workersRetiredMeter);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "journaled_items"), this.journaledMeter);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "replayed_items"), this.replayedMeter);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "journal_backlog"), this.journalBacklogGauge);
 
     }
 
     public static <T> ManagedWritingWorkerManager<T> build(LogFileTracker tracker, Serializer<T> serializer,
                                                            RequestLogWriterConfiguration logConf, Environment environment)
+    {
+        return build(tracker, serializer, null, logConf, environment);
+    }
+
+    /**
+     * @param streamingPrepper if not null, files are prepared while being written and go straight to PREPARED; see
+     *                         {@link ManagedPrepWorkerManager#buildStreamingEncryptAndCompress}
+     */
+    public static <T> ManagedWritingWorkerManager<T> build(LogFileTracker tracker, Serializer<T> serializer,
+                                                           StreamingPrepper streamingPrepper,
+                                                           RequestLogWriterConfiguration logConf, Environment environment)
+    {
+        FileRollingScheme rollingScheme = getFileRollingScheme(logConf);
+        int pruneIntervalSeconds = getPruneIntervalSeconds(logConf);
+        AbstractWritingWorkerFactory<T> workerFactory = new FileWritingWorkerFactory<>(serializer, logConf.getFileFlushIntervalSeconds(), streamingPrepper)
+                .withMaxBatchSize(logConf.getMaxBatchSize())
+                .withRotation(rollingScheme, logConf.getMaxFileBytes(), logConf.getMaxFileItems())
+                .withMappedOutput(logConf.getMappedExtentBytes())
+                .withDurability(logConf.getDurability(), logConf.getGroupCommitIntervalMillis());
+        ManagedWritingWorkerManager<T> writerManager = new ManagedWritingWorkerManager<>(
+                rollingScheme,
+                tracker,
+                workerFactory,
+                environment,
+                pruneIntervalSeconds,
+                logConf.getSpawnNewWorkerAtQueueDepth(),
+                logConf.getReportUnhealthyAtQueueDepth()
+        );
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "batch_size"), workerFactory.batchSizeHistogram);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "fsync_time"), workerFactory.fsyncTimer);
+        configureQueues(writerManager, new StringByteSerializer<>(serializer), null, logConf);
+        environment.lifecycle().manage(writerManager);
+        environment.healthChecks().register("writing_worker_manager", writerManager.healthcheck);
+        return writerManager;
+    }
+
+    /**
+     * Like {@link #build(LogFileTracker, Serializer, StreamingPrepper, RequestLogWriterConfiguration, Environment)},
+     * but items are serialized directly to bytes.
+     */
+    public static <T> ManagedWritingWorkerManager<T> buildForBytes(LogFileTracker tracker, ByteSerializer<T> serializer,
+                                                                   StreamingPrepper streamingPrepper,
+                                                                   RequestLogWriterConfiguration logConf,
+                                                                   Environment environment)
     {
         FileRollingScheme rollingScheme = getFileRollingScheme(logConf);
-        int pruneIntervalSeconds = 5;
-        WritingWorkerFactory<T> workerFactory = new FileWritingWorkerFactory<>(serializer, logConf.getFileFlushIntervalSeconds());
+        int pruneIntervalSeconds = getPruneIntervalSeconds(logConf);
+        ByteFileWritingWorkerFactory<T> workerFactory = new ByteFileWritingWorkerFactory<>(serializer, logConf.getFileFlushIntervalSeconds(), streamingPrepper);
+        workerFactory.withMaxBatchSize(logConf.getMaxBatchSize())
+                .withRotation(rollingScheme, logConf.getMaxFileBytes(), logConf.getMaxFileItems())
+                .withMappedOutput(logConf.getMappedExtentBytes())
+                .withDurability(logConf.getDurability(), logConf.getGroupCommitIntervalMillis());
         ManagedWritingWorkerManager<T> writerManager = new ManagedWritingWorkerManager<>(
                 rollingScheme,
                 tracker,
@@ -42,11 +115,56 @@ public class ManagedWritingWorkerManager<T> extends WritingWorkerManager<T> impl
                 logConf.getSpawnNewWorkerAtQueueDepth(),
                 logConf.getReportUnhealthyAtQueueDepth()
         );
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "write_time"), workerFactory.writeTimer);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "batch_size"), workerFactory.batchSizeHistogram);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "fsync_time"), workerFactory.fsyncTimer);
+        configureQueues(writerManager, serializer, deserializerFor(serializer), logConf);
         environment.lifecycle().manage(writerManager);
         environment.healthChecks().register("writing_worker_manager", writerManager.healthcheck);
         return writerManager;
     }
 
+    /**
+     * Like {@link #buildForBytes(LogFileTracker, ByteSerializer, StreamingPrepper, RequestLogWriterConfiguration, Environment)},
+     * but files are written by the I/O threads of writer, which may serve other managers too, rather than by a thread
+     * per file. The caller closes writer once its managers have stopped. mapped_extent_bytes must be 0.
+     */
+    public static <T> ManagedWritingWorkerManager<T> buildMultiplexed(LogFileTracker tracker, ByteSerializer<T> serializer,
+                                                                      MultiplexedFileWriter writer,
+                                                                      RequestLogWriterConfiguration logConf,
+                                                                      Environment environment)
+    {
+        FileRollingScheme rollingScheme = getFileRollingScheme(logConf);
+        int pruneIntervalSeconds = getPruneIntervalSeconds(logConf);
+        AbstractWritingWorkerFactory<T> workerFactory = new MultiplexedWritingWorkerFactory<>(writer, serializer, logConf.getFileFlushIntervalSeconds())
+                .withMaxBatchSize(logConf.getMaxBatchSize())
+                .withRotation(rollingScheme, logConf.getMaxFileBytes(), logConf.getMaxFileItems())
+                .withMappedOutput(logConf.getMappedExtentBytes())
+                .withDurability(logConf.getDurability(), logConf.getGroupCommitIntervalMillis());
+        ManagedWritingWorkerManager<T> writerManager = new ManagedWritingWorkerManager<>(
+                rollingScheme,
+                tracker,
+                workerFactory,
+                environment,
+                pruneIntervalSeconds,
+                logConf.getSpawnNewWorkerAtQueueDepth(),
+                logConf.getReportUnhealthyAtQueueDepth()
+        );
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "batch_size"), workerFactory.batchSizeHistogram);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "fsync_time"), workerFactory.fsyncTimer);
+        configureQueues(writerManager, serializer, deserializerFor(serializer), logConf);
+        environment.lifecycle().manage(writerManager);
+        environment.healthChecks().register("writing_worker_manager", writerManager.healthcheck);
+        return writerManager;
+    }
+
+    public static <T> ManagedWritingWorkerManager<T> buildForBytes(LogFileTracker tracker, ByteSerializer<T> serializer,
+                                                                   SkidRoadConfiguration skidRoadConfiguration,
+                                                                   Environment environment)
+    {
+        return buildForBytes(tracker, serializer, null, skidRoadConfiguration.getRequestLogWriterConfiguration(), environment);
+    }
+
     public static <T> ManagedWritingWorkerManager<T> build(LogFileTracker tracker, Serializer<T> serializer,
                                                            SkidRoadConfiguration skidRoadConfiguration,
                                                            Environment environment) {
@@ -60,8 +178,12 @@ public class ManagedWritingWorkerManager<T> extends WritingWorkerManager<T> impl
                                                                             Environment environment)
     {
         FileRollingScheme rollingScheme = getFileRollingScheme(logConf);
-        int pruneIntervalSeconds = 5;
-        WritingWorkerFactory<T> workerFactory = new CSVWritingWorkerFactory<T>(nullRepresentation, logConf.getFileFlushIntervalSeconds());
+        int pruneIntervalSeconds = getPruneIntervalSeconds(logConf);
+        AbstractWritingWorkerFactory<T> workerFactory = new CSVWritingWorkerFactory<T>(nullRepresentation, logConf.getFileFlushIntervalSeconds())
+                .withMaxBatchSize(logConf.getMaxBatchSize())
+                .withRotation(rollingScheme, logConf.getMaxFileBytes(), logConf.getMaxFileItems())
+                .withMappedOutput(logConf.getMappedExtentBytes())
+                .withDurability(logConf.getDurability(), logConf.getGroupCommitIntervalMillis());
         ManagedWritingWorkerManager<T> writerManager = new ManagedWritingWorkerManager<>(
                 rollingScheme,
                 tracker,
@@ -71,6 +193,9 @@ public class ManagedWritingWorkerManager<T> extends WritingWorkerManager<T> impl
                 logConf.getSpawnNewWorkerAtQueueDepth(),
                 logConf.getReportUnhealthyAtQueueDepth()
         );
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "batch_size"), workerFactory.batchSizeHistogram);
+        environment.metrics().register(MetricRegistry.name(WritingWorkerManager.class, "fsync_time"), workerFactory.fsyncTimer);
+        configureQueues(writerManager, null, null, logConf);
         environment.lifecycle().manage(writerManager);
         environment.healthChecks().register("writing_worker_manager",writerManager.healthcheck);
         return writerManager;
@@ -85,8 +210,82 @@ public class ManagedWritingWorkerManager<T> extends WritingWorkerManager<T> impl
 
     }
 
+    /**
+     * @return serializer itself if it can also deserialize, else null
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> ByteDeserializer<T> deserializerFor(ByteSerializer<T> serializer) {
+        return serializer instanceof ByteDeserializer ? (ByteDeserializer<T>) serializer : null;
+    }
+
+    /**
+     * Applies queue and scaling settings: queue_type; queue_capacity and queue_full_policy if a capacity is configured
+     * or implied by the queue type; max_workers_per_cohort; latency_objective_millis and journal_at_queue_depth if
+     * configured.
+     * @param spillSerializer used to write the spill file and journal; null if neither is supported
+     * @param journalDeserializer used to read the journal back; null if the journal is unsupported
+     */
+    private static <T> void configureQueues(WritingWorkerManager<T> writerManager, ByteSerializer<T> spillSerializer,
+                                            ByteDeserializer<T> journalDeserializer,
+                                            RequestLogWriterConfiguration logConf) {
+        writerManager.withMaxWorkersPerCohort(logConf.getMaxWorkersPerCohort());
+        if (logConf.getJournalAtQueueDepth() > 0) {
+            if (spillSerializer == null || journalDeserializer == null)
+                throw new IllegalArgumentException("journal_at_queue_depth is not supported for this writer.");
+            try {
+                writerManager.withSpillJournal(
+                        new SpillJournal<>(getJournalPath(logConf), spillSerializer, journalDeserializer, logConf.getJournalSegmentBytes()),
+                        logConf.getJournalAtQueueDepth(), logConf.getJournalCommitDelayMillis());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open journal " + getJournalPath(logConf) + ": " + e.getMessage(), e);
+            }
+        }
+        if (logConf.getLatencyObjectiveMillis() > 0)
+            writerManager.withAutoscaling(logConf.getLatencyObjectiveMillis(), logConf.getMaxWorkersPerCohort());
+        writerManager.withQueueType(logConf.getQueueType());
+        //Unbounded queues never drop, and neither does the default-sized ring buffer used in their place.
+        int capacity = logConf.getQueueCapacity();
+        if (capacity == 0)
+            return;
+        writerManager.withBoundedQueues(capacity, logConf.getQueueFullPolicy(), logConf.getQueueFullBlockMillis());
+        if (logConf.getQueueFullPolicy() == QueueFullPolicy.SPILL) {
+            if (spillSerializer == null)
+                throw new IllegalArgumentException("Queue full policy " + QueueFullPolicy.SPILL + " is not supported for this writer.");
+            writerManager.withSpillFile(new OverflowSpillFile<>(getSpillPath(logConf), spillSerializer));
+        }
+    }
+
+    public static Path getSpillPath(RequestLogWriterConfiguration logConf) {
+        return Paths.get(logConf.getBasePath(), logConf.getNamePrefix() + "overflow.spill");
+    }
+
+    public static Path getJournalPath(RequestLogWriterConfiguration logConf) {
+        return Paths.get(logConf.getBasePath(), logConf.getNamePrefix() + "journal");
+    }
+
+    /**
+     * Time-based scheme from rolling_period_seconds or rolling_frequency, wrapped in a {@link HybridRollingScheme} if
+     * max_file_bytes or max_file_items is set.
+     */
     public static FileRollingScheme getFileRollingScheme(RequestLogWriterConfiguration logConf) {
-        return new BasicFileRollingScheme(logConf.getBasePath(), logConf.getNamePrefix(), logConf.getNameSuffix(),
-                logConf.getAfterRollCloseFileDelaySeconds(),logConf.getRollingFrequency().duration());
+        FileRollingScheme timeScheme;
+        if (logConf.getRollingPeriodSeconds() > 0)
+            timeScheme = new FixedPeriodRollingScheme(logConf.getBasePath(), logConf.getNamePrefix(), logConf.getNameSuffix(),
+                    logConf.getAfterRollCloseFileDelaySeconds(), Duration.standardSeconds(logConf.getRollingPeriodSeconds()));
+        else
+            timeScheme = new BasicFileRollingScheme(logConf.getBasePath(), logConf.getNamePrefix(), logConf.getNameSuffix(),
+                    logConf.getAfterRollCloseFileDelaySeconds(),logConf.getRollingFrequency().duration());
+        if (logConf.getMaxFileBytes() > 0 || logConf.getMaxFileItems() > 0)
+            return new HybridRollingScheme(timeScheme, logConf.getMaxFileBytes(), logConf.getMaxFileItems());
+        return timeScheme;
+    }
+
+    /**
+     * Every five seconds, or every second for sub-minute rolling periods so that finished files are closed and handed
+     * to prep promptly.
+     */
+    public static int getPruneIntervalSeconds(RequestLogWriterConfiguration logConf) {
+        int period = logConf.getRollingPeriodSeconds();
+        return period > 0 && period < 60 ? 1 : 5;
     }
 }
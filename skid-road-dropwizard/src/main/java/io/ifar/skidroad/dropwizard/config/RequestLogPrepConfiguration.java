@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.hibernate.validator.constraints.Range;
 
 import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 
 /**
  *
@@ -33,6 +35,38 @@ public class RequestLogPrepConfiguration {
     @JsonProperty("max_concurrency")
     private Integer maxConcurrency = 5; //depends on network bandwidth, not CPUs
 
+    /**
+     * Threads used to encrypt segments of each file concurrently. 1 encrypts on the prep worker's own thread.
+     */
+    @Range(min = 1)
+    @JsonProperty("encryption_parallelism")
+    private int encryptionParallelism = 1;
+
+    /**
+     * Compression format: gzip, lz4 or zstd.
+     */
+    @NotNull
+    @Pattern(regexp = "gzip|lz4|zstd")
+    @JsonProperty("compression_codec")
+    private String compressionCodec = "gzip";
+
+    /**
+     * gzip only. If positive, files are compressed as a series of independent gzip members holding this many
+     * uncompressed bytes each, which can be located and inflated in parallel on read. 0 writes a single gzip member.
+     */
+    @Range(min = 0, max = 64 * 1024 * 1024)
+    @JsonProperty("compression_block_size")
+    private int compressionBlockSize = 0;
+
+    /**
+     * gzip only. Threads used to compress chunks of each file concurrently when compressing without encryption.
+     * 1 compresses on the prep worker's own thread. Values above 1 write a single gzip member, ignoring
+     * compression_block_size.
+     */
+    @Range(min = 1)
+    @JsonProperty("compression_parallelism")
+    private int compressionParallelism = 1;
+
     public String getMasterIV() {
         return masterIV;
     }
@@ -52,4 +86,20 @@ public class RequestLogPrepConfiguration {
     public Integer getMaxConcurrency() {
         return maxConcurrency;
     }
+
+    public int getEncryptionParallelism() {
+        return encryptionParallelism;
+    }
+
+    public String getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    public int getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    public int getCompressionParallelism() {
+        return compressionParallelism;
+    }
 }
\ No newline at end of file
@@ -1,9 +1,16 @@
 package io.ifar.skidroad.dropwizard.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.ifar.skidroad.writing.AbstractWritingWorkerFactory;
+import io.ifar.skidroad.writing.DurabilityMode;
+import io.ifar.skidroad.writing.QueueFullPolicy;
+import io.ifar.skidroad.writing.QueueType;
+import io.ifar.skidroad.writing.SpillJournal;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 /**
@@ -33,14 +40,120 @@ public class RequestLogWriterConfiguration {
     @DecimalMin(value="2")
     private int spawnNewWorkerAtQueueDepth = 20;
 
+    /**
+     * If set, size each cohort's workers to keep estimated enqueue-to-write latency under this many milliseconds,
+     * rather than adding workers at spawn_new_worker_at_queue_depth.
+     */
+    @JsonProperty("latency_objective_millis")
+    @Min(0)
+    private long latencyObjectiveMillis = 0L;
+
+    @JsonProperty("max_workers_per_cohort")
+    @Min(1)
+    private int maxWorkersPerCohort = Runtime.getRuntime().availableProcessors();
+
     @JsonProperty("report_unhealthy_at_queue_depth")
     @DecimalMin(value="1")
     private int reportUnhealthyAtQueueDepth = 100;
 
+    @JsonProperty("max_batch_size")
+    @Min(1)
+    private int maxBatchSize = AbstractWritingWorkerFactory.DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * Approximate size, before compression, at which to rotate to a new file within a cohort; 0 for no limit.
+     */
+    @JsonProperty("max_file_bytes")
+    @Min(0)
+    private long maxFileBytes = 0L;
+
+    /**
+     * Number of items at which to rotate to a new file within a cohort; 0 for no limit.
+     */
+    @JsonProperty("max_file_items")
+    @Min(0)
+    private long maxFileItems = 0L;
+
+    /**
+     * If set, write files through memory mappings grown this many bytes at a time, and force them to disk on each
+     * flush; 0 to write files with write calls.
+     */
+    @JsonProperty("mapped_extent_bytes")
+    @Min(0)
+    @Max(Integer.MAX_VALUE)
+    private long mappedExtentBytes = 0L;
+
+    /**
+     * When to fsync files; see {@link DurabilityMode}.
+     */
+    @JsonProperty("durability")
+    @NotNull
+    private DurabilityMode durability = DurabilityMode.NONE;
+
+    /**
+     * For GROUP_COMMIT durability, milliseconds between fsync passes over all recently flushed files.
+     */
+    @JsonProperty("group_commit_interval_millis")
+    @Min(1)
+    private long groupCommitIntervalMillis = 100L;
+
+    /**
+     * Maximum number of items queued per rolling cohort; 0 for unbounded, or for RING_BUFFER the default ring buffer
+     * capacity, which waits for space instead of applying queue_full_policy.
+     */
+    @JsonProperty("queue_capacity")
+    @Min(0)
+    private int queueCapacity = 0;
+
+    /**
+     * What to do with items that do not fit in a bounded queue. SPILL appends them to name_prefix + "overflow.spill"
+     * under base_path, from which they are recovered with OverflowSpillFile.recover.
+     */
+    @JsonProperty("queue_full_policy")
+    @NotNull
+    private QueueFullPolicy queueFullPolicy = QueueFullPolicy.BLOCK;
+
+    @JsonProperty("queue_full_block_millis")
+    @Min(0)
+    private long queueFullBlockMillis = 100L;
+
+    /**
+     * If set, items for a rolling cohort whose queue holds this many are journaled on disk rather than queued, and
+     * replayed as queues drain; 0 to always queue. Requires a writer whose serializer can also deserialize.
+     */
+    @JsonProperty("journal_at_queue_depth")
+    @Min(0)
+    private int journalAtQueueDepth = 0;
+
+    @JsonProperty("journal_segment_bytes")
+    @Min(1024)
+    private int journalSegmentBytes = SpillJournal.DEFAULT_SEGMENT_BYTES;
+
+    /**
+     * Milliseconds after replayed items are taken off the queues before they are no longer recovered on restart, for
+     * workers which do not report their flushes; should exceed the flush interval. Built-in workers report flushes, so
+     * this does not apply to them.
+     */
+    @JsonProperty("journal_commit_delay_millis")
+    @Min(0)
+    private long journalCommitDelayMillis = 30000L;
+
+    @JsonProperty("queue_type")
+    @NotNull
+    private QueueType queueType = QueueType.LINKED;
+
     @JsonProperty("rolling_frequency")
     @NotNull
     private RollingFrequencyUnit rollingFrequency = RollingFrequencyUnit.hourly;
 
+    /**
+     * If positive, files roll every this many seconds, aligned to the epoch, instead of at rolling_frequency. Allows
+     * sub-minute periods such as 10 or 15 seconds.
+     */
+    @JsonProperty("rolling_period_seconds")
+    @Min(0)
+    private int rollingPeriodSeconds = 0;
+
     public RequestLogWriterConfiguration() {
     }
 
@@ -56,7 +169,24 @@ public class RequestLogWriterConfiguration {
     }
 
     public RequestLogWriterConfiguration copy() {
-        return new RequestLogWriterConfiguration(basePath,namePrefix,nameSuffix,fileFlushIntervalSeconds,afterRollCloseFileDelaySeconds,spawnNewWorkerAtQueueDepth,reportUnhealthyAtQueueDepth,rollingFrequency);
+        RequestLogWriterConfiguration copy = new RequestLogWriterConfiguration(basePath,namePrefix,nameSuffix,fileFlushIntervalSeconds,afterRollCloseFileDelaySeconds,spawnNewWorkerAtQueueDepth,reportUnhealthyAtQueueDepth,rollingFrequency);
+        copy.maxBatchSize = maxBatchSize;
+        copy.queueCapacity = queueCapacity;
+        copy.queueFullPolicy = queueFullPolicy;
+        copy.queueFullBlockMillis = queueFullBlockMillis;
+        copy.queueType = queueType;
+        copy.journalAtQueueDepth = journalAtQueueDepth;
+        copy.journalSegmentBytes = journalSegmentBytes;
+        copy.journalCommitDelayMillis = journalCommitDelayMillis;
+        copy.maxFileBytes = maxFileBytes;
+        copy.maxFileItems = maxFileItems;
+        copy.mappedExtentBytes = mappedExtentBytes;
+        copy.durability = durability;
+        copy.groupCommitIntervalMillis = groupCommitIntervalMillis;
+        copy.latencyObjectiveMillis = latencyObjectiveMillis;
+        copy.maxWorkersPerCohort = maxWorkersPerCohort;
+        copy.rollingPeriodSeconds = rollingPeriodSeconds;
+        return copy;
     }
 
     public int getAfterRollCloseFileDelaySeconds() {
@@ -87,10 +217,79 @@ public class RequestLogWriterConfiguration {
         return spawnNewWorkerAtQueueDepth;
     }
 
+    public long getLatencyObjectiveMillis() {
+        return latencyObjectiveMillis;
+    }
+
+    public int getMaxWorkersPerCohort() {
+        return maxWorkersPerCohort;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public long getMaxFileItems() {
+        return maxFileItems;
+    }
+
+    public long getMappedExtentBytes() {
+        return mappedExtentBytes;
+    }
+
+    public DurabilityMode getDurability() {
+        return durability;
+    }
+
+    public long getGroupCommitIntervalMillis() {
+        return groupCommitIntervalMillis;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public QueueFullPolicy getQueueFullPolicy() {
+        return queueFullPolicy;
+    }
+
+    public long getQueueFullBlockMillis() {
+        return queueFullBlockMillis;
+    }
+
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    public int getJournalAtQueueDepth() {
+        return journalAtQueueDepth;
+    }
+
+    public int getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+
+    public long getJournalCommitDelayMillis() {
+        return journalCommitDelayMillis;
+    }
+
     public RollingFrequencyUnit getRollingFrequency() {
         return rollingFrequency;
     }
 
+    public int getRollingPeriodSeconds() {
+        return rollingPeriodSeconds;
+    }
+
+    public RequestLogWriterConfiguration setRollingPeriodSeconds(int rollingPeriodSeconds) {
+        this.rollingPeriodSeconds = rollingPeriodSeconds;
+        return this;
+    }
+
     public RequestLogWriterConfiguration setNamePrefix(String namePrefix) {
         this.namePrefix = namePrefix;
         return this;
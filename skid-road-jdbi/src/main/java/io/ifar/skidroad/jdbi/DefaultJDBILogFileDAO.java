@@ -46,6 +46,10 @@ public interface DefaultJDBILogFileDAO extends JDBILogFileDAO {
     @SqlUpdate("update log_files set bytes = :bytes, updated_at = :now where rolling_cohort = :rolling_cohort and serial = :serial and owner_uri = :owner")
     int updateSize(@Bind("rolling_cohort") String rollingCohort, @Bind("serial") int serial, @Bind("bytes") Long byteSize, @Bind("owner") String expectedOwner, @Bind("now") Timestamp now);
 
+    @Override
+    @SqlUpdate("update log_files set state = :state, bytes = :bytes, updated_at = :now where rolling_cohort = :rolling_cohort and serial = :serial and owner_uri = :owner")
+    int updateStateAndSize(@Bind("rolling_cohort") String rollingCohort, @Bind("serial") int serial, @Bind("state") String state, @Bind("bytes") Long byteSize, @Bind("owner") String expectedOwner, @Bind("now") Timestamp now);
+
     @Override
     @SqlQuery("select rolling_cohort, serial, start_time, origin_uri, prep_uri, archive_key, archive_uri, archive_group," +
             " state, owner_uri, bytes, created_at, updated_at from log_files where owner_uri = :owner_uri and state = :state order by start_time asc")
@@ -23,6 +23,8 @@ public interface JDBILogFileDAO {
 
     int updateSize(String rollingCohort, int serial, Long byteSize, String expectedOwner, Timestamp now);
 
+    int updateStateAndSize(String rollingCohort, int serial, String state, Long byteSize, String expectedOwner, Timestamp now);
+
     int determineNextSerial(String rollingCohort);
 
     int claimIndex(String rollingCohort, int serial, Timestamp startTime, String originUri, String ownerUri, Timestamp now);
@@ -121,6 +121,12 @@ public class JDBILogFileTracker extends AbstractLogFileTracker {
         return dao.updateSize(logFile.getRollingCohort(), logFile.getSerial(), logFile.getByteSize(), localUri.toString(), now());
     }
 
+    @Override
+    protected int recordStateChangeAndSize(LogFile logFile) {
+        return dao.updateStateAndSize(logFile.getRollingCohort(), logFile.getSerial(), logFile.getState().toString(),
+                logFile.getByteSize(), localUri.toString(), now());
+    }
+
     @Override
     public int getCount(LogFileState state) {
         return dao.count(state.toString());
@@ -10,6 +10,7 @@ import io.ifar.skidroad.jersey.combined.capture.RequestEntityBytesCaptureFilter;
 import io.ifar.skidroad.jersey.headers.CommonHeaderExtractors;
 import io.ifar.skidroad.jersey.headers.RequestHeaderExtractor;
 import io.ifar.skidroad.jersey.headers.ResponseHeaderExtractor;
+import io.ifar.skidroad.writing.file.ByteSerializer;
 import io.ifar.skidroad.writing.file.Serializer;
 import org.glassfish.jersey.server.ContainerRequest;
 import org.slf4j.Logger;
@@ -19,14 +20,17 @@ import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.core.MultivaluedMap;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
- * Serializes ContainerRequestAndResponse to JSON for flat-file storage.
+ * Serializes ContainerRequestAndResponse to JSON for flat-file storage. As a {@link ByteSerializer} it writes UTF-8
+ * JSON straight to the output without building a String.
  *
  * Future: configure what to include (e.g. only some headers)
  * Future: allow customizing class used to deserialize request entity bytes
  */
-public class JSONContainerRequestAndResponseSerializer implements Serializer<ContainerRequestAndResponse> {
+public class JSONContainerRequestAndResponseSerializer implements Serializer<ContainerRequestAndResponse>,
+        ByteSerializer<ContainerRequestAndResponse> {
 
     private RequestHeaderExtractor requestHeaderExtractor = CommonHeaderExtractors.ALL_REQUEST_HEADERS;
     private ResponseHeaderExtractor responseHeaderExtractor = CommonHeaderExtractors.ALL_RESPONSE_HEADERS;
@@ -90,6 +94,11 @@ public class JSONContainerRequestAndResponseSerializer implements Serializer<Con
         return objectMapper.writeValueAsString(new OutputBean(item, objectMapper));
     }
 
+    @Override
+    public void serialize(ContainerRequestAndResponse item, OutputStream out) throws IOException {
+        objectMapper.writeValue(out, new OutputBean(item, objectMapper));
+    }
+
     public JSONContainerRequestAndResponseSerializer with(RequestHeaderExtractor requestHeaderExtractor) {
         this.requestHeaderExtractor = requestHeaderExtractor;
         return this;
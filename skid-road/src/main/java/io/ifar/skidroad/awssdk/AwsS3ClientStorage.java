@@ -12,6 +12,8 @@
  import com.amazonaws.services.s3.transfer.model.UploadResult;
  import com.codahale.metrics.health.HealthCheck;
  import com.google.common.base.Throwables;
+ import io.ifar.skidroad.prepping.CompressionCodec;
+ import io.ifar.skidroad.prepping.CompressionCodecs;
  import org.slf4j.Logger;
  import org.slf4j.LoggerFactory;
 
@@ -104,8 +106,9 @@
          String[] parts = pieces(uri);
          ObjectMetadata om = new ObjectMetadata();
          om.setContentLength(f.length());
-         if (f.getName().endsWith("gzip")) {
-             om.setContentEncoding("gzip");
+         CompressionCodec codec = CompressionCodecs.forFileName(f.getName());
+         if (codec != null && codec.getContentEncoding() != null) {
+             om.setContentEncoding(codec.getContentEncoding());
          }
          uploadsInProgress.incrementAndGet();
          try {
@@ -0,0 +1,158 @@
+package io.ifar.skidroad.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Layout of the gzip members written by {@link BlockGzipOutputStream}. Each member is an ordinary RFC 1952 gzip
+ * member whose header carries one extra subfield, "SR", holding the total size of the member and the size of its
+ * uncompressed content (both unsigned 32-bit little-endian). gzip readers ignore the subfield; block-aware readers
+ * use it to find member boundaries without inflating.
+ */
+final class BlockGzip {
+    static final int HEADER_SIZE = 24;
+    static final int TRAILER_SIZE = 8;
+    static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private static final int ID1 = 0x1f;
+    private static final int ID2 = 0x8b;
+    private static final int CM_DEFLATE = 8;
+    private static final int FLG_FEXTRA = 4;
+    private static final int OS_UNKNOWN = 255;
+    private static final int XLEN = 12;
+    private static final int SI1 = 'S';
+    private static final int SI2 = 'R';
+    private static final int SUBFIELD_LENGTH = 8;
+
+    private BlockGzip() {
+    }
+
+    static void writeHeader(byte[] dst, int memberSize, int uncompressedSize) {
+        dst[0] = (byte) ID1;
+        dst[1] = (byte) ID2;
+        dst[2] = CM_DEFLATE;
+        dst[3] = FLG_FEXTRA;
+        writeInt(dst, 4, 0); //MTIME
+        dst[8] = 0; //XFL
+        dst[9] = (byte) OS_UNKNOWN;
+        writeShort(dst, 10, XLEN);
+        dst[12] = SI1;
+        dst[13] = SI2;
+        writeShort(dst, 14, SUBFIELD_LENGTH);
+        writeInt(dst, 16, memberSize);
+        writeInt(dst, 20, uncompressedSize);
+    }
+
+    static void writeTrailer(byte[] dst, int offset, long crc, int uncompressedSize) {
+        writeInt(dst, offset, (int) crc);
+        writeInt(dst, offset + 4, uncompressedSize);
+    }
+
+    /**
+     * @return true if header holds the first {@link #HEADER_SIZE} bytes of a member written by
+     *         {@link BlockGzipOutputStream}
+     */
+    static boolean isBlockHeader(byte[] header) {
+        return (header[0] & 0xFF) == ID1
+                && (header[1] & 0xFF) == ID2
+                && header[2] == CM_DEFLATE
+                && header[3] == FLG_FEXTRA
+                && readShort(header, 10) == XLEN
+                && header[12] == SI1
+                && header[13] == SI2
+                && readShort(header, 14) == SUBFIELD_LENGTH;
+    }
+
+    /**
+     * @return total size in bytes of the member, including header and trailer
+     */
+    static int memberSize(byte[] header) throws IOException {
+        if (!isBlockHeader(header))
+            throw new IOException("Not a block gzip member header.");
+        long size = readInt(header, 16) & 0xFFFFFFFFL;
+        if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE)
+            throw new IOException("Invalid block gzip member size " + size);
+        return (int) size;
+    }
+
+    static int uncompressedSize(byte[] header) throws IOException {
+        long size = readInt(header, 20) & 0xFFFFFFFFL;
+        if (size > MAX_BLOCK_SIZE)
+            throw new IOException("Invalid block gzip uncompressed size " + size);
+        return (int) size;
+    }
+
+    /**
+     * Inflates a complete member, verifying its CRC and length.
+     */
+    static byte[] inflate(byte[] member) throws IOException {
+        int memberSize = memberSize(member);
+        int uncompressedSize = uncompressedSize(member);
+        byte[] result = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, HEADER_SIZE, memberSize - HEADER_SIZE - TRAILER_SIZE);
+            int length = 0;
+            while (length < uncompressedSize && !inflater.finished()) {
+                int n = inflater.inflate(result, length, uncompressedSize - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += n;
+            }
+            if (length != uncompressedSize || (!inflater.finished() && inflater.inflate(new byte[1]) != 0))
+                throw new IOException("Block gzip member length does not match its header.");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block gzip member.", e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(result, 0, uncompressedSize);
+        int trailer = memberSize - TRAILER_SIZE;
+        if (readInt(member, trailer) != (int) crc.getValue() || readInt(member, trailer + 4) != uncompressedSize)
+            throw new IOException("Block gzip member fails CRC check.");
+        return result;
+    }
+
+    /**
+     * Reads exactly dst.length - offset bytes.
+     * @return false if the stream was already at EOF
+     * @throws EOFException if EOF occurred after at least one byte was read
+     */
+    static boolean readFully(InputStream in, byte[] dst, int offset) throws IOException {
+        int start = offset;
+        while (offset < dst.length) {
+            int n = in.read(dst, offset, dst.length - offset);
+            if (n < 0) {
+                if (offset == start)
+                    return false;
+                throw new EOFException("Truncated block gzip member.");
+            }
+            offset += n;
+        }
+        return true;
+    }
+
+    private static void writeShort(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) value;
+        dst[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeInt(byte[] dst, int offset, int value) {
+        writeShort(dst, offset, value);
+        writeShort(dst, offset + 2, value >>> 16);
+    }
+
+    private static int readShort(byte[] src, int offset) {
+        return (src[offset] & 0xFF) | (src[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return readShort(src, offset) | readShort(src, offset + 2) << 16;
+    }
+}
@@ -0,0 +1,141 @@
+package io.ifar.skidroad.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Locations of the members of a file written by {@link BlockGzipOutputStream}. Built by reading only the member
+ * headers, so constructing an index costs one small read per block. Over a
+ * {@link io.ifar.skidroad.crypto.SeekableAESChannel} this also allows random access into encrypted archives.
+ *
+ * Immutable once built.
+ */
+public class BlockGzipIndex {
+    private final int blockCount;
+    private final long[] compressedOffsets;
+    private final int[] compressedSizes;
+    private final long[] uncompressedOffsets;
+    private final int[] uncompressedSizes;
+
+    private BlockGzipIndex(int blockCount, long[] compressedOffsets, int[] compressedSizes,
+                           long[] uncompressedOffsets, int[] uncompressedSizes) {
+        this.blockCount = blockCount;
+        this.compressedOffsets = compressedOffsets;
+        this.compressedSizes = compressedSizes;
+        this.uncompressedOffsets = uncompressedOffsets;
+        this.uncompressedSizes = uncompressedSizes;
+    }
+
+    /**
+     * Reads member headers from the start of the channel to its end. Leaves the channel position unspecified.
+     * @throws IOException if the channel does not hold block gzip data
+     */
+    public static BlockGzipIndex scan(SeekableByteChannel channel) throws IOException {
+        long size = channel.size();
+        int capacity = 16;
+        long[] compressedOffsets = new long[capacity];
+        int[] compressedSizes = new int[capacity];
+        long[] uncompressedOffsets = new long[capacity];
+        int[] uncompressedSizes = new int[capacity];
+
+        byte[] header = new byte[BlockGzip.HEADER_SIZE];
+        long compressedOffset = 0L;
+        long uncompressedOffset = 0L;
+        int count = 0;
+        while (compressedOffset < size) {
+            readFully(channel, compressedOffset, header);
+            int memberSize = BlockGzip.memberSize(header);
+            int uncompressedSize = BlockGzip.uncompressedSize(header);
+            if (count == capacity) {
+                capacity *= 2;
+                compressedOffsets = Arrays.copyOf(compressedOffsets, capacity);
+                compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+                uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, capacity);
+                uncompressedSizes = Arrays.copyOf(uncompressedSizes, capacity);
+            }
+            compressedOffsets[count] = compressedOffset;
+            compressedSizes[count] = memberSize;
+            uncompressedOffsets[count] = uncompressedOffset;
+            uncompressedSizes[count] = uncompressedSize;
+            count++;
+            compressedOffset += memberSize;
+            uncompressedOffset += uncompressedSize;
+        }
+        if (compressedOffset != size)
+            throw new EOFException("Final block gzip member is truncated.");
+        return new BlockGzipIndex(count, compressedOffsets, compressedSizes, uncompressedOffsets, uncompressedSizes);
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public long getCompressedOffset(int block) {
+        checkBlock(block);
+        return compressedOffsets[block];
+    }
+
+    public int getCompressedSize(int block) {
+        checkBlock(block);
+        return compressedSizes[block];
+    }
+
+    public long getUncompressedOffset(int block) {
+        checkBlock(block);
+        return uncompressedOffsets[block];
+    }
+
+    public int getUncompressedSize(int block) {
+        checkBlock(block);
+        return uncompressedSizes[block];
+    }
+
+    public long getUncompressedLength() {
+        return blockCount == 0 ? 0L : uncompressedOffsets[blockCount - 1] + uncompressedSizes[blockCount - 1];
+    }
+
+    /**
+     * @return index of the block holding the byte at the given uncompressed position, or -1 if the position is
+     *         beyond the end of the data
+     */
+    public int blockContaining(long uncompressedPosition) {
+        if (uncompressedPosition < 0)
+            throw new IllegalArgumentException("Negative position: " + uncompressedPosition);
+        if (uncompressedPosition >= getUncompressedLength())
+            return -1;
+        int found = Arrays.binarySearch(uncompressedOffsets, 0, blockCount, uncompressedPosition);
+        if (found < 0)
+            return -found - 2;
+        //Skip past any empty blocks sharing the offset.
+        while (uncompressedSizes[found] == 0)
+            found++;
+        return found;
+    }
+
+    /**
+     * Reads and inflates a single block.
+     */
+    public byte[] readBlock(SeekableByteChannel channel, int block) throws IOException {
+        checkBlock(block);
+        byte[] member = new byte[compressedSizes[block]];
+        readFully(channel, compressedOffsets[block], member);
+        return BlockGzip.inflate(member);
+    }
+
+    private void checkBlock(int block) {
+        if (block < 0 || block >= blockCount)
+            throw new IndexOutOfBoundsException("No block " + block + "; " + blockCount + " blocks.");
+    }
+
+    private static void readFully(SeekableByteChannel channel, long position, byte[] dst) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(dst);
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Truncated block gzip member at offset " + position);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.ifar.skidroad.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes gzip data as a series of independently compressed members, each holding at most blockSize bytes of input.
+ * The output is a valid multi-member gzip file and can be read with {@link java.util.zip.GZIPInputStream}. Because
+ * each member's header records its compressed and uncompressed sizes, the members can also be located without
+ * inflating (see {@link BlockGzipIndex}) and inflated concurrently (see {@link ParallelBlockGzipInputStream}).
+ *
+ * Similar in spirit to BGZF, but members may exceed 64KB.
+ *
+ * Extends DeflaterOutputStream so it can stand in for {@link java.util.zip.GZIPOutputStream}; the inherited
+ * deflate buffer is not used. Not thread-safe.
+ */
+public class BlockGzipOutputStream extends DeflaterOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private final int blockSize;
+    private final CRC32 crc;
+    private byte[] block;
+    private int blockLength;
+    private byte[] member;
+    private boolean anyMemberWritten;
+    private boolean finished;
+
+    public BlockGzipOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    public BlockGzipOutputStream(OutputStream out, int blockSize) {
+        this(out, blockSize, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out destination for compressed data
+     * @param blockSize uncompressed bytes per member; at most 64MB
+     * @param level deflate compression level
+     */
+    public BlockGzipOutputStream(OutputStream out, int blockSize, int level) {
+        super(out, new Deflater(level, true), 1);
+        if (blockSize <= 0 || blockSize > BlockGzip.MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("Block size must be between 1 and " + BlockGzip.MAX_BLOCK_SIZE + ": " + blockSize);
+        this.blockSize = blockSize;
+        this.crc = new CRC32();
+        this.block = new byte[blockSize];
+        this.blockLength = 0;
+        //Usually enough; grown if the block is incompressible.
+        this.member = new byte[BlockGzip.HEADER_SIZE + blockSize + BlockGzip.TRAILER_SIZE];
+        this.anyMemberWritten = false;
+        this.finished = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == blockSize)
+            writeMember();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        ensureOpen();
+        while (len > 0) {
+            int toCopy = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, toCopy);
+            blockLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (blockLength == blockSize)
+                writeMember();
+        }
+    }
+
+    /**
+     * Flushes the underlying stream. Data in the current partial block is retained so that members stay full-sized;
+     * it is written when the block fills or on {@link #finish()}.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes the final member without closing the underlying stream. At least one member is always written, so
+     * empty input still produces a valid gzip file.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        if (blockLength > 0 || !anyMemberWritten)
+            writeMember();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            def.end();
+            block = null;
+            member = null;
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished)
+            throw new IOException("Stream already finished.");
+    }
+
+    private void writeMember() throws IOException {
+        def.reset();
+        def.setInput(block, 0, blockLength);
+        def.finish();
+        int length = BlockGzip.HEADER_SIZE;
+        while (!def.finished()) {
+            if (length == member.length - BlockGzip.TRAILER_SIZE)
+                member = Arrays.copyOf(member, member.length + blockSize / 2 + 64);
+            length += def.deflate(member, length, member.length - BlockGzip.TRAILER_SIZE - length);
+        }
+        crc.reset();
+        crc.update(block, 0, blockLength);
+        BlockGzip.writeTrailer(member, length, crc.getValue(), blockLength);
+        length += BlockGzip.TRAILER_SIZE;
+        BlockGzip.writeHeader(member, length, blockLength);
+
+        out.write(member, 0, length);
+        blockLength = 0;
+        anyMemberWritten = true;
+    }
+}
@@ -0,0 +1,154 @@
+package io.ifar.skidroad.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads data written by {@link BlockGzipOutputStream}, inflating up to maxBlocksInFlight members ahead of the reader
+ * on the supplied executor. The calling thread only reads compressed bytes and hands them off, so throughput scales
+ * with the executor's threads when inflation is the bottleneck.
+ *
+ * Input that was not written by BlockGzipOutputStream is rejected; use {@link #isBlockGzip(java.io.InputStream)} to
+ * choose between this class and {@link java.util.zip.GZIPInputStream}.
+ *
+ * Not thread-safe.
+ */
+public class ParallelBlockGzipInputStream extends InputStream {
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int maxBlocksInFlight;
+    private final Deque<Future<byte[]>> inFlight;
+
+    private byte[] current;
+    private int currentOffset;
+    private boolean inputDone;
+
+    /**
+     * @param in compressed data
+     * @param executor inflates members
+     * @param maxBlocksInFlight number of members which may be read ahead of the caller
+     */
+    public ParallelBlockGzipInputStream(InputStream in, ExecutorService executor, int maxBlocksInFlight) {
+        if (maxBlocksInFlight < 1)
+            throw new IllegalArgumentException("At least one block must be allowed in flight.");
+        this.in = in;
+        this.executor = executor;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+        this.inFlight = new ArrayDeque<>(maxBlocksInFlight);
+        this.current = new byte[0];
+        this.currentOffset = 0;
+        this.inputDone = false;
+    }
+
+    /**
+     * Peeks at the start of a stream to determine whether it holds block gzip data. The stream is reset afterwards.
+     * @param in must support mark/reset
+     */
+    public static boolean isBlockGzip(InputStream in) throws IOException {
+        if (!in.markSupported())
+            throw new IllegalArgumentException("Stream must support mark/reset.");
+        byte[] header = new byte[BlockGzip.HEADER_SIZE];
+        in.mark(header.length);
+        try {
+            return BlockGzip.readFully(in, header, 0) && BlockGzip.isBlockHeader(header);
+        } catch (IOException e) {
+            //shorter than a header
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillCurrent())
+            return -1;
+        return current[currentOffset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (!fillCurrent())
+            return -1;
+        int n = Math.min(len, current.length - currentOffset);
+        System.arraycopy(current, currentOffset, b, off, n);
+        currentOffset += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current.length - currentOffset;
+    }
+
+    /**
+     * Closes the underlying stream. Blocks still being inflated are abandoned.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> block : inFlight)
+            block.cancel(false);
+        inFlight.clear();
+        inputDone = true;
+        current = new byte[0];
+        currentOffset = 0;
+        in.close();
+    }
+
+    /**
+     * @return false at end of data
+     */
+    private boolean fillCurrent() throws IOException {
+        while (currentOffset == current.length) {
+            while (!inputDone && inFlight.size() < maxBlocksInFlight)
+                submitNextMember();
+            if (inFlight.isEmpty())
+                return false;
+            current = awaitOldestBlock();
+            currentOffset = 0;
+        }
+        return true;
+    }
+
+    private void submitNextMember() throws IOException {
+        byte[] header = new byte[BlockGzip.HEADER_SIZE];
+        if (!BlockGzip.readFully(in, header, 0)) {
+            inputDone = true;
+            return;
+        }
+        final byte[] member = new byte[BlockGzip.memberSize(header)];
+        BlockGzip.uncompressedSize(header); //validate before reading further
+        System.arraycopy(header, 0, member, 0, header.length);
+        if (!BlockGzip.readFully(in, member, header.length))
+            throw new EOFException("Truncated block gzip member.");
+        inFlight.addLast(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return BlockGzip.inflate(member);
+            }
+        }));
+    }
+
+    private byte[] awaitOldestBlock() throws IOException {
+        try {
+            return inFlight.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted awaiting inflation of block.");
+        } catch (ExecutionException e) {
+            throw new IOException("Inflation of block failed.", e.getCause());
+        }
+    }
+}
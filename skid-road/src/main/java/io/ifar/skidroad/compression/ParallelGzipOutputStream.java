@@ -0,0 +1,245 @@
+package io.ifar.skidroad.compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a single gzip member, deflating fixed-size chunks of the input concurrently in the manner of pigz. Each
+ * chunk is primed with the last 32KB of the preceding input as a preset dictionary, so compression ratio is close
+ * to that of {@link java.util.zip.GZIPOutputStream}. Chunks other than the last end with a sync flush, which
+ * byte-aligns them so that their output can simply be concatenated.
+ *
+ * The CRC is computed on the writing thread as data arrives. At most maxChunksInFlight chunks are buffered at once.
+ *
+ * Extends DeflaterOutputStream so it can stand in for GZIPOutputStream; the inherited deflater is not used.
+ * Not thread-safe.
+ */
+public class ParallelGzipOutputStream extends DeflaterOutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 255};
+
+    private final ExecutorService executor;
+    private final int level;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+    private final Deque<Future<Chunk>> inFlight;
+    private final Deque<byte[]> spareBuffers;
+    private final CRC32 crc;
+
+    private byte[] current;
+    private int currentLength;
+    private byte[] dictionary;
+    private long totalLength;
+    private boolean finished;
+
+    /**
+     * @param out destination for compressed data
+     * @param executor deflates chunks
+     * @param chunkSize uncompressed bytes per chunk
+     * @param maxChunksInFlight number of chunks which may be queued or deflating before writes block
+     * @param level deflate compression level
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int chunkSize, int maxChunksInFlight,
+                                    int level) throws IOException {
+        super(out, new Deflater(), 1);
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        if (maxChunksInFlight < 1)
+            throw new IllegalArgumentException("At least one chunk must be allowed in flight.");
+        this.executor = executor;
+        this.level = level;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = maxChunksInFlight;
+        this.inFlight = new ArrayDeque<>(maxChunksInFlight);
+        this.spareBuffers = new ArrayDeque<>(maxChunksInFlight + 1);
+        this.crc = new CRC32();
+        this.current = new byte[chunkSize];
+        this.currentLength = 0;
+        this.dictionary = new byte[0];
+        this.totalLength = 0L;
+        this.finished = false;
+        out.write(HEADER);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int maxChunksInFlight) throws IOException {
+        this(out, executor, DEFAULT_CHUNK_SIZE, maxChunksInFlight, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        current[currentLength++] = (byte) b;
+        if (currentLength == chunkSize)
+            submitCurrent(false);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        ensureOpen();
+        while (len > 0) {
+            int toCopy = Math.min(len, chunkSize - currentLength);
+            System.arraycopy(b, off, current, currentLength, toCopy);
+            currentLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (currentLength == chunkSize)
+                submitCurrent(false);
+        }
+    }
+
+    /**
+     * Writes out all chunks compressed so far, waiting for those still in flight, and flushes the underlying stream.
+     * Data in the current partial chunk is retained.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!inFlight.isEmpty())
+            writeOldestChunk();
+        out.flush();
+    }
+
+    /**
+     * Compresses the final chunk and writes all remaining output and the gzip trailer without closing the
+     * underlying stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        submitCurrent(true);
+        finished = true;
+        while (!inFlight.isEmpty())
+            writeOldestChunk();
+        byte[] trailer = new byte[8];
+        writeInt(trailer, 0, (int) crc.getValue());
+        writeInt(trailer, 4, (int) totalLength);
+        out.write(trailer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            for (Future<Chunk> chunk : inFlight)
+                chunk.cancel(false);
+            inFlight.clear();
+            def.end();
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished)
+            throw new IOException("Stream already finished.");
+    }
+
+    private void submitCurrent(final boolean last) throws IOException {
+        if (inFlight.size() >= maxChunksInFlight)
+            writeOldestChunk();
+        crc.update(current, 0, currentLength);
+        totalLength += currentLength;
+
+        final byte[] input = current;
+        final int inputLength = currentLength;
+        final byte[] chunkDictionary = dictionary;
+        dictionary = nextDictionary(chunkDictionary, input, inputLength);
+        inFlight.addLast(executor.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() throws Exception {
+                return deflate(input, inputLength, chunkDictionary, last);
+            }
+        }));
+        current = spareBuffers.isEmpty() ? new byte[chunkSize] : spareBuffers.removeFirst();
+        currentLength = 0;
+    }
+
+    private Chunk deflate(byte[] input, int inputLength, byte[] chunkDictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (chunkDictionary.length > 0)
+                deflater.setDictionary(chunkDictionary);
+            deflater.setInput(input, 0, inputLength);
+            byte[] output = new byte[inputLength + inputLength / 8 + 64];
+            int outputLength = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (outputLength == output.length)
+                        output = Arrays.copyOf(output, output.length * 2);
+                    outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+                }
+            } else {
+                //A full output buffer may mean more output is pending.
+                do {
+                    if (outputLength == output.length)
+                        output = Arrays.copyOf(output, output.length * 2);
+                    outputLength += deflater.deflate(output, outputLength, output.length - outputLength, Deflater.SYNC_FLUSH);
+                } while (outputLength == output.length);
+            }
+            return new Chunk(input, output, outputLength);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Last DICTIONARY_SIZE bytes of the input through the end of this chunk.
+     */
+    private static byte[] nextDictionary(byte[] previous, byte[] input, int inputLength) {
+        if (inputLength >= DICTIONARY_SIZE)
+            return Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+        int fromPrevious = Math.min(previous.length, DICTIONARY_SIZE - inputLength);
+        byte[] result = new byte[fromPrevious + inputLength];
+        System.arraycopy(previous, previous.length - fromPrevious, result, 0, fromPrevious);
+        System.arraycopy(input, 0, result, fromPrevious, inputLength);
+        return result;
+    }
+
+    private void writeOldestChunk() throws IOException {
+        Chunk chunk;
+        try {
+            chunk = inFlight.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted awaiting compression of chunk.");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression of chunk failed.", e.getCause());
+        }
+        out.write(chunk.output, 0, chunk.outputLength);
+        spareBuffers.addLast(chunk.input);
+    }
+
+    private static void writeInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) value;
+        dst[offset + 1] = (byte) (value >>> 8);
+        dst[offset + 2] = (byte) (value >>> 16);
+        dst[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static class Chunk {
+        final byte[] input;
+        final byte[] output;
+        final int outputLength;
+
+        Chunk(byte[] input, byte[] output, int outputLength) {
+            this.input = input;
+            this.output = output;
+            this.outputLength = outputLength;
+        }
+    }
+}
@@ -3,7 +3,6 @@ package io.ifar.skidroad.crypto;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
 
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -18,75 +17,93 @@ import java.io.InputStream;
  * @see StreamingBouncyCastleAESWithSIC
  */
 public class AESInputStream extends InputStream {
+    /**
+     * Amount of ciphertext pulled from the underlying stream at a time.
+     */
+    static final int CHUNK_SIZE = 8192;
+
     private final InputStream in;
     private final PaddedBufferedBlockCipher cipher;
+    private final byte[] inputBuffer;
     private final byte[] outputBuffer;
     int outputBufferOffset = 0;
     int outputBufferEnd = 0;
     boolean inputStreamIsDone = false;
-    //long totalInputByteCount;
-    //ByteArrayOutputStream debug = new ByteArrayOutputStream();
 
     public AESInputStream(final InputStream in, final byte[] key, final byte[] iv) {
         this.in = in;
-        //System.out.println("Reading with key " + StreamingBouncyCastleAESWithSIC.toHexString(key));
-        //System.out.println("Reading with iv " + StreamingBouncyCastleAESWithSIC.toHexString(iv));
-        //totalInputByteCount = 0;
         this.cipher = StreamingBouncyCastleAESWithSIC.makeDecryptionCipher(key, iv);
-        this.outputBuffer = new byte[cipher.getOutputSize(1)];
-    }
-
-    private int getNextByteFromBuffer() throws IOException {
-        int remainingBytes = outputBufferEnd - outputBufferOffset;
-        if (remainingBytes == 0)
-            return -1;
-        else {
-            int result = outputBuffer[outputBufferOffset++];
-            if (outputBufferOffset == outputBufferEnd)
-                outputBufferOffset = outputBufferEnd = 0; //indicates nothing left in buffer
-            //convert byte to read() 0-255 int format
-            return result < 0 ? result + 256 : result;
-        }
+        this.inputBuffer = new byte[CHUNK_SIZE];
+        //processBytes can emit a previously held-back block plus the chunk.
+        this.outputBuffer = new byte[cipher.getOutputSize(CHUNK_SIZE) + cipher.getBlockSize()];
     }
 
     /**
-     * Returns the next plaintext byte. May or may not invoke {@link java.io.InputStream#read()} on the
-     * underlying stream.
-     * @throws IOException if one occurs in the underlying operations.
+     * Refills outputBuffer with plaintext. Only called once the buffer has been fully consumed. Reads from the
+     * underlying stream until at least one plaintext byte is available or the underlying stream is exhausted.
+     * @return false if there is no more plaintext
      */
-    @Override
-    public int read() throws IOException {
-        if (outputBufferEnd > 0)
-            return getNextByteFromBuffer(); //we have bytes in the buffer from last time. Return those.
-
-        if (inputStreamIsDone)
-            return -1; //nothing left in the buffer nor in the input stream. We're done.
+    private boolean fillBuffer() throws IOException {
+        outputBufferOffset = outputBufferEnd = 0;
+        while (outputBufferEnd == 0) {
+            if (inputStreamIsDone)
+                return false; //nothing left in the buffer nor in the input stream. We're done.
 
-        while (true) {
-            int maybeByte = in.read();
-            if (maybeByte < 0) {
-                //System.out.println("Total cipher bytes read: " + totalInputByteCount);
-                //System.out.println(StreamingBouncyCastleAESWithSIC.toHexString(debug.toByteArray()));
+            int inputByteCount = in.read(inputBuffer, 0, inputBuffer.length);
+            if (inputByteCount < 0) {
                 inputStreamIsDone = true;
                 try {
                     outputBufferEnd = cipher.doFinal(outputBuffer, 0);
                 } catch (InvalidCipherTextException e) {
                     throw new IOException(e);
                 }
-                return getNextByteFromBuffer();
-
-            } else {
-                //convert input.read() from 0-255 int into a byte
-                byte b = (byte) (maybeByte < 0 ? maybeByte + 256 : maybeByte);
-                //totalInputByteCount++;
-                //debug.write(b);
-                outputBufferEnd = cipher.processByte(b, outputBuffer, 0);
-                if (outputBufferEnd > 0) {
-                    return getNextByteFromBuffer();
-                }
-                //else haven't yet read a full 128 bit AES block. Keep going.
+            } else if (inputByteCount > 0) {
+                //Padded cipher holds back the last block until doFinal, so this may be 0. Keep going.
+                outputBufferEnd = cipher.processBytes(inputBuffer, 0, inputByteCount, outputBuffer, 0);
             }
         }
+        return true;
+    }
+
+    /**
+     * Returns the next plaintext byte. Reads from the underlying stream in chunks of up to {@link #CHUNK_SIZE}
+     * bytes when the internal buffer is empty.
+     * @throws IOException if one occurs in the underlying operations.
+     */
+    @Override
+    public int read() throws IOException {
+        if (outputBufferOffset == outputBufferEnd && !fillBuffer())
+            return -1;
+        //convert byte to read() 0-255 int format
+        return outputBuffer[outputBufferOffset++] & 0xFF;
+    }
+
+    /**
+     * Reads up to length plaintext bytes. Serves bytes left in the internal buffer first; otherwise decrypts the
+     * next chunk of ciphertext from the underlying stream. May return fewer bytes than requested.
+     * @throws IOException if one occurs in the underlying operations.
+     */
+    @Override
+    public int read(byte[] output, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || length > output.length - offset)
+            throw new IndexOutOfBoundsException();
+        if (length == 0)
+            return 0;
+
+        if (outputBufferOffset == outputBufferEnd && !fillBuffer())
+            return -1;
+        int byteCount = Math.min(length, outputBufferEnd - outputBufferOffset);
+        System.arraycopy(outputBuffer, outputBufferOffset, output, offset, byteCount);
+        outputBufferOffset += byteCount;
+        return byteCount;
+    }
+
+    /**
+     * @return number of already decrypted bytes which can be read without touching the underlying stream.
+     */
+    @Override
+    public int available() throws IOException {
+        return outputBufferEnd - outputBufferOffset;
     }
 
     @Override
@@ -18,6 +18,12 @@ import java.io.OutputStream;
  * @see StreamingBouncyCastleAESWithSIC
  */
 public class AESOutputStream extends FilterOutputStream {
+    /**
+     * Largest slice of caller-provided input handed to the cipher at once. Bounds the size of outputBuffer
+     * regardless of how large a write callers make.
+     */
+    static final int CHUNK_SIZE = 8192;
+
     private final PaddedBufferedBlockCipher cipher;
     private final byte[] outputBuffer;
     //long totalOutputByteCount;
@@ -29,8 +35,8 @@ public class AESOutputStream extends FilterOutputStream {
         //System.out.println("Writing with key " + StreamingBouncyCastleAESWithSIC.toHexString(key));
         //System.out.println("Writing with iv " + StreamingBouncyCastleAESWithSIC.toHexString(iv));
         this.cipher = StreamingBouncyCastleAESWithSIC.makeEncryptionCipher(key, iv);
-        //doFinal can generate up to 2 blocks worth of data. getOutputSize for a single byte of input is a bit superfluous.
-        this.outputBuffer = new byte[Math.max(cipher.getBlockSize() * 2, cipher.getOutputSize(1))];
+        //doFinal can generate up to 2 blocks worth of data. processBytes can emit a buffered block plus the chunk.
+        this.outputBuffer = new byte[Math.max(cipher.getBlockSize() * 2, cipher.getOutputSize(CHUNK_SIZE))];
     }
 
     /**
@@ -51,6 +57,31 @@ public class AESOutputStream extends FilterOutputStream {
         }
     }
 
+    /**
+     * Encrypts the provided input bytes in chunks of up to {@link #CHUNK_SIZE}. Ciphertext is written to the
+     * underlying OutputStream once per chunk rather than once per block. Output is identical to writing the same
+     * bytes one at a time via {@link #write(int)}.
+     * @param input bytes to write
+     * @param offset start offset in input
+     * @param length number of bytes to write
+     * @throws IOException if one occurs on the underlying stream
+     */
+    @Override
+    public void write(byte[] input, int offset, int length) throws IOException {
+        if ((offset | length | (input.length - (length + offset)) | (offset + length)) < 0)
+            throw new IndexOutOfBoundsException();
+
+        while (length > 0) {
+            int chunkLength = Math.min(length, CHUNK_SIZE);
+            int outputByteCount = cipher.processBytes(input, offset, chunkLength, outputBuffer, 0);
+            if (outputByteCount > 0) {
+                super.out.write(outputBuffer, 0, outputByteCount);
+            }
+            offset += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
     /**
      * Finishes writing encrypted data to the output stream without closing
      * the underlying stream. Use this method when applying multiple filters
@@ -0,0 +1,199 @@
+package io.ifar.skidroad.crypto;
+
+import org.bouncycastle.crypto.modes.SICBlockCipher;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Wraps AES encryption around an OutputStream, encrypting fixed-size segments
+ * of the plaintext concurrently on a ForkJoinPool. Produces exactly the same
+ * ciphertext as {@link AESOutputStream} with the same key and IV, so output
+ * can be read with {@link AESInputStream}.
+ *
+ * Each segment's SIC counter is computed from the IV and the segment's block
+ * offset (see {@link StreamingBouncyCastleAESWithSIC#counterForBlock(byte[], long)}).
+ * Segments are written to the underlying stream in order. At most
+ * maxSegmentsInFlight segments are buffered at once, which bounds memory use to
+ * roughly that many times segmentSize.
+ *
+ * Not thread-safe; a single thread should write to an instance.
+ *
+ * @see StreamingBouncyCastleAESWithSIC
+ */
+public class ParallelAESOutputStream extends OutputStream {
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    private static final int BLOCK_SIZE = StreamingBouncyCastleAESWithSIC.AES_IV_SIZE_BITS / 8;
+
+    private final OutputStream out;
+    private final byte[] key;
+    private final byte[] iv;
+    private final ForkJoinPool pool;
+    private final int segmentSize;
+    private final int maxSegmentsInFlight;
+    private final Deque<Future<Segment>> inFlight;
+    private final Deque<byte[]> spareBuffers;
+
+    private byte[] current;
+    private int currentLength;
+    private long nextBlockIndex;
+    private boolean finished;
+
+    /**
+     * Uses {@link #DEFAULT_SEGMENT_SIZE} and allows two segments in flight per thread in the pool.
+     */
+    public ParallelAESOutputStream(final OutputStream out, final byte[] key, final byte[] iv, final ForkJoinPool pool) {
+        this(out, key, iv, pool, DEFAULT_SEGMENT_SIZE, pool.getParallelism() * 2);
+    }
+
+    /**
+     * @param out destination for ciphertext
+     * @param key AES encryption key
+     * @param iv AES SIC initialization vector. Should be unique for each invocation.
+     * @param pool executes segment encryption
+     * @param segmentSize plaintext bytes per segment. Must be a positive multiple of the AES block size (16).
+     * @param maxSegmentsInFlight number of segments which may be queued or encrypting before writes block.
+     */
+    public ParallelAESOutputStream(final OutputStream out, final byte[] key, final byte[] iv, final ForkJoinPool pool,
+                                   final int segmentSize, final int maxSegmentsInFlight) {
+        if (segmentSize <= 0 || segmentSize % BLOCK_SIZE != 0)
+            throw new IllegalArgumentException("Segment size must be a positive multiple of " + BLOCK_SIZE + ": " + segmentSize);
+        if (maxSegmentsInFlight < 1)
+            throw new IllegalArgumentException("At least one segment must be allowed in flight.");
+        this.out = out;
+        this.key = key.clone();
+        this.iv = iv.clone();
+        this.pool = pool;
+        this.segmentSize = segmentSize;
+        this.maxSegmentsInFlight = maxSegmentsInFlight;
+        this.inFlight = new ArrayDeque<>(maxSegmentsInFlight);
+        this.spareBuffers = new ArrayDeque<>(maxSegmentsInFlight + 1);
+        //Final segment may need one more block for padding.
+        this.current = new byte[segmentSize + BLOCK_SIZE];
+        this.currentLength = 0;
+        this.nextBlockIndex = 0L;
+        this.finished = false;
+    }
+
+    @Override
+    public void write(int input) throws IOException {
+        ensureOpen();
+        current[currentLength++] = (byte) input;
+        if (currentLength == segmentSize)
+            submitCurrent();
+    }
+
+    @Override
+    public void write(byte[] input, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || length > input.length - offset)
+            throw new IndexOutOfBoundsException();
+        ensureOpen();
+        while (length > 0) {
+            int toCopy = Math.min(length, segmentSize - currentLength);
+            System.arraycopy(input, offset, current, currentLength, toCopy);
+            currentLength += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+            if (currentLength == segmentSize)
+                submitCurrent();
+        }
+    }
+
+    /**
+     * Writes out all segments encrypted so far, waiting for those still in flight. The partially filled
+     * current segment is retained, since it cannot be encrypted until it is full or the stream is finished.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!inFlight.isEmpty())
+            writeOldestSegment();
+        out.flush();
+    }
+
+    /**
+     * Pads and encrypts the final segment and writes all remaining ciphertext without closing the underlying
+     * stream. Use this method when applying multiple filters in succession to the same output stream.
+     * @throws IOException if an I/O error has occurred, or encryption of a segment failed
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        //PKCS7, as applied by the PaddedBufferedBlockCipher used by AESOutputStream: always 1 to 16 bytes.
+        byte padding = (byte) (BLOCK_SIZE - (currentLength % BLOCK_SIZE));
+        for (int i = 0; i < padding; i++)
+            current[currentLength++] = padding;
+        submitCurrent();
+        finished = true;
+        while (!inFlight.isEmpty())
+            writeOldestSegment();
+    }
+
+    /**
+     * Closes the underlying stream. As with {@link AESOutputStream}, {@link #finish()} must be called first or
+     * the output will be truncated. Segments still in flight are abandoned.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Future<Segment> segment : inFlight)
+            segment.cancel(false);
+        inFlight.clear();
+        finished = true;
+        out.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished)
+            throw new IOException("Stream already finished.");
+    }
+
+    private void submitCurrent() throws IOException {
+        if (inFlight.size() >= maxSegmentsInFlight)
+            writeOldestSegment();
+        final Segment segment = new Segment(current, currentLength, nextBlockIndex);
+        inFlight.addLast(pool.submit(new Callable<Segment>() {
+            @Override
+            public Segment call() throws Exception {
+                SICBlockCipher cipher = StreamingBouncyCastleAESWithSIC.makeSegmentCipher(true, key, iv, segment.blockIndex);
+                //SIC is a stream mode; encrypting in place is safe.
+                cipher.processBytes(segment.bytes, 0, segment.length, segment.bytes, 0);
+                return segment;
+            }
+        }));
+        nextBlockIndex += currentLength / BLOCK_SIZE;
+        current = spareBuffers.isEmpty() ? new byte[segmentSize + BLOCK_SIZE] : spareBuffers.removeFirst();
+        currentLength = 0;
+    }
+
+    private void writeOldestSegment() throws IOException {
+        Segment segment;
+        try {
+            segment = inFlight.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted awaiting encryption of segment.");
+        } catch (ExecutionException e) {
+            throw new IOException("Encryption of segment failed.", e.getCause());
+        }
+        out.write(segment.bytes, 0, segment.length);
+        spareBuffers.addLast(segment.bytes);
+    }
+
+    private static class Segment {
+        final byte[] bytes;
+        final int length;
+        final long blockIndex;
+
+        Segment(byte[] bytes, int length, long blockIndex) {
+            this.bytes = bytes;
+            this.length = length;
+            this.blockIndex = blockIndex;
+        }
+    }
+}
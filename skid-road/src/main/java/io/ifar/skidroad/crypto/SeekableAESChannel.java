@@ -0,0 +1,212 @@
+package io.ifar.skidroad.crypto;
+
+import org.bouncycastle.crypto.modes.SICBlockCipher;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Read-only, seekable plaintext view of ciphertext produced by {@link AESOutputStream} (or
+ * {@link ParallelAESOutputStream}). Because SIC/CTR keystream for any block can be computed from the IV and the
+ * block index, reads may start anywhere without decrypting the preceding data.
+ *
+ * {@link #size()} is the plaintext size; it is determined on construction by decrypting the final block and
+ * examining its PKCS7 padding.
+ *
+ * Sequential reads reuse the cipher state; a read after {@link #position(long)} moves the cipher to the new block.
+ * For parallel decoding open one channel per thread, or use {@link #read(java.nio.ByteBuffer, long)}.
+ *
+ * To get an InputStream with an efficient skip(), wrap with {@link java.nio.channels.Channels#newInputStream}.
+ *
+ * @see StreamingBouncyCastleAESWithSIC#makeSegmentCipher(boolean, byte[], byte[], long)
+ */
+public class SeekableAESChannel implements SeekableByteChannel {
+    private static final int BLOCK_SIZE = StreamingBouncyCastleAESWithSIC.AES_IV_SIZE_BITS / 8;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final SeekableByteChannel ciphertext;
+    private final byte[] key;
+    private final byte[] iv;
+    private final long size;
+    private final ByteBuffer chunk;
+
+    private long position;
+    private SICBlockCipher cipher;
+    private long cipherPosition;
+    private boolean open;
+
+    /**
+     * @param ciphertext channel positioned anywhere; it is closed when this channel is closed.
+     * @param key AES decryption key
+     * @param iv AES SIC initialization vector
+     * @throws IOException if the ciphertext cannot be read, or its length or padding is invalid (e.g. wrong key).
+     */
+    public SeekableAESChannel(SeekableByteChannel ciphertext, byte[] key, byte[] iv) throws IOException {
+        this.ciphertext = ciphertext;
+        this.key = key.clone();
+        this.iv = iv.clone();
+        this.chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        this.position = 0L;
+        this.cipher = null;
+        this.cipherPosition = -1L;
+        this.open = true;
+
+        long cipherSize = ciphertext.size();
+        if (cipherSize < BLOCK_SIZE || cipherSize % BLOCK_SIZE != 0)
+            throw new IOException(String.format("Ciphertext length %d is not a positive multiple of the AES block size.", cipherSize));
+        long lastBlockIndex = cipherSize / BLOCK_SIZE - 1;
+        byte[] lastBlock = readFully(lastBlockIndex * BLOCK_SIZE, BLOCK_SIZE);
+        StreamingBouncyCastleAESWithSIC.makeSegmentCipher(false, key, iv, lastBlockIndex)
+                .processBytes(lastBlock, 0, BLOCK_SIZE, lastBlock, 0);
+        int padding = lastBlock[BLOCK_SIZE - 1] & 0xFF;
+        if (padding < 1 || padding > BLOCK_SIZE)
+            throw new IOException("Invalid padding in final block. Wrong key, or data corrupt.");
+        for (int i = BLOCK_SIZE - padding; i < BLOCK_SIZE; i++)
+            if ((lastBlock[i] & 0xFF) != padding)
+                throw new IOException("Invalid padding in final block. Wrong key, or data corrupt.");
+        this.size = cipherSize - padding;
+    }
+
+    /**
+     * Opens a channel over a local file of ciphertext.
+     */
+    public static SeekableAESChannel open(Path path, byte[] key, byte[] iv) throws IOException {
+        FileChannel file = FileChannel.open(path, READ);
+        try {
+            return new SeekableAESChannel(file, key, iv);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int byteCount = read(dst, position, true);
+        if (byteCount > 0)
+            position += byteCount;
+        return byteCount;
+    }
+
+    /**
+     * Reads plaintext starting at the given position without changing this channel's position.
+     * @return bytes read, possibly zero, or -1 if position is at or beyond the end of the plaintext
+     */
+    public synchronized int read(ByteBuffer dst, long position) throws IOException {
+        if (position < 0)
+            throw new IllegalArgumentException("Negative position: " + position);
+        return read(dst, position, false);
+    }
+
+    private int read(ByteBuffer dst, long readPosition, boolean keepCipher) throws IOException {
+        ensureOpen();
+        if (readPosition >= size)
+            return -1;
+        int byteCount = (int) Math.min(Math.min(dst.remaining(), CHUNK_SIZE), size - readPosition);
+        if (byteCount == 0)
+            return 0;
+
+        SICBlockCipher readCipher = (cipher != null && cipherPosition == readPosition) ? cipher : cipherAt(readPosition);
+        byte[] bytes = readFully(readPosition, byteCount);
+        readCipher.processBytes(bytes, 0, byteCount, bytes, 0);
+        dst.put(bytes, 0, byteCount);
+
+        if (keepCipher) {
+            cipher = readCipher;
+            cipherPosition = readPosition + byteCount;
+        } else if (readCipher == cipher) {
+            //Positioned read consumed the sequential cipher's state.
+            cipherPosition = readPosition + byteCount;
+        }
+        return byteCount;
+    }
+
+    private SICBlockCipher cipherAt(long plaintextPosition) {
+        SICBlockCipher result = StreamingBouncyCastleAESWithSIC.makeSegmentCipher(false, key, iv, plaintextPosition / BLOCK_SIZE);
+        int offsetInBlock = (int) (plaintextPosition % BLOCK_SIZE);
+        if (offsetInBlock > 0) {
+            byte[] discard = new byte[offsetInBlock];
+            result.processBytes(discard, 0, offsetInBlock, discard, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Reads exactly length bytes of ciphertext at the specified position. Returns a view of the shared chunk buffer
+     * when it is large enough.
+     */
+    private byte[] readFully(long from, int length) throws IOException {
+        ByteBuffer buffer = length <= chunk.capacity() ? chunk : ByteBuffer.allocate(length);
+        buffer.clear();
+        buffer.limit(length);
+        ciphertext.position(from);
+        while (buffer.hasRemaining()) {
+            if (ciphertext.read(buffer) < 0)
+                throw new EOFException(String.format("Ciphertext ended before offset %d.", from + length));
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    /**
+     * Sets the plaintext position. Positions beyond {@link #size()} are permitted; reads there return -1.
+     */
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0)
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * @return plaintext size in bytes
+     */
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (open) {
+            open = false;
+            ciphertext.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+    }
+}
@@ -34,8 +34,9 @@ import java.util.List;
  * Bruce Schneier. Others would do, but SIC is parallelizable. (It is
  * parallelizable because the initialization vector for block n is the original
  * IV plus n. In contrast, chaining modes such as CBC use the encrypted output
- * from block n-1 to generate the IV for block n.) The implementation here,
- * however, is single-threaded.
+ * from block n-1 to generate the IV for block n.) AESInputStream and
+ * AESOutputStream are single-threaded; ParallelAESOutputStream uses
+ * {@link #counterForBlock(byte[], long)} to encrypt segments concurrently.
  *
  * Helper methods to generate keys and initialization vectors using Java's
  * SecureRandom are provided.
@@ -119,6 +120,52 @@ public class StreamingBouncyCastleAESWithSIC {
         return makeCipher(DECRYPT, key, iv);
     }
 
+    /**
+     * Generates an unpadded Bouncy Castle SIC cipher whose counter starts at
+     * the specified block of the stream which began with the provided IV.
+     * Processing bytes with the result produces the same output as the
+     * corresponding bytes from a cipher started at block 0, so segments of a
+     * stream may be processed independently (e.g. concurrently, or out of order).
+     *
+     * Padding is not applied; callers handling the final segment of a stream
+     * produced by {@link #makeCipher(boolean, byte[], byte[])} must add or
+     * remove PKCS7 padding themselves.
+     *
+     * @param encrypt {@code true} for encrypt, {@code false} for decrypt. (Identical for SIC, but documents intent.)
+     * @param key AES encryption key
+     * @param iv AES SIC initialization vector of the stream as a whole.
+     * @param blockIndex zero-based index of the AES block at which the returned cipher starts.
+     * @return a cipher instance positioned at blockIndex
+     */
+    public static SICBlockCipher makeSegmentCipher(boolean encrypt, byte[] key, byte[] iv, long blockIndex) {
+        SICBlockCipher cipher = new SICBlockCipher(new AESFastEngine());
+        cipher.init(encrypt, new ParametersWithIV(new KeyParameter(key), counterForBlock(iv, blockIndex)));
+        return cipher;
+    }
+
+    /**
+     * Computes the SIC counter value for the specified block of a stream: the
+     * IV treated as a 128-bit big-endian unsigned integer plus blockIndex,
+     * wrapping on overflow. This matches how Bouncy Castle's SICBlockCipher
+     * increments its counter.
+     *
+     * @param iv AES SIC initialization vector of the stream
+     * @param blockIndex zero-based block index; must not be negative
+     * @return a new array holding the counter for blockIndex
+     */
+    public static byte[] counterForBlock(byte[] iv, long blockIndex) {
+        if (blockIndex < 0)
+            throw new IllegalArgumentException("Block index must not be negative: " + blockIndex);
+        byte[] counter = iv.clone();
+        long carry = blockIndex;
+        for (int i = counter.length - 1; i >= 0 && carry != 0; i--) {
+            long sum = (counter[i] & 0xFFL) + (carry & 0xFFL);
+            counter[i] = (byte) sum;
+            carry = (carry >>> 8) + (sum >>> 8);
+        }
+        return counter;
+    }
+
     /**
      * Wraps provided OutputStream in an AESOutputStream and encrypts the
      * provided InputStream by copying it to the wrapped output.
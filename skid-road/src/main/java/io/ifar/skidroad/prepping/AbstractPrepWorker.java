@@ -58,7 +58,7 @@ public abstract class AbstractPrepWorker implements Callable<Boolean> {
      * @param newExtension
      * @return
      */
-    public Path withNewExtension(Path p, String newExtension) {
+    public static Path withNewExtension(Path p, String newExtension) {
         String dottedExtension = newExtension.charAt(0) == '.' ? newExtension : '.' + newExtension;
         String asString = p.toString();
         int lastDot = asString.indexOf('.');
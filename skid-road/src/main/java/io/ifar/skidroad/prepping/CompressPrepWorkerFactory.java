@@ -9,8 +9,18 @@ import java.util.concurrent.Callable;
  * Constructs {@link io.ifar.skidroad.prepping.CompressPrepper} objects.
  */
 public class CompressPrepWorkerFactory implements PrepWorkerFactory {
+    private final CompressionCodec codec;
+
+    public CompressPrepWorkerFactory() {
+        this(new GzipCodec());
+    }
+
+    public CompressPrepWorkerFactory(CompressionCodec codec) {
+        this.codec = codec;
+    }
+
     @Override
     public Callable<Boolean> buildWorker(LogFile logFile, LogFileTracker tracker) {
-        return new CompressPrepper(logFile, tracker);
+        return new CompressPrepper(logFile, tracker, codec);
     }
 }
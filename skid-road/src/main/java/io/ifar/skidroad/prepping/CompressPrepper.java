@@ -11,7 +11,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.GZIPOutputStream;
 
 import static java.nio.file.StandardOpenOption.*;
 
@@ -23,24 +22,34 @@ import static java.nio.file.StandardOpenOption.*;
 public class CompressPrepper extends AbstractPrepWorker {
     private static final Logger LOG = LoggerFactory.getLogger(CompressPrepper.class);
 
+    private final CompressionCodec codec;
+
     public CompressPrepper(LogFile logFile, LogFileTracker tracker) {
+        this(logFile, tracker, new GzipCodec());
+    }
+
+    /**
+     * @param codec compression format; determines the output file's extension
+     */
+    public CompressPrepper(LogFile logFile, LogFileTracker tracker, CompressionCodec codec) {
         super(logFile, tracker);
+        this.codec = codec;
     }
 
     @Override
     public Path prepare(Path inputPath) throws PreparationException {
-        Path outputPath = withNewExtension(inputPath, ".gz");
+        Path outputPath = withNewExtension(inputPath, codec.getFileExtension());
         if (tracker.updateArchiveKey(logFile) != 1)
             throw new PreparationException("Cannot record archive key for " + logFile);
 
         try (
                 InputStream in = Files.newInputStream(inputPath, READ);
-                OutputStream fileOut = Files.newOutputStream(outputPath, CREATE, WRITE);
-                GZIPOutputStream gz = new GZIPOutputStream(fileOut)
+                OutputStream fileOut = Files.newOutputStream(outputPath, CREATE, WRITE)
         ) {
-            int byteCount = IOUtils.copy(in, gz); //buffers internally; no need for Buffered[In|Out]putStream
-            gz.finish();
-            gz.flush();
+            int byteCount;
+            try (OutputStream compressed = openCompressingStream(fileOut)) {
+                byteCount = IOUtils.copy(in, compressed); //buffers internally; no need for Buffered[In|Out]putStream
+            }
 
             LOG.trace("{} bytes read from {}", byteCount, inputPath);
             return outputPath;
@@ -48,4 +57,12 @@ public class CompressPrepper extends AbstractPrepWorker {
             throw new PreparationException(String.format("Unable to compress %s to %s.", inputPath, outputPath), e);
         }
     }
+
+    /**
+     * Wraps compression around the output file. Closing the returned stream must complete the compressed data
+     * without closing the file. Output must be readable by the codec's {@link CompressionCodec#decompress}.
+     */
+    protected OutputStream openCompressingStream(OutputStream fileOut) throws IOException {
+        return codec.compress(fileOut);
+    }
 }
@@ -0,0 +1,42 @@
+package io.ifar.skidroad.prepping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format usable in the prep stage. The codec of an archive is identified by its file extension (e.g.
+ * foo.gz or foo.zst.aes-sic); see {@link CompressionCodecs#forFileName(String)}.
+ *
+ * Implementations must be thread-safe; the streams they return need not be.
+ */
+public interface CompressionCodec {
+    /**
+     * @return identifier used in configuration, e.g. "gzip"
+     */
+    String getName();
+
+    /**
+     * @return extension of compressed files, including the leading '.', e.g. ".gz"
+     */
+    String getFileExtension();
+
+    /**
+     * @return value for an HTTP Content-Encoding header on unencrypted compressed files, or null if there is no
+     *         registered encoding for this format
+     */
+    String getContentEncoding();
+
+    /**
+     * Wraps compression around a stream. Closing the returned stream completes the compressed data but does
+     * <em>not</em> close out, so that further filters (e.g. encryption) can be finished afterwards. Where the format
+     * allows, flushing the returned stream pushes all data written so far through to out in decompressible form, as
+     * {@link StreamingPrepper} relies on.
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * Wraps decompression around a stream. Closing the returned stream closes in.
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
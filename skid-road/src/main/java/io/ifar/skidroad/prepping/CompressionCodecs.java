@@ -0,0 +1,40 @@
+package io.ifar.skidroad.prepping;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Lookup of the built-in {@link CompressionCodec}s.
+ */
+public class CompressionCodecs {
+    private static final List<CompressionCodec> BUILT_IN = ImmutableList.of(
+            new GzipCodec(), new Lz4Codec(), new ZstdCodec());
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * @param name codec name, e.g. "zstd"
+     * @throws IllegalArgumentException if there is no codec by that name
+     */
+    public static CompressionCodec forName(String name) {
+        for (CompressionCodec codec : BUILT_IN) {
+            if (codec.getName().equals(name))
+                return codec;
+        }
+        throw new IllegalArgumentException("Unknown compression codec " + name);
+    }
+
+    /**
+     * @param fileName e.g. "foo.zst"
+     * @return the codec whose extension fileName ends with, or null if none.
+     */
+    public static CompressionCodec forFileName(String fileName) {
+        for (CompressionCodec codec : BUILT_IN) {
+            if (fileName.endsWith(codec.getFileExtension()))
+                return codec;
+        }
+        return null;
+    }
+}
@@ -10,13 +10,23 @@ import java.util.concurrent.Callable;
  */
 public class EncryptAndCompressPrepWorkerFactory implements PrepWorkerFactory {
     private final String masterKeyBase64;
+    private final CompressionCodec codec;
 
     public EncryptAndCompressPrepWorkerFactory(String masterKeyBase64) {
+        this(masterKeyBase64, new GzipCodec());
+    }
+
+    /**
+     * @param masterKeyBase64 master key used to encrypt each file's key
+     * @param codec compression format
+     */
+    public EncryptAndCompressPrepWorkerFactory(String masterKeyBase64, CompressionCodec codec) {
         this.masterKeyBase64 = masterKeyBase64;
+        this.codec = codec;
     }
 
     @Override
     public Callable<Boolean> buildWorker(LogFile logFile, LogFileTracker tracker) {
-        return new EncryptAndCompressPrepper(logFile, tracker, masterKeyBase64);
+        return new EncryptAndCompressPrepper(logFile, tracker, masterKeyBase64, codec);
     }
 }
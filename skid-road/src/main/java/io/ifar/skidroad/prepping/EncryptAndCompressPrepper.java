@@ -15,7 +15,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.GZIPOutputStream;
 
 import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.*;
 import static java.nio.file.StandardOpenOption.*;
@@ -29,15 +28,24 @@ public class EncryptAndCompressPrepper extends AbstractPrepWorker {
     private static final Logger LOG = LoggerFactory.getLogger(EncryptAndCompressPrepper.class);
 
     private final byte[] masterKey;
+    private final CompressionCodec codec;
 
     public EncryptAndCompressPrepper(LogFile logFile, LogFileTracker tracker, String masterKeyBase64) {
+        this(logFile, tracker, masterKeyBase64, new GzipCodec());
+    }
+
+    /**
+     * @param codec compression format; determines the output file's extension
+     */
+    public EncryptAndCompressPrepper(LogFile logFile, LogFileTracker tracker, String masterKeyBase64, CompressionCodec codec) {
         super(logFile, tracker);
         masterKey = Base64.decode(masterKeyBase64);
+        this.codec = codec;
     }
 
     @Override
     public Path prepare(Path inputPath) throws PreparationException {
-        Path outputPath = withNewExtension(inputPath, ".gz." + DEFAULT_EXTENSION);
+        Path outputPath = withNewExtension(inputPath, codec.getFileExtension() + "." + DEFAULT_EXTENSION);
         byte[] key = generateRandomKey();
         byte[] iv = generateRandomIV();
         logFile.setArchiveKey(StreamingBouncyCastleAESWithSIC.encryptAndEncodeKey(key, iv, masterKey)); //TODO authenticated encryption (e.g. GCM instead of SIC) would be nice
@@ -47,13 +55,13 @@ public class EncryptAndCompressPrepper extends AbstractPrepWorker {
         try (
                 InputStream in = Files.newInputStream(inputPath, READ);
                 OutputStream fileOut = Files.newOutputStream(outputPath, CREATE, WRITE);
-                AESOutputStream aes = new AESOutputStream(fileOut, key, iv);
-                GZIPOutputStream gz = new GZIPOutputStream(aes)
+                OutputStream aes = openEncryptingStream(fileOut, key, iv)
         ) {
-            int byteCount = IOUtils.copy(in, gz); //buffers internally; no need for Buffered[In|Out]putStream
-            gz.finish();
-            gz.flush();
-            aes.finish();
+            int byteCount;
+            try (OutputStream compressed = codec.compress(aes)) {
+                byteCount = IOUtils.copy(in, compressed); //buffers internally; no need for Buffered[In|Out]putStream
+            }
+            finishEncrypting(aes);
 
             LOG.trace("{} bytes read from {}", byteCount, inputPath);
             return outputPath;
@@ -61,4 +69,19 @@ public class EncryptAndCompressPrepper extends AbstractPrepWorker {
             throw new PreparationException(String.format("Unable to compress and encrypt %s to %s.", inputPath, outputPath), e);
         }
     }
+
+    /**
+     * Wraps encryption around the output file. Output must be readable by {@link io.ifar.skidroad.crypto.AESInputStream}.
+     */
+    protected OutputStream openEncryptingStream(OutputStream fileOut, byte[] key, byte[] iv) {
+        return new AESOutputStream(fileOut, key, iv);
+    }
+
+    /**
+     * Completes the stream returned by {@link #openEncryptingStream(java.io.OutputStream, byte[], byte[])} without
+     * closing the underlying file.
+     */
+    protected void finishEncrypting(OutputStream encryptingStream) throws IOException, InvalidCipherTextException {
+        ((AESOutputStream) encryptingStream).finish();
+    }
 }
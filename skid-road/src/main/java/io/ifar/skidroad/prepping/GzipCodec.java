@@ -0,0 +1,78 @@
+package io.ifar.skidroad.prepping;
+
+import io.ifar.skidroad.compression.BlockGzipOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip, optionally written as a series of independent members (see {@link BlockGzipOutputStream}). Either way the
+ * output is readable by {@link GZIPInputStream}.
+ *
+ * Flushing a single-member stream performs a deflate sync flush. Flushing a block stream only writes out completed
+ * members.
+ */
+public class GzipCodec implements CompressionCodec {
+    public static final String NAME = "gzip";
+
+    private final int blockSize;
+
+    public GzipCodec() {
+        this(0);
+    }
+
+    /**
+     * @param blockSize if positive, uncompressed bytes per gzip member; otherwise output is a single member.
+     */
+    public GzipCodec(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".gz";
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return "gzip";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        OutputStream shielded = new CloseShieldOutputStream(out);
+        return blockSize > 0 ? new BlockGzipOutputStream(shielded, blockSize) : new GZIPOutputStream(shielded, true);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(new MemberSeekingInputStream(in));
+    }
+
+    /**
+     * GZIPInputStream only looks for a further member after a trailer if the underlying stream reports bytes
+     * available. Streams such as {@link io.ifar.skidroad.crypto.AESInputStream} report none at buffer boundaries,
+     * which would silently truncate multi-member output. Over-reporting is harmless: GZIPInputStream treats a missing
+     * header as the end of the data.
+     */
+    private static class MemberSeekingInputStream extends FilterInputStream {
+        MemberSeekingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.max(1, super.available());
+        }
+    }
+}
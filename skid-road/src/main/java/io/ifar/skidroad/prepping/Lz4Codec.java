@@ -0,0 +1,44 @@
+package io.ifar.skidroad.prepping;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LZ4 frame format, as written by the lz4 command line tool. Much faster than gzip, with a lower compression ratio.
+ */
+public class Lz4Codec implements CompressionCodec {
+    public static final String NAME = "lz4";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".lz4";
+    }
+
+    /**
+     * LZ4 has no registered HTTP content coding.
+     */
+    @Override
+    public String getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new LZ4FrameOutputStream(new CloseShieldOutputStream(out));
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new LZ4FrameInputStream(in);
+    }
+}
@@ -0,0 +1,59 @@
+package io.ifar.skidroad.prepping;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.compression.ParallelGzipOutputStream;
+import io.ifar.skidroad.tracking.LogFileTracker;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Constructs {@link ParallelCompressPrepper} objects. All workers share one compression pool, so a few large files
+ * can use threads that would otherwise sit idle, while total compression concurrency stays bounded by the pool's
+ * parallelism.
+ *
+ * A pool the factory creates itself is shut down by {@link #close()}, which {@link PrepWorkerManager#stop()} calls; a
+ * pool passed in is left to its owner.
+ */
+public class ParallelCompressPrepWorkerFactory implements PrepWorkerFactory, Closeable {
+    private final ForkJoinPool compressionPool;
+    private final boolean ownsPool;
+    private final int chunkSize;
+
+    /**
+     * @param compressionParallelism number of threads used to deflate chunks
+     */
+    public ParallelCompressPrepWorkerFactory(int compressionParallelism) {
+        this(new ForkJoinPool(compressionParallelism), true, ParallelGzipOutputStream.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param compressionPool deflates chunks
+     * @param chunkSize uncompressed bytes per chunk
+     */
+    public ParallelCompressPrepWorkerFactory(ForkJoinPool compressionPool, int chunkSize) {
+        this(compressionPool, false, chunkSize);
+    }
+
+    private ParallelCompressPrepWorkerFactory(ForkJoinPool compressionPool, boolean ownsPool, int chunkSize) {
+        this.compressionPool = compressionPool;
+        this.ownsPool = ownsPool;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public Callable<Boolean> buildWorker(LogFile logFile, LogFileTracker tracker) {
+        return new ParallelCompressPrepper(logFile, tracker, compressionPool, chunkSize,
+                compressionPool.getParallelism() * 2);
+    }
+
+    /**
+     * Shuts down the compression pool if this factory created it. Workers built afterwards fail.
+     */
+    @Override
+    public void close() {
+        if (ownsPool)
+            compressionPool.shutdown();
+    }
+}
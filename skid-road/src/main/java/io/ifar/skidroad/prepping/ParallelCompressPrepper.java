@@ -0,0 +1,42 @@
+package io.ifar.skidroad.prepping;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.compression.ParallelGzipOutputStream;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+/**
+ * {@link CompressPrepper} which deflates chunks of each file concurrently on a shared executor. Output is a single
+ * gzip member, as with CompressPrepper using {@link GzipCodec}.
+ *
+ * Not thread-safe.
+ */
+public class ParallelCompressPrepper extends CompressPrepper {
+    private final ExecutorService compressionExecutor;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+
+    /**
+     * @param compressionExecutor deflates chunks
+     * @param chunkSize uncompressed bytes per chunk
+     * @param maxChunksInFlight chunks which may be queued or deflating before the prep worker blocks
+     */
+    public ParallelCompressPrepper(LogFile logFile, LogFileTracker tracker, ExecutorService compressionExecutor,
+                                   int chunkSize, int maxChunksInFlight) {
+        super(logFile, tracker);
+        this.compressionExecutor = compressionExecutor;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
+    @Override
+    protected OutputStream openCompressingStream(OutputStream fileOut) throws IOException {
+        return new ParallelGzipOutputStream(new CloseShieldOutputStream(fileOut), compressionExecutor, chunkSize,
+                maxChunksInFlight, Deflater.DEFAULT_COMPRESSION);
+    }
+}
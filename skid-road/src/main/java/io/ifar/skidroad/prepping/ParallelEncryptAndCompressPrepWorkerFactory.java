@@ -0,0 +1,86 @@
+package io.ifar.skidroad.prepping;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.crypto.ParallelAESOutputStream;
+import io.ifar.skidroad.tracking.LogFileTracker;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Constructs {@link ParallelEncryptAndCompressPrepper} objects. All workers share one encryption pool, so total
+ * encryption concurrency is bounded by the pool's parallelism regardless of how many files are prepped at once.
+ *
+ * A pool the factory creates itself is shut down by {@link #close()}, which {@link PrepWorkerManager#stop()} calls; a
+ * pool passed in is left to its owner.
+ */
+public class ParallelEncryptAndCompressPrepWorkerFactory implements PrepWorkerFactory, Closeable {
+    private final String masterKeyBase64;
+    private final ForkJoinPool encryptionPool;
+    private final boolean ownsPool;
+    private final int segmentSize;
+    private final CompressionCodec codec;
+
+    /**
+     * @param masterKeyBase64 master key used to encrypt each file's key
+     * @param encryptionParallelism number of threads used to encrypt segments
+     */
+    public ParallelEncryptAndCompressPrepWorkerFactory(String masterKeyBase64, int encryptionParallelism) {
+        this(masterKeyBase64, encryptionParallelism, new GzipCodec());
+    }
+
+    /**
+     * @param masterKeyBase64 master key used to encrypt each file's key
+     * @param encryptionParallelism number of threads used to encrypt segments
+     * @param codec compression format
+     */
+    public ParallelEncryptAndCompressPrepWorkerFactory(String masterKeyBase64, int encryptionParallelism, CompressionCodec codec) {
+        this(masterKeyBase64, new ForkJoinPool(encryptionParallelism), true, ParallelAESOutputStream.DEFAULT_SEGMENT_SIZE,
+                codec);
+    }
+
+    /**
+     * @param masterKeyBase64 master key used to encrypt each file's key
+     * @param encryptionPool executes segment encryption
+     * @param segmentSize plaintext bytes per segment; must be a multiple of 16
+     */
+    public ParallelEncryptAndCompressPrepWorkerFactory(String masterKeyBase64, ForkJoinPool encryptionPool, int segmentSize) {
+        this(masterKeyBase64, encryptionPool, segmentSize, new GzipCodec());
+    }
+
+    /**
+     * @param masterKeyBase64 master key used to encrypt each file's key
+     * @param encryptionPool executes segment encryption
+     * @param segmentSize plaintext bytes per segment; must be a multiple of 16
+     * @param codec compression format
+     */
+    public ParallelEncryptAndCompressPrepWorkerFactory(String masterKeyBase64, ForkJoinPool encryptionPool, int segmentSize,
+                                                       CompressionCodec codec) {
+        this(masterKeyBase64, encryptionPool, false, segmentSize, codec);
+    }
+
+    private ParallelEncryptAndCompressPrepWorkerFactory(String masterKeyBase64, ForkJoinPool encryptionPool, boolean ownsPool,
+                                                        int segmentSize, CompressionCodec codec) {
+        this.masterKeyBase64 = masterKeyBase64;
+        this.encryptionPool = encryptionPool;
+        this.ownsPool = ownsPool;
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+    }
+
+    @Override
+    public Callable<Boolean> buildWorker(LogFile logFile, LogFileTracker tracker) {
+        return new ParallelEncryptAndCompressPrepper(logFile, tracker, masterKeyBase64, codec, encryptionPool,
+                segmentSize);
+    }
+
+    /**
+     * Shuts down the encryption pool if this factory created it. Workers built afterwards fail.
+     */
+    @Override
+    public void close() {
+        if (ownsPool)
+            encryptionPool.shutdown();
+    }
+}
@@ -0,0 +1,45 @@
+package io.ifar.skidroad.prepping;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.crypto.ParallelAESOutputStream;
+import io.ifar.skidroad.tracking.LogFileTracker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link EncryptAndCompressPrepper} which encrypts segments of the compressed stream concurrently on a shared
+ * ForkJoinPool. Output format is identical to that of EncryptAndCompressPrepper.
+ *
+ * Compression remains single-threaded; this helps when encryption is the bottleneck for large files.
+ *
+ * Not thread-safe.
+ */
+public class ParallelEncryptAndCompressPrepper extends EncryptAndCompressPrepper {
+    private final ForkJoinPool encryptionPool;
+    private final int segmentSize;
+
+    public ParallelEncryptAndCompressPrepper(LogFile logFile, LogFileTracker tracker, String masterKeyBase64,
+                                             ForkJoinPool encryptionPool, int segmentSize) {
+        this(logFile, tracker, masterKeyBase64, new GzipCodec(), encryptionPool, segmentSize);
+    }
+
+    public ParallelEncryptAndCompressPrepper(LogFile logFile, LogFileTracker tracker, String masterKeyBase64,
+                                             CompressionCodec codec, ForkJoinPool encryptionPool, int segmentSize) {
+        super(logFile, tracker, masterKeyBase64, codec);
+        this.encryptionPool = encryptionPool;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    protected OutputStream openEncryptingStream(OutputStream fileOut, byte[] key, byte[] iv) {
+        return new ParallelAESOutputStream(fileOut, key, iv, encryptionPool, segmentSize,
+                encryptionPool.getParallelism() * 2);
+    }
+
+    @Override
+    protected void finishEncrypting(OutputStream encryptingStream) throws IOException {
+        ((ParallelAESOutputStream) encryptingStream).finish();
+    }
+}
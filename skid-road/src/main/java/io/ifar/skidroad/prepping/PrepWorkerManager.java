@@ -15,6 +15,8 @@ import org.skife.jdbi.v2.ResultIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -31,6 +33,7 @@ import static io.ifar.skidroad.tracking.LogFileState.*;
 public class PrepWorkerManager implements LogFileStateListener {
     private final static Logger LOG = LoggerFactory.getLogger(PrepWorkerManager.class);
     private final static int PEEK_DEPTH = 50; //when randomly selecting an item to retry, how many of the available items to rifle through
+    private final static int CLOSE_FACTORY_AFTER_SECONDS = 30; //longest stop() waits for workers before closing a Closeable factory
     private final LogFileTracker tracker;
     private final PrepWorkerFactory workerFactory;
     private final int retryIntervalSeconds;
@@ -178,9 +181,29 @@ public class PrepWorkerManager implements LogFileStateListener {
         tracker.removeListener(this);
         this.executor.shutdown();
         // TODO: Ensure that threads exit.
+        if (workerFactory instanceof Closeable)
+            closeFactory();
         LOG.info("Stopping {}.",PrepWorkerManager.class.getSimpleName());
     }
 
+    /**
+     * Closes a factory which holds resources for its workers, e.g. a thread pool, once the workers already submitted
+     * have had a chance to finish with them.
+     */
+    private void closeFactory() {
+        try {
+            if (!executor.awaitTermination(CLOSE_FACTORY_AFTER_SECONDS, TimeUnit.SECONDS))
+                LOG.warn("Prep workers still running after {} seconds; closing their factory anyway.", CLOSE_FACTORY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            ((Closeable) workerFactory).close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close prep worker factory: ({}) {}", e.getClass().getSimpleName(), e.getMessage());
+        }
+    }
+
     /**
      * Manages concurrency between listener-invoked and scheduler-invoked processing
      * @return true if this LogFile may be processed
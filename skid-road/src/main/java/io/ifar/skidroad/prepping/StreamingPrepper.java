@@ -0,0 +1,154 @@
+package io.ifar.skidroad.prepping;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.crypto.AESOutputStream;
+import io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.util.encoders.Base64;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Prepares a log file while it is being written, rather than reading it back in a separate pass as
+ * {@link CompressPrepper} and {@link EncryptAndCompressPrepper} do. A writing worker configured with a
+ * StreamingPrepper sends its output through compression and, if a master key is given, encryption straight into the
+ * LogFile's prepPath; the originPath is never created. Output is identical in format to that of the corresponding
+ * prepper, so upload and {@link io.ifar.skidroad.streaming.StreamingAccess} are unaffected.
+ *
+ * Flushing a stream returned by {@link #open(LogFile, LogFileTracker)} sync-flushes the compressor, so everything
+ * written so far reaches the file except for the final block or two that the cipher holds back for padding. The
+ * archive is only complete once the stream is closed; a file left open by a crash cannot be finished later. The
+ * stream exposes its file's channel so that a writer can fsync what it has flushed.
+ *
+ * Thread-safe; the streams it returns are not.
+ */
+public class StreamingPrepper {
+    private final CompressionCodec codec;
+    private final byte[] masterKey;
+
+    /**
+     * Compress only, as {@link CompressPrepper}.
+     */
+    public StreamingPrepper(CompressionCodec codec) {
+        this.codec = codec;
+        this.masterKey = null;
+    }
+
+    /**
+     * Compress and encrypt, as {@link EncryptAndCompressPrepper}.
+     * @param masterKeyBase64 master key used to encrypt each file's key
+     */
+    public StreamingPrepper(CompressionCodec codec, String masterKeyBase64) {
+        this.codec = codec;
+        this.masterKey = Base64.decode(masterKeyBase64);
+    }
+
+    public Path prepPathFor(Path originPath) {
+        String extension = masterKey == null
+                ? codec.getFileExtension()
+                : codec.getFileExtension() + "." + DEFAULT_EXTENSION;
+        return AbstractPrepWorker.withNewExtension(originPath, extension);
+    }
+
+    /**
+     * Records archive key and prep path for the LogFile and opens its prepPath for writing.
+     * @return stream which compresses and encrypts to the prepPath; closing it completes the archive
+     * @throws IOException if the file cannot be opened or the tracker cannot be updated
+     */
+    public OutputStream open(LogFile logFile, LogFileTracker tracker) throws IOException {
+        return open(logFile, tracker, false);
+    }
+
+    /**
+     * As {@link #open(LogFile, LogFileTracker)}.
+     * @param syncOnClose if true, closing the stream fsyncs the completed archive before closing the file
+     */
+    public PreparingOutputStream open(LogFile logFile, LogFileTracker tracker, boolean syncOnClose) throws IOException {
+        Path prepPath = prepPathFor(logFile.getOriginPath());
+        byte[] key = null;
+        byte[] iv = null;
+        if (masterKey != null) {
+            key = generateRandomKey();
+            iv = generateRandomIV();
+            logFile.setArchiveKey(StreamingBouncyCastleAESWithSIC.encryptAndEncodeKey(key, iv, masterKey));
+        }
+        if (tracker.updateArchiveKey(logFile) != 1)
+            throw new IOException("Cannot record archive key for " + logFile);
+        logFile.setPrepPath(prepPath);
+        if (tracker.updatePrepPath(logFile) != 1)
+            throw new IOException("Cannot set prep path for " + logFile);
+
+        FileChannel channel = FileChannel.open(prepPath, CREATE, WRITE, TRUNCATE_EXISTING);
+        OutputStream fileOut = new BufferedOutputStream(Channels.newOutputStream(channel));
+        try {
+            AESOutputStream aes = key == null ? null : new AESOutputStream(fileOut, key, iv);
+            OutputStream compressed = codec.compress(aes == null ? fileOut : aes);
+            return new PreparingOutputStream(compressed, aes, fileOut, channel, syncOnClose);
+        } catch (IOException | RuntimeException e) {
+            fileOut.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes each layer in turn on close.
+     */
+    public static class PreparingOutputStream extends FilterOutputStream {
+        private final AESOutputStream aes;
+        private final OutputStream fileOut;
+        private final FileChannel channel;
+        private final boolean syncOnClose;
+        private boolean closed;
+
+        PreparingOutputStream(OutputStream compressed, AESOutputStream aes, OutputStream fileOut, FileChannel channel, boolean syncOnClose) {
+            super(compressed);
+            this.aes = aes;
+            this.fileOut = fileOut;
+            this.channel = channel;
+            this.syncOnClose = syncOnClose;
+            this.closed = false;
+        }
+
+        /**
+         * The prepPath's channel, for fsyncing flushed output. Closed along with this stream.
+         */
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                out.close();
+                if (aes != null)
+                    aes.finish();
+                if (syncOnClose) {
+                    fileOut.flush();
+                    channel.force(false);
+                }
+            } catch (InvalidCipherTextException e) {
+                throw new IOException("Unable to finish encryption.", e);
+            } finally {
+                fileOut.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.ifar.skidroad.prepping;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Zstandard, as written by the zstd command line tool. At low levels it typically compresses log data both better
+ * and faster than gzip.
+ */
+public class ZstdCodec implements CompressionCodec {
+    public static final String NAME = "zstd";
+    public static final int DEFAULT_LEVEL = 3;
+
+    private final int level;
+
+    public ZstdCodec() {
+        this(DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param level compression level, 1 (fastest) to 22
+     */
+    public ZstdCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".zst";
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return "zstd";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new ZstdOutputStream(new CloseShieldOutputStream(out), level);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new ZstdInputStream(in);
+    }
+}
@@ -12,8 +12,11 @@ import java.nio.file.Paths;
 
 /**
  * Helper for implementing FileRollingScheme.
+ *
+ * Periods of several hours or days, e.g. 2 or 3 hours, start at multiples of the duration since the epoch in UTC, so
+ * those which evenly divide a day start at midnight.
  */
-public class BasicFileRollingScheme implements FileRollingScheme {
+public class BasicFileRollingScheme implements PeriodicRollingScheme {
 
     private final static DateTimeFormatter DAILY_FORMATTER = ISODateTimeFormat.date();
     private final static DateTimeFormatter HOURLY_FORMATTER = ISODateTimeFormat.dateHour();
@@ -93,39 +96,23 @@ public class BasicFileRollingScheme implements FileRollingScheme {
     }
 
     public DateTime getStartTime(long currentTimeMillis) {
-        DateTime rawDateTime = new DateTime(currentTimeMillis, DateTimeZone.UTC);
+        return new DateTime(getStartTimeMillis(currentTimeMillis), DateTimeZone.UTC);
+    }
 
-        if (days) {
-            return new DateTime(
-                    rawDateTime.getYear(),
-                    rawDateTime.getMonthOfYear(),
-                    rawDateTime.getDayOfMonth(),
-                    0,
-                    0,
-                    0,
-                    DateTimeZone.UTC);
-        } else if (hours) {
-            return new DateTime(
-                    rawDateTime.getYear(),
-                    rawDateTime.getMonthOfYear(),
-                    rawDateTime.getDayOfMonth(),
-                    rawDateTime.getHourOfDay(),
-                    0,
-                    DateTimeZone.UTC);
-        } else if (minutes) {
-            return new DateTime(
-                    rawDateTime.getYear(),
-                    rawDateTime.getMonthOfYear(),
-                    rawDateTime.getDayOfMonth(),
-                    rawDateTime.getHourOfDay(),
-                    rawDateTime.getMinuteOfHour() - (rawDateTime.getMinuteOfHour() % (int) duration.getStandardMinutes()),
-                    0,
-                    DateTimeZone.UTC);
-        } else {
-            throw new IllegalStateException("Durations smaller than one minute are not supported.");
-        }
+    /**
+     * UTC has no offset changes and Joda does not count leap seconds, so UTC days, hours and minute periods that
+     * evenly divide an hour all start at multiples of their length since the epoch. Periods end where
+     * {@link #getSubsequentStartTime(DateTime)} says, so the next period starts right after.
+     */
+    @Override
+    public long getStartTimeMillis(long currentTimeMillis) {
+        long periodMillis = duration.getMillis();
+        long offset = currentTimeMillis % periodMillis;
+        //floor rather than truncate for times before the epoch
+        return currentTimeMillis - (offset < 0 ? offset + periodMillis : offset);
     }
 
+    @Override
     public DateTime getSubsequentStartTime(DateTime startTime) {
         return startTime.plus(duration);
     }
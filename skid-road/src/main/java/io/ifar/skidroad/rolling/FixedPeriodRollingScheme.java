@@ -0,0 +1,112 @@
+package io.ifar.skidroad.rolling;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.DateTimeFormatterBuilder;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+/**
+ * FileRollingScheme for any period that is a whole number of seconds, e.g. 10 or 15 seconds for near-real-time
+ * delivery, or 90 minutes. Periods are aligned to the epoch in UTC, so a period that evenly divides a day or an hour
+ * starts at the same times as the corresponding {@link BasicFileRollingScheme}, while other periods simply follow
+ * each other from 1970-01-01T00:00Z.
+ *
+ * Representations are fixed-width UTC timestamps, so they sort in start time order. They are no finer than the
+ * period needs: date only for whole days, date and hour for whole hours, hour and minute for whole minutes (all as in
+ * BasicFileRollingScheme), and down to the second otherwise, e.g. 2013-03-12T03-15-20.
+ */
+public class FixedPeriodRollingScheme implements PeriodicRollingScheme {
+
+    private final static DateTimeFormatter SECONDLY_FORMATTER = new DateTimeFormatterBuilder()
+            .append(ISODateTimeFormat.date())
+            .appendLiteral('T')
+            .append(ISODateTimeFormat.hour())
+            .appendLiteral('-')
+            .appendMinuteOfHour(2)
+            .appendLiteral('-')
+            .appendSecondOfMinute(2)
+            .toFormatter();
+    private final static DateTimeFormatter MINUTELY_FORMATTER = new DateTimeFormatterBuilder()
+            .append(ISODateTimeFormat.date())
+            .appendLiteral('T')
+            .append(ISODateTimeFormat.hour())
+            .appendLiteral('-')
+            .appendMinuteOfHour(2)
+            .toFormatter();
+
+    private final long closeDelayMillis;
+    private final String basePath;
+    private final String namePrefix;
+    private final String nameSuffix;
+    private final DateTimeFormatter startTimeFormatter;
+    private final long periodMillis;
+
+    public FixedPeriodRollingScheme(String basePath, String namePrefix, String nameSuffix, int secondsToWaitBeforeClosing,
+                                    Duration period)
+    {
+        if (period.getMillis() < DateTimeConstants.MILLIS_PER_SECOND || period.getMillis() % DateTimeConstants.MILLIS_PER_SECOND != 0)
+            throw new IllegalArgumentException("Period should be a positive whole number of seconds: " + period);
+        this.basePath = basePath;
+        this.namePrefix = namePrefix;
+        this.nameSuffix = nameSuffix;
+        this.closeDelayMillis = secondsToWaitBeforeClosing * (long) DateTimeConstants.MILLIS_PER_SECOND;
+        this.periodMillis = period.getMillis();
+        if (periodMillis % DateTimeConstants.MILLIS_PER_DAY == 0)
+            startTimeFormatter = ISODateTimeFormat.date();
+        else if (periodMillis % DateTimeConstants.MILLIS_PER_HOUR == 0)
+            startTimeFormatter = ISODateTimeFormat.dateHour();
+        else if (periodMillis % DateTimeConstants.MILLIS_PER_MINUTE == 0)
+            startTimeFormatter = MINUTELY_FORMATTER;
+        else
+            startTimeFormatter = SECONDLY_FORMATTER;
+    }
+
+    @Override
+    public boolean isTimeToClose(DateTime startTime) {
+        return System.currentTimeMillis() - (startTime.getMillis() + periodMillis) > closeDelayMillis;
+    }
+
+    @Override
+    public DateTime getCurrentStartTime() {
+        return getStartTime(System.currentTimeMillis());
+    }
+
+    @Override
+    public DateTime getStartTime(long currentTimeMillis) {
+        return new DateTime(getStartTimeMillis(currentTimeMillis), DateTimeZone.UTC);
+    }
+
+    @Override
+    public long getStartTimeMillis(long currentTimeMillis) {
+        long offset = currentTimeMillis % periodMillis;
+        //floor rather than truncate for times before the epoch
+        return currentTimeMillis - (offset < 0 ? offset + periodMillis : offset);
+    }
+
+    @Override
+    public DateTime getSubsequentStartTime(DateTime startTime) {
+        return startTime.plus(periodMillis);
+    }
+
+    @Override
+    public File getBaseDirectory() {
+        return new File(basePath);
+    }
+
+    @Override
+    public String makeOutputPathPattern(DateTime startTime) {
+        String fileNamePattern = namePrefix + getRepresentation(startTime) + "_%d" + nameSuffix;
+        return Paths.get(basePath, fileNamePattern).toString();
+    }
+
+    @Override
+    public String getRepresentation(DateTime startTime) {
+        return startTimeFormatter.print(startTime.withZone(DateTimeZone.UTC));
+    }
+}
@@ -0,0 +1,86 @@
+package io.ifar.skidroad.rolling;
+
+import org.joda.time.DateTime;
+
+import java.io.File;
+
+/**
+ * Adds a size budget to a time-based FileRollingScheme, which it delegates to for everything to do with time and
+ * naming. Keeps archive objects near a target size whatever the traffic: quiet periods still roll on time, busy ones
+ * are split into several files per cohort.
+ *
+ * The byte budget applies to files as written, before prep. To aim for a prepared (compressed) object size, e.g. the
+ * 128-512 MB that suits columnar query engines, divide the target by the expected compression ratio.
+ */
+public class HybridRollingScheme implements SizeBoundedRollingScheme, PeriodicRollingScheme {
+    private final FileRollingScheme timeScheme;
+    private final long maxFileBytes;
+    private final long maxFileItems;
+
+    /**
+     * @param timeScheme decides periods, closing and naming
+     * @param maxFileBytes approximate bytes per file, or 0 for no limit
+     * @param maxFileItems items per file, or 0 for no limit
+     */
+    public HybridRollingScheme(FileRollingScheme timeScheme, long maxFileBytes, long maxFileItems) {
+        if (maxFileBytes < 0 || maxFileItems < 0)
+            throw new IllegalArgumentException("File limits must not be negative: " + maxFileBytes + " bytes, " + maxFileItems + " items");
+        this.timeScheme = timeScheme;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileItems = maxFileItems;
+    }
+
+    public FileRollingScheme getTimeScheme() {
+        return timeScheme;
+    }
+
+    @Override
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    @Override
+    public long getMaxFileItems() {
+        return maxFileItems;
+    }
+
+    @Override
+    public boolean isTimeToClose(DateTime startTime) {
+        return timeScheme.isTimeToClose(startTime);
+    }
+
+    @Override
+    public DateTime getCurrentStartTime() {
+        return timeScheme.getCurrentStartTime();
+    }
+
+    @Override
+    public DateTime getStartTime(long currentTimeMillis) {
+        return timeScheme.getStartTime(currentTimeMillis);
+    }
+
+    @Override
+    public long getStartTimeMillis(long currentTimeMillis) {
+        return RollingSchemes.getStartTimeMillis(timeScheme, currentTimeMillis);
+    }
+
+    @Override
+    public DateTime getSubsequentStartTime(DateTime startTime) {
+        return RollingSchemes.getSubsequentStartTime(timeScheme, startTime);
+    }
+
+    @Override
+    public File getBaseDirectory() {
+        return timeScheme.getBaseDirectory();
+    }
+
+    @Override
+    public String makeOutputPathPattern(DateTime startTime) {
+        return timeScheme.makeOutputPathPattern(startTime);
+    }
+
+    @Override
+    public String getRepresentation(DateTime startTime) {
+        return timeScheme.getRepresentation(startTime);
+    }
+}
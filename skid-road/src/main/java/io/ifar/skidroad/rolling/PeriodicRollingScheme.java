@@ -0,0 +1,24 @@
+package io.ifar.skidroad.rolling;
+
+import org.joda.time.DateTime;
+
+/**
+ * A FileRollingScheme which can find a period's start without allocating and say where each period ends, letting a
+ * writer route the rest of a period's items without asking the scheme again. Kept apart from FileRollingScheme so
+ * that existing implementations of that interface still compile; {@link RollingSchemes} falls back to the slower path
+ * for them.
+ */
+public interface PeriodicRollingScheme extends FileRollingScheme {
+
+    /**
+     * Same as getStartTime(currentTimeMillis).getMillis(). Called for every recorded item which does not fall into the
+     * most recently used period, so implementations should avoid allocating.
+     */
+    long getStartTimeMillis(long currentTimeMillis);
+
+    /**
+     * Return the canonical start time of the period following the one that starts at the provided start time. If that
+     * is not yet known, return startTime itself.
+     */
+    DateTime getSubsequentStartTime(DateTime startTime);
+}
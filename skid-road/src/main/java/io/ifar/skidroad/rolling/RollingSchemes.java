@@ -0,0 +1,32 @@
+package io.ifar.skidroad.rolling;
+
+import org.joda.time.DateTime;
+
+/**
+ * Static helpers for calling the optional parts of a FileRollingScheme.
+ */
+public class RollingSchemes {
+
+    private RollingSchemes() {
+    }
+
+    /**
+     * {@link PeriodicRollingScheme#getStartTimeMillis(long)} if the scheme implements it, otherwise the millis of
+     * {@link FileRollingScheme#getStartTime(long)}.
+     */
+    public static long getStartTimeMillis(FileRollingScheme scheme, long currentTimeMillis) {
+        if (scheme instanceof PeriodicRollingScheme)
+            return ((PeriodicRollingScheme) scheme).getStartTimeMillis(currentTimeMillis);
+        return scheme.getStartTime(currentTimeMillis).getMillis();
+    }
+
+    /**
+     * {@link PeriodicRollingScheme#getSubsequentStartTime(DateTime)} if the scheme implements it, otherwise startTime
+     * itself, i.e. not known.
+     */
+    public static DateTime getSubsequentStartTime(FileRollingScheme scheme, DateTime startTime) {
+        if (scheme instanceof PeriodicRollingScheme)
+            return ((PeriodicRollingScheme) scheme).getSubsequentStartTime(startTime);
+        return startTime;
+    }
+}
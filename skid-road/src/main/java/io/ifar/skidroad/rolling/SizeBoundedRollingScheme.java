@@ -0,0 +1,22 @@
+package io.ifar.skidroad.rolling;
+
+/**
+ * A FileRollingScheme which also bounds how much goes into each file. Writers start a new file within the same
+ * rolling cohort once a file reaches either limit, so a cohort ends up as one or more files, each closed at whichever
+ * comes first: the end of the period or the size budget.
+ *
+ * The budget only takes effect once the writers are told about it, e.g. with
+ * {@code AbstractWritingWorkerFactory.withRotation(scheme)}, passing the same scheme the manager uses.
+ */
+public interface SizeBoundedRollingScheme extends FileRollingScheme {
+
+    /**
+     * Approximate uncompressed bytes per file, or 0 for no limit. Files may exceed it by up to one write batch.
+     */
+    long getMaxFileBytes();
+
+    /**
+     * Items per file, or 0 for no limit.
+     */
+    long getMaxFileItems();
+}
@@ -7,22 +7,29 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.io.ByteStreams;
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.compression.ParallelBlockGzipInputStream;
 import io.ifar.skidroad.crypto.AESInputStream;
+import io.ifar.skidroad.prepping.CompressionCodec;
+import io.ifar.skidroad.prepping.CompressionCodecs;
+import io.ifar.skidroad.prepping.GzipCodec;
+import io.ifar.skidroad.crypto.SeekableAESChannel;
 import io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC;
 import io.ifar.skidroad.awssdk.S3Storage;
 import org.bouncycastle.util.encoders.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A utility class for pulling the contents of a {@link LogFile}.
@@ -34,6 +41,8 @@ public class StreamingAccess {
     private final S3Storage storage;
     private final byte[] masterKey;
     private final byte[] masterIV;
+    private final ExecutorService inflateExecutor;
+    private final int maxBlocksInFlight;
 
     /**
      * Create a new instance wrapped around the supplied {@link io.ifar.skidroad.awssdk.S3Storage}.
@@ -42,24 +51,107 @@ public class StreamingAccess {
      * @param masterIV the master IV (may be null) to use in decrypting files whose key was encoded with the legacy algorithm which does not embed the master IV.
      */
     public StreamingAccess(S3Storage storage, String masterKey, String masterIV) {
+        this(storage, masterKey, masterIV, null, 0);
+    }
+
+    /**
+     * Create a new instance which inflates block gzip archives (see
+     * {@link io.ifar.skidroad.compression.BlockGzipOutputStream}) concurrently. Other archives are read as before.
+     * @param storage a configured (and started) S3 access instance
+     * @param masterKey the master encryption key to use in decrypting files.
+     * @param masterIV the master IV (may be null) to use in decrypting files whose key was encoded with the legacy algorithm which does not embed the master IV.
+     * @param inflateExecutor executes block inflation; may be null to inflate on the reading thread.
+     * @param maxBlocksInFlight blocks each stream may inflate ahead of its reader
+     */
+    public StreamingAccess(S3Storage storage, String masterKey, String masterIV, ExecutorService inflateExecutor,
+                           int maxBlocksInFlight) {
+        Preconditions.checkArgument(inflateExecutor == null || maxBlocksInFlight > 0,
+                "maxBlocksInFlight must be positive");
         this.storage = storage;
         this.masterKey = Base64.decode(masterKey);
         this.masterIV = masterIV == null ? null : Base64.decode(masterIV);
+        this.inflateExecutor = inflateExecutor;
+        this.maxBlocksInFlight = maxBlocksInFlight;
     }
 
     /**
      * Obtain a stream for a {@link LogFile}'s contents.
      * @param logFile the log file to download
-     * @return the contents of the log file.
+     * @return the contents of the log file, decompressed according to the archive's extension.
      * @throws IOException if one occurs during data handling, either due to network communications or due to uncompressing
      *         and decrypting data.
      */
     public InputStream streamFor(final LogFile logFile) throws IOException {
         Preconditions.checkNotNull(logFile);
-        final Path p;
+        final Path p = download(logFile);
+        byte[][] fileKey = fileKeyFor(logFile);
+
+        InputStream decrypted = new AESInputStream(new FilterInputStream(Files.newInputStream(p)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                deleteDownload(p, logFile);
+            }
+        }, fileKey[0], fileKey[1]);
+
+        CompressionCodec codec = codecFor(logFile);
+        if (inflateExecutor != null && GzipCodec.NAME.equals(codec.getName())) {
+            decrypted = new BufferedInputStream(decrypted);
+            if (ParallelBlockGzipInputStream.isBlockGzip(decrypted))
+                return new ParallelBlockGzipInputStream(decrypted, inflateExecutor, maxBlocksInFlight);
+        }
+        return codec.decompress(decrypted);
+    }
+
+    /**
+     * Determines the compression codec from the archive's extension, e.g. foo.zst.aes-sic. Archives without a
+     * recognized extension are assumed to be gzip, the only format written by older versions.
+     */
+    private static CompressionCodec codecFor(LogFile logFile) {
+        String name = logFile.getArchiveURI().getPath();
+        String encryptedSuffix = "." + StreamingBouncyCastleAESWithSIC.DEFAULT_EXTENSION;
+        if (name.endsWith(encryptedSuffix))
+            name = name.substring(0, name.length() - encryptedSuffix.length());
+        CompressionCodec codec = CompressionCodecs.forFileName(name);
+        return codec == null ? CompressionCodecs.forName(GzipCodec.NAME) : codec;
+    }
+
+    /**
+     * Obtain a seekable channel over a {@link LogFile}'s decrypted archive. The archive is downloaded in full, but
+     * only the regions actually read are decrypted. Note that the channel's content is the archive as prepared (i.e.
+     * still compressed), not the original log data.
+     * @param logFile the log file to download
+     * @return a read-only channel; closing it removes the downloaded file.
+     * @throws IOException if one occurs during download, or if the archive cannot be decrypted.
+     */
+    public SeekableAESChannel channelFor(final LogFile logFile) throws IOException {
+        Preconditions.checkNotNull(logFile);
+        final Path p = download(logFile);
+        byte[][] fileKey = fileKeyFor(logFile);
 
+        FileChannel file = null;
         try {
-            p = storage.get(logFile.getArchiveURI().toString());
+            file = FileChannel.open(p, StandardOpenOption.READ);
+            return new SeekableAESChannel(file, fileKey[0], fileKey[1]) {
+                @Override
+                public synchronized void close() throws IOException {
+                    boolean wasOpen = isOpen();
+                    super.close();
+                    if (wasOpen)
+                        deleteDownload(p, logFile);
+                }
+            };
+        } catch (IOException e) {
+            if (file != null)
+                file.close();
+            deleteDownload(p, logFile);
+            throw e;
+        }
+    }
+
+    private Path download(LogFile logFile) {
+        try {
+            return storage.get(logFile.getArchiveURI().toString());
         } catch (AmazonServiceException ase) {
             LOG.error("Unable to download log file {} from S3 [ {} / {} ]: ({}) {}",
                     logFile.getID(), ase.getStatusCode(), ase.getErrorCode(), ase.getClass().getSimpleName(),
@@ -68,22 +160,20 @@ public class StreamingAccess {
         } catch (AmazonClientException ace) {
             throw Throwables.propagate(ace);
         }
+    }
 
-        byte[][] fileKey = StreamingBouncyCastleAESWithSIC.decodeAndDecryptKey(
+    private byte[][] fileKeyFor(LogFile logFile) {
+        return StreamingBouncyCastleAESWithSIC.decodeAndDecryptKey(
                 logFile.getArchiveKey(),
                 masterKey,
                 masterIV
         );
+    }
 
-        return new GZIPInputStream(new AESInputStream(new FilterInputStream(Files.newInputStream(p)) {
-            @Override
-            public void close() throws IOException {
-                super.close();
-                if (!p.toFile().delete()) {
-                    LOG.debug("Unable to delete temporary working file {} for log file {}.",p,logFile.getID());
-                }
-            }
-        }, fileKey[0], fileKey[1]));
+    private static void deleteDownload(Path p, LogFile logFile) {
+        if (!p.toFile().delete()) {
+            LOG.debug("Unable to delete temporary working file {} for log file {}.",p,logFile.getID());
+        }
     }
 
     /**
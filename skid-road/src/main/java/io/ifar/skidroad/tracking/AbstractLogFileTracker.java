@@ -27,9 +27,7 @@ public abstract class AbstractLogFileTracker implements LogFileTracker {
 
     @Override
     public int written(LogFile logFile) {
-        int result = updateState(logFile, WRITTEN);
-        updateSize(logFile);
-        return result;
+        return updateStateAndSize(logFile, WRITTEN);
     }
 
     @Override
@@ -43,6 +41,11 @@ public abstract class AbstractLogFileTracker implements LogFileTracker {
         return updateState(logFile, PREPARED);
     }
 
+    @Override
+    public int writtenAndPrepared(LogFile logFile) {
+        return updateStateAndSize(logFile, PREPARED);
+    }
+
     @Override
     public int preparing(LogFile logFile) {
         return updateState(logFile, PREPARING);
@@ -78,10 +81,34 @@ public abstract class AbstractLogFileTracker implements LogFileTracker {
         return rows;
     }
 
+    /**
+     * Like updateState, but also stores byteSize before listeners are notified.
+     */
+    protected int updateStateAndSize(LogFile logFile, LogFileState newState) {
+        logFile.setState(newState);
+        int rows = recordStateChangeAndSize(logFile);
+        if (rows != 1)
+            logIfBadRowCount(rows, logFile, String.format("set state to %s", logFile.getState()));
+        else
+            notifyListeners(logFile);
+        return rows;
+    }
+
     abstract protected int recordStateChange(LogFile logFile);
 
     abstract protected int updateSize(LogFile logFile);
 
+    /**
+     * Stores state and byteSize. Every file a writing worker finishes goes through here, so with short rolling
+     * periods it is worth overriding to do both in a single update.
+     * @return rows updated by the state change
+     */
+    protected int recordStateChangeAndSize(LogFile logFile) {
+        int rows = recordStateChange(logFile);
+        updateSize(logFile);
+        return rows;
+    }
+
     private void logIfBadRowCount(int rows, LogFile logFile, String actionDescription) {
         switch (rows) {
             case 1:
@@ -75,6 +75,15 @@ public interface LogFileTracker {
      */
     int prepared(LogFile logFile);
 
+    /**
+     * Mark the specified LogFile, whose prepPath was written directly by its writing worker, as PREPARED without
+     * passing through WRITTEN. Also store byteSize, which for such files is the size of the prepared file.
+     *
+     * @param logFile the log file to mark.
+     * @return number of LogFiles updated. 0 indicates LogFile was not found in the tracker or its ownerURI has been changed. More than 1 indicates faulty tracker implementation.
+     */
+    int writtenAndPrepared(LogFile logFile);
+
     /**
      * Mark the specified LogFile as PREP_ERROR
      *
@@ -1,50 +1,170 @@
 package io.ifar.skidroad.writing;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.StreamingPrepper;
+import io.ifar.skidroad.rolling.FileRollingScheme;
 import io.ifar.skidroad.tracking.LogFileTracker;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import static java.nio.file.StandardOpenOption.*;
+
 /**
- * A Thread which owns a writer and pulls items to write off of a shared queue.
+ * A Runnable which owns a writer and pulls items to write off of a shared queue until interrupted. It keeps the
+ * thread that runs it for its whole life, whichever executor that thread comes from.
  *
- * Opt for our own Thread management rather than e.g. ForkJoin pool because we
+ * Opt for a long-lived worker per file rather than e.g. ForkJoin tasks because we
  * want ownership of a file across the handling of multiple requests. Could use a
  * model of single-request-Runnables checking out Writers from a common pool,
  * but that would make Writer lifecycle management (e.g. regular flushing) fiddly.
  * Also, since each item processes so quickly, we gain little from work-stealing.
  *
- * Future: Support max-file-size (or entry count) forced exit (thus rotating to new worker/file).
+ * Items are taken off the queue in batches of up to maxBatchSize (see {@link #setBatching(int, Histogram)}), so under
+ * load the queue lock and the flush check are paid once per batch rather than once per item. Writers are expected
+ * to buffer, so a batch reaches the file in as few writes as the buffer size allows.
+ *
+ * If constructed with a {@link StreamingPrepper}, output is compressed (and possibly encrypted) as it is written and
+ * the file goes straight from WRITING to PREPARED on exit, skipping the separate prep pass. Subclasses opt in by
+ * opening their writers over {@link #openOutputStream(java.nio.file.Path)}.
+ *
+ * If given file size limits (see {@link #setRotation(FileRollingScheme, long, long)}), the worker rotates to a new
+ * file within its cohort once a limit is reached: the current file is closed and marked WRITTEN (or PREPARED) so that
+ * it can move on through prep and upload, and the next serial is opened via {@link LogFileTracker#open}.
+ *
+ * If given an extent size (see {@link #setMappedOutput(long)}), files are written through a
+ * {@link MappedFileOutputStream} instead of write calls, and each flush forces written pages to disk.
+ *
+ * Otherwise flushes only hand data to the operating system unless a {@link DurabilityMode} says to fsync (see
+ * {@link #setDurability(DurabilityMode, Timer, GroupCommitter)}), in which case a file is also fsynced before it is
+ * closed and marked WRITTEN.
+ *
+ * Workers report how far they have flushed (see {@link FlushReporting}). So that an idle worker keeps vouching for
+ * what it flushed earlier, a worker with nothing unflushed waits for items a flush interval at a time.
  *
  * @param <W> Type of objects to which items are written
  * @param <T> Type of items to be written
  */
-public abstract class AbstractWritingWorker<W extends Closeable & Flushable,T> implements Runnable {
+public abstract class AbstractWritingWorker<W extends Closeable & Flushable,T> implements Runnable, FlushReporting {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractWritingWorker.class);
     public static final Charset UTF8 = Charset.forName("UTF-8");
 
     private final BlockingQueue<T> queue;
     private boolean shuttingDown;
-    private final LogFile logFileRecord;
+    private LogFile logFileRecord;
     private final int maxFlushIntervalSeconds;
     private String name;
     private final LogFileTracker tracker;
+    private final StreamingPrepper streamingPrepper;
+    private int maxBatchSize;
+    private Histogram batchSizeHistogram;
+    private FileRollingScheme rollingScheme;
+    private long maxFileBytes;
+    private long maxFileItems;
+    private long itemsInFile;
+    private CountingOutputStream bytesInFile;
+    private long mappedExtentBytes;
+    private DurabilityMode durability;
+    private Timer fsyncTimer;
+    private GroupCommitter groupCommitter;
+    //Channel under the current file, when written with write calls; null otherwise.
+    private FileChannel fileChannel;
+    //Whether items have been written since the worker last fsynced the current file.
+    private boolean unsynced;
+    private volatile long flushedThroughNanos = System.nanoTime();
 
     public AbstractWritingWorker(final BlockingQueue<T> queue, final LogFile logFileRecord, final int maxFlushIntervalSeconds, final LogFileTracker tracker) {
+        this(queue, logFileRecord, maxFlushIntervalSeconds, tracker, null);
+    }
+
+    /**
+     * @param streamingPrepper if not null, prepares output while writing it
+     */
+    public AbstractWritingWorker(final BlockingQueue<T> queue, final LogFile logFileRecord, final int maxFlushIntervalSeconds, final LogFileTracker tracker, final StreamingPrepper streamingPrepper) {
         this.queue = queue;
         this.shuttingDown = false;
         this.logFileRecord = logFileRecord;
         this.maxFlushIntervalSeconds = maxFlushIntervalSeconds;
         this.tracker = tracker;
+        this.streamingPrepper = streamingPrepper;
+        this.maxBatchSize = AbstractWritingWorkerFactory.DEFAULT_MAX_BATCH_SIZE;
+        this.batchSizeHistogram = null;
+        this.rollingScheme = null;
+        this.maxFileBytes = 0L;
+        this.maxFileItems = 0L;
+        this.mappedExtentBytes = 0L;
+        this.durability = DurabilityMode.NONE;
+    }
+
+    /**
+     * Must be called before the worker is started.
+     * @param maxBatchSize most items to take off the queue at once
+     * @param batchSizeHistogram if not null, records the size of each batch
+     */
+    public void setBatching(int maxBatchSize, Histogram batchSizeHistogram) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizeHistogram = batchSizeHistogram;
+    }
+
+    /**
+     * Must be called before the worker is started. Byte counts are taken before compression and lag by whatever the
+     * writer buffers, so files can exceed maxFileBytes by up to a buffer's worth; they are only counted for writers
+     * opened over {@link #openOutputStream(java.nio.file.Path)}.
+     * @param rollingScheme names the files rotated to
+     * @param maxFileBytes bytes after which to rotate to a new file, or 0 for no limit
+     * @param maxFileItems items after which to rotate to a new file, or 0 for no limit
+     */
+    public void setRotation(FileRollingScheme rollingScheme, long maxFileBytes, long maxFileItems) {
+        if (maxFileBytes < 0 || maxFileItems < 0)
+            throw new IllegalArgumentException("File limits must not be negative: " + maxFileBytes + " bytes, " + maxFileItems + " items");
+        if (rollingScheme == null && (maxFileBytes > 0 || maxFileItems > 0))
+            throw new IllegalArgumentException("A rolling scheme is needed to name rotated files.");
+        this.rollingScheme = rollingScheme;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileItems = maxFileItems;
+    }
+
+    /**
+     * Must be called before the worker is started. Has no effect when preparing while writing, since that output is
+     * a compressed stream rather than the file itself.
+     * @param extentBytes bytes by which to grow and map files at a time, or 0 to write files with write calls
+     */
+    public void setMappedOutput(long extentBytes) {
+        if (extentBytes < 0 || extentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Extent must be between 0 and 2^31-1 bytes: " + extentBytes);
+        this.mappedExtentBytes = extentBytes;
+    }
+
+    /**
+     * Must be called before the worker is started. Has no effect on mapped output, which is forced on every flush. When
+     * preparing while writing, the prepPath is synced instead, with a final fsync as the archive is completed.
+     * @param fsyncTimer if not null, times each fsync made by the worker
+     * @param groupCommitter required for {@link DurabilityMode#GROUP_COMMIT}
+     */
+    public void setDurability(DurabilityMode durability, Timer fsyncTimer, GroupCommitter groupCommitter) {
+        if (durability == DurabilityMode.GROUP_COMMIT && groupCommitter == null)
+            throw new IllegalArgumentException("Group commit requires a " + GroupCommitter.class.getSimpleName());
+        this.durability = durability;
+        this.fsyncTimer = fsyncTimer;
+        this.groupCommitter = groupCommitter;
     }
 
     /**
@@ -57,83 +177,203 @@ public abstract class AbstractWritingWorker<W extends Closeable & Flushable,T> i
      */
     abstract protected void writeItem(W writer, T item) throws IOException;
 
+    /**
+     * Opens the byte stream for the provided path, for use by {@link #openForWriting(java.nio.file.Path)}. When
+     * preparing while writing, the stream instead compresses and encrypts into the LogFile's prepPath and the provided
+     * path is never created; flushing it sync-flushes the compressor, and it is fsynced through the prepPath's channel.
+     * Otherwise, if an extent size was set, the stream
+     * is a {@link MappedFileOutputStream}.
+     */
+    protected OutputStream openOutputStream(Path path) throws IOException {
+        OutputStream out;
+        fileChannel = null;
+        if (streamingPrepper != null) {
+            StreamingPrepper.PreparingOutputStream prepared =
+                    streamingPrepper.open(logFileRecord, tracker, durability != DurabilityMode.NONE);
+            fileChannel = prepared.getChannel();
+            unsynced = false;
+            out = prepared;
+        } else if (mappedExtentBytes > 0) {
+            out = new MappedFileOutputStream(path, mappedExtentBytes);
+        } else {
+            //same as Files.newOutputStream, but keeping the channel to fsync
+            fileChannel = FileChannel.open(path, CREATE, WRITE, APPEND);
+            unsynced = false;
+            out = Channels.newOutputStream(fileChannel);
+        }
+        bytesInFile = new CountingOutputStream(out);
+        return bytesInFile;
+    }
 
     @Override
     public void run() {
         this.name = Thread.currentThread().getName(); //don't do this in the constructor, that runs before Runnable handed off to worker thread.
         try {
             LOG.info("Starting worker thread {} for {}", this.name, this.logFileRecord.getOriginPath());
-            T item = null;
-            boolean dirty = false;
-            try (W writer = openForWriting(this.logFileRecord.getOriginPath())) {
-                try {
-                    long nextFlush = 0L;
-
-                    //wait for data, breaking periodically to flush to disk
-                    while(!shuttingDown) {
-                        try {
-                            if (dirty) {
-                                long interval = nextFlush - System.currentTimeMillis();
-                                if (interval <= 0) {
-                                    LOG.debug("Flushing {} because {} seconds have elapsed since last flush", this.name, maxFlushIntervalSeconds);
-                                    flush(writer);
-                                    dirty = false;
-                                    item = queue.take();
-                                } else {
-                                    //if nothing arrives within interval, we'll loop around and do a flush, then a take()
-                                    item = queue.poll(interval, TimeUnit.MILLISECONDS);
-                                }
+            List<T> batch = new ArrayList<>(maxBatchSize);
+            while (writeFile(batch) && openNextFile()) {
+                LOG.info("Worker {} rotated to {}", this.name, this.logFileRecord.getOriginPath());
+            }
+        } finally {
+            LOG.info("Stopped worker {} for {}", this.name, logFileRecord.getOriginPath());
+        }
+    }
+
+    /**
+     * Writes items to the current LogFile until shut down or a file limit is reached, then marks it WRITTEN.
+     * @return true if a file limit was reached and the worker should rotate to a new file
+     */
+    private boolean writeFile(List<T> batch) {
+        boolean dirty = false;
+        boolean full = false;
+        boolean failed = false;
+        itemsInFile = 0L;
+        bytesInFile = null;
+        try (W writer = openForWriting(this.logFileRecord.getOriginPath())) {
+            try {
+                long nextFlush = 0L;
+
+                //wait for data, breaking periodically to flush to disk
+                while(!shuttingDown && !full) {
+                    try {
+                        T item;
+                        if (dirty) {
+                            long interval = nextFlush - System.currentTimeMillis();
+                            if (interval <= 0) {
+                                LOG.debug("Flushing {} because {} seconds have elapsed since last flush", this.name, maxFlushIntervalSeconds);
+                                flush(writer);
+                                dirty = false;
+                                item = pollWhileFlushed();
                             } else {
-                                item = queue.take();
+                                //if nothing arrives within interval, we'll loop around and do a flush, then wait again
+                                item = queue.poll(interval, TimeUnit.MILLISECONDS);
                             }
+                        } else {
+                            item = pollWhileFlushed();
+                        }
 
-                            if (item != null) {
-                                write(writer, item);
-                                item = null;
-                                if (!dirty) {
-                                    dirty = true;
-                                    nextFlush = System.currentTimeMillis() + maxFlushIntervalSeconds * 1000;
-                                }
+                        if (item != null) {
+                            batch.add(item);
+                            int room = maxFileItems > 0 ? (int) Math.min(maxBatchSize, maxFileItems - itemsInFile) : maxBatchSize;
+                            if (room > 1)
+                                queue.drainTo(batch, room - 1);
+                            writeBatch(writer, batch);
+                            full = isFull();
+                            if (!dirty) {
+                                dirty = true;
+                                nextFlush = System.currentTimeMillis() + maxFlushIntervalSeconds * 1000;
                             }
-                        } catch(InterruptedException e) {
-                            LOG.debug("{} caught InterruptedException. Stopping...", this.name);
-                            shuttingDown = true;
-                        }
-                        //Check for interrupt received while no blocking operation was in progress.
-                        if (Thread.interrupted()) {
-                            shuttingDown = true;
                         }
+                    } catch(InterruptedException e) {
+                        LOG.debug("{} caught InterruptedException. Stopping...", this.name);
+                        shuttingDown = true;
                     }
-                    flush(writer);
-                    dirty = false;
-                } catch (IOException e) {
-                    LOG.warn("Abnormal worker termination ({})", this.name, e);
-                    //Cleanup happens in finally block
-                }
-                finally {
-                    if (item != null) {
-                        LOG.info("{} putting unwritten item '{}' back onto queue because of abnormal worker termination.", this.name, item);
-                        queue.add(item);
+                    //Check for interrupt received while no blocking operation was in progress.
+                    if (Thread.interrupted()) {
+                        shuttingDown = true;
                     }
-                    if (dirty) {
-                        LOG.info("{} attempting to flush {} to disk because of abnormal worker termination.", this.name, logFileRecord.getOriginPath());
-                        try {
-                            flush(writer);
-                        } catch (IOException e) {
-                            //ignore. Probably was failed and logged before.
-                        }
+                }
+                flush(writer);
+                dirty = false;
+            } catch (IOException e) {
+                LOG.warn("Abnormal worker termination ({})", this.name, e);
+                failed = true;
+                //Cleanup happens in finally block
+            }
+            finally {
+                if (!batch.isEmpty()) {
+                    LOG.info("{} putting {} unwritten item(s) back onto queue because of abnormal worker termination.", this.name, batch.size());
+                    int lost = 0;
+                    for (T unwritten : batch)
+                        if (!queue.offer(unwritten))
+                            lost++;
+                    if (lost > 0)
+                        LOG.warn("{} dropped {} unwritten item(s); queue is full.", this.name, lost);
+                }
+                if (dirty) {
+                    LOG.info("{} attempting to flush {} to disk because of abnormal worker termination.", this.name, logFileRecord.getOriginPath());
+                    try {
+                        flush(writer);
+                    } catch (IOException e) {
+                        //ignore. Probably was failed and logged before.
                     }
+                }
+                if (streamingPrepper == null) {
+                    syncBeforeClose();
+                    //Close before measuring; a mapped file is only trimmed to its content on close.
+                    closeQuietly(writer);
                     //Mark as written; we got the file open and there might be data in it.
                     logFileRecord.setByteSize(Files.size(logFileRecord.getOriginPath()));
                     tracker.written(logFileRecord); //ignore update failures; worker exiting anyway
+                } else {
+                    completePrepared(writer);
                 }
-            } catch (IOException e) {
-                LOG.error("{} failed to open output file {}. This instance will not consume any items.", this.name, logFileRecord.getOriginPath(), e);
-                //Mark as write error; we never got the file open and there's no point in using it.
-                tracker.writeError(logFileRecord); //ignore update failures; worker exiting anyway
             }
-        } finally {
-            LOG.info("Stopped worker {} for {}", this.name, logFileRecord.getOriginPath());
+        } catch (IOException e) {
+            LOG.error("{} failed to open output file {}. This instance will not consume any items.", this.name, logFileRecord.getOriginPath(), e);
+            //Mark as write error; we never got the file open and there's no point in using it.
+            tracker.writeError(logFileRecord); //ignore update failures; worker exiting anyway
+            return false;
+        }
+        return full && !shuttingDown && !failed;
+    }
+
+    @Override
+    public long getFlushedThroughNanos() {
+        return flushedThroughNanos;
+    }
+
+    /**
+     * Waits up to a flush interval for an item while nothing taken is unflushed, first reporting as much.
+     * @return the item, or null if none arrived
+     */
+    private T pollWhileFlushed() throws InterruptedException {
+        flushedThroughNanos = System.nanoTime();
+        return queue.poll(Math.max(maxFlushIntervalSeconds, 1), TimeUnit.SECONDS);
+    }
+
+    private boolean isFull() {
+        return (maxFileItems > 0 && itemsInFile >= maxFileItems)
+                || (maxFileBytes > 0 && bytesInFile != null && bytesInFile.getByteCount() >= maxFileBytes);
+    }
+
+    /**
+     * Claims the next serial in the current LogFile's cohort.
+     * @return false if no file could be opened, in which case the worker should exit
+     */
+    private boolean openNextFile() {
+        try {
+            logFileRecord = tracker.open(logFileRecord.getRollingCohort(),
+                    rollingScheme.makeOutputPathPattern(logFileRecord.getStartTime()), logFileRecord.getStartTime());
+            return true;
+        } catch (RuntimeException e) {
+            LOG.error("{} cannot open a new file after {}. Exiting.", this.name, logFileRecord.getOriginPath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Closes the writer, completing the prepared file, and marks it PREPARED. There is no work left for a prep worker.
+     */
+    private void completePrepared(W writer) {
+        //The stream makes the final fsync itself, after the layers are finished.
+        if (groupCommitter != null && fileChannel != null)
+            groupCommitter.remove(fileChannel);
+        try {
+            writer.close();
+            logFileRecord.setByteSize(Files.size(logFileRecord.getPrepPath()));
+            tracker.writtenAndPrepared(logFileRecord); //ignore update failures; worker exiting anyway
+        } catch (IOException e) {
+            LOG.error("{} cannot complete prepared file {}.", this.name, logFileRecord.getPrepPath(), e);
+            tracker.writeError(logFileRecord); //ignore update failures; worker exiting anyway
+        }
+    }
+
+    private void closeQuietly(W writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOG.error("{} cannot close {}. Possible data loss.", this.name, logFileRecord.getOriginPath(), e);
         }
     }
 
@@ -145,7 +385,56 @@ public abstract class AbstractWritingWorker<W extends Closeable & Flushable,T> i
             LOG.error("{} cannot flush writer. Possible data loss.", this.name, e);
             throw e;
         }
+        if (fileChannel != null) {
+            if (durability == DurabilityMode.FSYNC_ON_FLUSH)
+                fsync();
+            else if (durability == DurabilityMode.GROUP_COMMIT)
+                groupCommitter.add(fileChannel);
+        }
+    }
 
+    private void fsync() throws IOException {
+        try {
+            GroupCommitter.fsync(fileChannel, fsyncTimer);
+            unsynced = false;
+        } catch (IOException e) {
+            LOG.error("{} cannot fsync {}. Possible data loss.", this.name, logFileRecord.getOriginPath(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Last fsync of a file written with write calls, so that it is on disk before it is marked WRITTEN.
+     */
+    private void syncBeforeClose() {
+        if (durability == DurabilityMode.NONE || fileChannel == null || !fileChannel.isOpen() || !unsynced)
+            return;
+        if (groupCommitter != null)
+            groupCommitter.remove(fileChannel);
+        try {
+            fsync();
+        } catch (IOException e) {
+            //logged by fsync
+        }
+    }
+
+    /**
+     * Writes the batch, removing items from it as they are written. On failure the unwritten items remain.
+     */
+    private void writeBatch(W writer, List<T> batch) throws IOException {
+        if (batchSizeHistogram != null)
+            batchSizeHistogram.update(batch.size());
+        int written = 0;
+        try {
+            for (T item : batch) {
+                write(writer, item);
+                unsynced = true;
+                written++;
+                itemsInFile++;
+            }
+        } finally {
+            batch.subList(0, written).clear();
+        }
     }
 
     private void write(W writer, T item) throws IOException {
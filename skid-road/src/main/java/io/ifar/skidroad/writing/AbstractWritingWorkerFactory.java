@@ -0,0 +1,148 @@
+package io.ifar.skidroad.writing;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import io.ifar.skidroad.rolling.FileRollingScheme;
+import io.ifar.skidroad.rolling.SizeBoundedRollingScheme;
+
+/**
+ * Holds settings and metrics shared by all of the {@link AbstractWritingWorker}s a factory builds.
+ */
+public abstract class AbstractWritingWorkerFactory<T> implements WritingWorkerFactory<T> {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    /**
+     * Number of items each worker takes off its queue at once.
+     */
+    public final Histogram batchSizeHistogram = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Time taken by each fsync, whether made by a worker or by the group committer.
+     */
+    public final Timer fsyncTimer = new Timer();
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private FileRollingScheme rollingScheme = null;
+    private long maxFileBytes = 0L;
+    private long maxFileItems = 0L;
+    private long mappedExtentBytes = 0L;
+    private DurabilityMode durability = DurabilityMode.NONE;
+    private long groupCommitIntervalMillis = 0L;
+    private GroupCommitter groupCommitter = null;
+
+    /**
+     * @param maxBatchSize most items a worker drains from its queue and writes before checking whether to flush
+     */
+    public AbstractWritingWorkerFactory<T> withMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Rotate to a new file within the cohort once either limit is reached.
+     * @param rollingScheme the scheme the workers' manager uses, to name the new files
+     * @param maxFileBytes approximate bytes per file, or 0 for no limit
+     * @param maxFileItems items per file, or 0 for no limit
+     */
+    public AbstractWritingWorkerFactory<T> withRotation(FileRollingScheme rollingScheme, long maxFileBytes, long maxFileItems) {
+        if (maxFileBytes < 0 || maxFileItems < 0)
+            throw new IllegalArgumentException("File limits must not be negative: " + maxFileBytes + " bytes, " + maxFileItems + " items");
+        this.rollingScheme = rollingScheme;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileItems = maxFileItems;
+        return this;
+    }
+
+    /**
+     * Rotate at the scheme's own size budget; see {@link SizeBoundedRollingScheme}.
+     */
+    public AbstractWritingWorkerFactory<T> withRotation(SizeBoundedRollingScheme rollingScheme) {
+        return withRotation(rollingScheme, rollingScheme.getMaxFileBytes(), rollingScheme.getMaxFileItems());
+    }
+
+    public FileRollingScheme getRollingScheme() {
+        return rollingScheme;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public long getMaxFileItems() {
+        return maxFileItems;
+    }
+
+    /**
+     * Write files through memory mappings grown this many bytes at a time; see {@link MappedFileOutputStream}.
+     * Flushes then force pages to disk, so the flush interval becomes a durability interval.
+     * @param extentBytes bytes to grow and map files by, or 0 to write files with write calls
+     */
+    public AbstractWritingWorkerFactory<T> withMappedOutput(long extentBytes) {
+        if (extentBytes < 0 || extentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Extent must be between 0 and 2^31-1 bytes: " + extentBytes);
+        this.mappedExtentBytes = extentBytes;
+        return this;
+    }
+
+    public long getMappedExtentBytes() {
+        return mappedExtentBytes;
+    }
+
+    /**
+     * @param durability when workers fsync their files
+     * @param groupCommitIntervalMillis for {@link DurabilityMode#GROUP_COMMIT}, time between fsync passes shared by
+     *                                  all of this factory's workers; otherwise ignored
+     */
+    public synchronized AbstractWritingWorkerFactory<T> withDurability(DurabilityMode durability, long groupCommitIntervalMillis) {
+        closeGroupCommitter();
+        this.durability = durability;
+        this.groupCommitIntervalMillis = groupCommitIntervalMillis;
+        if (durability == DurabilityMode.GROUP_COMMIT)
+            this.groupCommitter = new GroupCommitter(groupCommitIntervalMillis, fsyncTimer);
+        return this;
+    }
+
+    public DurabilityMode getDurability() {
+        return durability;
+    }
+
+    /**
+     * @return the committer shared by this factory's workers, starting a new one if the last was closed
+     */
+    synchronized GroupCommitter getGroupCommitter() {
+        if (groupCommitter == null && durability == DurabilityMode.GROUP_COMMIT)
+            groupCommitter = new GroupCommitter(groupCommitIntervalMillis, fsyncTimer);
+        return groupCommitter;
+    }
+
+    /**
+     * Stops the group committer after a final fsync pass. Called by {@link WritingWorkerManager#stop()} once its
+     * workers have exited; workers built afterwards get a new committer.
+     */
+    synchronized void closeGroupCommitter() {
+        if (groupCommitter != null) {
+            groupCommitter.close();
+            groupCommitter = null;
+        }
+    }
+
+    /**
+     * Applies this factory's settings to a newly constructed worker.
+     */
+    protected <W extends AbstractWritingWorker<?, T>> W configure(W worker) {
+        worker.setBatching(maxBatchSize, batchSizeHistogram);
+        if (maxFileBytes > 0 || maxFileItems > 0)
+            worker.setRotation(rollingScheme, maxFileBytes, maxFileItems);
+        if (mappedExtentBytes > 0)
+            worker.setMappedOutput(mappedExtentBytes);
+        worker.setDurability(durability, fsyncTimer, getGroupCommitter());
+        return worker;
+    }
+}
@@ -0,0 +1,130 @@
+package io.ifar.skidroad.writing;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Small map from primitive long keys to non-null values, for a handful of entries that are read far more often than
+ * they change. Entries live in an open-addressing table with linear probing, which is replaced wholesale on every
+ * change, so {@link #get(long)} is lock-free, boxes nothing and allocates nothing, while writers serialize on the map's
+ * monitor. Copying also means removal needs no tombstones.
+ */
+final class CopyOnWriteLongMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    private static final class Table {
+        final long[] keys;
+        //null marks a free slot
+        final Object[] values;
+        final int size;
+
+        Table(int capacity, int size) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.size = size;
+        }
+    }
+
+    private volatile Table table = new Table(MIN_CAPACITY, 0);
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Object value = t.values[i];
+            if (value == null || t.keys[i] == key)
+                return (V) value;
+        }
+    }
+
+    /**
+     * @return the value already mapped to key, or null if value was added
+     */
+    public synchronized V putIfAbsent(long key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        V existing = get(key);
+        if (existing != null)
+            return existing;
+        Table t = table;
+        Table copy = new Table(capacityFor(t.size + 1), t.size + 1);
+        copyInto(t, copy, key, false);
+        insert(copy, key, value);
+        table = copy;
+        return null;
+    }
+
+    /**
+     * Removes key only if it is mapped to value (by identity).
+     * @return whether the entry was removed
+     */
+    public synchronized boolean remove(long key, V value) {
+        if (value == null || get(key) != value)
+            return false;
+        Table t = table;
+        Table copy = new Table(capacityFor(t.size - 1), t.size - 1);
+        copyInto(t, copy, key, true);
+        table = copy;
+        return true;
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * @return an unmodifiable snapshot of the values, unaffected by later changes
+     */
+    public List<V> values() {
+        final Table t = table;
+        final Object[] values = new Object[t.size];
+        int n = 0;
+        for (Object value : t.values)
+            if (value != null)
+                values[n++] = value;
+        return new AbstractList<V>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public V get(int index) {
+                return (V) values[index];
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    private static void copyInto(Table from, Table to, long skipKey, boolean skip) {
+        for (int i = 0; i < from.keys.length; i++)
+            if (from.values[i] != null && !(skip && from.keys[i] == skipKey))
+                insert(to, from.keys[i], from.values[i]);
+    }
+
+    private static void insert(Table t, long key, Object value) {
+        int mask = t.keys.length - 1;
+        int i = slot(key, mask);
+        while (t.values[i] != null)
+            i = (i + 1) & mask;
+        t.keys[i] = key;
+        t.values[i] = value;
+    }
+
+    /**
+     * At most half full, so probes stay short.
+     */
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private static int slot(long key, int mask) {
+        //Cohort start times share their low bits (multiples of the period), so mix before masking.
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
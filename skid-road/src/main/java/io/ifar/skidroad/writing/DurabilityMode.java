@@ -0,0 +1,21 @@
+package io.ifar.skidroad.writing;
+
+/**
+ * When {@link AbstractWritingWorker}s fsync the files they write. Modes other than NONE also fsync a file before it is
+ * closed and marked WRITTEN, or PREPARED when it was prepared while written.
+ */
+public enum DurabilityMode {
+    /**
+     * Never fsync; periodic flushes only hand data to the operating system.
+     */
+    NONE,
+    /**
+     * Fsync each file after every periodic flush.
+     */
+    FSYNC_ON_FLUSH,
+    /**
+     * After a periodic flush, leave the file to a {@link GroupCommitter}, which fsyncs all files flushed since its
+     * last pass at a fixed interval.
+     */
+    GROUP_COMMIT
+}
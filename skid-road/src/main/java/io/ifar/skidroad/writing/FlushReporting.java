@@ -0,0 +1,13 @@
+package io.ifar.skidroad.writing;
+
+/**
+ * A writing worker which reports how far it has flushed, so that {@link WritingWorkerManager} can tell when items it
+ * queued have reached a file, e.g. before committing a {@link SpillJournal} past them.
+ */
+public interface FlushReporting {
+    /**
+     * @return a {@link System#nanoTime()} reading such that every item the worker took off its queue before then has
+     *         been written and flushed
+     */
+    long getFlushedThroughNanos();
+}
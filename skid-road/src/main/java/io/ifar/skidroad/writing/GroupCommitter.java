@@ -0,0 +1,103 @@
+package io.ifar.skidroad.writing;
+
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fsyncs the files of many workers together on one thread at a fixed interval, so each worker's flush costs a set
+ * insertion instead of an fsync and concurrent fsyncs do not queue up on the device. Data flushed by a worker is on
+ * disk within about one interval.
+ *
+ * Meant to be shared by the workers writing to one device; a {@link AbstractWritingWorkerFactory} owns one for all of
+ * the workers it builds, which write under the same base directory.
+ */
+public class GroupCommitter implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final Set<FileChannel> pending = Collections.newSetFromMap(new ConcurrentHashMap<FileChannel, Boolean>());
+    private final Timer fsyncTimer;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param intervalMillis time between fsync passes
+     * @param fsyncTimer if not null, times each fsync
+     */
+    public GroupCommitter(long intervalMillis, Timer fsyncTimer) {
+        if (intervalMillis < 1)
+            throw new IllegalArgumentException("Group commit interval must be positive: " + intervalMillis);
+        this.fsyncTimer = fsyncTimer;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("GroupCommitter-%d").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                commit();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fsync the channel on the next pass.
+     */
+    public void add(FileChannel channel) {
+        pending.add(channel);
+    }
+
+    /**
+     * Forget a channel about to be closed; its owner is responsible for any final fsync.
+     */
+    public void remove(FileChannel channel) {
+        pending.remove(channel);
+    }
+
+    /**
+     * Fsyncs every pending channel. Runs on the committer's thread.
+     */
+    void commit() {
+        List<FileChannel> batch = new ArrayList<>(pending);
+        for (FileChannel channel : batch) {
+            pending.remove(channel);
+            try {
+                fsync(channel, fsyncTimer);
+            } catch (ClosedChannelException e) {
+                //Closed by its worker after our snapshot; the worker synced it.
+            } catch (IOException e) {
+                LOG.error("Group commit fsync failed. Possible data loss.", e);
+            }
+        }
+    }
+
+    /**
+     * Fsyncs file content, not metadata, timing it if a timer is given.
+     */
+    static void fsync(FileChannel channel, Timer fsyncTimer) throws IOException {
+        Timer.Context timer = fsyncTimer == null ? null : fsyncTimer.time();
+        try {
+            channel.force(false);
+        } finally {
+            if (timer != null)
+                timer.stop();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        commit();
+    }
+}
@@ -0,0 +1,132 @@
+package io.ifar.skidroad.writing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Appends to a file through a memory-mapped window rather than write calls. The file is grown a whole extent at a
+ * time by mapping past its end, writes are copies into the mapping, and {@link #close()} truncates the file back to
+ * the bytes actually written. {@link #flush()} forces written pages to disk; without it they reach disk whenever the
+ * operating system writes them back, as with a buffered stream's write calls.
+ *
+ * Until closed, the file is longer than its content and ends in zeros; a file left behind by a crash keeps up to an
+ * extent of zero padding. Mappings are released by the garbage collector, not on close, so the file cannot be
+ * truncated on platforms (Windows) which refuse to truncate a mapped file.
+ *
+ * Not thread-safe.
+ */
+public class MappedFileOutputStream extends OutputStream {
+    public static final long DEFAULT_EXTENT_BYTES = 64L * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long extentBytes;
+    private MappedByteBuffer buffer;
+    //Earlier extents written since the last flush.
+    private final List<MappedByteBuffer> unforced = new ArrayList<>();
+    private long extentStart;
+    private boolean closed;
+
+    public MappedFileOutputStream(Path path) throws IOException {
+        this(path, DEFAULT_EXTENT_BYTES);
+    }
+
+    /**
+     * Appends to the file at path, creating it if needed.
+     * @param extentBytes how much to grow the file by, and map, at a time
+     */
+    public MappedFileOutputStream(Path path, long extentBytes) throws IOException {
+        if (extentBytes < 1 || extentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Extent must be between 1 and 2^31-1 bytes: " + extentBytes);
+        this.path = path;
+        this.extentBytes = extentBytes;
+        this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        try {
+            map(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return bytes in the file, excluding preallocated space
+     */
+    public long size() {
+        return extentStart + buffer.position();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining())
+            nextExtent();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            if (!buffer.hasRemaining())
+                nextExtent();
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Forces everything written so far to disk.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        for (MappedByteBuffer extent : unforced)
+            extent.force();
+        unforced.clear();
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        unforced.clear();
+        try {
+            channel.truncate(size());
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void nextExtent() throws IOException {
+        unforced.add(buffer);
+        map(extentStart + extentBytes);
+    }
+
+    private void map(long start) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, extentBytes);
+        extentStart = start;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed: " + path);
+    }
+}
@@ -0,0 +1,534 @@
+package io.ifar.skidroad.writing;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.rolling.FileRollingScheme;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import io.ifar.skidroad.writing.file.RawBytesSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Writes many files from a small, fixed set of I/O threads instead of a thread per file. Each open file belongs to a
+ * {@link NonBlockingWorker}, assigned when started to the I/O thread serving the fewest. An I/O thread round-robins
+ * over its workers, draining up to a batch of items from each one's queue and writing the batch with one gathering
+ * {@link FileChannel#write(ByteBuffer[])}. Items already serialized (written with {@link RawBytesSerializer}) are
+ * written from their own arrays without a copy; other items are first serialized into a buffer kept per worker.
+ *
+ * Queues cannot wake an I/O thread, so one which finds nothing to write parks, for {@link #MIN_IDLE_MICROS} at first
+ * and twice as long each time after up to {@link #MAX_IDLE_MICROS}, which bounds the delay before a quiet file sees
+ * its next item. Starting or stopping a worker wakes its thread at once.
+ *
+ * Writes go straight to the file, so there is no buffer to flush: the flush interval only paces fsyncs under a
+ * {@link DurabilityMode}. Files rotate at the factory's limits, as thread-bound workers' do. Streaming prep and
+ * mapped output are not supported.
+ *
+ * One instance may serve any number of {@link WritingWorkerManager}s, e.g. one per output directory, through a
+ * {@link io.ifar.skidroad.writing.file.MultiplexedWritingWorkerFactory} each. Close it after stopping them.
+ */
+public class MultiplexedFileWriter implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiplexedFileWriter.class);
+    public static final long MIN_IDLE_MICROS = 50L;
+    public static final long MAX_IDLE_MICROS = 2000L;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final IoLoop[] loops;
+    //Guards closing against adding streams, so that every stream added is admitted by its loop's final pass.
+    private final Object lifecycleLock = new Object();
+    private volatile boolean closed;
+
+    public MultiplexedFileWriter(int ioThreads) {
+        if (ioThreads < 1)
+            throw new IllegalArgumentException("Need at least one I/O thread: " + ioThreads);
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat(MultiplexedFileWriter.class.getSimpleName() + "-io-%d").build();
+        loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new IoLoop();
+            loops[i].thread = threadFactory.newThread(loops[i]);
+            loops[i].thread.start();
+        }
+    }
+
+    /**
+     * @param queue items to write, one per line
+     * @param flushIntervalSeconds how often to fsync a file with unsynced writes, if the factory's durability
+     *                             mode calls for it
+     * @param settings factory whose batch size, rotation, durability and metrics apply
+     */
+    public <T> NonBlockingWorker newWorker(BlockingQueue<T> queue, ByteSerializer<T> serializer, LogFile logFileRecord,
+                                           LogFileTracker tracker, int flushIntervalSeconds,
+                                           AbstractWritingWorkerFactory<T> settings) {
+        return new Stream<>(queue, serializer, logFileRecord, tracker, flushIntervalSeconds, settings);
+    }
+
+    /**
+     * @return workers started and not yet finished
+     */
+    public int getWorkerCount() {
+        int count = 0;
+        for (IoLoop loop : loops)
+            count += loop.load.get();
+        return count;
+    }
+
+    /**
+     * Finishes every worker's file and stops the I/O threads. Workers started afterwards are rejected.
+     */
+    @Override
+    public void close() {
+        synchronized (lifecycleLock) {
+            closed = true;
+        }
+        for (IoLoop loop : loops) {
+            loop.wake();
+            Uninterruptibles.joinUninterruptibly(loop.thread);
+        }
+    }
+
+    private IoLoop leastLoaded() {
+        IoLoop best = loops[0];
+        for (IoLoop loop : loops)
+            if (loop.load.get() < best.load.get())
+                best = loop;
+        return best;
+    }
+
+    /**
+     * An I/O thread and the workers it serves. Only the I/O thread touches streams.
+     */
+    private class IoLoop implements Runnable {
+        final Queue<Stream<?>> added = new ConcurrentLinkedQueue<>();
+        final List<Stream<?>> streams = new ArrayList<>();
+        final AtomicInteger load = new AtomicInteger();
+        volatile Thread thread;
+
+        void add(Stream<?> stream) {
+            load.incrementAndGet();
+            added.add(stream);
+            wake();
+        }
+
+        void wake() {
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long idleNanos = TimeUnit.MICROSECONDS.toNanos(MIN_IDLE_MICROS);
+            while (!closed) {
+                admit();
+                boolean wrote = false;
+                for (Iterator<Stream<?>> it = streams.iterator(); it.hasNext(); ) {
+                    Stream<?> stream = it.next();
+                    int written;
+                    try {
+                        written = stream.service();
+                    } catch (RuntimeException e) {
+                        it.remove();
+                        failed(stream, e);
+                        continue;
+                    }
+                    if (written < 0) {
+                        it.remove();
+                        exited(stream);
+                    } else if (written > 0) {
+                        wrote = true;
+                    }
+                }
+                if (wrote) {
+                    idleNanos = TimeUnit.MICROSECONDS.toNanos(MIN_IDLE_MICROS);
+                } else {
+                    LockSupport.parkNanos(this, idleNanos);
+                    idleNanos = Math.min(idleNanos * 2, TimeUnit.MICROSECONDS.toNanos(MAX_IDLE_MICROS));
+                }
+            }
+            admit();
+            for (Stream<?> stream : streams) {
+                try {
+                    stream.finish();
+                } catch (RuntimeException e) {
+                    failed(stream, e);
+                    continue;
+                }
+                exited(stream);
+            }
+            streams.clear();
+        }
+
+        /**
+         * Drops the finished stream from the load before completing its future, so that a caller who waited on the
+         * future sees a consistent {@link #getWorkerCount()}.
+         */
+        private void exited(Stream<?> stream) {
+            load.decrementAndGet();
+            stream.exited.set(null);
+        }
+
+        /**
+         * As {@link #exited(Stream)}, for a stream which threw: it gives up its file as best it can and its future
+         * fails with the exception. The loop and its other streams carry on.
+         */
+        private void failed(Stream<?> stream, RuntimeException e) {
+            stream.abort(e);
+            load.decrementAndGet();
+            stream.exited.setException(e);
+        }
+
+        private void admit() {
+            Stream<?> stream;
+            while ((stream = added.poll()) != null) {
+                boolean opened;
+                try {
+                    opened = stream.open();
+                } catch (RuntimeException e) {
+                    failed(stream, e);
+                    continue;
+                }
+                if (opened)
+                    streams.add(stream);
+                else
+                    exited(stream);
+            }
+        }
+    }
+
+    /**
+     * One open file and the queue it is written from.
+     */
+    private class Stream<T> implements NonBlockingWorker, FlushReporting {
+        private final BlockingQueue<T> queue;
+        private final ByteSerializer<T> serializer;
+        private final boolean raw;
+        private final LogFileTracker tracker;
+        private final long flushIntervalMillis;
+        private final int maxBatchSize;
+        private final Histogram batchSizeHistogram;
+        private final FileRollingScheme rollingScheme;
+        private final long maxFileBytes;
+        private final long maxFileItems;
+        private final DurabilityMode durability;
+        private final Timer fsyncTimer;
+        private final GroupCommitter groupCommitter;
+        private final SettableFuture<Void> exited = SettableFuture.create();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final List<T> batch = new ArrayList<>();
+        private final ItemBuffer itemBuffer = new ItemBuffer();
+        private volatile boolean stopping;
+        private volatile long flushedThroughNanos = System.nanoTime();
+        private IoLoop loop;
+        private LogFile logFileRecord;
+        private FileChannel channel;
+        private ByteBuffer[] buffers = new ByteBuffer[0];
+        private long itemsInFile;
+        private long bytesInFile;
+        private boolean dirty;
+        private boolean unsynced;
+        private long nextFlush;
+
+        Stream(BlockingQueue<T> queue, ByteSerializer<T> serializer, LogFile logFileRecord, LogFileTracker tracker,
+               int flushIntervalSeconds, AbstractWritingWorkerFactory<T> settings) {
+            this.queue = queue;
+            this.serializer = serializer;
+            this.raw = serializer instanceof RawBytesSerializer;
+            this.logFileRecord = logFileRecord;
+            this.tracker = tracker;
+            this.flushIntervalMillis = flushIntervalSeconds * 1000L;
+            this.maxBatchSize = settings.getMaxBatchSize();
+            this.batchSizeHistogram = settings.batchSizeHistogram;
+            this.rollingScheme = settings.getRollingScheme();
+            this.maxFileBytes = settings.getMaxFileBytes();
+            this.maxFileItems = settings.getMaxFileItems();
+            this.durability = settings.getDurability();
+            this.fsyncTimer = settings.fsyncTimer;
+            this.groupCommitter = settings.getGroupCommitter();
+        }
+
+        @Override
+        public ListenableFuture<Void> start() {
+            if (!started.compareAndSet(false, true))
+                throw new IllegalStateException("Already started: " + logFileRecord.getOriginPath());
+            synchronized (lifecycleLock) {
+                if (closed)
+                    throw new RejectedExecutionException(MultiplexedFileWriter.class.getSimpleName() + " is closed.");
+                loop = leastLoaded();
+                loop.add(this);
+            }
+            return exited;
+        }
+
+        @Override
+        public void stop() {
+            stopping = true;
+            if (loop != null)
+                loop.wake();
+        }
+
+        /**
+         * Runs on the calling thread's behalf until interrupted, for executors which are not aware of NonBlockingWorker.
+         */
+        @Override
+        public void run() {
+            ListenableFuture<Void> exit = start();
+            try {
+                try {
+                    exit.get();
+                } catch (InterruptedException e) {
+                    stop();
+                    Uninterruptibles.getUninterruptibly(exit);
+                }
+            } catch (ExecutionException e) {
+                LOG.warn("Multiplexed worker for {} failed.", logFileRecord.getOriginPath(), e.getCause());
+            }
+        }
+
+        /**
+         * Writes go straight to the file, so this is the start of the last service which wrote all it took.
+         */
+        @Override
+        public long getFlushedThroughNanos() {
+            return flushedThroughNanos;
+        }
+
+        /**
+         * @return whether the file is open; if not, the worker has finished
+         */
+        boolean open() {
+            channel = null;
+            try {
+                channel = FileChannel.open(logFileRecord.getOriginPath(), CREATE, WRITE, APPEND);
+            } catch (IOException e) {
+                LOG.error("Failed to open output file {}. This instance will not consume any items.", logFileRecord.getOriginPath(), e);
+                tracker.writeError(logFileRecord); //ignore update failures; worker exiting anyway
+                return false;
+            }
+            LOG.info("Multiplexed worker opened {}", logFileRecord.getOriginPath());
+            itemsInFile = 0L;
+            bytesInFile = 0L;
+            dirty = false;
+            unsynced = false;
+            return true;
+        }
+
+        /**
+         * Writes a batch if there is one and fsyncs if due. Called only by the I/O thread.
+         * @return items written, or -1 once the worker has finished
+         */
+        int service() {
+            if (stopping) {
+                finish();
+                return -1;
+            }
+            long startNanos = System.nanoTime();
+            int room = maxFileItems > 0 ? (int) Math.min(maxBatchSize, maxFileItems - itemsInFile) : maxBatchSize;
+            int written = queue.drainTo(batch, room);
+            try {
+                if (written > 0)
+                    writeBatch();
+                //writeBatch throws unless it wrote everything drained
+                flushedThroughNanos = startNanos;
+                if (written > 0 && ((maxFileItems > 0 && itemsInFile >= maxFileItems) || (maxFileBytes > 0 && bytesInFile >= maxFileBytes))) {
+                    closeFile();
+                    if (!openNextFile())
+                        return -1;
+                    LOG.info("Multiplexed worker rotated to {}", logFileRecord.getOriginPath());
+                    return written;
+                }
+                if (dirty && System.currentTimeMillis() >= nextFlush)
+                    flush();
+            } catch (IOException e) {
+                LOG.warn("Abnormal multiplexed worker termination for {}", logFileRecord.getOriginPath(), e);
+                finish();
+                return -1;
+            }
+            return written;
+        }
+
+        /**
+         * Writes the batch, removing items from it as they are written. On failure the unwritten items remain.
+         */
+        private void writeBatch() throws IOException {
+            if (batchSizeHistogram != null)
+                batchSizeHistogram.update(batch.size());
+            if (buffers.length < batch.size() * 2)
+                buffers = new ByteBuffer[batch.size() * 2];
+            int count = 0;
+            int serialized = 0;
+            IOException failure = null;
+            if (raw) {
+                for (T item : batch) {
+                    buffers[count++] = ByteBuffer.wrap((byte[]) item);
+                    buffers[count++] = ByteBuffer.wrap(NEWLINE);
+                    serialized++;
+                }
+            } else {
+                itemBuffer.reset();
+                int complete = 0;
+                for (T item : batch) {
+                    try {
+                        serializer.serialize(item, itemBuffer);
+                    } catch (IOException e) {
+                        LOG.error("Error serializing item for {}.", logFileRecord.getOriginPath(), e);
+                        failure = e;
+                        break;
+                    }
+                    itemBuffer.write('\n');
+                    complete = itemBuffer.size();
+                    serialized++;
+                }
+                buffers[count++] = ByteBuffer.wrap(itemBuffer.array(), 0, complete);
+            }
+            try {
+                long remaining = 0L;
+                for (int i = 0; i < count; i++)
+                    remaining += buffers[i].remaining();
+                bytesInFile += remaining;
+                while (remaining > 0)
+                    remaining -= channel.write(buffers, 0, count);
+            } catch (IOException e) {
+                LOG.error("Error writing to {}.", logFileRecord.getOriginPath(), e);
+                failure = e;
+                serialized = 0; //unknown how much reached the file; all are put back
+            } finally {
+                Arrays.fill(buffers, 0, count, null);
+            }
+            batch.subList(0, serialized).clear();
+            itemsInFile += serialized;
+            if (serialized > 0) {
+                unsynced = true;
+                if (!dirty) {
+                    dirty = true;
+                    nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+                }
+            }
+            if (failure != null)
+                throw failure;
+        }
+
+        private void flush() throws IOException {
+            if (durability == DurabilityMode.FSYNC_ON_FLUSH) {
+                GroupCommitter.fsync(channel, fsyncTimer);
+                unsynced = false;
+            } else if (durability == DurabilityMode.GROUP_COMMIT) {
+                groupCommitter.add(channel);
+            }
+            dirty = false;
+        }
+
+        /**
+         * Puts back anything unwritten, closes the file and marks it WRITTEN. Called only by the I/O thread.
+         */
+        void finish() {
+            if (!batch.isEmpty()) {
+                LOG.info("Putting {} unwritten item(s) for {} back onto queue because of abnormal worker termination.", batch.size(), logFileRecord.getOriginPath());
+                int lost = 0;
+                for (T unwritten : batch)
+                    if (!queue.offer(unwritten))
+                        lost++;
+                if (lost > 0)
+                    LOG.warn("Dropped {} unwritten item(s) for {}; queue is full.", lost, logFileRecord.getOriginPath());
+                batch.clear();
+            }
+            closeFile();
+            LOG.info("Stopped multiplexed worker for {}", logFileRecord.getOriginPath());
+        }
+
+        /**
+         * Ends the stream after an unexpected exception, e.g. from a serializer or the tracker. Puts back and records
+         * what it can, as finish does; if that fails too, just closes the file. Called only by the I/O thread.
+         */
+        void abort(RuntimeException cause) {
+            LOG.error("Abnormal multiplexed worker termination for {}", logFileRecord.getOriginPath(), cause);
+            try {
+                if (channel == null)
+                    tracker.writeError(logFileRecord); //ignore update failures; worker exiting anyway
+                else
+                    finish();
+            } catch (RuntimeException e) {
+                LOG.error("Cannot finish {} after failure.", logFileRecord.getOriginPath(), e);
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        //already failing
+                    }
+                }
+            }
+        }
+
+        private void closeFile() {
+            if (durability != DurabilityMode.NONE && unsynced && channel.isOpen()) {
+                if (groupCommitter != null)
+                    groupCommitter.remove(channel);
+                try {
+                    GroupCommitter.fsync(channel, fsyncTimer);
+                } catch (IOException e) {
+                    LOG.error("Cannot fsync {}. Possible data loss.", logFileRecord.getOriginPath(), e);
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("Cannot close {}. Possible data loss.", logFileRecord.getOriginPath(), e);
+            }
+            try {
+                logFileRecord.setByteSize(Files.size(logFileRecord.getOriginPath()));
+            } catch (IOException e) {
+                LOG.warn("Cannot size {}.", logFileRecord.getOriginPath(), e);
+            }
+            tracker.written(logFileRecord); //ignore update failures
+        }
+
+        /**
+         * Claims the next serial in the current LogFile's cohort and opens it.
+         */
+        private boolean openNextFile() {
+            try {
+                logFileRecord = tracker.open(logFileRecord.getRollingCohort(),
+                        rollingScheme.makeOutputPathPattern(logFileRecord.getStartTime()), logFileRecord.getStartTime());
+            } catch (RuntimeException e) {
+                LOG.error("Cannot open a new file after {}. Exiting.", logFileRecord.getOriginPath(), e);
+                return false;
+            }
+            return open();
+        }
+    }
+
+    /**
+     * Exposes its array to save a copy per batch. Close and flush, which serializers may call, do nothing.
+     */
+    private static class ItemBuffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
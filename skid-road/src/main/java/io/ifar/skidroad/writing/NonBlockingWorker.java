@@ -0,0 +1,21 @@
+package io.ifar.skidroad.writing;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A writing worker which does not hold a thread while it waits for items, e.g. one served by a
+ * {@link MultiplexedFileWriter}. {@link WritingWorkerManager} starts these itself instead of submitting them to its
+ * worker executor. Run as a plain Runnable, the worker starts itself and blocks until interrupted, like any other.
+ */
+public interface NonBlockingWorker extends Runnable {
+    /**
+     * Begins consuming the worker's queue. Called at most once.
+     * @return completes once the worker has finished with its file, whether stopped or failed
+     */
+    ListenableFuture<Void> start();
+
+    /**
+     * Asks the worker to finish its file and exit, as interrupting a thread-bound worker does. Does not wait.
+     */
+    void stop();
+}
@@ -0,0 +1,123 @@
+package io.ifar.skidroad.writing;
+
+import io.ifar.skidroad.writing.file.ByteDeserializer;
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only local file of items which could not be queued for writing (see {@link QueueFullPolicy#SPILL}). Each
+ * record holds the time attributed to the item (8 bytes), the length of the serialized item (4 bytes) and the
+ * serialized item itself, all big-endian as written by {@link DataOutputStream}, so that the original cohort can be
+ * recovered.
+ *
+ * The file is not created until the first item is spilled. Writes are buffered until {@link #flush()}.
+ *
+ * Spilled items are not written to log files until recovered. To recover them, move the spill file aside (so that
+ * new spills start a fresh file), then pass the moved file to {@link #recover(Path, ByteDeserializer,
+ * WritingWorkerManager)} with a started manager; its items go to the cohorts of their original times. Delete the
+ * moved file once the manager has written them, e.g. after stopping it. Recovering the same file twice records its
+ * items twice.
+ *
+ * Thread-safe.
+ */
+public class OverflowSpillFile<T> implements Closeable, Flushable {
+    private static final Logger LOG = LoggerFactory.getLogger(OverflowSpillFile.class);
+
+    private final Path path;
+    private final ByteSerializer<T> serializer;
+    private final ByteArrayOutputStream itemBuffer;
+    private DataOutputStream out;
+
+    public OverflowSpillFile(Path path, ByteSerializer<T> serializer) {
+        this.path = path;
+        this.serializer = serializer;
+        this.itemBuffer = new ByteArrayOutputStream();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized void spill(long timeStamp, T item) throws IOException {
+        itemBuffer.reset();
+        serializer.serialize(item, itemBuffer);
+        if (out == null)
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, CREATE, WRITE, APPEND)));
+        out.writeLong(timeStamp);
+        out.writeInt(itemBuffer.size());
+        itemBuffer.writeTo(out);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (out != null)
+            out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Records every item in a spill file with the time it was spilled with. A final record cut short, e.g. by a
+     * crash mid-write, is logged and skipped, as are items which cannot be deserialized. The file is left in place.
+     * @param path a spill file no longer being written to
+     * @param deserializer reverses the serializer the file was written with
+     * @param writerManager records the items
+     * @return number of items recorded
+     */
+    public static <T> int recover(Path path, ByteDeserializer<T> deserializer, WritingWorkerManager<T> writerManager) throws IOException {
+        int recovered = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path, READ)))) {
+            while (true) {
+                long timeStamp;
+                try {
+                    timeStamp = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] bytes;
+                try {
+                    int length = in.readInt();
+                    if (length < 0)
+                        throw new IOException("Corrupt spill file " + path + ": negative item length " + length);
+                    bytes = new byte[length];
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    LOG.warn("Skipping truncated final record of spill file {}.", path);
+                    break;
+                }
+                T item;
+                try {
+                    item = deserializer.deserialize(bytes);
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Skipping spilled item which cannot be deserialized: ({}) {}", e.getClass().getSimpleName(), e.getMessage());
+                    continue;
+                }
+                writerManager.record(timeStamp, item);
+                recovered++;
+            }
+        }
+        LOG.info("Recovered {} item(s) from spill file {}.", recovered, path);
+        return recovered;
+    }
+}
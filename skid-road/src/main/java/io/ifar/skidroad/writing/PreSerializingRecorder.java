@@ -0,0 +1,115 @@
+package io.ifar.skidroad.writing;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import io.ifar.skidroad.writing.file.RawBytesSerializer;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Serializes items to bytes before they are queued, so that writing workers only append bytes. Without this, each
+ * file's throughput is limited to what its one worker thread can serialize.
+ *
+ * Items are serialized on the calling thread, or on the provided executor if there is one. Either way the time
+ * attributed to an item is taken when it is recorded. Items which cannot be serialized are logged, counted by
+ * {@link #serializationErrorMeter} and dropped.
+ *
+ * Pair with a {@link WritingWorkerManager} whose factory writes raw bytes, e.g. a
+ * {@link io.ifar.skidroad.writing.file.ByteFileWritingWorkerFactory} with {@link RawBytesSerializer}.
+ */
+public class PreSerializingRecorder<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(PreSerializingRecorder.class);
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private final WritingWorkerManager<byte[]> writerManager;
+    private final ByteSerializer<T> serializer;
+    private final ExecutorService executor;
+    private final ThreadLocal<ByteArrayOutputStream> buffers = new ThreadLocal<ByteArrayOutputStream>() {
+        @Override
+        protected ByteArrayOutputStream initialValue() {
+            return new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    protected final Timer serializationTimer = new Timer();
+    protected final Meter serializationErrorMeter = new Meter();
+
+    /**
+     * Serializes on the calling thread.
+     */
+    public PreSerializingRecorder(WritingWorkerManager<byte[]> writerManager, ByteSerializer<T> serializer) {
+        this(writerManager, serializer, null);
+    }
+
+    /**
+     * @param executor if not null, serializes items; record returns without waiting. Give it a bounded queue and a
+     *                 {@link QueueFullRejectionHandler} so that a serialization backlog cannot grow without limit.
+     */
+    public PreSerializingRecorder(WritingWorkerManager<byte[]> writerManager, ByteSerializer<T> serializer, ExecutorService executor) {
+        this.writerManager = writerManager;
+        this.serializer = serializer;
+        this.executor = executor;
+    }
+
+    /**
+     * Submit an item to be recorded in a log file.
+     * @param timeStamp Time to attribute item to
+     * @param item the item
+     */
+    public void record(DateTime timeStamp, T item) {
+        record(timeStamp.getMillis(), item);
+    }
+
+    /**
+     * Submit an item to be recorded in a log file.
+     * @param item the item
+     */
+    public void record(T item) {
+        record(System.currentTimeMillis(), item);
+    }
+
+    /**
+     * Submit an item to be recorded in a log file.
+     * @param timeStamp time to attribute item to
+     * @param item the item
+     */
+    public void record(final long timeStamp, final T item) {
+        if (executor == null) {
+            serializeAndRecord(timeStamp, item);
+        } else {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    serializeAndRecord(timeStamp, item);
+                }
+            });
+        }
+    }
+
+    private void serializeAndRecord(long timeStamp, T item) {
+        byte[] bytes;
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        Timer.Context timer = serializationTimer.time();
+        try {
+            serializer.serialize(item, buffer);
+            bytes = buffer.toByteArray();
+            if (bytes.length > MAX_RETAINED_BUFFER_SIZE)
+                buffers.remove(); //don't pin memory for the occasional huge item
+        } catch (IOException | RuntimeException e) {
+            serializationErrorMeter.mark();
+            LOG.error("Unable to serialize item; dropping it.", e);
+            return;
+        } finally {
+            timer.stop();
+        }
+        writerManager.record(timeStamp, bytes);
+    }
+}
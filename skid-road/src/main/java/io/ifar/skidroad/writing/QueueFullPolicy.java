@@ -0,0 +1,24 @@
+package io.ifar.skidroad.writing;
+
+/**
+ * What {@link WritingWorkerManager} does with an item whose cohort's queue is at capacity.
+ */
+public enum QueueFullPolicy {
+    /**
+     * Wait up to the configured timeout for space, then drop the item.
+     */
+    BLOCK,
+    /**
+     * Drop the item being recorded.
+     */
+    DROP_NEWEST,
+    /**
+     * Drop the oldest queued items to make room.
+     */
+    DROP_OLDEST,
+    /**
+     * Append the item to an {@link OverflowSpillFile} instead. Dropped only if the spill file cannot be written.
+     * Spilled items reach log files only once recovered; see {@link OverflowSpillFile}.
+     */
+    SPILL
+}
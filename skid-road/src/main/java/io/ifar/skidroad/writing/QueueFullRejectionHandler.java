@@ -0,0 +1,61 @@
+package io.ifar.skidroad.writing;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a {@link WritingWorkerManager}'s {@link QueueFullPolicy} to tasks that a bounded pool feeding it has no
+ * room for, e.g. the serialization pool of a {@link PreSerializingRecorder}, so that a backlog of unserialized items
+ * is bounded and shed the same way as the manager's own queues. Dropped tasks are counted by the manager's
+ * {@link WritingWorkerManager#droppedMeter}.
+ *
+ * Two cases run the task on the recording thread instead, which slows the caller down rather than losing anything:
+ * managers whose queues are unbounded, and {@link QueueFullPolicy#SPILL}, under which the manager then spills the
+ * item itself if its queue is full too.
+ */
+public class QueueFullRejectionHandler implements RejectedExecutionHandler {
+    private final WritingWorkerManager<?> writerManager;
+
+    public QueueFullRejectionHandler(WritingWorkerManager<?> writerManager) {
+        this.writerManager = writerManager;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            writerManager.droppedMeter.mark();
+            return;
+        }
+        if (writerManager.getQueueCapacity() == Integer.MAX_VALUE) {
+            task.run();
+            return;
+        }
+        switch (writerManager.getQueueFullPolicy()) {
+            case BLOCK:
+                try {
+                    if (executor.getQueue().offer(task, writerManager.getBlockTimeoutMillis(), TimeUnit.MILLISECONDS))
+                        return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                writerManager.droppedMeter.mark();
+                return;
+            case DROP_NEWEST:
+                writerManager.droppedMeter.mark();
+                return;
+            case DROP_OLDEST:
+                if (executor.getQueue().poll() != null)
+                    writerManager.droppedMeter.mark();
+                //Offer rather than execute, which could land back here without end if the queue stays full.
+                if (!executor.getQueue().offer(task))
+                    writerManager.droppedMeter.mark();
+                return;
+            case SPILL:
+                task.run();
+                return;
+            default:
+                throw new IllegalStateException("Unsupported policy " + writerManager.getQueueFullPolicy());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.ifar.skidroad.writing;
+
+/**
+ * The kind of queue {@link WritingWorkerManager} feeds each cohort's workers from.
+ */
+public enum QueueType {
+    /**
+     * {@link java.util.concurrent.LinkedBlockingQueue}; allocates a node per item. Unbounded unless a capacity is set.
+     */
+    LINKED,
+    /**
+     * {@link RingBufferQueue}; preallocated and lock-free. Always bounded, by
+     * {@link WritingWorkerManager#DEFAULT_RING_BUFFER_CAPACITY} if no capacity is set, in which case recording waits
+     * for space instead of applying a {@link QueueFullPolicy}.
+     */
+    RING_BUFFER
+}
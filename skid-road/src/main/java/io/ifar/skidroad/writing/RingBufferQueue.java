@@ -0,0 +1,254 @@
+package io.ifar.skidroad.writing;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue over a preallocated ring of slots, after Dmitry Vyukov's bounded MPMC queue. Each slot
+ * carries a sequence number that tells producers and consumers whether it is free or filled for their turn, so offer
+ * and poll are a single CAS in the uncontended case and allocate nothing. Any number of producers and consumers may
+ * use it concurrently.
+ *
+ * Blocking operations wait by parking for short, growing intervals (up to {@link #MAX_PARK_NANOS}) rather than on a
+ * condition. A consumer that is still empty-handed after that registers itself as idle and parks for up to
+ * {@link #MAX_IDLE_PARK_NANOS}; offer unparks idle consumers, so an idle queue costs about one wakeup a second while a
+ * newly offered item is still taken promptly. Producers only pay for the wakeup while a consumer is idle.
+ *
+ * {@link #iterator()} returns a snapshot that may miss items moved concurrently and does not support removal.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    public static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    public static final long MAX_IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+    private final AtomicInteger idleConsumerCount = new AtomicInteger();
+    private final Queue<Thread> idleConsumers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param capacity rounded up to a power of two, and to at least two; a single slot cannot tell full from empty
+     */
+    public RingBufferQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity)
+            size <<= 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        long position = enqueuePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1))
+                    break;
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false; //full
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+        slots.lazySet(index, e);
+        //A full store, so an idle consumer either sees this item when it re-polls or is counted below and woken.
+        sequences.set(index, position + 1);
+        if (idleConsumerCount.get() > 0)
+            wakeIdleConsumers();
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        long position = dequeuePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1))
+                    break;
+                position = dequeuePosition.get();
+            } else if (difference < 0) {
+                return null; //empty
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+        E e = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.lazySet(index, position + mask + 1);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        long position = dequeuePosition.get();
+        int index = (int) (position & mask);
+        return sequences.get(index) == position + 1 ? slots.get(index) : null;
+    }
+
+    @Override
+    public int size() {
+        //Read consumer position first so the result cannot be negative.
+        long head = dequeuePosition.get();
+        long tail = enqueuePosition.get();
+        return (int) Math.max(0, Math.min(tail - head, capacity()));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity() - size();
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        long parkNanos = MIN_PARK_NANOS;
+        while (!offer(e))
+            parkNanos = park(parkNanos);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long parkNanos = MIN_PARK_NANOS;
+        while (!offer(e)) {
+            if (System.nanoTime() - deadline >= 0)
+                return false;
+            parkNanos = park(parkNanos);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        long parkNanos = MIN_PARK_NANOS;
+        E e;
+        while ((e = poll()) == null) {
+            if (parkNanos < MAX_PARK_NANOS)
+                parkNanos = park(parkNanos);
+            else if ((e = idle(MAX_IDLE_PARK_NANOS)) != null)
+                return e;
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long parkNanos = MIN_PARK_NANOS;
+        E e;
+        while ((e = poll()) == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            if (parkNanos < MAX_PARK_NANOS)
+                parkNanos = park(parkNanos);
+            else if ((e = idle(Math.min(remaining, MAX_IDLE_PARK_NANOS))) != null)
+                return e;
+        }
+        return e;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this)
+            throw new IllegalArgumentException();
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null) {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long tail = enqueuePosition.get();
+        for (long position = dequeuePosition.get(); position < tail; position++) {
+            int index = (int) (position & mask);
+            E e = slots.get(index);
+            if (e != null && sequences.get(index) == position + 1)
+                snapshot.add(e);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * Parks as an idle consumer until offer wakes it or maxNanos pass. Registers before re-polling, so an item offered
+     * in between is either returned here or wakes the park.
+     * @return the item found on re-polling, or null if the caller should poll again
+     */
+    private E idle(long maxNanos) throws InterruptedException {
+        Thread current = Thread.currentThread();
+        idleConsumers.add(current);
+        idleConsumerCount.incrementAndGet();
+        try {
+            E e = poll();
+            if (e == null) {
+                LockSupport.parkNanos(this, maxNanos);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return e;
+        } finally {
+            idleConsumerCount.decrementAndGet();
+            idleConsumers.remove(current);
+        }
+    }
+
+    private void wakeIdleConsumers() {
+        for (Thread consumer : idleConsumers)
+            LockSupport.unpark(consumer);
+    }
+
+    private static long park(long parkNanos) throws InterruptedException {
+        LockSupport.parkNanos(parkNanos);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        return Math.min(parkNanos * 2, MAX_PARK_NANOS);
+    }
+}
@@ -0,0 +1,315 @@
+package io.ifar.skidroad.writing;
+
+import io.ifar.skidroad.writing.file.ByteDeserializer;
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only local journal of items waiting to be queued for writing, so that a backlog costs disk rather than heap
+ * (see {@link WritingWorkerManager#withSpillJournal(SpillJournal, int, long)}). Items are read back in the order they
+ * were appended.
+ *
+ * The journal is a directory of numbered segment files of a fixed size, each memory-mapped while in use. A record
+ * holds one more than the length of the serialized item (4 bytes), the time attributed to the item (8 bytes) and
+ * the item. New segments are zero-filled, so a zero length marks the end of a segment's records. The length is
+ * written last, so a record cut short by a crash reads as the end of the journal.
+ *
+ * {@link #commit(long)} durably records a read position, before which everything has been handled, and deletes
+ * segments that lie wholly before it. Opening a journal resumes reading from the last committed position, so entries
+ * read but not committed before a crash or restart are read again.
+ *
+ * Thread-safe.
+ */
+public class SpillJournal<T> implements Closeable, Flushable {
+    private static final Logger LOG = LoggerFactory.getLogger(SpillJournal.class);
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int HEADER_BYTES = 12;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+
+    private final Path directory;
+    private final ByteSerializer<T> serializer;
+    private final ByteDeserializer<T> deserializer;
+    private final int segmentBytes;
+    private final ItemBuffer itemBuffer = new ItemBuffer();
+    //Mapped segments from the read segment to the write segment.
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private long readSegment;
+    private int readOffset;
+    private long writeSegment;
+    private int writeOffset;
+    private volatile long backlog;
+
+    public SpillJournal(Path directory, ByteSerializer<T> serializer, ByteDeserializer<T> deserializer) throws IOException {
+        this(directory, serializer, deserializer, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the journal in directory, creating it if needed, and recovers any entries not yet committed.
+     * @param segmentBytes size of new segment files; also the largest record the journal can hold
+     */
+    public SpillJournal(Path directory, ByteSerializer<T> serializer, ByteDeserializer<T> deserializer, int segmentBytes) throws IOException {
+        if (segmentBytes <= HEADER_BYTES)
+            throw new IllegalArgumentException("Segments must be larger than " + HEADER_BYTES + " bytes: " + segmentBytes);
+        this.directory = directory;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return entries appended and not yet read
+     */
+    public long size() {
+        return backlog;
+    }
+
+    public boolean isEmpty() {
+        return backlog == 0L;
+    }
+
+    public synchronized void append(long timeStamp, T item) throws IOException {
+        itemBuffer.reset();
+        serializer.serialize(item, itemBuffer);
+        int length = itemBuffer.size();
+        int recordBytes = HEADER_BYTES + length;
+        MappedByteBuffer segment = segment(writeSegment);
+        if (writeOffset + recordBytes > segment.capacity()) {
+            if (recordBytes > segmentBytes)
+                throw new IOException("Item of " + length + " bytes is too large for journal segments of " + segmentBytes + " bytes.");
+            //Rest of the segment is left zero, marking its end.
+            writeSegment++;
+            writeOffset = 0;
+            segment = segment(writeSegment);
+        }
+        ByteBuffer body = segment.duplicate();
+        body.position(writeOffset + HEADER_BYTES);
+        body.put(itemBuffer.array(), 0, length);
+        segment.putLong(writeOffset + 4, timeStamp);
+        segment.putInt(writeOffset, length + 1);
+        writeOffset += recordBytes;
+        backlog++;
+    }
+
+    /**
+     * Reads up to maxEntries entries, in the order appended. Entries which cannot be deserialized are logged and
+     * skipped.
+     */
+    public synchronized List<Entry<T>> read(int maxEntries) throws IOException {
+        List<Entry<T>> result = new ArrayList<>(Math.min(maxEntries, (int) Math.min(backlog, 1024)));
+        while (result.size() < maxEntries && backlog > 0) {
+            MappedByteBuffer segment = segment(readSegment);
+            int stored = storedLength(segment, readOffset);
+            if (stored == 0) {
+                if (readSegment >= writeSegment)
+                    break;
+                segments.remove(readSegment);
+                readSegment++;
+                readOffset = 0;
+                continue;
+            }
+            long timeStamp = segment.getLong(readOffset + 4);
+            byte[] bytes = new byte[stored - 1];
+            ByteBuffer body = segment.duplicate();
+            body.position(readOffset + HEADER_BYTES);
+            body.get(bytes);
+            readOffset += HEADER_BYTES + bytes.length;
+            backlog--;
+            try {
+                result.add(new Entry<>(timeStamp, deserializer.deserialize(bytes)));
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Skipping journal entry which cannot be deserialized: ({}) {}", e.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Opaque, ordered position just past the last entry read, for {@link #commit(long)}.
+     */
+    public synchronized long getReadPosition() {
+        return position(readSegment, readOffset);
+    }
+
+    /**
+     * Records that every entry before position has been handled and need not be recovered, and deletes segments
+     * which hold only such entries.
+     */
+    public synchronized void commit(long position) throws IOException {
+        long segmentNumber = position >>> 32;
+        int offset = (int) position;
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        Path temp = directory.resolve(CHECKPOINT + ".tmp");
+        ByteBuffer content = ByteBuffer.allocate(12);
+        content.putLong(segmentNumber).putInt(offset).flip();
+        try (FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            channel.write(content);
+            channel.force(false);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long number : listSegments()) {
+            if (number >= segmentNumber)
+                break;
+            segments.remove(number);
+            Files.deleteIfExists(segmentPath(number));
+        }
+    }
+
+    /**
+     * Forces mapped segments to disk.
+     */
+    @Override
+    public synchronized void flush() {
+        for (MappedByteBuffer segment : segments.values())
+            segment.force();
+    }
+
+    /**
+     * Releases mapped segments. Entries not committed are recovered when the journal is next opened.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        segments.clear();
+    }
+
+    /**
+     * Positions the reader at the last commit and the writer at the end of the newest segment, counting the entries
+     * in between.
+     */
+    private void recover() throws IOException {
+        TreeSet<Long> numbers = listSegments();
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        long committedSegment = 0L;
+        int committedOffset = 0;
+        if (Files.exists(checkpoint)) {
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            committedSegment = content.getLong();
+            committedOffset = content.getInt();
+        }
+        for (long number : new ArrayList<>(numbers.headSet(committedSegment))) {
+            Files.deleteIfExists(segmentPath(number));
+            numbers.remove(number);
+        }
+        if (numbers.isEmpty()) {
+            readSegment = writeSegment = committedSegment;
+            readOffset = writeOffset = committedOffset;
+            backlog = 0L;
+            return;
+        }
+        readSegment = numbers.first();
+        readOffset = readSegment == committedSegment ? committedOffset : 0;
+        long count = 0L;
+        for (long number : numbers) {
+            MappedByteBuffer segment = segment(number);
+            int offset = number == readSegment ? readOffset : 0;
+            int stored;
+            while ((stored = storedLength(segment, offset)) != 0) {
+                offset += HEADER_BYTES + stored - 1;
+                count++;
+            }
+            writeSegment = number;
+            writeOffset = offset;
+        }
+        backlog = count;
+        //Only the reader's and writer's segments need stay mapped.
+        for (Map.Entry<Long, MappedByteBuffer> entry : new ArrayList<>(segments.entrySet()))
+            if (entry.getKey() != readSegment && entry.getKey() != writeSegment)
+                segments.remove(entry.getKey());
+        if (count > 0)
+            LOG.info("Recovered {} journal entries in {}.", count, directory);
+    }
+
+    /**
+     * @return the length field of the record at offset, or 0 if there is none (or it is not intact)
+     */
+    private static int storedLength(MappedByteBuffer segment, int offset) {
+        if (offset + HEADER_BYTES > segment.capacity())
+            return 0;
+        int stored = segment.getInt(offset);
+        return stored < 0 || (long) offset + HEADER_BYTES + stored - 1 > segment.capacity() ? 0 : stored;
+    }
+
+    private MappedByteBuffer segment(long number) throws IOException {
+        MappedByteBuffer segment = segments.get(number);
+        if (segment == null) {
+            try (FileChannel channel = FileChannel.open(segmentPath(number), CREATE, READ, WRITE)) {
+                long size = Math.max(channel.size(), segmentBytes);
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            segments.put(number, segment);
+        }
+        return segment;
+    }
+
+    private TreeSet<Long> listSegments() throws IOException {
+        TreeSet<Long> numbers = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file {} in journal {}.", name, directory);
+                }
+            }
+        }
+        return numbers;
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%019d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private static long position(long segment, int offset) {
+        return (segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    /**
+     * An item read back from the journal with the time attributed to it.
+     */
+    public static class Entry<T> {
+        public final long timeStamp;
+        public final T item;
+
+        Entry(long timeStamp, T item) {
+            this.timeStamp = timeStamp;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Exposes its array to save a copy per item.
+     */
+    private static class ItemBuffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.ifar.skidroad.writing;
+
+import org.joda.time.DateTime;
+
+/**
+ * Receives notification when {@link WritingWorkerManager} adds or retires a worker for a cohort, either because its
+ * queue crossed a depth watermark or under autoscaling.
+ */
+public interface WorkerScalingListener {
+    /**
+     * @param startTime the cohort's start time
+     * @param workerCount workers for the cohort after the change
+     * @param estimatedLatencyMillis estimated enqueue-to-write latency that prompted the change, or -1 if the queue
+     *                               crossing its depth watermark prompted it
+     */
+    public void workerAdded(DateTime startTime, int workerCount, long estimatedLatencyMillis);
+
+    /**
+     * @param startTime the cohort's start time
+     * @param workerCount workers for the cohort after the change
+     * @param estimatedLatencyMillis estimated enqueue-to-write latency that prompted the change
+     */
+    public void workerRetired(DateTime startTime, int workerCount, long estimatedLatencyMillis);
+}
@@ -10,5 +10,9 @@ import java.util.concurrent.BlockingQueue;
  * Constructs WritingWorkers for the WritingWorkerManager.
  */
 public interface WritingWorkerFactory<T> {
-    Thread buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker);
+    /**
+     * @return a worker which consumes the queue until interrupted, writing to logFileRecord; the manager decides what
+     * thread runs it (see {@link WritingWorkerManager#withWorkerExecutor(java.util.concurrent.ExecutorService)})
+     */
+    Runnable buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker);
 }
@@ -1,10 +1,19 @@
 package io.ifar.skidroad.writing;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.health.HealthCheck;
 import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.ifar.skidroad.LogFile;
 import io.ifar.skidroad.rolling.FileRollingScheme;
+import io.ifar.skidroad.rolling.RollingSchemes;
+import io.ifar.skidroad.rolling.SizeBoundedRollingScheme;
 import io.ifar.skidroad.tracking.LogFileTracker;
 import org.joda.time.DateTime;
 import org.skife.jdbi.v2.ResultIterator;
@@ -12,10 +21,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.ifar.skidroad.tracking.LogFileState.WRITING;
 
@@ -31,12 +43,51 @@ import static io.ifar.skidroad.tracking.LogFileState.WRITING;
  * provided FileRollingScheme.
  *
  * Note there is no WritingWorker interface. Uses a WritingWorkerFactory
- * to create worker threads.
+ * to create worker runnables.
+ *
+ * Workers run on an ExecutorService, by default a cached pool owned by the manager, and are stopped and awaited
+ * through futures rather than by interrupting and joining threads. {@link #withWorkerExecutor(ExecutorService)}
+ * substitutes another executor, e.g. one pool shared by several managers so that threads freed when one cohort
+ * closes serve the next, or a virtual-thread-per-task executor where the runtime has one. Each worker occupies an
+ * executor thread until it exits, so the executor must not cap its thread count below the number of live workers.
+ * Workers which implement {@link NonBlockingWorker}, such as those of a {@link MultiplexedFileWriter}, need no thread
+ * and are started directly instead. Workers are launched from a single background thread which exits when idle.
+ *
+ * Queues are unbounded unless {@link #withBoundedQueues(int, QueueFullPolicy, long)} is used, in which case items
+ * that do not fit are handled according to the given {@link QueueFullPolicy} and counted by {@link #droppedMeter}
+ * or {@link #spilledMeter}. {@link #withQueueType(QueueType)} selects a {@link RingBufferQueue} instead of the default
+ * LinkedBlockingQueue. A ring buffer is never unbounded; without withBoundedQueues it holds
+ * {@link #DEFAULT_RING_BUFFER_CAPACITY} items and record() waits as long as it takes for space, so that changing the
+ * queue type alone never loses items.
+ *
+ * With {@link #withSpillJournal(SpillJournal, int, long)}, record() appends items to a {@link SpillJournal} on disk
+ * instead of queueing them once their cohort's queue is deep, and keeps doing so until the journal has been replayed,
+ * so that heap use stays bounded while order is kept. A replay job moves journaled items back onto the queues as they
+ * drain. A read position is committed once every item replayed before it has been taken off its queue by a worker which
+ * has since flushed (see {@link FlushReporting}), and the journal resumes from its last commit when the manager is
+ * started again.
+ *
+ * Scale-up is event driven: when record() leaves a cohort's queue at or above its depth watermark (spawnThreshold
+ * times its worker count), it signals the manager, which launches another worker within milliseconds rather than at
+ * the next prune, up to {@link #withMaxWorkersPerCohort(int)} (one per processor by default). A cohort keeps its workers until it closes. The scheduled prune closes
+ * stale cohorts and replaces workers that have died. {@link #withAutoscaling(long, int)} additionally sizes each
+ * cohort's workers to a latency objective: at each prune the enqueue-to-write latency is estimated from queue depth
+ * and drain rate (Little's law), a worker is added while the estimate exceeds the objective, and one is retired after
+ * {@link #RETIRE_AFTER_CALM_PRUNES} consecutive prunes well under it, closing its file so it can be prepped.
+ * Decisions are counted by {@link #workersAddedMeter} and {@link #workersRetiredMeter} and reported to any
+ * {@link WorkerScalingListener}s.
+ *
+ * To close files at the size budget of a {@link SizeBoundedRollingScheme} as well as at the end of their period, give
+ * the worker factory the same scheme with {@link AbstractWritingWorkerFactory#withRotation(SizeBoundedRollingScheme)};
+ * the manager does not change its factory's settings.
  */
 public class WritingWorkerManager<T> {
     private static final Logger LOG = LoggerFactory.getLogger(WritingWorkerManager.class);
     private static final int NUM_PROCESSORS = Runtime.getRuntime().availableProcessors();
     private static final AtomicInteger instanceCounter = new AtomicInteger(0);
+    public static final int DEFAULT_RING_BUFFER_CAPACITY = 65536;
+    public static final int RETIRE_AFTER_CALM_PRUNES = 3;
+    private static final int REPLAY_BATCH_SIZE = 1024;
 
     public final HealthCheck healthcheck;
 
@@ -47,17 +98,44 @@ public class WritingWorkerManager<T> {
     private final int unhealthyQueueDepthThreshold;
     private final int pruneIntervalSeconds;
     /*
-    queues is synchronized using itself as a monitor. Only getQueueFor puts new data; accessed concurrently.
-    Only prune removes removes data; runs single-threaded.
+    Keyed by cohort start time in epoch millis. Only lookupCohort puts new data; accessed concurrently.
+    Only retire removes data; called by prune, which runs single-threaded.
      */
-    private final Map<DateTime,BlockingQueue<T>> queues;
+    private final CopyOnWriteLongMap<Cohort<T>> cohorts;
+    /*
+    The most recent cohort looked up; lets record() skip getStartTime and the map for the common case. May briefly
+    hold a retired cohort, which getCohortFor ignores.
+     */
+    private volatile Cohort<T> currentCohort;
     /*
     works is synchronized using itself as a monitor. Only launchNewWorker puts new data; accessed concurrently.
     Only prune alters the List values or removes keys; runs single-threaded.
      */
-    private final Map<DateTime, List<Thread>> workers;
-    private final ExecutorService asyncWorkerCreator;
+    private final Map<DateTime, List<RunningWorker>> workers;
+    private ExecutorService workerExecutor;
+    private boolean ownsWorkerExecutor;
+    private final ThreadPoolExecutor asyncWorkerCreator;
     private PruneJob pruneJob;
+    private ReplayJob replayJob;
+    //Backpressure configuration; set before start().
+    private int queueCapacity = Integer.MAX_VALUE;
+    private QueueFullPolicy queueFullPolicy = QueueFullPolicy.BLOCK;
+    private long blockTimeoutMillis = 0L;
+    private OverflowSpillFile<T> spillFile;
+    private QueueType queueType = QueueType.LINKED;
+    //Scaling configuration; set before start(). Autoscaling is disabled when latencyObjectiveMillis is 0.
+    private long latencyObjectiveMillis = 0L;
+    private int maxWorkersPerCohort = NUM_PROCESSORS;
+    private final Set<WorkerScalingListener> scalingListeners = new HashSet<>();
+    //Journal configuration; set before start().
+    private SpillJournal<T> journal;
+    private int journalAtQueueDepth;
+    private long journalCommitDelayMillis;
+    //Journal position up to which entries have been queued; set by replay.
+    private volatile long replayedPosition;
+    private long committedPosition;
+    //Positions awaiting commit, oldest first. Only accessed by prune.
+    private final Deque<JournalCheckpoint<T>> journalCheckpoints = new ArrayDeque<>();
 
     public WritingWorkerManager(FileRollingScheme rollingScheme, LogFileTracker tracker,
                                 WritingWorkerFactory<T> factory, int pruneIntervalSeconds,
@@ -79,9 +157,13 @@ public class WritingWorkerManager<T> {
         this.spawnNewWorkerAtQueueDepth = spawnThreshold;
         this.unhealthyQueueDepthThreshold = unhealthyThreshold;
         this.pruneIntervalSeconds = pruneIntervalSeconds;
-        this.queues = new HashMap<>();
+        this.cohorts = new CopyOnWriteLongMap<>();
+        this.currentCohort = Cohort.none();
         this.workers = new HashMap<>();
-        this.asyncWorkerCreator = Executors.newSingleThreadExecutor();
+        //One thread at most, and none while there is nothing to launch.
+        this.asyncWorkerCreator = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat(WritingWorkerManager.class.getSimpleName() + "-" + instanceCounter.incrementAndGet() + "-launcher").build());
 
         this.healthcheck = new HealthCheck() {
             protected Result check() throws Exception {
@@ -100,8 +182,7 @@ public class WritingWorkerManager<T> {
     protected final Gauge<Integer> queueCountGauge = new Gauge<Integer>() {
         @Override
         public Integer getValue() {
-            //skip synchronization, allow stale data.
-            return queues.size();
+            return cohorts.size();
         }
     };
 
@@ -109,14 +190,54 @@ public class WritingWorkerManager<T> {
         @Override
         public Integer getValue() {
             int sum = 0;
-            synchronized (queues) {
-                for (BlockingQueue<T> q : queues.values())
-                    sum += q.size();
-            }
+            for (Cohort<T> cohort : cohorts.values())
+                sum += cohort.queue.size();
             return sum;
         }
     };
 
+    /**
+     * Items discarded because their queue was full.
+     */
+    protected final Meter droppedMeter = new Meter();
+
+    /**
+     * Items written to the {@link OverflowSpillFile} because their queue was full.
+     */
+    protected final Meter spilledMeter = new Meter();
+
+    /**
+     * Estimated enqueue-to-write latency in milliseconds, per cohort per prune. Only updated under autoscaling.
+     */
+    protected final Histogram queueLatencyHistogram = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Items per second drained from a cohort's queue, divided by its worker count, per prune. Only updated under
+     * autoscaling.
+     */
+    protected final Histogram workerThroughputHistogram = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Items appended to the {@link SpillJournal} instead of being queued.
+     */
+    protected final Meter journaledMeter = new Meter();
+
+    /**
+     * Items moved from the {@link SpillJournal} back onto their queues.
+     */
+    protected final Meter replayedMeter = new Meter();
+
+    protected final Gauge<Long> journalBacklogGauge = new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+            return journal == null ? 0L : journal.size();
+        }
+    };
+
+    protected final Meter workersAddedMeter = new Meter();
+
+    protected final Meter workersRetiredMeter = new Meter();
+
     protected final Gauge<Integer> workerCountGauge = new Gauge<Integer>() {
         @Override
         public Integer getValue() {
@@ -125,6 +246,128 @@ public class WritingWorkerManager<T> {
         }
     };
 
+    /**
+     * Bound each cohort's queue. Must be called before {@link #start()}.
+     * @param capacity maximum number of items queued per cohort
+     * @param policy what to do with items that do not fit
+     * @param blockTimeoutMillis for {@link QueueFullPolicy#BLOCK}, how long to wait for space before dropping
+     * @return this manager
+     */
+    public WritingWorkerManager<T> withBoundedQueues(int capacity, QueueFullPolicy policy, long blockTimeoutMillis) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        this.queueCapacity = capacity;
+        this.queueFullPolicy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Spill file used by {@link QueueFullPolicy#SPILL}. Must be called before {@link #start()}.
+     * @return this manager
+     */
+    public WritingWorkerManager<T> withSpillFile(OverflowSpillFile<T> spillFile) {
+        this.spillFile = spillFile;
+        return this;
+    }
+
+    /**
+     * Run workers on the given executor instead of a pool of the manager's own. The executor is not shut down by
+     * {@link #stop()}, so it may be shared by several managers. Must be called before {@link #start()}.
+     * @param executor runs each worker to completion; must allow as many concurrent tasks as there are live workers
+     * @return this manager
+     */
+    public WritingWorkerManager<T> withWorkerExecutor(ExecutorService executor) {
+        this.workerExecutor = executor;
+        this.ownsWorkerExecutor = false;
+        return this;
+    }
+
+    /**
+     * Journal items on disk rather than queue them while the queue for their cohort is deep. Must be called before
+     * {@link #start()}.
+     * @param atQueueDepth journal items recorded for a cohort whose queue holds at least this many; replay once all
+     *                     queues together hold fewer than half this many
+     * @param commitDelayMillis for workers which do not implement {@link FlushReporting}, how long after their items
+     *                          are taken off the queues before they are considered written; should exceed the
+     *                          workers' flush interval. Items not yet known to be written are replayed again after a
+     *                          crash.
+     * @return this manager
+     */
+    public WritingWorkerManager<T> withSpillJournal(SpillJournal<T> journal, int atQueueDepth, long commitDelayMillis) {
+        if (atQueueDepth < 1 || commitDelayMillis < 0)
+            throw new IllegalArgumentException("Journal depth must be positive and commit delay not negative.");
+        this.journal = journal;
+        this.journalAtQueueDepth = atQueueDepth;
+        this.journalCommitDelayMillis = commitDelayMillis;
+        this.replayedPosition = this.committedPosition = journal.getReadPosition();
+        return this;
+    }
+
+    /**
+     * Must be called before {@link #start()}.
+     * @return this manager
+     */
+    public WritingWorkerManager<T> withQueueType(QueueType queueType) {
+        this.queueType = queueType;
+        return this;
+    }
+
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    /**
+     * Size each cohort's workers to a latency objective instead of by queue depth. Must be called before
+     * {@link #start()}.
+     * @param latencyObjectiveMillis add workers while estimated enqueue-to-write latency exceeds this
+     * @param maxWorkersPerCohort never run more workers than this for one cohort
+     * @return this manager
+     */
+    public WritingWorkerManager<T> withAutoscaling(long latencyObjectiveMillis, int maxWorkersPerCohort) {
+        if (latencyObjectiveMillis < 1 || maxWorkersPerCohort < 1)
+            throw new IllegalArgumentException("Latency objective and worker limit must be positive.");
+        this.latencyObjectiveMillis = latencyObjectiveMillis;
+        this.maxWorkersPerCohort = maxWorkersPerCohort;
+        return this;
+    }
+
+    /**
+     * Never run more than this many workers for one cohort; defaults to one per processor. Must be called before
+     * {@link #start()}.
+     * @return this manager
+     */
+    public WritingWorkerManager<T> withMaxWorkersPerCohort(int maxWorkersPerCohort) {
+        if (maxWorkersPerCohort < 1)
+            throw new IllegalArgumentException("Worker limit must be positive: " + maxWorkersPerCohort);
+        this.maxWorkersPerCohort = maxWorkersPerCohort;
+        return this;
+    }
+
+    public boolean addScalingListener(WorkerScalingListener listener) {
+        synchronized (scalingListeners) {
+            return scalingListeners.add(listener);
+        }
+    }
+
+    public boolean removeScalingListener(WorkerScalingListener listener) {
+        synchronized (scalingListeners) {
+            return scalingListeners.remove(listener);
+        }
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public QueueFullPolicy getQueueFullPolicy() {
+        return queueFullPolicy;
+    }
+
+    public long getBlockTimeoutMillis() {
+        return blockTimeoutMillis;
+    }
+
     /**
      * Submit an item to be recorded in a log file.
      * @param timeStamp Time to attribute item to
@@ -140,7 +383,23 @@ public class WritingWorkerManager<T> {
      * @param item the item
      */
     public void record(long timeStamp, T item) {
-        getQueueFor(timeStamp).add(item);
+        Cohort<T> cohort = getCohortFor(timeStamp);
+        //Once anything is journaled, journal everything until it is replayed, to keep order.
+        if (journal != null && (!journal.isEmpty() || cohort.queue.size() >= journalAtQueueDepth) && journal(timeStamp, item))
+            return;
+        enqueue(cohort, timeStamp, item);
+    }
+
+    private void enqueue(Cohort<T> cohort, long timeStamp, T item) {
+        boolean queued = cohort.queue.offer(item) || queueFull(cohort.queue, timeStamp, item);
+        //Counted once queued, so that enqueued less depth never overstates what workers have taken.
+        if (queued && (latencyObjectiveMillis > 0 || journal != null))
+            cohort.enqueued.incrementAndGet();
+        if (cohort.queue.size() >= cohort.spawnWatermark)
+            signalDepth(cohort);
+        if (cohort.retired)
+            //Raced with prune; make sure nothing is left behind in a queue no worker will read.
+            reroute(cohort);
     }
 
     /**
@@ -148,61 +407,275 @@ public class WritingWorkerManager<T> {
      * @param item the item
      */
     public void record(T item) {
-        getQueueFor(System.currentTimeMillis()).add(item);
+        record(System.currentTimeMillis(), item);
     }
 
-    protected BlockingQueue<T> getQueueFor(DateTime timeStamp) {
-        return getQueueFor(timeStamp.getMillis());
+    /**
+     * @return false if the item could not be journaled and should be queued after all
+     */
+    private boolean journal(long timeStamp, T item) {
+        try {
+            journal.append(timeStamp, item);
+            journaledMeter.mark();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to journal item to {}, queueing it instead: ({}) {}", journal.getDirectory(), e.getClass().getSimpleName(), e.getMessage());
+            return false;
+        }
     }
 
-    protected BlockingQueue<T> getQueueFor(long timeStamp) {
-        final DateTime startTime = rollingScheme.getStartTime(timeStamp);
-        final BlockingQueue<T> queue;
-        boolean shouldLaunchNewWorker = false;
-
-        synchronized (queues) {
-            BlockingQueue<T> existing = queues.get(startTime);
-            if (existing == null) {
-                queue = new LinkedBlockingQueue<>();
-                queues.put(startTime, queue);
-                shouldLaunchNewWorker = true;
-            } else {
-                queue = existing;
+    /**
+     * Moves journaled items back onto their queues while all queues together hold fewer than half the journaling
+     * depth. Called only by the replay job.
+     */
+    protected void replayJournal() {
+        int lowWater = Math.max(1, journalAtQueueDepth / 2);
+        while (!journal.isEmpty()) {
+            int room = lowWater - queueDepthGauge.getValue();
+            if (room <= 0)
+                return;
+            List<SpillJournal.Entry<T>> entries;
+            try {
+                entries = journal.read(Math.min(room, REPLAY_BATCH_SIZE));
+            } catch (IOException e) {
+                LOG.error("Unable to read journal {}: ({}) {}", journal.getDirectory(), e.getClass().getSimpleName(), e.getMessage());
+                return;
+            }
+            for (SpillJournal.Entry<T> entry : entries)
+                enqueue(getCohortFor(entry.timeStamp), entry.timeStamp, entry.item);
+            replayedPosition = journal.getReadPosition();
+            replayedMeter.mark(entries.size());
+        }
+    }
+
+    /**
+     * Checkpoints the position replay has reached, and commits the newest checkpoint whose items are known to be
+     * written. Called only from prune.
+     */
+    protected void commitJournal() {
+        long position = replayedPosition;
+        long newest = journalCheckpoints.isEmpty() ? committedPosition : journalCheckpoints.peekLast().position;
+        if (position != newest)
+            journalCheckpoints.addLast(new JournalCheckpoint<>(position, cohorts.values()));
+        long now = System.nanoTime();
+        JournalCheckpoint<T> committable = null;
+        while (!journalCheckpoints.isEmpty() && isWritten(journalCheckpoints.peekFirst(), now))
+            committable = journalCheckpoints.pollFirst();
+        try {
+            if (committable != null) {
+                journal.commit(committable.position);
+                committedPosition = committable.position;
+            }
+            journal.flush();
+        } catch (IOException e) {
+            LOG.error("Unable to commit journal {}: ({}) {}", journal.getDirectory(), e.getClass().getSimpleName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the {@link QueueFullPolicy} to an item which did not fit in its queue.
+     * @return whether the item ended up in the queue after all
+     */
+    private boolean queueFull(BlockingQueue<T> queue, long timeStamp, T item) {
+        if (queueCapacity == Integer.MAX_VALUE) {
+            //Only the implied bound of a ring buffer fills; wait for space rather than lose what an unbounded queue keeps.
+            try {
+                queue.put(item);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                droppedMeter.mark();
+                return false;
             }
         }
+        switch (queueFullPolicy) {
+            case BLOCK:
+                try {
+                    if (queue.offer(item, blockTimeoutMillis, TimeUnit.MILLISECONDS))
+                        return true;
+                    droppedMeter.mark();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedMeter.mark();
+                }
+                return false;
+            case DROP_NEWEST:
+                droppedMeter.mark();
+                return false;
+            case DROP_OLDEST:
+                do {
+                    if (queue.poll() != null)
+                        droppedMeter.mark();
+                } while (!queue.offer(item));
+                return true;
+            case SPILL:
+                try {
+                    spillFile.spill(timeStamp, item);
+                    spilledMeter.mark();
+                } catch (IOException | RuntimeException e) {
+                    droppedMeter.mark();
+                    LOG.warn("Unable to spill item to {}, dropping it: ({}) {}", spillFile.getPath(), e.getClass().getSimpleName(), e.getMessage());
+                }
+                return false;
+            default:
+                throw new IllegalStateException("Unsupported policy " + queueFullPolicy);
+        }
+    }
 
-        if (shouldLaunchNewWorker) {
+    /**
+     * Asks for another worker for a cohort whose queue has crossed its watermark. At most one request per cohort is
+     * outstanding, so a burst of records costs one task rather than one per item.
+     */
+    private void signalDepth(final Cohort<T> cohort) {
+        if (!cohort.scaleUpPending.compareAndSet(false, true))
+            return;
+        try {
             asyncWorkerCreator.submit(new Runnable() {
                 public void run() {
+                    boolean launched = false;
                     try {
-                        launchNewWorker(queue, startTime, 1);
+                        launched = scaleUp(cohort);
                     } catch (Exception e) {
                         LOG.error("Could not launch WritingWorker", e);
+                    } finally {
+                        cohort.scaleUpPending.set(false);
                     }
+                    //Records that arrived while this request was pending did not signal.
+                    if (launched && cohort.queue.size() >= cohort.spawnWatermark)
+                        signalDepth(cohort);
                 }
             });
+        } catch (RejectedExecutionException e) {
+            cohort.scaleUpPending.set(false);
+        }
+    }
+
+    /**
+     * Launches another worker for the cohort if its queue is still at or above the watermark, then raises the
+     * watermark to match the new worker count. Runs on asyncWorkerCreator.
+     * @return whether a worker was launched
+     */
+    private boolean scaleUp(Cohort<T> cohort) {
+        if (cohort.retired)
+            return false;
+        boolean launched = false;
+        int workerCount = getWorkersForStartTime(cohort.startTime).size();
+        if (cohort.queue.size() >= cohort.spawnWatermark && workerCount < maxWorkersPerCohort) {
+            if (launchNewWorker(cohort.queue, cohort.startTime, workerCount + 1)) {
+                launched = true;
+                workerCount++;
+                LOG.debug("Added worker for {} on reaching queue depth {}.", rollingScheme.getRepresentation(cohort.startTime), cohort.spawnWatermark);
+                workersAddedMeter.mark();
+                notifyScalingListeners(true, cohort.startTime, workerCount, -1L);
+            }
+        }
+        cohort.spawnWatermark = spawnWatermark(workerCount);
+        return launched;
+    }
+
+    /**
+     * Queue depth at which a cohort with the given number of workers asks for another.
+     */
+    private int spawnWatermark(int workerCount) {
+        if (workerCount >= maxWorkersPerCohort)
+            return Integer.MAX_VALUE;
+        return (int) Math.min(Integer.MAX_VALUE, (long) spawnNewWorkerAtQueueDepth * Math.max(1, workerCount));
+    }
+
+    protected BlockingQueue<T> getQueueFor(DateTime timeStamp) {
+        return getQueueFor(timeStamp.getMillis());
+    }
+
+    protected BlockingQueue<T> getQueueFor(long timeStamp) {
+        return getCohortFor(timeStamp).queue;
+    }
+
+    private Cohort<T> getCohortFor(long timeStamp) {
+        Cohort<T> cohort = currentCohort;
+        if (timeStamp >= cohort.startMillis && timeStamp < cohort.endMillis && !cohort.retired)
+            return cohort;
+        return lookupCohort(timeStamp);
+    }
+
+    private Cohort<T> lookupCohort(long timeStamp) {
+        long key = RollingSchemes.getStartTimeMillis(rollingScheme, timeStamp);
+        Cohort<T> cohort = cohorts.get(key);
+        if (cohort == null) {
+            final DateTime startTime = rollingScheme.getStartTime(timeStamp);
+            long endMillis = RollingSchemes.getSubsequentStartTime(rollingScheme, startTime).getMillis();
+            //Only serve [start, end) from currentCohort if the scheme itself puts the end of that range in this period,
+            //so that routing never depends on what is cached. Otherwise every item takes the lookup path.
+            if (endMillis <= key || RollingSchemes.getStartTimeMillis(rollingScheme, endMillis - 1) != key)
+                endMillis = key;
+            Cohort<T> created = new Cohort<>(startTime, endMillis, newQueue(), spawnWatermark(1));
+            cohort = cohorts.putIfAbsent(key, created);
+            if (cohort == null) {
+                cohort = created;
+                final BlockingQueue<T> queue = created.queue;
+                asyncWorkerCreator.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            launchNewWorker(queue, startTime, 1);
+                        } catch (Exception e) {
+                            LOG.error("Could not launch WritingWorker", e);
+                        }
+                    }
+                });
+            }
         }
+        //Only move forward; stragglers for an earlier cohort should not evict the current one.
+        if (cohort.startMillis >= currentCohort.startMillis)
+            currentCohort = cohort;
+        return cohort;
+    }
+
+    protected BlockingQueue<T> newQueue() {
+        switch (queueType) {
+            case RING_BUFFER:
+                return new RingBufferQueue<>(queueCapacity == Integer.MAX_VALUE ? DEFAULT_RING_BUFFER_CAPACITY : queueCapacity);
+            default:
+                return new LinkedBlockingQueue<>(queueCapacity);
+        }
+    }
+
+    /**
+     * Removes an idle cohort. Items recorded concurrently are re-recorded into a fresh cohort.
+     */
+    private void retire(Cohort<T> cohort) {
+        cohorts.remove(cohort.startMillis, cohort);
+        cohort.retired = true;
+        if (currentCohort == cohort)
+            currentCohort = Cohort.none();
+        reroute(cohort);
+    }
 
-        return queue;
+    private void reroute(Cohort<T> retired) {
+        T item;
+        while ((item = retired.queue.poll()) != null)
+            record(retired.startMillis, item);
     }
 
     /**
-     * Closes and creates workers as needed depending on rolling scheme and queue depth.
+     * Closes workers and cohorts that are done according to the rolling scheme, replaces workers that have died, and
+     * applies autoscaling if enabled. Depth-triggered scale-up happens on record() instead.
      */
     protected void prune() {
         LOG.trace("Pruning...");
+        flushSpillFile();
+        if (journal != null)
+            commitJournal();
         //Clear out any entries for workers that are no longer alive
-        Set<Map.Entry<DateTime, List<Thread>>> workerEntries;
+        Set<Map.Entry<DateTime, List<RunningWorker>>> workerEntries;
         //This is the only method that deletes from workers, and it is not run concurrently.
         //So sufficient to guard iteration against insertion of new data by getQueueFor.
         //Re-acquire lock before making changes.
         synchronized (workers) {
             workerEntries = new HashSet<>(workers.entrySet());
         }
-        for (Map.Entry<DateTime, List<Thread>> entry : workerEntries) {
-            List<Thread> zombies = new LinkedList<>();
-            for(Thread worker : entry.getValue())
-                if (!worker.isAlive())
+        for (Map.Entry<DateTime, List<RunningWorker>> entry : workerEntries) {
+            List<RunningWorker> zombies = new LinkedList<>();
+            for(RunningWorker worker : entry.getValue())
+                if (worker.exited.isDone())
                     zombies.add(worker);
             if (!zombies.isEmpty()) {
                 if (zombies.size() == entry.getValue().size()) {
@@ -219,44 +692,118 @@ public class WritingWorkerManager<T> {
             }
         }
 
-        Set<Map.Entry<DateTime,BlockingQueue<T>>> queueEntries;
-        //This is the only method that deletes from queues, and it is not run concurrently.
-        //So sufficient to guard iteration against insertion of new data by getQueueFor.
-        //Re-acquire lock before making changes.
-        synchronized(queues) {
-            queueEntries = new HashSet<>(queues.entrySet());
-        }
-        for (Map.Entry<DateTime,BlockingQueue<T>> entry : queueEntries) {
-            DateTime startTime = entry.getKey();
-            BlockingQueue<T> queue = entry.getValue();
+        for (Cohort<T> cohort : cohorts.values()) {
+            DateTime startTime = cohort.startTime;
+            BlockingQueue<T> queue = cohort.queue;
 
             if (rollingScheme.isTimeToClose(startTime) && queue.isEmpty()) {
                 //There is no work left. Shut down the workers.
-                List<Thread> workersForQueue = getWorkersForStartTime(startTime);
+                List<RunningWorker> workersForQueue = getWorkersForStartTime(startTime);
                 if (workersForQueue.isEmpty()) {
                     LOG.debug("Done with stale queue {}", rollingScheme.getRepresentation(startTime));
-                    synchronized (queues) {
-                        queues.remove(startTime);
-                    }
+                    retire(cohort);
                 } else {
                     LOG.debug("Closing {} remaining workers for stale queue {}", workersForQueue.size(), rollingScheme.getRepresentation(startTime));
-                    for (Thread worker : workersForQueue)
-                        worker.interrupt();
+                    for (RunningWorker worker : workersForQueue)
+                        worker.stop();
                 }
-            } else if (!queue.isEmpty()) {
-                //There is work left. Ensure sufficient worker count.
-                List<Thread> workersForQueue = getWorkersForStartTime(startTime);
-                boolean needAnotherWorker = workersForQueue.isEmpty() || (queue.size() >= spawnNewWorkerAtQueueDepth && workersForQueue.size() < NUM_PROCESSORS);
-                if (needAnotherWorker)
-                    launchNewWorker(queue, startTime, workersForQueue.size() + 1);
+            } else {
+                if (latencyObjectiveMillis > 0) {
+                    autoscale(cohort);
+                } else if (!queue.isEmpty() && getWorkersForStartTime(startTime).isEmpty()) {
+                    //There is work left but every worker has exited.
+                    launchNewWorker(queue, startTime, 1);
+                }
+                //Workers may have exited or been retired since the watermark was last raised.
+                cohort.spawnWatermark = spawnWatermark(getWorkersForStartTime(startTime).size());
+                if (queue.size() >= cohort.spawnWatermark)
+                    signalDepth(cohort);
             }
         }
     }
 
-    protected List<Thread> getWorkersForStartTime(DateTime startTime) {
-        LinkedList<Thread> result = new LinkedList<>();
+    /**
+     * Adds or retires a worker for the cohort according to estimated latency. Called only from prune.
+     */
+    private void autoscale(Cohort<T> cohort) {
+        List<RunningWorker> workersForQueue = getWorkersForStartTime(cohort.startTime);
+        long now = System.nanoTime();
+        long enqueued = cohort.enqueued.get();
+        int depth = cohort.queue.size();
+        long elapsedNanos = now - cohort.lastCheckNanos;
+        long drained = (enqueued - cohort.lastEnqueued) - (depth - cohort.lastDepth);
+        boolean firstCheck = cohort.lastCheckNanos == 0L;
+        cohort.lastCheckNanos = now;
+        cohort.lastEnqueued = enqueued;
+        cohort.lastDepth = depth;
+
+        if (workersForQueue.isEmpty()) {
+            if (depth > 0)
+                launchNewWorker(cohort.queue, cohort.startTime, 1);
+            return;
+        }
+        if (firstCheck || elapsedNanos <= 0)
+            return;
+
+        double drainPerSecond = drained * 1e9 / elapsedNanos;
+        long latencyMillis;
+        if (depth == 0)
+            latencyMillis = 0L;
+        else if (drainPerSecond <= 0)
+            latencyMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + latencyObjectiveMillis; //stalled; assume breach
+        else
+            latencyMillis = (long) (depth * 1000 / drainPerSecond);
+        queueLatencyHistogram.update(latencyMillis);
+        workerThroughputHistogram.update((long) (drainPerSecond / workersForQueue.size()));
+
+        if (latencyMillis > latencyObjectiveMillis) {
+            cohort.calmPrunes = 0;
+            if (workersForQueue.size() < maxWorkersPerCohort
+                    && launchNewWorker(cohort.queue, cohort.startTime, workersForQueue.size() + 1)) {
+                LOG.info("Added worker for {}; estimated latency {}ms exceeds {}ms.", rollingScheme.getRepresentation(cohort.startTime), latencyMillis, latencyObjectiveMillis);
+                workersAddedMeter.mark();
+                notifyScalingListeners(true, cohort.startTime, workersForQueue.size() + 1, latencyMillis);
+            }
+        } else if (latencyMillis <= latencyObjectiveMillis / 4 && workersForQueue.size() > 1) {
+            if (++cohort.calmPrunes >= RETIRE_AFTER_CALM_PRUNES) {
+                cohort.calmPrunes = 0;
+                LOG.info("Retiring worker for {}; estimated latency {}ms is well under {}ms.", rollingScheme.getRepresentation(cohort.startTime), latencyMillis, latencyObjectiveMillis);
+                workersForQueue.get(workersForQueue.size() - 1).stop();
+                workersRetiredMeter.mark();
+                notifyScalingListeners(false, cohort.startTime, workersForQueue.size() - 1, latencyMillis);
+            }
+        } else {
+            cohort.calmPrunes = 0;
+        }
+    }
+
+    private void notifyScalingListeners(boolean added, DateTime startTime, int workerCount, long latencyMillis) {
+        List<WorkerScalingListener> toNotify;
+        synchronized (scalingListeners) {
+            toNotify = new ArrayList<>(scalingListeners);
+        }
+        for (WorkerScalingListener listener : toNotify) {
+            if (added)
+                listener.workerAdded(startTime, workerCount, latencyMillis);
+            else
+                listener.workerRetired(startTime, workerCount, latencyMillis);
+        }
+    }
+
+    private void flushSpillFile() {
+        if (spillFile != null) {
+            try {
+                spillFile.flush();
+            } catch (IOException e) {
+                LOG.error("Unable to flush spill file {}: ({}) {}", spillFile.getPath(), e.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+    private List<RunningWorker> getWorkersForStartTime(DateTime startTime) {
+        LinkedList<RunningWorker> result = new LinkedList<>();
         synchronized (workers) {
-            List<Thread> l = workers.get(startTime);
+            List<RunningWorker> l = workers.get(startTime);
             if (l!=null)
                 result.addAll(l);
         }
@@ -268,36 +815,69 @@ public class WritingWorkerManager<T> {
      * @param queue queue from which worker will fetch events
      * @param startTime used to generate filename for worker's output
      * @param maxCount abort if queue already has this many workers
+     * @return whether a worker was launched
      */
-    protected void launchNewWorker(BlockingQueue<T> queue, DateTime startTime, int maxCount) {
+    protected boolean launchNewWorker(BlockingQueue<T> queue, DateTime startTime, int maxCount) {
         synchronized (workers) {
-            List<Thread> workersForQueue = workers.get(startTime);
+            List<RunningWorker> workersForQueue = workers.get(startTime);
             int currentCount = workersForQueue == null ? 0 : workersForQueue.size();
             if (currentCount < maxCount) {
                 LOG.debug("Launching new worker for {}", rollingScheme.getRepresentation(startTime));
                 String logFilePathPattern = rollingScheme.makeOutputPathPattern(startTime);
                 LogFile logFileRecord = tracker.open(rollingScheme.getRepresentation(startTime), logFilePathPattern, startTime);
-                Thread worker = factory.buildWorker(queue, logFileRecord, tracker);
+                RunningWorker worker = new RunningWorker(factory.buildWorker(queue, logFileRecord, tracker), logFileRecord, startTime);
+                try {
+                    if (worker.worker instanceof NonBlockingWorker)
+                        worker.startNonBlocking();
+                    else
+                        worker.execution = getWorkerExecutor().submit(worker);
+                } catch (RejectedExecutionException e) {
+                    LOG.error("Worker executor rejected worker for {}. Leaving {} WRITING.", rollingScheme.getRepresentation(startTime), logFileRecord.getOriginPath(), e);
+                    return false;
+                }
                 if (workersForQueue == null) {
                     workersForQueue = new LinkedList<>();
                     workers.put(startTime,workersForQueue);
                 }
                 workersForQueue.add(worker);
-                worker.start();
+                return true;
             } else {
                 LOG.debug("Skip launch of new worker for {}; already have {}.", rollingScheme.getRepresentation(startTime), maxCount);
+                return false;
             }
         }
     }
 
+    /**
+     * Guarded by workers.
+     */
+    private ExecutorService getWorkerExecutor() {
+        if (workerExecutor == null) {
+            //Cached: each worker holds a thread until it exits, and threads of exited workers are reused.
+            workerExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat(WritingWorkerManager.class.getSimpleName() + "-worker-%d").build());
+            ownsWorkerExecutor = true;
+        }
+        return workerExecutor;
+    }
+
     public void start() throws Exception {
         LOG.info("Starting {}.",WritingWorkerManager.class.getSimpleName());
+        if (queueFullPolicy == QueueFullPolicy.SPILL && spillFile == null)
+            throw new IllegalStateException("Queue full policy " + QueueFullPolicy.SPILL + " requires a spill file.");
 
         //On startup, look for database records that were left hanging and tidy up.
         cleanStaleEntries();
         pruneJob = new PruneJob();
         pruneJob.startAsync();
         pruneJob.awaitRunning();
+        if (journal != null) {
+            if (!journal.isEmpty())
+                LOG.info("Replaying {} items recovered from journal {}.", journal.size(), journal.getDirectory());
+            replayJob = new ReplayJob();
+            replayJob.startAsync();
+            replayJob.awaitRunning();
+        }
         LOG.info("Started {}.",WritingWorkerManager.class.getSimpleName());
     }
 
@@ -311,7 +891,11 @@ public class WritingWorkerManager<T> {
         try (ResultIterator<LogFile> staleEntries = tracker.findMine(WRITING)){
             while (staleEntries.hasNext()) {
                 LogFile staleEntry = staleEntries.next();
-                if (Files.exists(staleEntry.getOriginPath())) {
+                if (staleEntry.getPrepPath() != null) {
+                    //Prepared while writing; the compressed and encrypted stream was never completed.
+                    LOG.warn("Found stale WRITING record for {}. Prepared output {} is incomplete, marking WRITE_ERROR.", staleEntry.getOriginPath(), staleEntry.getPrepPath());
+                    tracker.writeError(staleEntry); //ignore update failures
+                } else if (Files.exists(staleEntry.getOriginPath())) {
                     LOG.warn("Found stale WRITING record for {}. Data exists on disk, marking WRITTEN.", staleEntry.getOriginPath());
                     tracker.written(staleEntry); //ignore update failures
                 } else {
@@ -326,49 +910,296 @@ public class WritingWorkerManager<T> {
         LOG.info("Stopping {}.",WritingWorkerManager.class.getSimpleName());
         pruneJob.stopAsync();
         pruneJob.awaitTerminated();
+        if (replayJob != null) {
+            //Whatever is still journaled stays there for the next start.
+            replayJob.stopAsync();
+            replayJob.awaitTerminated();
+        }
 
         //I believe the DropWizard lifecycle is:
         //stop taking requests, then shutdown the Managed resources in reverse-startup
         //order. In this case, the way to do a graceful shutdown is to wait for the queues
         //to drain before shutting down the workers.
+        //Pruning has stopped, so nothing would replace a worker which died; do not wait on queues left without one.
+        Set<Cohort<T>> abandoned = new HashSet<>();
         int remainingItems = Integer.MAX_VALUE;
         while (remainingItems > 0) {
             remainingItems = 0;
-            for (Queue<T> q : queues.values())
-                remainingItems += q.size();
+            for (Cohort<T> cohort : cohorts.values()) {
+                int depth = cohort.queue.size();
+                if (depth == 0 || abandoned.contains(cohort))
+                    continue;
+                if (hasLiveWorker(cohort.startTime) || isLaunchPending()) {
+                    remainingItems += depth;
+                } else {
+                    abandoned.add(cohort);
+                    LOG.error("No live worker left to drain {} item(s) queued for {}. They will not be written.",
+                            depth, rollingScheme.getRepresentation(cohort.startTime));
+                }
+            }
             if (remainingItems > 0) {
                 LOG.info("Waiting on queues to drain. {} items remaining.", remainingItems);
                 Thread.sleep(1000L);
             }
         }
         LOG.info("Queues drained. Stopping workers.");
-        int count=0;
+        List<RunningWorker> running = new ArrayList<>();
         synchronized (workers) {
-        for (List<Thread> workerList : workers.values())
-            for (Thread worker : workerList) {
-                worker.interrupt();
-                count++;
-            }
+            for (List<RunningWorker> workerList : workers.values())
+                running.addAll(workerList);
         }
-        for (Thread worker : getWorkerThreadSnapshot()) {
-            worker.join();
+        for (RunningWorker worker : running)
+            worker.stop();
+        int count = running.size();
+        for (RunningWorker worker : running) {
+            try {
+                worker.exited.get();
+            } catch (ExecutionException e) {
+                LOG.warn("Worker for {} failed.", worker.logFileRecord.getOriginPath(), e.getCause());
+            }
             LOG.debug("Stopped one. {} remain.", --count);
         }
+        synchronized (workers) {
+            if (ownsWorkerExecutor) {
+                workerExecutor.shutdown();
+                workerExecutor = null;
+            }
+        }
         LOG.info("All workers stopped.");
+        if (factory instanceof AbstractWritingWorkerFactory)
+            ((AbstractWritingWorkerFactory<T>) factory).closeGroupCommitter();
+        if (journal != null) {
+            try {
+                //Everything replayed has now been written, unless left in an abandoned queue; then replay it again.
+                if (abandoned.isEmpty())
+                    journal.commit(journal.getReadPosition());
+            } catch (IOException e) {
+                LOG.error("Unable to commit journal {}: ({}) {}", journal.getDirectory(), e.getClass().getSimpleName(), e.getMessage());
+            }
+            journal.close();
+        }
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                LOG.error("Unable to close spill file {}: ({}) {}", spillFile.getPath(), e.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A checkpoint's items are written once they have all been taken off their queues and every live worker has since
+     * flushed whatever it took before then.
+     */
+    private boolean isWritten(JournalCheckpoint<T> checkpoint, long nowNanos) {
+        if (!checkpoint.taken) {
+            if (!checkpoint.isTaken())
+                return false;
+            checkpoint.taken = true;
+            checkpoint.takenNanos = nowNanos;
+        }
+        synchronized (workers) {
+            for (List<RunningWorker> workersForStartTime : workers.values()) {
+                for (RunningWorker worker : workersForStartTime) {
+                    if (worker.exited.isDone())
+                        continue;
+                    if (worker.worker instanceof FlushReporting) {
+                        if (((FlushReporting) worker.worker).getFlushedThroughNanos() - checkpoint.takenNanos < 0)
+                            return false;
+                    } else if (nowNanos - checkpoint.takenNanos < TimeUnit.MILLISECONDS.toNanos(journalCommitDelayMillis)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean hasLiveWorker(DateTime startTime) {
+        synchronized (workers) {
+            List<RunningWorker> workersForStartTime = workers.get(startTime);
+            if (workersForStartTime != null)
+                for (RunningWorker worker : workersForStartTime)
+                    if (!worker.exited.isDone())
+                        return true;
+        }
+        return false;
+    }
+
+    private boolean isLaunchPending() {
+        return asyncWorkerCreator.getActiveCount() > 0 || !asyncWorkerCreator.getQueue().isEmpty();
     }
 
     /**
      * For testing. :-/
      */
-    protected Set<Thread> getWorkerThreadSnapshot() {
-        Set<Thread> result = new HashSet<>();
+    protected Set<Runnable> getWorkerSnapshot() {
+        Set<Runnable> result = new HashSet<>();
         synchronized (workers) {
-            for (List<Thread> workersForStartTime : workers.values())
-                result.addAll(workersForStartTime);
+            for (List<RunningWorker> workersForStartTime : workers.values())
+                for (RunningWorker worker : workersForStartTime)
+                    result.add(worker.worker);
         }
         return result;
     }
 
+    /**
+     * A worker submitted to the worker executor. Stopping cancels the execution, which interrupts the worker if it is
+     * running; exited completes once the worker has returned (or, if stopped before it began, at once), so it can be
+     * awaited the way a Thread is joined. The executor thread takes the worker's name while running it.
+     *
+     * A {@link NonBlockingWorker} is instead started and stopped through its own methods, and exited follows its
+     * future.
+     */
+    private static class RunningWorker implements Runnable {
+        final Runnable worker;
+        final LogFile logFileRecord;
+        final String name;
+        final SettableFuture<Void> exited = SettableFuture.create();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        volatile Future<?> execution;
+
+        RunningWorker(Runnable worker, LogFile logFileRecord, DateTime startTime) {
+            this.worker = worker;
+            this.logFileRecord = logFileRecord;
+            Object file = logFileRecord == null || logFileRecord.getOriginPath() == null ? startTime : logFileRecord.getOriginPath().getFileName();
+            this.name = worker.getClass().getSimpleName() + "__" + file;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true))
+                return;
+            Thread thread = Thread.currentThread();
+            String poolName = thread.getName();
+            thread.setName(name);
+            try {
+                worker.run();
+                exited.set(null);
+            } catch (Throwable t) {
+                exited.setException(t);
+                throw t;
+            } finally {
+                thread.setName(poolName);
+            }
+        }
+
+        void startNonBlocking() {
+            claimed.set(true);
+            Futures.addCallback(((NonBlockingWorker) worker).start(), new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    exited.set(null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    exited.setException(t);
+                }
+            });
+        }
+
+        void stop() {
+            if (worker instanceof NonBlockingWorker)
+                ((NonBlockingWorker) worker).stop();
+            else if (claimed.compareAndSet(false, true))
+                exited.set(null); //never started; it never will
+            else if (execution != null)
+                execution.cancel(true);
+        }
+    }
+
+    /**
+     * A journal position whose entries had all been queued when it was taken, with how many items each cohort had
+     * been given by then. Those items have all left the queues once as many have been taken off each. Items put back
+     * by a failing worker count as not taken, so the estimate errs late.
+     */
+    private static class JournalCheckpoint<T> {
+        final long position;
+        final List<Cohort<T>> cohorts;
+        final long[] enqueued;
+        //Set by prune once isTaken, to when it was first seen so.
+        boolean taken;
+        long takenNanos;
+
+        JournalCheckpoint(long position, List<Cohort<T>> cohorts) {
+            this.position = position;
+            this.cohorts = cohorts;
+            this.enqueued = new long[cohorts.size()];
+            for (int i = 0; i < enqueued.length; i++)
+                enqueued[i] = cohorts.get(i).enqueued.get();
+        }
+
+        boolean isTaken() {
+            for (int i = 0; i < enqueued.length; i++) {
+                Cohort<T> cohort = cohorts.get(i);
+                if (cohort.enqueued.get() - cohort.queue.size() < enqueued[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A rolling cohort's queue and the time range it covers.
+     */
+    private static class Cohort<T> {
+        private static final Cohort<?> NONE = new Cohort<>(null, Long.MIN_VALUE, null, Integer.MAX_VALUE);
+
+        final DateTime startTime;
+        final long startMillis;
+        final long endMillis;
+        final BlockingQueue<T> queue;
+        volatile boolean retired;
+        //Depth at which record() asks for another worker; maintained by scaleUp and prune.
+        volatile int spawnWatermark;
+        final AtomicBoolean scaleUpPending = new AtomicBoolean();
+        //Autoscaling and journal checkpoint state. enqueued counts items queued by record() while either is in use;
+        //the rest is only updated by prune.
+        final AtomicLong enqueued = new AtomicLong();
+        long lastEnqueued;
+        int lastDepth;
+        long lastCheckNanos;
+        int calmPrunes;
+
+        Cohort(DateTime startTime, long endMillis, BlockingQueue<T> queue, int spawnWatermark) {
+            this.startTime = startTime;
+            this.startMillis = startTime == null ? Long.MIN_VALUE : startTime.getMillis();
+            this.endMillis = endMillis;
+            this.queue = queue;
+            this.spawnWatermark = spawnWatermark;
+        }
+
+        /**
+         * Placeholder covering no time at all.
+         */
+        @SuppressWarnings("unchecked")
+        static <T> Cohort<T> none() {
+            return (Cohort<T>) NONE;
+        }
+    }
+
+    /**
+     * Replays journaled items as queues drain; see {@link #replayJournal()}.
+     */
+    public class ReplayJob extends AbstractScheduledService
+    {
+        @Override
+        protected void runOneIteration() throws Exception {
+            try {
+                replayJournal();
+            } catch (Exception e) {
+                LOG.error("Unable to complete journal replay due to unexpected exception: ({}) {}",
+                        e.getClass(), e.getMessage(), e);
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(0L, 10L, TimeUnit.MILLISECONDS);
+        }
+    }
+
     public class PruneJob extends AbstractScheduledService
     {
 
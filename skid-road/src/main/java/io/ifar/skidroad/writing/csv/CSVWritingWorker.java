@@ -2,7 +2,6 @@ package io.ifar.skidroad.writing.csv;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.BlockingQueue;
 
@@ -11,11 +10,10 @@ import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import io.ifar.goodies.Tuple;
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.StreamingPrepper;
 import io.ifar.skidroad.tracking.LogFileTracker;
 import io.ifar.skidroad.writing.AbstractWritingWorker;
 
-import static java.nio.file.StandardOpenOption.*;
-
 /**
  * CSV-based {@link io.ifar.skidroad.writing.AbstractWritingWorker} implementation that consumes Tuples.
  */
@@ -39,7 +37,17 @@ public class CSVWritingWorker<T extends Tuple> extends AbstractWritingWorker<Csv
     public CSVWritingWorker(final BlockingQueue<T> queue, final LogFile logFileRecord, final int maxFlushIntervalSeconds,
                             final String nullRepresentation, final LogFileTracker tracker)
     {
-        super(queue, logFileRecord, maxFlushIntervalSeconds, tracker);
+        this(queue, logFileRecord, maxFlushIntervalSeconds, nullRepresentation, tracker, null);
+    }
+
+    /**
+     * @param streamingPrepper if not null, prepares output while writing it
+     */
+    public CSVWritingWorker(final BlockingQueue<T> queue, final LogFile logFileRecord, final int maxFlushIntervalSeconds,
+                            final String nullRepresentation, final LogFileTracker tracker,
+                            final StreamingPrepper streamingPrepper)
+    {
+        super(queue, logFileRecord, maxFlushIntervalSeconds, tracker, streamingPrepper);
         if (nullRepresentation != null) {
             schema = CSV_SCHEMA.rebuild().setNullValue(nullRepresentation).build();
         } else {
@@ -49,7 +57,7 @@ public class CSVWritingWorker<T extends Tuple> extends AbstractWritingWorker<Csv
 
     @Override
     protected CsvGenerator openForWriting(Path path) throws IOException {
-        OutputStream out = Files.newOutputStream(path, CREATE, WRITE, APPEND);
+        OutputStream out = openOutputStream(path);
         CsvGenerator generator = csvFactory.createGenerator(out);
         generator.setSchema(schema);
         return generator;
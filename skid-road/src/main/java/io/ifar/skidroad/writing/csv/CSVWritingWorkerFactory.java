@@ -2,14 +2,16 @@ package io.ifar.skidroad.writing.csv;
 
 import io.ifar.goodies.Tuple;
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.StreamingPrepper;
 import io.ifar.skidroad.tracking.LogFileTracker;
-import io.ifar.skidroad.writing.WritingWorkerFactory;
+import io.ifar.skidroad.writing.AbstractWritingWorkerFactory;
 
 import java.util.concurrent.BlockingQueue;
 
-public class CSVWritingWorkerFactory<T extends Tuple> implements WritingWorkerFactory<T> {
+public class CSVWritingWorkerFactory<T extends Tuple> extends AbstractWritingWorkerFactory<T> {
     private final int flushIntervalSeconds;
     private final String nullRepresentation;
+    private final StreamingPrepper streamingPrepper;
 
     public CSVWritingWorkerFactory(int flushIntervalSeconds) {
         this("",flushIntervalSeconds);
@@ -20,14 +22,23 @@ public class CSVWritingWorkerFactory<T extends Tuple> implements WritingWorkerFa
      * @param nullRepresentation How null values should be represented in the output
      */
     public CSVWritingWorkerFactory(String nullRepresentation, int flushIntervalSeconds) {
+        this(nullRepresentation, flushIntervalSeconds, null);
+    }
+
+    /**
+     * @param flushIntervalSeconds
+     * @param nullRepresentation How null values should be represented in the output
+     * @param streamingPrepper if not null, workers prepare their output while writing it
+     */
+    public CSVWritingWorkerFactory(String nullRepresentation, int flushIntervalSeconds, StreamingPrepper streamingPrepper) {
         this.flushIntervalSeconds = flushIntervalSeconds;
         this.nullRepresentation = nullRepresentation;
+        this.streamingPrepper = streamingPrepper;
     }
 
     @Override
-    public Thread buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
-        CSVWritingWorker runnable = new CSVWritingWorker(queue, logFileRecord, flushIntervalSeconds, nullRepresentation, tracker);
-        String threadName = CSVWritingWorker.class.getSimpleName() + "__" + logFileRecord.getOriginPath().getFileName();
-        return new Thread(runnable, threadName);
+    public Runnable buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
+        CSVWritingWorker<T> runnable = new CSVWritingWorker<>(queue, logFileRecord, flushIntervalSeconds, nullRepresentation, tracker, streamingPrepper);
+        return configure(runnable);
     }
 }
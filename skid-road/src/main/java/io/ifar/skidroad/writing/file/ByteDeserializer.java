@@ -0,0 +1,15 @@
+package io.ifar.skidroad.writing.file;
+
+import java.io.IOException;
+
+/**
+ * Reverses a {@link ByteSerializer}, so that items can be read back from a
+ * {@link io.ifar.skidroad.writing.SpillJournal} or {@link io.ifar.skidroad.writing.OverflowSpillFile}. Must be
+ * thread-safe.
+ */
+public interface ByteDeserializer<T> {
+    /**
+     * @param bytes exactly what the matching ByteSerializer wrote for one item
+     */
+    public T deserialize(byte[] bytes) throws IOException;
+}
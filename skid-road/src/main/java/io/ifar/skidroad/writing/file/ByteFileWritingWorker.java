@@ -0,0 +1,92 @@
+package io.ifar.skidroad.writing.file;
+
+import com.codahale.metrics.Timer;
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.StreamingPrepper;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.AbstractWritingWorker;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Byte-oriented counterpart of {@link FileWritingWorker}. A {@link ByteSerializer} writes each item straight into the
+ * worker's file buffer, so no String is built and no character encoding pass is needed. Output is the same
+ * newline-delimited format.
+ *
+ * Unlike FileWritingWorker, a serializer which fails part way through an item may leave a partial line in the file.
+ */
+public class ByteFileWritingWorker<T> extends AbstractWritingWorker<OutputStream, T> {
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteSerializer<T> serializer;
+    private final Timer writeTimer;
+    private OutputStream itemStream;
+
+    public ByteFileWritingWorker(final BlockingQueue<T> queue, final ByteSerializer<T> serializer, final LogFile logFileRecord, final int maxFlushIntervalSeconds, final LogFileTracker tracker) {
+        this(queue, serializer, logFileRecord, maxFlushIntervalSeconds, tracker, null);
+    }
+
+    /**
+     * @param streamingPrepper if not null, prepares output while writing it
+     */
+    public ByteFileWritingWorker(final BlockingQueue<T> queue, final ByteSerializer<T> serializer, final LogFile logFileRecord, final int maxFlushIntervalSeconds, final LogFileTracker tracker, final StreamingPrepper streamingPrepper) {
+        this(queue, serializer, logFileRecord, maxFlushIntervalSeconds, tracker, streamingPrepper, null);
+    }
+
+    /**
+     * @param streamingPrepper if not null, prepares output while writing it
+     * @param writeTimer if not null, times each item written, including its serialization
+     */
+    public ByteFileWritingWorker(final BlockingQueue<T> queue, final ByteSerializer<T> serializer, final LogFile logFileRecord, final int maxFlushIntervalSeconds, final LogFileTracker tracker, final StreamingPrepper streamingPrepper, final Timer writeTimer) {
+        super(queue, logFileRecord, maxFlushIntervalSeconds, tracker, streamingPrepper);
+        this.serializer = serializer;
+        this.writeTimer = writeTimer;
+    }
+
+    @Override
+    protected OutputStream openForWriting(Path path) throws IOException {
+        OutputStream out = new BufferedOutputStream(openOutputStream(path), BUFFER_SIZE);
+        itemStream = new ItemOutputStream(out);
+        return out;
+    }
+
+    @Override
+    protected void writeItem(OutputStream out, T item) throws IOException {
+        Timer.Context timer = writeTimer == null ? null : writeTimer.time();
+        try {
+            serializer.serialize(item, itemStream);
+            out.write('\n');
+        } finally {
+            if (timer != null)
+                timer.stop();
+        }
+    }
+
+    /**
+     * View of the file buffer handed to the serializer. Flushing is left to the worker's flush interval, which
+     * serializers such as Jackson's would otherwise defeat by flushing after every item, and close is ignored.
+     */
+    private static class ItemOutputStream extends FilterOutputStream {
+        ItemOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package io.ifar.skidroad.writing.file;
+
+import com.codahale.metrics.Timer;
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.StreamingPrepper;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.AbstractWritingWorkerFactory;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Constructs {@link ByteFileWritingWorker} threads.
+ */
+public class ByteFileWritingWorkerFactory<T> extends AbstractWritingWorkerFactory<T> {
+    /**
+     * Time taken by workers to write each item, including serialization unless items were serialized in advance
+     * by a {@link io.ifar.skidroad.writing.PreSerializingRecorder}.
+     */
+    public final Timer writeTimer = new Timer();
+
+    private final ByteSerializer<T> serializer;
+    private final int flushIntervalSeconds;
+    private final StreamingPrepper streamingPrepper;
+
+    public ByteFileWritingWorkerFactory(ByteSerializer<T> serializer, int flushIntervalSeconds) {
+        this(serializer, flushIntervalSeconds, null);
+    }
+
+    /**
+     * @param streamingPrepper if not null, workers prepare their output while writing it and no separate prep pass
+     *                         is needed
+     */
+    public ByteFileWritingWorkerFactory(ByteSerializer<T> serializer, int flushIntervalSeconds, StreamingPrepper streamingPrepper) {
+        this.serializer = serializer;
+        this.flushIntervalSeconds = flushIntervalSeconds;
+        this.streamingPrepper = streamingPrepper;
+    }
+
+    @Override
+    public Runnable buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
+        ByteFileWritingWorker<T> runnable = new ByteFileWritingWorker<T>(queue, serializer, logFileRecord, flushIntervalSeconds, tracker, streamingPrepper, writeTimer);
+        return configure(runnable);
+    }
+}
@@ -0,0 +1,16 @@
+package io.ifar.skidroad.writing.file;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serializes items for output directly as bytes, avoiding the intermediate String of a {@link Serializer}. Must be
+ * thread-safe.
+ */
+public interface ByteSerializer<T> {
+    /**
+     * Writes one item, UTF-8 encoded and without a trailing newline, to out. Implementations need not flush out and
+     * must not rely on closing it; both are ignored by {@link ByteFileWritingWorker}.
+     */
+    public void serialize(T item, OutputStream out) throws IOException;
+}
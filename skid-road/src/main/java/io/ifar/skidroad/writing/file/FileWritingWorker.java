@@ -1,20 +1,20 @@
 package io.ifar.skidroad.writing.file;
 
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.StreamingPrepper;
 import io.ifar.skidroad.tracking.LogFileTracker;
 import io.ifar.skidroad.writing.AbstractWritingWorker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.BlockingQueue;
 
-import static java.nio.file.StandardOpenOption.*;
-
 /**
  * File-based {@link io.ifar.skidroad.writing.AbstractWritingWorker} implementation. A {@link Serializer} is required to
  * write each item to the file.
@@ -26,13 +26,21 @@ public class FileWritingWorker<T> extends AbstractWritingWorker<Writer, T> {
     private final Serializer<T> serializer;
 
     public FileWritingWorker(final BlockingQueue<T> queue, final Serializer<T> serializer, final LogFile logFileRecord, final int maxFlushIntervalSeconds, final LogFileTracker tracker) {
-        super(queue, logFileRecord, maxFlushIntervalSeconds, tracker);
+        this(queue, serializer, logFileRecord, maxFlushIntervalSeconds, tracker, null);
+    }
+
+    /**
+     * @param streamingPrepper if not null, prepares output while writing it
+     */
+    public FileWritingWorker(final BlockingQueue<T> queue, final Serializer<T> serializer, final LogFile logFileRecord, final int maxFlushIntervalSeconds, final LogFileTracker tracker, final StreamingPrepper streamingPrepper) {
+        super(queue, logFileRecord, maxFlushIntervalSeconds, tracker, streamingPrepper);
         this.serializer = serializer;
     }
 
     @Override
     protected Writer openForWriting(Path path) throws IOException {
-        return Files.newBufferedWriter(path, UTF8, CREATE, WRITE, APPEND);
+        //same as Files.newBufferedWriter, but over whatever stream openOutputStream provides
+        return new BufferedWriter(new OutputStreamWriter(openOutputStream(path), UTF8.newEncoder()));
     }
 
     @Override
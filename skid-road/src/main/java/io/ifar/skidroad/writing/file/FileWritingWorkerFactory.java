@@ -1,25 +1,35 @@
 package io.ifar.skidroad.writing.file;
 
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.StreamingPrepper;
 import io.ifar.skidroad.tracking.LogFileTracker;
-import io.ifar.skidroad.writing.WritingWorkerFactory;
+import io.ifar.skidroad.writing.AbstractWritingWorkerFactory;
 
 import java.util.concurrent.BlockingQueue;
 
 
-public class FileWritingWorkerFactory<T> implements WritingWorkerFactory<T> {
+public class FileWritingWorkerFactory<T> extends AbstractWritingWorkerFactory<T> {
     private final Serializer<T> serializer;
     private final int flushIntervalSeconds;
+    private final StreamingPrepper streamingPrepper;
 
     public FileWritingWorkerFactory(Serializer<T> serializer, int flushIntervalSeconds) {
+        this(serializer, flushIntervalSeconds, null);
+    }
+
+    /**
+     * @param streamingPrepper if not null, workers prepare their output while writing it and no separate prep pass
+     *                         is needed
+     */
+    public FileWritingWorkerFactory(Serializer<T> serializer, int flushIntervalSeconds, StreamingPrepper streamingPrepper) {
         this.serializer = serializer;
         this.flushIntervalSeconds = flushIntervalSeconds;
+        this.streamingPrepper = streamingPrepper;
     }
 
     @Override
-    public Thread buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
-        FileWritingWorker<T> runnable = new FileWritingWorker<T>(queue, serializer, logFileRecord, flushIntervalSeconds, tracker);
-        String threadName = FileWritingWorker.class.getSimpleName() + "__" + logFileRecord.getOriginPath().getFileName();
-        return new Thread(runnable, threadName);
+    public Runnable buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
+        FileWritingWorker<T> runnable = new FileWritingWorker<T>(queue, serializer, logFileRecord, flushIntervalSeconds, tracker, streamingPrepper);
+        return configure(runnable);
     }
 }
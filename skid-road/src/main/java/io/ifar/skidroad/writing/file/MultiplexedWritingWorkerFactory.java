@@ -0,0 +1,44 @@
+package io.ifar.skidroad.writing.file;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.AbstractWritingWorkerFactory;
+import io.ifar.skidroad.writing.MultiplexedFileWriter;
+import io.ifar.skidroad.writing.NonBlockingWorker;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Constructs workers served by a shared {@link MultiplexedFileWriter} rather than by threads of their own. Output is
+ * the same newline-delimited format as {@link ByteFileWritingWorker}'s.
+ */
+public class MultiplexedWritingWorkerFactory<T> extends AbstractWritingWorkerFactory<T> {
+    private final MultiplexedFileWriter writer;
+    private final ByteSerializer<T> serializer;
+    private final int flushIntervalSeconds;
+
+    /**
+     * @param flushIntervalSeconds how often to fsync files when a durability mode calls for it; writes are not
+     *                             buffered, so there is nothing else to flush
+     */
+    public MultiplexedWritingWorkerFactory(MultiplexedFileWriter writer, ByteSerializer<T> serializer, int flushIntervalSeconds) {
+        this.writer = writer;
+        this.serializer = serializer;
+        this.flushIntervalSeconds = flushIntervalSeconds;
+    }
+
+    /**
+     * Mapped output is not supported; extentBytes must be 0.
+     */
+    @Override
+    public AbstractWritingWorkerFactory<T> withMappedOutput(long extentBytes) {
+        if (extentBytes != 0)
+            throw new IllegalArgumentException("Multiplexed writers do not support mapped output.");
+        return this;
+    }
+
+    @Override
+    public NonBlockingWorker buildWorker(BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
+        return writer.newWorker(queue, serializer, logFileRecord, tracker, flushIntervalSeconds, this);
+    }
+}
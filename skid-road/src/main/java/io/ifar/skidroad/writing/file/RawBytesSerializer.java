@@ -0,0 +1,22 @@
+package io.ifar.skidroad.writing.file;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes items which are already serialized, e.g. by {@link io.ifar.skidroad.writing.PreSerializingRecorder}. Reading
+ * them back is the identity.
+ */
+public class RawBytesSerializer implements ByteSerializer<byte[]>, ByteDeserializer<byte[]> {
+    public static final RawBytesSerializer INSTANCE = new RawBytesSerializer();
+
+    @Override
+    public void serialize(byte[] item, OutputStream out) throws IOException {
+        out.write(item);
+    }
+
+    @Override
+    public byte[] deserialize(byte[] bytes) {
+        return bytes;
+    }
+}
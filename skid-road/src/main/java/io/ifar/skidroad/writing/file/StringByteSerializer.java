@@ -0,0 +1,22 @@
+package io.ifar.skidroad.writing.file;
+
+import io.ifar.skidroad.writing.AbstractWritingWorker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Adapts a {@link Serializer} to a {@link ByteSerializer}, UTF-8 encoding its output.
+ */
+public class StringByteSerializer<T> implements ByteSerializer<T> {
+    private final Serializer<T> serializer;
+
+    public StringByteSerializer(Serializer<T> serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void serialize(T item, OutputStream out) throws IOException {
+        out.write(serializer.serialize(item).getBytes(AbstractWritingWorker.UTF8));
+    }
+}
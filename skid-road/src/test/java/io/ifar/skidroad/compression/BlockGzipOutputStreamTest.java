@@ -0,0 +1,218 @@
+package io.ifar.skidroad.compression;
+
+import io.ifar.skidroad.crypto.AESInputStream;
+import io.ifar.skidroad.crypto.AESOutputStream;
+import io.ifar.skidroad.crypto.SeekableAESChannel;
+import io.ifar.skidroad.prepping.GzipCodec;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.generateRandomIV;
+import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.generateRandomKey;
+import static org.junit.Assert.*;
+
+public class BlockGzipOutputStreamTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(3);
+
+    @AfterClass
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    @Test
+    public void testReadableByGZIPInputStream() throws Exception {
+        for (int length : new int[] {0, 1, 999, 1000, 1001, 25000}) {
+            byte[] plain = logLikeBytes(length);
+            assertArrayEquals("Length " + length, plain, readAll(new GZIPInputStream(new ByteArrayInputStream(compress(plain, 1000)))));
+        }
+    }
+
+    @Test
+    public void testReadableByGZIPInputStreamThroughEncryption() throws Exception {
+        byte[] plain = logLikeBytes(50000);
+        byte[] key = generateRandomKey();
+        byte[] iv = generateRandomIV();
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        AESOutputStream aes = new AESOutputStream(encrypted, key, iv);
+        try (BlockGzipOutputStream gz = new BlockGzipOutputStream(aes, 4096)) {
+            gz.write(plain);
+            gz.finish();
+            aes.finish();
+        }
+        InputStream decrypted = new AESInputStream(new ByteArrayInputStream(encrypted.toByteArray()), key, iv);
+        assertArrayEquals(plain, readAll(new GZIPInputStream(decrypted)));
+    }
+
+    @Test
+    public void testAllMembersReadThroughEncryption() throws Exception {
+        //Incompressible data makes member length track block size, so across 16 block sizes some member ends exactly
+        //where a 16 byte cipher block, and so AESInputStream's plaintext buffer, does.
+        byte[] plain = new byte[20000];
+        new Random(2).nextBytes(plain);
+        byte[] key = generateRandomKey();
+        byte[] iv = generateRandomIV();
+        for (int blockSize = 4096; blockSize < 4096 + 16; blockSize++) {
+            ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+            AESOutputStream aes = new AESOutputStream(encrypted, key, iv);
+            try (BlockGzipOutputStream gz = new BlockGzipOutputStream(aes, blockSize)) {
+                gz.write(plain);
+                gz.finish();
+                aes.finish();
+            }
+            //Trickle the ciphertext so that AESInputStream decrypts one cipher block at a time.
+            InputStream ciphertext = new FilterInputStream(new ByteArrayInputStream(encrypted.toByteArray())) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return super.read(b, off, Math.min(len, 16));
+                }
+            };
+            InputStream decrypted = new AESInputStream(ciphertext, key, iv);
+            assertArrayEquals("Block size " + blockSize, plain, readAll(new GzipCodec().decompress(decrypted)));
+        }
+    }
+
+    @Test
+    public void testParallelRead() throws Exception {
+        for (int maxBlocksInFlight : new int[] {1, 2, 8}) {
+            byte[] plain = logLikeBytes(100000);
+            InputStream in = new ParallelBlockGzipInputStream(new ByteArrayInputStream(compress(plain, 3000)), EXECUTOR, maxBlocksInFlight);
+            assertArrayEquals(plain, readAll(in));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testParallelReadEmpty() throws Exception {
+        InputStream in = new ParallelBlockGzipInputStream(new ByteArrayInputStream(compress(new byte[0], 100)), EXECUTOR, 2);
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testSingleByteWrites() throws Exception {
+        byte[] plain = logLikeBytes(5000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BlockGzipOutputStream gz = new BlockGzipOutputStream(out, 777)) {
+            for (byte b : plain)
+                gz.write(b);
+        }
+        assertArrayEquals(plain, readAll(new ParallelBlockGzipInputStream(new ByteArrayInputStream(out.toByteArray()), EXECUTOR, 2)));
+    }
+
+    @Test
+    public void testIncompressibleBlocks() throws Exception {
+        byte[] plain = new byte[10000];
+        new Random(1).nextBytes(plain);
+        assertArrayEquals(plain, readAll(new ParallelBlockGzipInputStream(new ByteArrayInputStream(compress(plain, 4096)), EXECUTOR, 2)));
+    }
+
+    @Test
+    public void testIsBlockGzip() throws Exception {
+        assertTrue(ParallelBlockGzipInputStream.isBlockGzip(new BufferedInputStream(new ByteArrayInputStream(compress(logLikeBytes(10), 100)))));
+
+        ByteArrayOutputStream plainGzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(plainGzip)) {
+            gz.write(logLikeBytes(10));
+        }
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(plainGzip.toByteArray()));
+        assertFalse(ParallelBlockGzipInputStream.isBlockGzip(in));
+        assertEquals(0x1f, in.read()); //reset after peeking
+
+        assertFalse(ParallelBlockGzipInputStream.isBlockGzip(new BufferedInputStream(new ByteArrayInputStream(new byte[3]))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptionDetected() throws Exception {
+        byte[] compressed = compress(logLikeBytes(5000), 1000);
+        compressed[compressed.length - 9] ^= 0x01; //last byte of deflate data in final member
+        readAll(new ParallelBlockGzipInputStream(new ByteArrayInputStream(compressed), EXECUTOR, 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncationDetected() throws Exception {
+        byte[] compressed = compress(logLikeBytes(5000), 1000);
+        readAll(new ParallelBlockGzipInputStream(new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length - 3)), EXECUTOR, 2));
+    }
+
+    @Test
+    public void testIndexOverEncryptedArchive() throws Exception {
+        byte[] plain = logLikeBytes(20000);
+        byte[] key = generateRandomKey();
+        byte[] iv = generateRandomIV();
+        Path archive = Files.createTempFile(BlockGzipOutputStreamTest.class.getSimpleName(), ".gz.aes-sic");
+        try {
+            try (OutputStream fileOut = Files.newOutputStream(archive)) {
+                AESOutputStream aes = new AESOutputStream(fileOut, key, iv);
+                BlockGzipOutputStream gz = new BlockGzipOutputStream(aes, 3000);
+                gz.write(plain);
+                gz.finish();
+                aes.finish();
+            }
+            try (SeekableAESChannel channel = SeekableAESChannel.open(archive, key, iv)) {
+                BlockGzipIndex index = BlockGzipIndex.scan(channel);
+                assertEquals(7, index.getBlockCount());
+                assertEquals(plain.length, index.getUncompressedLength());
+                assertEquals(channel.size(), index.getCompressedOffset(6) + index.getCompressedSize(6));
+
+                int block = index.blockContaining(12345);
+                assertEquals(4, block);
+                assertEquals(12000, index.getUncompressedOffset(block));
+                assertArrayEquals(Arrays.copyOfRange(plain, 12000, 15000), index.readBlock(channel, block));
+                assertArrayEquals(Arrays.copyOfRange(plain, 18000, 20000), index.readBlock(channel, 6));
+                assertEquals(-1, index.blockContaining(plain.length));
+            }
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBlockSize() {
+        new BlockGzipOutputStream(new ByteArrayOutputStream(), 0);
+    }
+
+    private static byte[] compress(byte[] plain, int blockSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BlockGzipOutputStream gz = new BlockGzipOutputStream(out, blockSize)) {
+            gz.write(plain);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1234];
+        int n;
+        while ((n = in.read(buffer)) >= 0)
+            out.write(buffer, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Compressible, log-like data.
+     */
+    private static byte[] logLikeBytes(int length) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(length);
+        while (sb.length() < length)
+            sb.append("{\"path\":\"/api/v1/items/").append(random.nextInt(1000)).append("\",\"status\":200}\n");
+        return Arrays.copyOf(sb.toString().getBytes(), length);
+    }
+}
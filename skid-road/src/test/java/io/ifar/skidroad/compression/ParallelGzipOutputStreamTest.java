@@ -0,0 +1,118 @@
+package io.ifar.skidroad.compression;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelGzipOutputStreamTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(3);
+
+    @AfterClass
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    @Test
+    public void testRoundTripVariousLengths() throws Exception {
+        for (int length : new int[] {0, 1, 4095, 4096, 4097, 50000, 200000})
+            assertRoundTrip(logLikeBytes(length), 4096, 3);
+    }
+
+    @Test
+    public void testChunksSmallerThanDictionary() throws Exception {
+        //Dictionary must span several preceding chunks.
+        assertRoundTrip(logLikeBytes(100000), 1000, 4);
+    }
+
+    @Test
+    public void testOneChunkInFlight() throws Exception {
+        assertRoundTrip(logLikeBytes(100000), 8192, 1);
+    }
+
+    @Test
+    public void testIncompressible() throws Exception {
+        byte[] plain = new byte[100000];
+        new Random(3).nextBytes(plain);
+        assertRoundTrip(plain, 8192, 3);
+    }
+
+    @Test
+    public void testSingleByteWritesAndFlush() throws Exception {
+        byte[] plain = logLikeBytes(20000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gz = new ParallelGzipOutputStream(out, EXECUTOR, 3000, 2, Deflater.DEFAULT_COMPRESSION)) {
+            for (int i = 0; i < plain.length; i++) {
+                gz.write(plain[i]);
+                if (i % 7000 == 0)
+                    gz.flush();
+            }
+        }
+        assertArrayEquals(plain, gunzip(out.toByteArray()));
+    }
+
+    @Test
+    public void testRatioCloseToSerial() throws Exception {
+        byte[] plain = logLikeBytes(1024 * 1024);
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(serial)) {
+            gz.write(plain);
+        }
+        byte[] parallel = compress(plain, ParallelGzipOutputStream.DEFAULT_CHUNK_SIZE, 4);
+        assertTrue("Parallel output " + parallel.length + " much larger than serial " + serial.size(),
+                parallel.length < serial.size() * 1.05);
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterFinish() throws Exception {
+        ParallelGzipOutputStream gz = new ParallelGzipOutputStream(new ByteArrayOutputStream(), EXECUTOR, 2);
+        gz.finish();
+        gz.write(1);
+    }
+
+    private static void assertRoundTrip(byte[] plain, int chunkSize, int maxChunksInFlight) throws IOException {
+        assertArrayEquals("Length " + plain.length + ", chunk size " + chunkSize,
+                plain, gunzip(compress(plain, chunkSize, maxChunksInFlight)));
+    }
+
+    private static byte[] compress(byte[] plain, int chunkSize, int maxChunksInFlight) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gz = new ParallelGzipOutputStream(out, EXECUTOR, chunkSize, maxChunksInFlight,
+                Deflater.DEFAULT_COMPRESSION)) {
+            gz.write(plain);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] logLikeBytes(int length) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(length);
+        while (sb.length() < length)
+            sb.append("{\"path\":\"/api/v1/items/").append(random.nextInt(1000)).append("\",\"status\":200}\n");
+        return Arrays.copyOf(sb.toString().getBytes(), length);
+    }
+}
@@ -0,0 +1,112 @@
+package io.ifar.skidroad.crypto;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.*;
+import static org.junit.Assert.*;
+
+/**
+ * Exercises the buffered bulk read path of {@link AESInputStream}.
+ */
+public class AESInputStreamTest {
+
+    private final static byte[] KEY = generateRandomKey();
+    private final static byte[] IV = generateRandomIV();
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertBulkRoundTrip(new byte[0], 100);
+    }
+
+    @Test
+    public void testVariousReadSizes() throws Exception {
+        byte[] plain = randomBytes(AESInputStream.CHUNK_SIZE * 3 + 5);
+        for (int readSize : new int[] {1, 15, 16, 17, 512, AESInputStream.CHUNK_SIZE, AESInputStream.CHUNK_SIZE * 4})
+            assertBulkRoundTrip(plain, readSize);
+    }
+
+    @Test
+    public void testExactChunkMultiple() throws Exception {
+        assertBulkRoundTrip(randomBytes(AESInputStream.CHUNK_SIZE * 2), 4096);
+    }
+
+    @Test
+    public void testMixedReads() throws Exception {
+        byte[] plain = randomBytes(10000);
+        AESInputStream aes = new AESInputStream(new ByteArrayInputStream(encrypt(plain)), KEY, IV);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[333];
+        int n;
+        while (true) {
+            int b = aes.read();
+            if (b < 0)
+                break;
+            out.write(b);
+            n = aes.read(buffer, 3, 300);
+            if (n < 0)
+                break;
+            out.write(buffer, 3, n);
+        }
+        assertEquals(-1, aes.read());
+        assertEquals(-1, aes.read(buffer, 0, buffer.length));
+        assertArrayEquals(plain, out.toByteArray());
+    }
+
+    @Test
+    public void testShortUnderlyingReads() throws Exception {
+        //Underlying stream only ever returns a few bytes at a time; fewer than a cipher block.
+        byte[] plain = randomBytes(5000);
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(encrypt(plain))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(new AESInputStream(trickle, KEY, IV), out, 1000);
+        assertArrayEquals(plain, out.toByteArray());
+    }
+
+    @Test
+    public void testZeroLengthRead() throws Exception {
+        AESInputStream aes = new AESInputStream(new ByteArrayInputStream(encrypt(randomBytes(10))), KEY, IV);
+        assertEquals(0, aes.read(new byte[10], 0, 0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBadBounds() throws Exception {
+        new AESInputStream(new ByteArrayInputStream(encrypt(randomBytes(10))), KEY, IV).read(new byte[10], 8, 3);
+    }
+
+    private static void assertBulkRoundTrip(byte[] plain, int readSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(new AESInputStream(new ByteArrayInputStream(encrypt(plain)), KEY, IV), out, readSize);
+        assertArrayEquals("Plaintext differs for read size " + readSize, plain, out.toByteArray());
+    }
+
+    private static void copy(InputStream in, ByteArrayOutputStream out, int readSize) throws IOException {
+        byte[] buffer = new byte[readSize];
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) >= 0)
+            out.write(buffer, 0, n);
+    }
+
+    private static byte[] encrypt(byte[] plain) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingBouncyCastleAESWithSIC.encrypt(new ByteArrayInputStream(plain), out, KEY, IV);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package io.ifar.skidroad.crypto;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.*;
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the bulk write path of {@link AESOutputStream} produces exactly the same ciphertext as the
+ * byte-at-a-time path, so existing archives and readers are unaffected.
+ */
+public class AESOutputStreamTest {
+
+    private final static byte[] KEY = generateRandomKey();
+    private final static byte[] IV = generateRandomIV();
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertBulkMatchesSingleByte(new byte[0], 1);
+    }
+
+    @Test
+    public void testPartialBlock() throws Exception {
+        assertBulkMatchesSingleByte(randomBytes(10), 10);
+    }
+
+    @Test
+    public void testExactBlock() throws Exception {
+        assertBulkMatchesSingleByte(randomBytes(16), 16);
+    }
+
+    @Test
+    public void testUnalignedWrites() throws Exception {
+        //Write sizes which straddle block boundaries
+        for (int writeSize : new int[] {1, 7, 15, 17, 31, 512, 4095})
+            assertBulkMatchesSingleByte(randomBytes(10000), writeSize);
+    }
+
+    @Test
+    public void testWritesLargerThanChunk() throws Exception {
+        byte[] plain = randomBytes(AESOutputStream.CHUNK_SIZE * 5 + 3);
+        assertBulkMatchesSingleByte(plain, plain.length);
+        assertBulkMatchesSingleByte(plain, AESOutputStream.CHUNK_SIZE + 1);
+    }
+
+    @Test
+    public void testMixedWrites() throws Exception {
+        byte[] plain = randomBytes(AESOutputStream.CHUNK_SIZE * 2 + 100);
+        ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+        AESOutputStream aes = new AESOutputStream(mixed, KEY, IV);
+        aes.write(plain, 0, 5);
+        aes.write(plain[5]);
+        aes.write(plain, 6, AESOutputStream.CHUNK_SIZE);
+        for (int i = 6 + AESOutputStream.CHUNK_SIZE; i < 6 + AESOutputStream.CHUNK_SIZE + 20; i++)
+            aes.write(plain[i]);
+        aes.write(plain, 26 + AESOutputStream.CHUNK_SIZE, plain.length - 26 - AESOutputStream.CHUNK_SIZE);
+        aes.finish();
+        assertArrayEquals(encryptSingleBytes(plain), mixed.toByteArray());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBadBounds() throws Exception {
+        new AESOutputStream(new ByteArrayOutputStream(), KEY, IV).write(new byte[10], 5, 6);
+    }
+
+    private static void assertBulkMatchesSingleByte(byte[] plain, int writeSize) throws IOException, InvalidCipherTextException {
+        ByteArrayOutputStream bulk = new ByteArrayOutputStream();
+        AESOutputStream aes = new AESOutputStream(bulk, KEY, IV);
+        for (int offset = 0; offset < plain.length; offset += writeSize)
+            aes.write(plain, offset, Math.min(writeSize, plain.length - offset));
+        aes.finish();
+        assertArrayEquals("Ciphertext differs for write size " + writeSize, encryptSingleBytes(plain), bulk.toByteArray());
+    }
+
+    private static byte[] encryptSingleBytes(byte[] plain) throws IOException, InvalidCipherTextException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AESOutputStream aes = new AESOutputStream(out, KEY, IV);
+        for (byte b : plain)
+            aes.write(b);
+        aes.finish();
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package io.ifar.skidroad.crypto;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.*;
+import static org.junit.Assert.*;
+
+/**
+ * Verifies {@link ParallelAESOutputStream} output is identical to {@link AESOutputStream} output.
+ */
+public class ParallelAESOutputStreamTest {
+
+    private final static byte[] KEY = generateRandomKey();
+    private final static byte[] IV = generateRandomIV();
+    private final static int SEGMENT_SIZE = 64;
+    private final static ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void testLengthsAroundSegmentBoundaries() throws Exception {
+        for (int length : new int[] {0, 1, 15, 16, 17, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, SEGMENT_SIZE * 3, 10000})
+            assertMatchesSerial(randomBytes(length), IV, 7);
+    }
+
+    @Test
+    public void testLargeWrites() throws Exception {
+        assertMatchesSerial(randomBytes(SEGMENT_SIZE * 50 + 9), IV, SEGMENT_SIZE * 7 + 3);
+    }
+
+    @Test
+    public void testSingleByteWrites() throws Exception {
+        byte[] plain = randomBytes(SEGMENT_SIZE * 4 + 5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelAESOutputStream aes = new ParallelAESOutputStream(out, KEY, IV, POOL, SEGMENT_SIZE, 2);
+        for (byte b : plain)
+            aes.write(b);
+        aes.finish();
+        assertArrayEquals(serialEncrypt(plain, IV), out.toByteArray());
+    }
+
+    @Test
+    public void testCounterCarry() throws Exception {
+        //Counter must carry across bytes exactly as SICBlockCipher does.
+        byte[] iv = new byte[16];
+        Arrays.fill(iv, (byte) 0xFF);
+        iv[0] = 0x01;
+        iv[15] = (byte) 0xFE;
+        assertMatchesSerial(randomBytes(SEGMENT_SIZE * 5), iv, 100);
+    }
+
+    @Test
+    public void testDecryptsWithAESInputStream() throws Exception {
+        byte[] plain = randomBytes(5000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelAESOutputStream aes = new ParallelAESOutputStream(out, KEY, IV, POOL);
+        aes.write(plain);
+        aes.finish();
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        decrypt(new ByteArrayInputStream(out.toByteArray()), decrypted, KEY, IV);
+        assertArrayEquals(plain, decrypted.toByteArray());
+    }
+
+    @Test
+    public void testCounterForBlock() throws Exception {
+        byte[] iv = new byte[16];
+        iv[15] = (byte) 0xFF;
+        byte[] expected = new byte[16];
+        expected[14] = 0x01;
+        expected[15] = 0x00;
+        assertArrayEquals(expected, counterForBlock(iv, 1));
+        assertArrayEquals(iv, counterForBlock(iv, 0));
+
+        Arrays.fill(iv, (byte) 0xFF);
+        assertArrayEquals("Counter should wrap", new byte[16], counterForBlock(iv, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSegmentSizeMustBeBlockMultiple() throws Exception {
+        new ParallelAESOutputStream(new ByteArrayOutputStream(), KEY, IV, POOL, 100, 2);
+    }
+
+    private static void assertMatchesSerial(byte[] plain, byte[] iv, int writeSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelAESOutputStream aes = new ParallelAESOutputStream(out, KEY, iv, POOL, SEGMENT_SIZE, 3);
+        for (int offset = 0; offset < plain.length; offset += writeSize)
+            aes.write(plain, offset, Math.min(writeSize, plain.length - offset));
+        aes.finish();
+        assertArrayEquals("Ciphertext differs for length " + plain.length, serialEncrypt(plain, iv), out.toByteArray());
+    }
+
+    private static byte[] serialEncrypt(byte[] plain, byte[] iv) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encrypt(new ByteArrayInputStream(plain), out, KEY, iv);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package io.ifar.skidroad.crypto;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC.*;
+import static org.junit.Assert.*;
+
+public class SeekableAESChannelTest {
+
+    private final static byte[] KEY = generateRandomKey();
+    private final static byte[] IV = generateRandomIV();
+
+    private Path archive;
+
+    @Before
+    public void setUp() throws Exception {
+        archive = Files.createTempFile(SeekableAESChannelTest.class.getSimpleName(), ".aes-sic");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(archive);
+    }
+
+    @Test
+    public void testSizeForVariousPaddings() throws Exception {
+        for (int length : new int[] {0, 1, 15, 16, 17, 31, 32, 1000}) {
+            writeArchive(randomBytes(length));
+            try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+                assertEquals(length, channel.size());
+            }
+        }
+    }
+
+    @Test
+    public void testSequentialRead() throws Exception {
+        byte[] plain = randomBytes(30000);
+        writeArchive(plain);
+        try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(777);
+            while (channel.read(buffer) >= 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            assertArrayEquals(plain, out.toByteArray());
+            assertEquals(plain.length, channel.position());
+        }
+    }
+
+    @Test
+    public void testSeekToEveryOffsetInBlock() throws Exception {
+        byte[] plain = randomBytes(100);
+        writeArchive(plain);
+        try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+            for (int from = 0; from < plain.length; from++) {
+                channel.position(from);
+                assertArrayEquals("Mismatch from " + from, Arrays.copyOfRange(plain, from, plain.length), readRest(channel));
+            }
+        }
+    }
+
+    @Test
+    public void testRandomSeeks() throws Exception {
+        byte[] plain = randomBytes(50000);
+        writeArchive(plain);
+        Random random = new Random(7);
+        try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+            for (int i = 0; i < 200; i++) {
+                int from = random.nextInt(plain.length);
+                int length = Math.min(1 + random.nextInt(3000), plain.length - from);
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                channel.position(from);
+                while (buffer.hasRemaining())
+                    channel.read(buffer);
+                assertArrayEquals(Arrays.copyOfRange(plain, from, from + length), buffer.array());
+            }
+        }
+    }
+
+    @Test
+    public void testPositionedReadLeavesPosition() throws Exception {
+        byte[] plain = randomBytes(5000);
+        writeArchive(plain);
+        try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+            ByteBuffer head = ByteBuffer.allocate(10);
+            channel.read(head);
+            ByteBuffer middle = ByteBuffer.allocate(100);
+            assertEquals(100, channel.read(middle, 2001));
+            assertArrayEquals(Arrays.copyOfRange(plain, 2001, 2101), middle.array());
+            assertEquals(10, channel.position());
+            assertArrayEquals(Arrays.copyOfRange(plain, 10, plain.length), readRest(channel));
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1), plain.length));
+        }
+    }
+
+    @Test
+    public void testPositionBeyondEnd() throws Exception {
+        writeArchive(randomBytes(20));
+        try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+            channel.position(1000);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+        }
+    }
+
+    @Test
+    public void testStreamSkip() throws Exception {
+        byte[] plain = randomBytes(100000);
+        writeArchive(plain);
+        try (InputStream in = Channels.newInputStream(SeekableAESChannel.open(archive, KEY, IV))) {
+            assertEquals(90001, in.skip(90001));
+            assertEquals(plain[90001] & 0xFF, in.read());
+        }
+    }
+
+    @Test
+    public void testReadsParallelEncryptorOutput() throws Exception {
+        byte[] plain = randomBytes(5000);
+        try (ParallelAESOutputStream out = new ParallelAESOutputStream(Files.newOutputStream(archive), KEY, IV,
+                new ForkJoinPool(2), 1024, 4)) {
+            out.write(plain);
+            out.finish();
+        }
+        try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+            channel.position(3000);
+            assertArrayEquals(Arrays.copyOfRange(plain, 3000, plain.length), readRest(channel));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrongKey() throws Exception {
+        writeArchive(randomBytes(1000));
+        //Fails on padding check with overwhelming probability.
+        SeekableAESChannel.open(archive, generateRandomKey(), IV).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedArchive() throws Exception {
+        Files.write(archive, new byte[17]);
+        SeekableAESChannel.open(archive, KEY, IV).close();
+    }
+
+    @Test(expected = NonWritableChannelException.class)
+    public void testReadOnly() throws Exception {
+        writeArchive(randomBytes(10));
+        try (SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV)) {
+            channel.write(ByteBuffer.allocate(1));
+        }
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void testClosed() throws Exception {
+        writeArchive(randomBytes(10));
+        SeekableAESChannel channel = SeekableAESChannel.open(archive, KEY, IV);
+        channel.close();
+        channel.read(ByteBuffer.allocate(1));
+    }
+
+    private void writeArchive(byte[] plain) throws Exception {
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            StreamingBouncyCastleAESWithSIC.encrypt(new ByteArrayInputStream(plain), out, KEY, IV);
+        }
+    }
+
+    private static byte[] readRest(SeekableAESChannel channel) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        while (channel.read(buffer) >= 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+}
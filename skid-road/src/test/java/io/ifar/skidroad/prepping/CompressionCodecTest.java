@@ -0,0 +1,114 @@
+package io.ifar.skidroad.prepping;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CompressionCodec} implementations.
+ */
+@RunWith(Parameterized.class)
+public class CompressionCodecTest {
+
+    private final CompressionCodec codec;
+
+    @Parameterized.Parameters
+    public static List<Object[]> parameters() {
+        return ImmutableList.<Object[]>of(
+                new Object[] {new GzipCodec()},
+                new Object[] {new GzipCodec(1000)},
+                new Object[] {new Lz4Codec()},
+                new Object[] {new ZstdCodec()},
+                new Object[] {new ZstdCodec(1)}
+        );
+    }
+
+    public CompressionCodecTest(CompressionCodec codec) {
+        this.codec = codec;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (int length : new int[] {0, 1, 5000, 300000}) {
+            byte[] plain = logLikeBytes(length);
+            assertArrayEquals(codec.getName() + " length " + length, plain, decompress(compress(plain)));
+        }
+    }
+
+    @Test
+    public void testCompresses() throws Exception {
+        byte[] plain = logLikeBytes(100000);
+        assertTrue(compress(plain).length < plain.length / 2);
+    }
+
+    @Test
+    public void testClosingDoesNotCloseUnderlying() throws Exception {
+        final boolean[] closed = {false};
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        OutputStream compressing = codec.compress(out);
+        compressing.write(logLikeBytes(100));
+        compressing.close();
+        assertFalse(closed[0]);
+        //Data after the compressed stream, as with an encryption trailer, is left alone.
+        int compressedLength = out.size();
+        out.write(new byte[] {1, 2, 3});
+        assertEquals(compressedLength + 3, out.size());
+        assertArrayEquals(logLikeBytes(100), decompress(Arrays.copyOf(out.toByteArray(), compressedLength)));
+    }
+
+    @Test
+    public void testLookup() {
+        assertEquals(codec.getName(), CompressionCodecs.forName(codec.getName()).getName());
+        assertEquals(codec.getName(), CompressionCodecs.forFileName("foo-1" + codec.getFileExtension()).getName());
+        assertNull(CompressionCodecs.forFileName("foo-1" + codec.getFileExtension() + ".aes-sic"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownName() {
+        CompressionCodecs.forName("bzip2");
+    }
+
+    private byte[] compress(byte[] plain) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressing = codec.compress(out)) {
+            compressing.write(plain);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] logLikeBytes(int length) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(length);
+        while (sb.length() < length)
+            sb.append("{\"path\":\"/api/v1/items/").append(random.nextInt(1000)).append("\",\"status\":200}\n");
+        return Arrays.copyOf(sb.toString().getBytes(), length);
+    }
+}
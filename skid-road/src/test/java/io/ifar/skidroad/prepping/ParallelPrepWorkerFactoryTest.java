@@ -0,0 +1,35 @@
+package io.ifar.skidroad.prepping;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the parallel prep worker factories release only the pools they own.
+ */
+public class ParallelPrepWorkerFactoryTest {
+
+    @Test
+    public void testEncryptFactoryLeavesCallerPoolRunning() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            new ParallelEncryptAndCompressPrepWorkerFactory("", pool, 16).close();
+            assertFalse("Caller-supplied pool belongs to the caller.", pool.isShutdown());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompressFactoryLeavesCallerPoolRunning() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            new ParallelCompressPrepWorkerFactory(pool, 1024).close();
+            assertFalse("Caller-supplied pool belongs to the caller.", pool.isShutdown());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 
+import java.io.Closeable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -105,6 +106,22 @@ public class PrepWorkerManagerTest {
         }
     }
 
+    @Test
+    public void testStopClosesCloseableFactory() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        class CloseableFactory extends DummyPrepWorkerFactory implements Closeable {
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        }
+        factory = new CloseableFactory();
+        manager = new PrepWorkerManager(tracker, factory, RETRY_INTERVAL_SECONDS, 5, 10);
+        manager.start();
+        manager.stop();
+        assertEquals("Manager should close its factory on stop.", 0, closed.getCount());
+    }
+
     private void awaitLatch(CountDownLatch latch) throws InterruptedException {
         assertTrue("timeout waiting for latch.", latch.await(MAX_TEST_DURATION, TimeUnit.SECONDS));
     }
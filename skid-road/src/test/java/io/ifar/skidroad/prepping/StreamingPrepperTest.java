@@ -0,0 +1,122 @@
+package io.ifar.skidroad.prepping;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.crypto.AESInputStream;
+import io.ifar.skidroad.crypto.StreamingBouncyCastleAESWithSIC;
+import io.ifar.skidroad.tracker.TransientLogFileTracker;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import org.bouncycastle.util.encoders.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.*;
+
+public class StreamingPrepperTest {
+    private static final byte[] DATA = "{\"path\":\"/api/v1/items/1\",\"status\":200}\n".getBytes(StreamingBouncyCastleAESWithSIC.ASCII);
+
+    private Path dir;
+    private LogFile logFile;
+    private LogFileTracker tracker;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory(StreamingPrepperTest.class.getSimpleName());
+        logFile = new LogFile();
+        logFile.setRollingCohort("2014-03-10T12");
+        logFile.setSerial(1);
+        logFile.setOriginPath(dir.resolve("log-1.log"));
+        tracker = new TransientLogFileTracker();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path p : files)
+                Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testEncryptAndCompress() throws Exception {
+        byte[] masterKey = StreamingBouncyCastleAESWithSIC.generateRandomKey();
+        for (CompressionCodec codec : new CompressionCodec[] {new GzipCodec(), new GzipCodec(100), new Lz4Codec(), new ZstdCodec()}) {
+            StreamingPrepper prepper = new StreamingPrepper(codec, Base64.toBase64String(masterKey));
+            try (OutputStream out = prepper.open(logFile, tracker)) {
+                for (int i = 0; i < 1000; i++)
+                    out.write(DATA);
+            }
+            assertEquals(dir.resolve("log-1" + codec.getFileExtension() + ".aes-sic"), logFile.getPrepPath());
+            assertFalse(Files.exists(logFile.getOriginPath()));
+
+            byte[][] fileKey = StreamingBouncyCastleAESWithSIC.decodeAndDecryptKey(logFile.getArchiveKey(), masterKey);
+            InputStream in = codec.decompress(new AESInputStream(Files.newInputStream(logFile.getPrepPath()), fileKey[0], fileKey[1]));
+            byte[] result = readAll(in);
+            assertEquals(codec.getName(), DATA.length * 1000, result.length);
+            for (int i = 0; i < result.length; i++)
+                assertEquals(codec.getName() + " byte " + i, DATA[i % DATA.length], result[i]);
+            Files.delete(logFile.getPrepPath());
+        }
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        StreamingPrepper prepper = new StreamingPrepper(new ZstdCodec());
+        try (OutputStream out = prepper.open(logFile, tracker)) {
+            out.write(DATA);
+        }
+        assertEquals(dir.resolve("log-1.zst"), logFile.getPrepPath());
+        assertNull(logFile.getArchiveKey());
+        assertArrayEquals(DATA, readAll(new ZstdCodec().decompress(Files.newInputStream(logFile.getPrepPath()))));
+    }
+
+    @Test
+    public void testFlushedDataReadable() throws Exception {
+        StreamingPrepper prepper = new StreamingPrepper(new GzipCodec());
+        try (OutputStream out = prepper.open(logFile, tracker)) {
+            out.write(DATA);
+            out.flush();
+            //Archive is incomplete, but everything written so far can be recovered.
+            ByteArrayOutputStream recovered = new ByteArrayOutputStream();
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(logFile.getPrepPath()))) {
+                int b;
+                while ((b = in.read()) >= 0)
+                    recovered.write(b);
+                fail("Unfinished gzip stream should be truncated.");
+            } catch (EOFException e) {
+                //expected
+            }
+            assertArrayEquals(DATA, recovered.toByteArray());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTrackerFailure() throws Exception {
+        LogFileTracker failing = mock(LogFileTracker.class);
+        when(failing.updateArchiveKey((LogFile) anyObject())).thenReturn(0);
+        new StreamingPrepper(new GzipCodec()).open(logFile, failing);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) >= 0)
+            out.write(buffer, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -1,6 +1,8 @@
 package io.ifar.skidroad.rolling;
 
 import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 import org.junit.Assert;
 import org.junit.Test;
@@ -58,4 +60,39 @@ public class BasicFileRollingSchemeTest {
         }
     }
 
+    @Test
+    public void startTimeMatchesCalendarFields() {
+        if (!ok)
+            return;
+        BasicFileRollingScheme scheme = new BasicFileRollingScheme("","","",0,duration);
+        long[] times = {0L, 1L, -1L, 1421798399999L, 1421798400000L, 1421802061234L, 951782400000L, -86400001L};
+        for (long time : times) {
+            DateTime raw = new DateTime(time, DateTimeZone.UTC);
+            DateTime expected;
+            if (duration.getStandardDays() > 0)
+                expected = raw.dayOfMonth().roundFloorCopy();
+            else if (duration.getStandardHours() > 0)
+                expected = raw.hourOfDay().roundFloorCopy()
+                        .minusHours(raw.getHourOfDay() % (int) duration.getStandardHours());
+            else
+                expected = raw.minuteOfHour().roundFloorCopy()
+                        .minusMinutes(raw.getMinuteOfHour() % (int) duration.getStandardMinutes());
+            Assert.assertEquals(String.format("Start time of %s", raw), expected, scheme.getStartTime(time));
+            Assert.assertEquals(expected.getMillis(), scheme.getStartTimeMillis(time));
+        }
+    }
+
+    @Test
+    public void subsequentStartTimeBeginsNextPeriod() {
+        if (!ok)
+            return;
+        BasicFileRollingScheme scheme = new BasicFileRollingScheme("","","",0,duration);
+        for (long time : new long[] {0L, -1L, 1421798399999L, 1421802061234L}) {
+            DateTime start = scheme.getStartTime(time);
+            DateTime next = scheme.getSubsequentStartTime(start);
+            Assert.assertEquals(start, scheme.getStartTime(next.getMillis() - 1));
+            Assert.assertEquals(next, scheme.getStartTime(next.getMillis()));
+        }
+    }
+
 }
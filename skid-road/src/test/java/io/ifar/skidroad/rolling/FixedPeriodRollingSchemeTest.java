@@ -0,0 +1,89 @@
+package io.ifar.skidroad.rolling;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link io.ifar.skidroad.rolling.FixedPeriodRollingScheme}.
+ */
+public class FixedPeriodRollingSchemeTest {
+
+    @Test
+    public void testSubMinutePeriods() {
+        FixedPeriodRollingScheme scheme = scheme(Duration.standardSeconds(15));
+        DateTime time = new DateTime(2015, 1, 20, 23, 59, 44, 999, DateTimeZone.UTC);
+        DateTime start = scheme.getStartTime(time.getMillis());
+        assertEquals(new DateTime(2015, 1, 20, 23, 59, 30, DateTimeZone.UTC), start);
+        assertEquals(start.getMillis(), scheme.getStartTimeMillis(time.getMillis()));
+        assertEquals(new DateTime(2015, 1, 20, 23, 59, 45, DateTimeZone.UTC), scheme.getSubsequentStartTime(start));
+        assertEquals(scheme.getSubsequentStartTime(start), scheme.getStartTime(time.getMillis() + 1));
+        assertEquals("2015-01-20T23-59-30", scheme.getRepresentation(start));
+        assertEquals("/tmp/test-2015-01-20T23-59-30_%d.log", scheme.makeOutputPathPattern(start));
+    }
+
+    @Test
+    public void testPeriodsNotDividingAnHourFollowTheEpoch() {
+        FixedPeriodRollingScheme scheme = scheme(Duration.standardMinutes(7));
+        assertEquals(0L, scheme.getStartTimeMillis(Duration.standardMinutes(7).getMillis() - 1));
+        assertEquals(Duration.standardMinutes(7).getMillis(), scheme.getStartTimeMillis(Duration.standardMinutes(7).getMillis()));
+        assertEquals(-Duration.standardMinutes(7).getMillis(), scheme.getStartTimeMillis(-1L));
+        assertEquals("1970-01-01T00-07", scheme.getRepresentation(scheme.getStartTime(Duration.standardMinutes(8).getMillis())));
+    }
+
+    @Test
+    public void testMatchesBasicSchemeForCommonPeriods() {
+        long time = new DateTime(2015, 1, 20, 23, 59, 44, DateTimeZone.UTC).getMillis();
+        for (Duration period : new Duration[] {Duration.standardMinutes(5), Duration.standardHours(1), Duration.standardDays(1)}) {
+            BasicFileRollingScheme basic = new BasicFileRollingScheme("/tmp", "test-", ".log", 0, period);
+            FixedPeriodRollingScheme fixed = scheme(period);
+            assertEquals(basic.getStartTime(time), fixed.getStartTime(time));
+            assertEquals(basic.getRepresentation(basic.getStartTime(time)), fixed.getRepresentation(fixed.getStartTime(time)));
+        }
+    }
+
+    @Test
+    public void testRepresentationsSortByStartTime() {
+        FixedPeriodRollingScheme scheme = scheme(Duration.standardSeconds(10));
+        DateTime start = scheme.getStartTime(new DateTime(2015, 12, 31, 23, 59, 0, DateTimeZone.UTC).getMillis());
+        List<String> representations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            representations.add(scheme.getRepresentation(start));
+            start = scheme.getSubsequentStartTime(start);
+        }
+        List<String> sorted = new ArrayList<>(representations);
+        Collections.shuffle(sorted);
+        Collections.sort(sorted);
+        assertEquals(representations, sorted);
+        assertEquals("2016-01-01T00-02-10", representations.get(19));
+    }
+
+    @Test
+    public void testTimeToClose() {
+        FixedPeriodRollingScheme scheme = new FixedPeriodRollingScheme("/tmp", "test-", ".log", 2, Duration.standardSeconds(10));
+        DateTime current = scheme.getCurrentStartTime();
+        assertFalse(scheme.isTimeToClose(current));
+        assertTrue(scheme.isTimeToClose(current.minusSeconds(20)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsFractionalSeconds() {
+        scheme(Duration.millis(1500));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZero() {
+        scheme(Duration.ZERO);
+    }
+
+    private static FixedPeriodRollingScheme scheme(Duration period) {
+        return new FixedPeriodRollingScheme("/tmp", "test-", ".log", 0, period);
+    }
+}
@@ -0,0 +1,141 @@
+package io.ifar.skidroad.writing;
+
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.file.ByteFileWritingWorker;
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.*;
+
+public class ByteFileWritingWorkerTest {
+
+    BlockingQueue<String> queue;
+    ByteFileWritingWorker<String> worker;
+    UpcaseByteSerializer serializer;
+    LogFile record;
+    LogFileTracker tracker;
+    Thread thread;
+
+    @Rule
+    public TestName name = new TestName();
+
+    /**
+     * Flushes and closes its output after each item, as Jackson's ObjectMapper does by default.
+     */
+    static class UpcaseByteSerializer implements ByteSerializer<String> {
+        public boolean throwErrors = false;
+
+        @Override
+        public void serialize(String item, OutputStream out) throws IOException {
+            if (throwErrors)
+                throw new IOException("fake serialization error");
+            out.write(item.toUpperCase().getBytes(ByteFileWritingWorker.UTF8));
+            out.flush();
+            out.close();
+        }
+    }
+
+    @Before
+    public void setup() {
+        queue = new LinkedBlockingQueue<>();
+        serializer = new UpcaseByteSerializer();
+        record = new LogFile();
+        tracker = mock(LogFileTracker.class);
+        worker = new ByteFileWritingWorker<>(
+                queue,
+                serializer,
+                record,
+                1,
+                tracker
+        );
+        thread = new Thread(worker,name.getMethodName());
+    }
+
+    @Test
+    public void testWriteOutput() throws IOException, InterruptedException {
+        Path path = Files.createTempFile(name.getMethodName(),".1");
+        try {
+            queue.addAll(Arrays.asList("foo", "bar", "baz"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            thread.interrupt();
+            thread.join(1000);
+            assertEquals(Arrays.asList("FOO", "BAR", "BAZ"), Files.readAllLines(path, ByteFileWritingWorker.UTF8));
+            verify(tracker,never()).writeError((LogFile) anyObject());
+            verify(tracker,times(1)).written((LogFile) anyObject());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testSerializerCannotFlush() throws IOException, InterruptedException {
+        Path path = Files.createTempFile(name.getMethodName(),".1");
+        try {
+            queue.addAll(Arrays.asList("foo", "bar", "baz"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            //serializer flushed, but worker should wait for its own flush interval
+            assertEquals(Collections.<String>emptyList(), Files.readAllLines(path, ByteFileWritingWorker.UTF8));
+
+            thread.sleep(1500); //Wait for auto-flush interval to pass.
+            assertEquals(Arrays.asList("FOO", "BAR", "BAZ"), Files.readAllLines(path, ByteFileWritingWorker.UTF8));
+            thread.interrupt();
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testPutBackOnQueue() throws IOException, InterruptedException {
+        Path path = Files.createTempFile(name.getMethodName(),".1");
+        try {
+            queue.add("foo");
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            serializer.throwErrors = true;
+            queue.add("bar");
+            assertExit(thread, "detected serialization error");
+            assertArrayEquals("Worker should have put failed item back on the queue.", new String[]{"bar"}, queue.toArray());
+            assertEquals(Arrays.asList("FOO"), Files.readAllLines(path, ByteFileWritingWorker.UTF8));
+            verify(tracker,never()).writeError((LogFile) anyObject());
+            verify(tracker,times(1)).written((LogFile) anyObject());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private <T> void assertDrain(Queue<T> queue) throws InterruptedException {
+        long timeoutAt = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < timeoutAt) {
+            if (queue.isEmpty())
+                break;
+            Thread.sleep(5);
+        }
+        assertTrue("Worker should have drained the queue.", queue.isEmpty());
+    }
+
+    private void assertExit(Thread thread, String reason) throws InterruptedException {
+        thread.join(1000);
+        assertFalse("Worker should have " + reason + " and exited.", thread.isAlive());
+    }
+}
@@ -0,0 +1,58 @@
+package io.ifar.skidroad.writing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CopyOnWriteLongMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        CopyOnWriteLongMap<String> map = new CopyOnWriteLongMap<>();
+        assertNull(map.get(1L));
+        assertNull(map.putIfAbsent(1L, "one"));
+        assertEquals("one", map.putIfAbsent(1L, "uno"));
+        assertEquals("one", map.get(1L));
+        assertFalse("Should only remove the mapped value.", map.remove(1L, "uno"));
+        assertTrue(map.remove(1L, "one"));
+        assertNull(map.get(1L));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testManyCollidingKeys() {
+        //Hourly start times, which share their low bits.
+        long hour = TimeUnit.HOURS.toMillis(1);
+        CopyOnWriteLongMap<Long> map = new CopyOnWriteLongMap<>();
+        for (long i = 0; i < 100; i++)
+            assertNull(map.putIfAbsent(i * hour, i));
+        assertEquals(100, map.size());
+        for (long i = 0; i < 100; i += 2)
+            assertTrue(map.remove(i * hour, map.get(i * hour)));
+        assertEquals(50, map.size());
+        for (long i = 0; i < 100; i++)
+            assertEquals(i % 2 == 0 ? null : Long.valueOf(i), map.get(i * hour));
+
+        List<Long> values = new ArrayList<>(map.values());
+        Collections.sort(values);
+        assertEquals(50, values.size());
+        assertEquals(Long.valueOf(1L), values.get(0));
+        assertEquals(Long.valueOf(99L), values.get(49));
+    }
+
+    @Test
+    public void testValuesIsSnapshot() {
+        CopyOnWriteLongMap<String> map = new CopyOnWriteLongMap<>();
+        map.putIfAbsent(0L, "zero");
+        List<String> values = map.values();
+        map.putIfAbsent(-1L, "minus one");
+        assertEquals(Collections.singletonList("zero"), values);
+        assertEquals(2, map.values().size());
+        assertEquals("minus one", map.get(-1L));
+    }
+}
@@ -54,7 +54,7 @@ public class DummyWritingWorkerFactory<T> implements WritingWorkerFactory<T> {
 
 
     private List<CountDownLatch> creationLatches = new LinkedList<>();
-    private List<Thread> threadsCreated = new ArrayList<>();
+    private List<Runnable> workersCreated = new ArrayList<>();
     /**
      * For each queue, a latch that blocks workers from running
      */
@@ -69,7 +69,7 @@ public class DummyWritingWorkerFactory<T> implements WritingWorkerFactory<T> {
     private Map<BlockingQueue<T>, CountDownLatch> exitLatches = new LinkedHashMap<>();
 
     @Override
-    public Thread buildWorker(final BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
+    public Runnable buildWorker(final BlockingQueue<T> queue, LogFile logFileRecord, LogFileTracker tracker) {
         if (!runLatches.containsKey(queue)) {
             runLatches.put(queue, new CountDownLatch(1));
             drainFlags.put(queue, new AtomicBoolean(false));
@@ -79,9 +79,9 @@ public class DummyWritingWorkerFactory<T> implements WritingWorkerFactory<T> {
         AtomicBoolean drainFlag = drainFlags.get(queue);
         CountDownLatch exitLatch = exitLatches.get(queue);
 
-        Thread result = new Thread(new DummyWorker<T>(queue,runLatch,drainFlag,exitLatch), getClass().getSimpleName() + "_" + threadsCreated.size());
+        Runnable result = new DummyWorker<T>(queue,runLatch,drainFlag,exitLatch);
 
-        threadsCreated.add(result);
+        workersCreated.add(result);
         for (CountDownLatch creationLatch : creationLatches)
             creationLatch.countDown();
         return result;
@@ -89,7 +89,7 @@ public class DummyWritingWorkerFactory<T> implements WritingWorkerFactory<T> {
     }
 
     /**
-     * Create a latch that will be released when the specified number of new Threads have been created.
+     * Create a latch that will be released when the specified number of new workers have been created.
      */
     public CountDownLatch getCreationLatch(int creationsToExpect) {
         CountDownLatch latch = new CountDownLatch(creationsToExpect);
@@ -118,8 +118,8 @@ public class DummyWritingWorkerFactory<T> implements WritingWorkerFactory<T> {
         exit.getValue().countDown();
     }
 
-    public List<Thread> getThreadsCreated() {
-        return threadsCreated;
+    public List<Runnable> getWorkersCreated() {
+        return workersCreated;
     }
 
     /**
@@ -1,22 +1,39 @@
 package io.ifar.skidroad.writing;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.prepping.GzipCodec;
+import io.ifar.skidroad.prepping.StreamingPrepper;
+import io.ifar.skidroad.rolling.BasicFileRollingScheme;
+import io.ifar.skidroad.rolling.FileRollingScheme;
+import io.ifar.skidroad.tracker.TransientLogFileTracker;
+import io.ifar.skidroad.tracking.LogFileState;
 import io.ifar.skidroad.tracking.LogFileTracker;
 import io.ifar.skidroad.writing.file.FileWritingWorker;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import org.skife.jdbi.v2.ResultIterator;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyObject;
@@ -100,6 +117,69 @@ public class FileWritingWorkerTest {
         }
     }
 
+    @Test
+    public void testMappedOutput() throws IOException, InterruptedException {
+        Path path = Files.createTempFile(name.getMethodName(),".1");
+        try {
+            worker.setMappedOutput(4096);
+            queue.addAll(Arrays.asList("foo", "bar", "baz"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            thread.interrupt();
+            thread.join(1000);
+            assertEquals("Mapped file should be trimmed to its content.", 12, Files.size(path));
+            assertEquals(Arrays.asList("FOO", "BAR", "BAZ"), Files.readAllLines(path, FileWritingWorker.UTF8));
+            assertEquals(Long.valueOf(12), record.getByteSize());
+            verify(tracker,times(1)).written((LogFile) anyObject());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testFsyncOnFlush() throws IOException, InterruptedException {
+        Path path = Files.createTempFile(name.getMethodName(),".1");
+        try {
+            Timer fsyncTimer = new Timer();
+            worker.setDurability(DurabilityMode.FSYNC_ON_FLUSH, fsyncTimer, null);
+            queue.addAll(Arrays.asList("foo", "bar", "baz"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            thread.sleep(1500); //Wait for auto-flush interval to pass.
+            assertEquals(Arrays.asList("FOO", "BAR", "BAZ"), Files.readAllLines(path, FileWritingWorker.UTF8));
+            assertEquals("Periodic flush should fsync.", 1, fsyncTimer.getCount());
+            thread.interrupt();
+            thread.join(1000);
+            assertEquals("File should be fsynced again before it is closed.", 2, fsyncTimer.getCount());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testGroupCommit() throws IOException, InterruptedException {
+        Path path = Files.createTempFile(name.getMethodName(),".1");
+        Timer fsyncTimer = new Timer();
+        GroupCommitter committer = new GroupCommitter(50, fsyncTimer);
+        try {
+            worker.setDurability(DurabilityMode.GROUP_COMMIT, null, committer);
+            queue.addAll(Arrays.asList("foo", "bar", "baz"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            thread.sleep(1500); //Wait for auto-flush interval to pass.
+            assertEquals("Flushed file should be fsynced by the group committer.", 1, fsyncTimer.getCount());
+            thread.interrupt();
+            thread.join(1000);
+            assertEquals(Arrays.asList("FOO", "BAR", "BAZ"), Files.readAllLines(path, FileWritingWorker.UTF8));
+        } finally {
+            committer.close();
+            Files.delete(path);
+        }
+    }
+
     @Test
     public void testFlush() throws IOException, InterruptedException {
         Path path = Files.createTempFile(name.getMethodName(),".1");
@@ -140,6 +220,177 @@ public class FileWritingWorkerTest {
         }
     }
 
+    @Test
+    public void testBatching() throws IOException, InterruptedException {
+        Path path = Files.createTempFile(name.getMethodName(),".1");
+        try {
+            Histogram batchSizes = new Histogram(new UniformReservoir());
+            worker.setBatching(4, batchSizes);
+            queue.addAll(Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h", "i", "j"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            thread.interrupt();
+            assertExit(thread, "detected interrupt");
+            assertEquals(Arrays.asList("A", "B", "C", "D", "E", "F", "G", "H", "I", "J"), Files.readAllLines(path, FileWritingWorker.UTF8));
+            assertEquals(3, batchSizes.getCount());
+            assertEquals(4, batchSizes.getSnapshot().getMax());
+            assertEquals(2, batchSizes.getSnapshot().getMin());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testRotateAtItemLimit() throws Exception {
+        Path dir = Files.createTempDirectory(name.getMethodName());
+        try {
+            FileRollingScheme rollingScheme = new BasicFileRollingScheme(dir.toString(), "rot-", ".log", 30, Duration.standardHours(1));
+            TransientLogFileTracker transientTracker = new TransientLogFileTracker();
+            DateTime startTime = rollingScheme.getCurrentStartTime();
+            LogFile first = transientTracker.open(rollingScheme.getRepresentation(startTime), rollingScheme.makeOutputPathPattern(startTime), startTime);
+            worker = new FileWritingWorker<>(queue, serializer, first, 1, transientTracker);
+            worker.setRotation(rollingScheme, 0, 3);
+            thread = new Thread(worker, name.getMethodName());
+            queue.addAll(Arrays.asList("a", "b", "c", "d", "e", "f", "g"));
+            thread.start();
+            assertDrain(queue);
+            thread.interrupt();
+            assertExit(thread, "detected interrupt");
+
+            String pattern = rollingScheme.makeOutputPathPattern(startTime);
+            assertEquals(Arrays.asList("A", "B", "C"), Files.readAllLines(Paths.get(String.format(pattern, 1)), FileWritingWorker.UTF8));
+            assertEquals(Arrays.asList("D", "E", "F"), Files.readAllLines(Paths.get(String.format(pattern, 2)), FileWritingWorker.UTF8));
+            assertEquals(Arrays.asList("G"), Files.readAllLines(Paths.get(String.format(pattern, 3)), FileWritingWorker.UTF8));
+            assertEquals(3, countWritten(transientTracker));
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path p : files)
+                    Files.delete(p);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testRotateAtByteLimit() throws Exception {
+        Path dir = Files.createTempDirectory(name.getMethodName());
+        try {
+            FileRollingScheme rollingScheme = new BasicFileRollingScheme(dir.toString(), "rot-", ".log", 30, Duration.standardHours(1));
+            TransientLogFileTracker transientTracker = new TransientLogFileTracker();
+            DateTime startTime = rollingScheme.getCurrentStartTime();
+            LogFile first = transientTracker.open(rollingScheme.getRepresentation(startTime), rollingScheme.makeOutputPathPattern(startTime), startTime);
+            worker = new FileWritingWorker<>(queue, serializer, first, 1, transientTracker);
+            //The BufferedWriter and its encoder each hold 8K, so each file overshoots the limit by up to 16K.
+            worker.setRotation(rollingScheme, 16 * 1024, 0);
+            worker.setBatching(1, null);
+            thread = new Thread(worker, name.getMethodName());
+            char[] line = new char[1023];
+            Arrays.fill(line, 'x');
+            for (int i = 0; i < 64; i++)
+                queue.add(new String(line));
+            thread.start();
+            assertDrain(queue);
+            thread.interrupt();
+            assertExit(thread, "detected interrupt");
+
+            int files = countWritten(transientTracker);
+            assertTrue("Expected 64K to be split across files, got " + files, files >= 2 && files <= 4);
+            String pattern = rollingScheme.makeOutputPathPattern(startTime);
+            int lines = 0;
+            for (int serial = 1; serial <= files; serial++) {
+                Path path = Paths.get(String.format(pattern, serial));
+                assertTrue(Files.size(path) <= 32 * 1024 + 1024);
+                lines += Files.readAllLines(path, FileWritingWorker.UTF8).size();
+            }
+            assertEquals(64, lines);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path p : files)
+                    Files.delete(p);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testPrepareWhileWriting() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory(name.getMethodName());
+        Path path = dir.resolve("log-1.log");
+        Path prepPath = dir.resolve("log-1.gz");
+        when(tracker.updateArchiveKey((LogFile) anyObject())).thenReturn(1);
+        when(tracker.updatePrepPath((LogFile) anyObject())).thenReturn(1);
+        try {
+            worker = new FileWritingWorker<>(queue, serializer, record, 1, tracker, new StreamingPrepper(new GzipCodec()));
+            thread = new Thread(worker, name.getMethodName());
+            queue.addAll(Arrays.asList("foo", "bar", "baz"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            thread.interrupt();
+            assertExit(thread, "detected interrupt");
+            assertFalse(Files.exists(path));
+            assertEquals(prepPath, record.getPrepPath());
+            assertEquals(Files.size(prepPath), record.getByteSize().longValue());
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(prepPath)), FileWritingWorker.UTF8))) {
+                assertEquals("FOO", reader.readLine());
+                assertEquals("BAR", reader.readLine());
+                assertEquals("BAZ", reader.readLine());
+                assertNull(reader.readLine());
+            }
+            verify(tracker,times(1)).writtenAndPrepared((LogFile) anyObject());
+            verify(tracker,never()).written((LogFile) anyObject());
+            verify(tracker,never()).writeError((LogFile) anyObject());
+        } finally {
+            Files.deleteIfExists(prepPath);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testPrepareWhileWritingFsyncsOnFlush() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory(name.getMethodName());
+        Path path = dir.resolve("log-1.log");
+        Path prepPath = dir.resolve("log-1.gz");
+        when(tracker.updateArchiveKey((LogFile) anyObject())).thenReturn(1);
+        when(tracker.updatePrepPath((LogFile) anyObject())).thenReturn(1);
+        try {
+            worker = new FileWritingWorker<>(queue, serializer, record, 1, tracker, new StreamingPrepper(new GzipCodec()));
+            Timer fsyncTimer = new Timer();
+            worker.setDurability(DurabilityMode.FSYNC_ON_FLUSH, fsyncTimer, null);
+            thread = new Thread(worker, name.getMethodName());
+            queue.addAll(Arrays.asList("foo", "bar", "baz"));
+            record.setOriginPath(path);
+            thread.start();
+            assertDrain(queue);
+            thread.sleep(1500); //Wait for auto-flush interval to pass.
+            assertEquals("Periodic flush should fsync the prepPath.", 1, fsyncTimer.getCount());
+            thread.interrupt();
+            assertExit(thread, "detected interrupt");
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(prepPath)), FileWritingWorker.UTF8))) {
+                assertEquals("FOO", reader.readLine());
+                assertEquals("BAR", reader.readLine());
+                assertEquals("BAZ", reader.readLine());
+                assertNull(reader.readLine());
+            }
+            verify(tracker,times(1)).writtenAndPrepared((LogFile) anyObject());
+        } finally {
+            Files.deleteIfExists(prepPath);
+            Files.delete(dir);
+        }
+    }
+
+    private int countWritten(LogFileTracker tracker) {
+        int count = 0;
+        try (ResultIterator<LogFile> written = tracker.findMine(LogFileState.WRITTEN)) {
+            while (written.hasNext()) {
+                written.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
     private <T> void assertDrain(Queue<T> queue) throws InterruptedException {
         long timeoutAt = System.currentTimeMillis() + 1000;
         while (System.currentTimeMillis() < timeoutAt) {
@@ -1,6 +1,6 @@
 package io.ifar.skidroad.writing;
 
-import io.ifar.skidroad.rolling.FileRollingScheme;
+import io.ifar.skidroad.rolling.PeriodicRollingScheme;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
@@ -16,7 +16,7 @@ import java.util.List;
  * A FileRollingScheme which rolls files when setNextRoll is called. Grace period extends from when file is rolled until
  * the next file is rolled.
 */
-public class ManualRollingScheme implements FileRollingScheme {
+public class ManualRollingScheme implements PeriodicRollingScheme {
     Path basePath;
     List<DateTime> rolls;
 
@@ -62,6 +62,22 @@ public class ManualRollingScheme implements FileRollingScheme {
         return result;
     }
 
+    @Override
+    public long getStartTimeMillis(long currentTimeMillis) {
+        return getStartTime(currentTimeMillis).getMillis();
+    }
+
+    /**
+     * The roll following startTime, or startTime itself if no later roll has been set yet.
+     */
+    @Override
+    public DateTime getSubsequentStartTime(DateTime startTime) {
+        for (DateTime roll : rolls)
+            if (roll.isAfter(startTime))
+                return roll;
+        return startTime;
+    }
+
     @Override
     public String makeOutputPathPattern(DateTime startTime) {
         return getRepresentation(startTime);
@@ -0,0 +1,75 @@
+package io.ifar.skidroad.writing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MappedFileOutputStreamTest {
+
+    @Rule
+    public TestName name = new TestName();
+
+    Path path;
+
+    @Before
+    public void setup() throws IOException {
+        path = Files.createTempFile(name.getMethodName(), ".log");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testPreallocatesAndTruncatesOnClose() throws IOException {
+        MappedFileOutputStream out = new MappedFileOutputStream(path, 1024);
+        out.write("hello\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("File should be grown a whole extent at a time.", 1024, Files.size(path));
+        assertEquals(6, out.size());
+        out.close();
+        assertEquals(6, Files.size(path));
+        assertEquals(Arrays.asList("hello"), Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWritesAcrossExtents() throws IOException {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ('a' + i % 26);
+        try (MappedFileOutputStream out = new MappedFileOutputStream(path, 1000)) {
+            out.write(data, 0, 2500);
+            out.write(data[2500]);
+            out.write(data, 2501, data.length - 2501);
+            out.flush();
+        }
+        assertArrayEquals(data, Files.readAllBytes(path));
+    }
+
+    @Test
+    public void testAppendsToExistingFile() throws IOException {
+        Files.write(path, "first\n".getBytes(StandardCharsets.UTF_8));
+        try (MappedFileOutputStream out = new MappedFileOutputStream(path, 64)) {
+            out.write("second\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(Arrays.asList("first", "second"), Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws IOException {
+        MappedFileOutputStream out = new MappedFileOutputStream(path, 64);
+        out.close();
+        out.close();
+        out.write('x');
+    }
+}
@@ -0,0 +1,290 @@
+package io.ifar.skidroad.writing;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.rolling.HybridRollingScheme;
+import io.ifar.skidroad.tracker.TransientLogFileTracker;
+import io.ifar.skidroad.tracking.LogFileState;
+import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import io.ifar.skidroad.writing.file.MultiplexedWritingWorkerFactory;
+import io.ifar.skidroad.writing.file.RawBytesSerializer;
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MultiplexedFileWriterTest {
+
+    static class UpcaseByteSerializer implements ByteSerializer<String> {
+        @Override
+        public void serialize(String item, OutputStream out) throws IOException {
+            if (item.equals("bad"))
+                throw new IOException("fake serialization error");
+            out.write(item.toUpperCase().getBytes(AbstractWritingWorker.UTF8));
+        }
+    }
+
+    /**
+     * Fails the way a buggy serializer might, with an unchecked exception.
+     */
+    static class ExplodingByteSerializer extends UpcaseByteSerializer {
+        @Override
+        public void serialize(String item, OutputStream out) throws IOException {
+            if (item.equals("boom"))
+                throw new IllegalStateException("fake serializer bug");
+            super.serialize(item, out);
+        }
+    }
+
+    ManualRollingScheme rollingScheme;
+    LogFileTracker tracker;
+    MultiplexedFileWriter writer;
+
+    @Before
+    public void setup() throws Exception {
+        //Serial-numbered paths, so that files of one cohort do not share a path.
+        rollingScheme = new ManualRollingScheme() {
+            @Override
+            public String makeOutputPathPattern(DateTime startTime) {
+                return getBaseDirectory().toPath().resolve(getRepresentation(startTime) + "-%d.log").toString();
+            }
+        };
+        tracker = new TransientLogFileTracker();
+        writer = new MultiplexedFileWriter(1);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        writer.close();
+        FileUtils.deleteDirectory(rollingScheme.getBaseDirectory());
+    }
+
+    @Test
+    public void testOneThreadWritesManyFiles() throws Exception {
+        MultiplexedWritingWorkerFactory<String> factory = new MultiplexedWritingWorkerFactory<>(writer, new UpcaseByteSerializer(), 1);
+        List<BlockingQueue<String>> queues = new ArrayList<>();
+        List<LogFile> files = new ArrayList<>();
+        List<NonBlockingWorker> workers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queues.add(new LinkedBlockingQueue<String>());
+            files.add(open());
+            workers.add(factory.buildWorker(queues.get(i), files.get(i), tracker));
+        }
+        List<ListenableFuture<Void>> exits = new ArrayList<>();
+        for (NonBlockingWorker worker : workers)
+            exits.add(worker.start());
+        assertEquals(3, writer.getWorkerCount());
+        for (int i = 0; i < 3; i++)
+            queues.get(i).addAll(Arrays.asList("a" + i, "b" + i));
+        for (BlockingQueue<String> queue : queues)
+            assertDrain(queue);
+        for (NonBlockingWorker worker : workers)
+            worker.stop();
+        for (int i = 0; i < 3; i++) {
+            exits.get(i).get(1, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("A" + i, "B" + i), Files.readAllLines(files.get(i).getOriginPath(), AbstractWritingWorker.UTF8));
+            assertEquals(LogFileState.WRITTEN, files.get(i).getState());
+        }
+        assertEquals(0, writer.getWorkerCount());
+    }
+
+    @Test
+    public void testRawItemsWrittenWithoutCopy() throws Exception {
+        BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+        LogFile file = open();
+        NonBlockingWorker worker = new MultiplexedWritingWorkerFactory<>(writer, RawBytesSerializer.INSTANCE, 1)
+                .buildWorker(queue, file, tracker);
+        for (String item : Arrays.asList("{\"a\":1}", "", "{\"c\":3}"))
+            queue.add(item.getBytes(AbstractWritingWorker.UTF8));
+        ListenableFuture<Void> exit = worker.start();
+        assertDrain(queue);
+        worker.stop();
+        exit.get(1, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("{\"a\":1}", "", "{\"c\":3}"), Files.readAllLines(file.getOriginPath(), AbstractWritingWorker.UTF8));
+    }
+
+    @Test
+    public void testRotateAtItemLimit() throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        LogFile file = open();
+        MultiplexedWritingWorkerFactory<String> factory = new MultiplexedWritingWorkerFactory<>(writer, new UpcaseByteSerializer(), 1);
+        factory.withRotation(rollingScheme, 0L, 2L);
+        NonBlockingWorker worker = factory.buildWorker(queue, file, tracker);
+        queue.addAll(Arrays.asList("a", "b", "c"));
+        ListenableFuture<Void> exit = worker.start();
+        assertDrain(queue);
+        worker.stop();
+        exit.get(1, TimeUnit.SECONDS);
+
+        List<List<String>> contents = new ArrayList<>();
+        try (ResultIterator<LogFile> written = tracker.findMine(LogFileState.WRITTEN)) {
+            while (written.hasNext())
+                contents.add(Files.readAllLines(written.next().getOriginPath(), AbstractWritingWorker.UTF8));
+        }
+        Collections.sort(contents, new Comparator<List<String>>() {
+            @Override
+            public int compare(List<String> a, List<String> b) {
+                return a.get(0).compareTo(b.get(0));
+            }
+        });
+        assertEquals(Arrays.asList(Arrays.asList("A", "B"), Arrays.asList("C")), contents);
+    }
+
+    @Test
+    public void testPutBackOnSerializationError() throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        LogFile file = open();
+        NonBlockingWorker worker = new MultiplexedWritingWorkerFactory<>(writer, new UpcaseByteSerializer(), 1)
+                .buildWorker(queue, file, tracker);
+        queue.addAll(Arrays.asList("a", "bad", "c"));
+        worker.start().get(1, TimeUnit.SECONDS);
+        assertArrayEquals("Worker should have put failed items back on the queue.", new String[]{"bad", "c"}, queue.toArray());
+        assertEquals(Arrays.asList("A"), Files.readAllLines(file.getOriginPath(), AbstractWritingWorker.UTF8));
+        assertEquals(LogFileState.WRITTEN, file.getState());
+    }
+
+    @Test
+    public void testRuntimeExceptionFailsOnlyItsOwnStream() throws Exception {
+        MultiplexedWritingWorkerFactory<String> factory = new MultiplexedWritingWorkerFactory<>(writer, new ExplodingByteSerializer(), 1);
+        List<BlockingQueue<String>> queues = new ArrayList<>();
+        List<LogFile> files = new ArrayList<>();
+        List<ListenableFuture<Void>> exits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queues.add(new LinkedBlockingQueue<String>());
+            files.add(open());
+            exits.add(factory.buildWorker(queues.get(i), files.get(i), tracker).start());
+        }
+        queues.get(1).addAll(Arrays.asList("ok", "boom"));
+        try {
+            exits.get(1).get(1, TimeUnit.SECONDS);
+            fail("Stream should have failed.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertArrayEquals("Failed stream should put its batch back.", new String[]{"ok", "boom"}, queues.get(1).toArray());
+
+        queues.get(0).add("a");
+        queues.get(2).add("c");
+        assertDrain(queues.get(0));
+        assertDrain(queues.get(2));
+        writer.close();
+        exits.get(0).get(1, TimeUnit.SECONDS);
+        exits.get(2).get(1, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("A"), Files.readAllLines(files.get(0).getOriginPath(), AbstractWritingWorker.UTF8));
+        assertEquals(Arrays.asList("C"), Files.readAllLines(files.get(2).getOriginPath(), AbstractWritingWorker.UTF8));
+        assertEquals(0, writer.getWorkerCount());
+    }
+
+    @Test(timeout = 30000L)
+    public void testStartRacingCloseEitherRejectsOrExits() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            final MultiplexedFileWriter racing = new MultiplexedFileWriter(1);
+            MultiplexedWritingWorkerFactory<String> factory = new MultiplexedWritingWorkerFactory<>(racing, new UpcaseByteSerializer(), 1);
+            List<NonBlockingWorker> workers = new ArrayList<>();
+            for (int w = 0; w < 8; w++)
+                workers.add(factory.buildWorker(new LinkedBlockingQueue<String>(), open(), tracker));
+            final CountDownLatch go = new CountDownLatch(1);
+            Thread closer = new Thread() {
+                @Override
+                public void run() {
+                    Uninterruptibles.awaitUninterruptibly(go);
+                    racing.close();
+                }
+            };
+            closer.start();
+            go.countDown();
+            for (NonBlockingWorker worker : workers) {
+                try {
+                    worker.start().get(5, TimeUnit.SECONDS);
+                } catch (RejectedExecutionException e) {
+                    //closed first
+                }
+            }
+            closer.join();
+            assertEquals(0, racing.getWorkerCount());
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testManagerStopsDespiteFailedStream() throws Exception {
+        WritingWorkerManager<String> manager = new WritingWorkerManager<>(rollingScheme, tracker,
+                new MultiplexedWritingWorkerFactory<>(writer, new ExplodingByteSerializer(), 1), 1, 3, 10);
+        manager.start();
+        for (String item : Arrays.asList("x", "boom", "z"))
+            manager.record(System.currentTimeMillis(), item);
+        manager.stop();
+        assertEquals(0, writer.getWorkerCount());
+    }
+
+    @Test
+    public void testManagerStartsAndStopsMultiplexedWorkers() throws Exception {
+        WritingWorkerManager<String> manager = new WritingWorkerManager<>(rollingScheme, tracker,
+                new MultiplexedWritingWorkerFactory<>(writer, new UpcaseByteSerializer(), 1), 1, 3, 10);
+        manager.start();
+        for (String item : Arrays.asList("x", "y", "z"))
+            manager.record(System.currentTimeMillis(), item);
+        manager.stop();
+        assertEquals(0, writer.getWorkerCount());
+        try (ResultIterator<LogFile> written = tracker.findMine(LogFileState.WRITTEN)) {
+            assertTrue(written.hasNext());
+            assertEquals(Arrays.asList("X", "Y", "Z"), Files.readAllLines(written.next().getOriginPath(), AbstractWritingWorker.UTF8));
+            assertFalse(written.hasNext());
+        }
+    }
+
+    @Test
+    public void testManagerRollsAtSchemeSizeBudget() throws Exception {
+        HybridRollingScheme hybrid = new HybridRollingScheme(rollingScheme, 0L, 2L);
+        MultiplexedWritingWorkerFactory<String> factory = new MultiplexedWritingWorkerFactory<>(writer, new UpcaseByteSerializer(), 1);
+        factory.withRotation(hybrid);
+        WritingWorkerManager<String> manager = new WritingWorkerManager<>(hybrid, tracker, factory, 1, 3, 10);
+        manager.start();
+        for (String item : Arrays.asList("a", "b", "c", "d", "e"))
+            manager.record(System.currentTimeMillis(), item);
+        manager.stop();
+
+        List<String> sizes = new ArrayList<>();
+        try (ResultIterator<LogFile> written = tracker.findMine(LogFileState.WRITTEN)) {
+            while (written.hasNext())
+                sizes.add(Integer.toString(Files.readAllLines(written.next().getOriginPath(), AbstractWritingWorker.UTF8).size()));
+        }
+        Collections.sort(sizes);
+        assertEquals("Cohort should be split into files of at most two items.", Arrays.asList("1", "2", "2"), sizes);
+    }
+
+    private LogFile open() {
+        DateTime startTime = rollingScheme.getCurrentStartTime();
+        return tracker.open(rollingScheme.getRepresentation(startTime), rollingScheme.makeOutputPathPattern(startTime), startTime);
+    }
+
+    private <T> void assertDrain(BlockingQueue<T> queue) throws InterruptedException {
+        long timeoutAt = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < timeoutAt) {
+            if (queue.isEmpty())
+                break;
+            Thread.sleep(5);
+        }
+        assertTrue("Worker should have drained the queue.", queue.isEmpty());
+    }
+}
@@ -0,0 +1,164 @@
+package io.ifar.skidroad.writing;
+
+import io.ifar.skidroad.writing.file.ByteSerializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.ifar.skidroad.tracker.TransientLogFileTracker;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class PreSerializingRecorderTest {
+
+    WritingWorkerManager<byte[]> writerManager;
+    ByteSerializer<String> serializer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        writerManager = mock(WritingWorkerManager.class);
+        serializer = new ByteSerializer<String>() {
+            @Override
+            public void serialize(String item, OutputStream out) throws IOException {
+                if (item.equals("bad"))
+                    throw new IOException("fake serialization error");
+                out.write(item.toUpperCase().getBytes(AbstractWritingWorker.UTF8));
+            }
+        };
+    }
+
+    @Test
+    public void testSerializeOnCallingThread() {
+        PreSerializingRecorder<String> recorder = new PreSerializingRecorder<>(writerManager, serializer);
+        recorder.record(1000L, "foo");
+        recorder.record(2000L, "barbaz");
+
+        ArgumentCaptor<byte[]> bytes = ArgumentCaptor.forClass(byte[].class);
+        verify(writerManager).record(eq(1000L), bytes.capture());
+        assertArrayEquals("FOO".getBytes(AbstractWritingWorker.UTF8), bytes.getValue());
+        verify(writerManager).record(eq(2000L), bytes.capture());
+        assertArrayEquals("BARBAZ".getBytes(AbstractWritingWorker.UTF8), bytes.getValue());
+        assertEquals(2, recorder.serializationTimer.getCount());
+    }
+
+    @Test
+    public void testSerializeInPool() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        PreSerializingRecorder<String> recorder = new PreSerializingRecorder<>(writerManager, serializer, executor);
+        for (int i = 0; i < 100; i++)
+            recorder.record(i, "item" + i);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        ArgumentCaptor<byte[]> bytes = ArgumentCaptor.forClass(byte[].class);
+        verify(writerManager).record(eq(42L), bytes.capture());
+        assertArrayEquals("ITEM42".getBytes(AbstractWritingWorker.UTF8), bytes.getValue());
+        verify(writerManager, times(100)).record(anyLong(), (byte[]) anyObject());
+        assertEquals(100, recorder.serializationTimer.getCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBoundedPoolAppliesQueueFullPolicy() throws Exception {
+        ManualRollingScheme rollingScheme = new ManualRollingScheme();
+        WritingWorkerManager<byte[]> bounded = spy(new WritingWorkerManager<byte[]>(rollingScheme,
+                new TransientLogFileTracker(), new DummyWritingWorkerFactory<byte[]>(), 1, 1, 1)
+                .withBoundedQueues(1, QueueFullPolicy.DROP_NEWEST, 0L));
+        doNothing().when(bounded).record(anyLong(), (byte[]) anyObject());
+        final CountDownLatch release = new CountDownLatch(1);
+        ByteSerializer<String> stalling = new ByteSerializer<String>() {
+            @Override
+            public void serialize(String item, OutputStream out) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                serializer.serialize(item, out);
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(1), new QueueFullRejectionHandler(bounded));
+        try {
+            PreSerializingRecorder<String> recorder = new PreSerializingRecorder<>(bounded, stalling, executor);
+            recorder.record(1000L, "a"); //taken by the one thread, which stalls
+            recorder.record(2000L, "b"); //fills the queue
+            recorder.record(3000L, "c"); //rejected
+            assertEquals("Item the pool has no room for should be dropped.", 1, bounded.droppedMeter.getCount());
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            verify(bounded).record(eq(1000L), (byte[]) anyObject());
+            verify(bounded).record(eq(2000L), (byte[]) anyObject());
+            verify(bounded, never()).record(eq(3000L), (byte[]) anyObject());
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteDirectory(rollingScheme.getBaseDirectory());
+        }
+    }
+
+    @Test
+    public void testDropOldestGivesUpWhenPoolQueueRefuses() throws Exception {
+        ManualRollingScheme rollingScheme = new ManualRollingScheme();
+        WritingWorkerManager<byte[]> bounded = spy(new WritingWorkerManager<byte[]>(rollingScheme,
+                new TransientLogFileTracker(), new DummyWritingWorkerFactory<byte[]>(), 1, 1, 1)
+                .withBoundedQueues(1, QueueFullPolicy.DROP_OLDEST, 0L));
+        doNothing().when(bounded).record(anyLong(), (byte[]) anyObject());
+        final CountDownLatch release = new CountDownLatch(1);
+        ByteSerializer<String> stalling = new ByteSerializer<String>() {
+            @Override
+            public void serialize(String item, OutputStream out) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                serializer.serialize(item, out);
+            }
+        };
+        //A queue with no room at all: there is never an oldest task to drop in favour of the new one.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>(), new QueueFullRejectionHandler(bounded));
+        try {
+            PreSerializingRecorder<String> recorder = new PreSerializingRecorder<>(bounded, stalling, executor);
+            recorder.record(1000L, "a"); //taken by the one thread, which stalls
+            recorder.record(2000L, "b"); //rejected, and cannot be queued either
+            assertEquals("Item the pool cannot queue should be dropped.", 1, bounded.droppedMeter.getCount());
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            verify(bounded).record(eq(1000L), (byte[]) anyObject());
+            verify(bounded, never()).record(eq(2000L), (byte[]) anyObject());
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteDirectory(rollingScheme.getBaseDirectory());
+        }
+    }
+
+    @Test
+    public void testSerializationErrorDropsItem() {
+        PreSerializingRecorder<String> recorder = new PreSerializingRecorder<>(writerManager, serializer);
+        recorder.record(1000L, "bad");
+        recorder.record(2000L, "good");
+
+        verify(writerManager, never()).record(eq(1000L), (byte[]) anyObject());
+        verify(writerManager).record(eq(2000L), (byte[]) anyObject());
+        assertEquals(1, recorder.serializationErrorMeter.getCount());
+    }
+}
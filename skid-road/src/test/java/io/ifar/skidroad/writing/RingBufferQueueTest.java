@@ -0,0 +1,168 @@
+package io.ifar.skidroad.writing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RingBufferQueueTest {
+
+    @Test
+    public void testCapacityRoundedUp() {
+        assertEquals(2, new RingBufferQueue<String>(1).capacity());
+        assertEquals(8, new RingBufferQueue<String>(5).capacity());
+        assertEquals(8, new RingBufferQueue<String>(8).capacity());
+    }
+
+    @Test
+    public void testFifoAcrossWrap() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++)
+                assertTrue(queue.offer(round * 10 + i));
+            assertFalse("Queue should be full.", queue.offer(-1));
+            assertEquals(4, queue.size());
+            assertEquals(0, queue.remainingCapacity());
+            assertEquals(Integer.valueOf(round * 10), queue.peek());
+            assertEquals(Arrays.asList(round * 10, round * 10 + 1, round * 10 + 2, round * 10 + 3), new ArrayList<>(queue));
+            for (int i = 0; i < 4; i++)
+                assertEquals(Integer.valueOf(round * 10 + i), queue.poll());
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testDrainTo() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(8);
+        for (int i = 0; i < 6; i++)
+            queue.offer(i);
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(drained, 4));
+        assertEquals(Arrays.asList(0, 1, 2, 3), drained);
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(6, drained.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTimedOperations() throws InterruptedException {
+        RingBufferQueue<String> queue = new RingBufferQueue<>(2);
+        long before = System.nanoTime();
+        assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - before >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(queue.offer("a", 50, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer("b", 50, TimeUnit.MILLISECONDS));
+        before = System.nanoTime();
+        assertFalse(queue.offer("c", 50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - before >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testInterruptWhileWaiting() throws InterruptedException {
+        final RingBufferQueue<String> queue = new RingBufferQueue<>(1);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.take();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        };
+        consumer.start();
+        consumer.interrupt();
+        consumer.join(1000);
+        assertTrue("Waiting consumer should have been interrupted.", interrupted.get());
+    }
+
+    @Test
+    public void testOfferWakesIdleConsumer() throws InterruptedException {
+        final RingBufferQueue<String> queue = new RingBufferQueue<>(2);
+        final AtomicLong tookAt = new AtomicLong();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.take();
+                    tookAt.set(System.nanoTime());
+                } catch (InterruptedException e) {
+                    //leave tookAt unset
+                }
+            }
+        };
+        consumer.start();
+        //Long enough for the consumer to pass its short parks and sleep as idle.
+        Thread.sleep(200);
+        long offeredAt = System.nanoTime();
+        assertTrue(queue.offer("a"));
+        consumer.join(5000);
+        assertTrue("Consumer should have taken the item.", tookAt.get() != 0);
+        assertTrue("Offer should wake an idle consumer well before its idle park ends.",
+                tookAt.get() - offeredAt < TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws InterruptedException {
+        final int producers = 4;
+        final int consumers = 2;
+        final int perProducer = 50000;
+        final RingBufferQueue<Integer> queue = new RingBufferQueue<>(64);
+        final BitSet seen = new BitSet(producers * perProducer);
+        final CountDownLatch done = new CountDownLatch(producers);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perProducer; i++)
+                            queue.put(base + i);
+                    } catch (InterruptedException e) {
+                        //test fails below
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            Integer item = queue.poll(100, TimeUnit.MILLISECONDS);
+                            if (item == null) {
+                                if (done.getCount() == 0 && queue.isEmpty())
+                                    return;
+                                continue;
+                            }
+                            synchronized (seen) {
+                                assertFalse("Duplicate item " + item, seen.get(item));
+                                seen.set(item);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        //test fails below
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join(10000);
+        assertEquals(producers * perProducer, seen.cardinality());
+    }
+}
@@ -0,0 +1,141 @@
+package io.ifar.skidroad.writing;
+
+import io.ifar.skidroad.writing.file.RawBytesSerializer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpillJournalTest {
+
+    @Rule
+    public TestName name = new TestName();
+
+    Path dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(name.getMethodName());
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testReadsInOrderAcrossSegments() throws IOException {
+        SpillJournal<byte[]> journal = open(64);
+        for (int i = 0; i < 20; i++)
+            journal.append(i, bytes("item" + i));
+        assertEquals(20L, journal.size());
+        assertTrue("Items should span several segments.", segmentCount() > 1);
+
+        List<String> items = new ArrayList<>();
+        List<SpillJournal.Entry<byte[]>> entries;
+        while (!(entries = journal.read(3)).isEmpty()) {
+            for (SpillJournal.Entry<byte[]> entry : entries) {
+                assertEquals(items.size(), entry.timeStamp);
+                items.add(string(entry.item));
+            }
+        }
+        assertEquals(20, items.size());
+        assertEquals("item19", items.get(19));
+        assertTrue(journal.isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testRecoversUncommittedEntries() throws IOException {
+        SpillJournal<byte[]> journal = open(64);
+        for (String item : Arrays.asList("a", "b", "c", "d"))
+            journal.append(1L, bytes(item));
+        journal.read(1);
+        journal.commit(journal.getReadPosition());
+        journal.read(1);
+        journal.close();
+
+        journal = open(64);
+        assertEquals("Read but uncommitted entry should be recovered.", 3L, journal.size());
+        journal.append(2L, bytes("e"));
+        List<String> items = new ArrayList<>();
+        for (SpillJournal.Entry<byte[]> entry : journal.read(10))
+            items.add(string(entry.item));
+        assertEquals(Arrays.asList("b", "c", "d", "e"), items);
+        journal.commit(journal.getReadPosition());
+        journal.close();
+
+        journal = open(64);
+        assertTrue(journal.isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testCommitDeletesReadSegments() throws IOException {
+        SpillJournal<byte[]> journal = open(64);
+        for (int i = 0; i < 20; i++)
+            journal.append(i, bytes("item" + i));
+        int before = segmentCount();
+        journal.read(20);
+        assertEquals("Segments should remain until committed.", before, segmentCount());
+        journal.commit(journal.getReadPosition());
+        assertEquals(1, segmentCount());
+        journal.close();
+    }
+
+    @Test
+    public void testEmptyItem() throws IOException {
+        SpillJournal<byte[]> journal = open(64);
+        journal.append(1L, new byte[0]);
+        journal.append(2L, bytes("x"));
+        List<SpillJournal.Entry<byte[]>> entries = journal.read(10);
+        assertEquals(2, entries.size());
+        assertEquals(0, entries.get(0).item.length);
+        assertEquals("x", string(entries.get(1).item));
+        journal.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testItemLargerThanSegment() throws IOException {
+        SpillJournal<byte[]> journal = open(64);
+        try {
+            journal.append(1L, new byte[64]);
+        } finally {
+            journal.close();
+        }
+    }
+
+    private SpillJournal<byte[]> open(int segmentBytes) throws IOException {
+        return new SpillJournal<>(dir, RawBytesSerializer.INSTANCE, RawBytesSerializer.INSTANCE, segmentBytes);
+    }
+
+    private int segmentCount() throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.journal")) {
+            for (Path ignored : files)
+                count++;
+        }
+        return count;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
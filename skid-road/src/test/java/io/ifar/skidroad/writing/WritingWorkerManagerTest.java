@@ -1,10 +1,20 @@
 package io.ifar.skidroad.writing;
 
 import io.ifar.skidroad.LogFile;
+import io.ifar.skidroad.rolling.BasicFileRollingScheme;
+import io.ifar.skidroad.rolling.FileRollingScheme;
+import io.ifar.skidroad.rolling.HybridRollingScheme;
 import io.ifar.skidroad.tracker.TransientLogFileTracker;
 import io.ifar.skidroad.tracking.LogFileState;
 import io.ifar.skidroad.tracking.LogFileTracker;
+import io.ifar.skidroad.writing.file.ByteDeserializer;
+import io.ifar.skidroad.writing.file.FileWritingWorkerFactory;
+import io.ifar.skidroad.writing.file.Serializer;
+import io.ifar.skidroad.writing.file.StringByteSerializer;
+import org.apache.commons.io.FileUtils;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -14,14 +24,22 @@ import org.skife.jdbi.v2.ResultIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -34,6 +52,13 @@ public class WritingWorkerManagerTest {
     private final static int LAUNCH_MORE_WORKERS_THRESHOLD = 3;
     private final static int UNHEALTHY_QUEUE_SIZE = 10;
 
+    private final static Serializer<String> IDENTITY = new Serializer<String>() {
+        @Override
+        public String serialize(String item) {
+            return item;
+        }
+    };
+
     @Rule
     public TestName name = new TestName();
 
@@ -73,16 +98,94 @@ public class WritingWorkerManagerTest {
         assertNotSame(queue1, manager.getQueueFor(t.plusSeconds(12)));
     }
 
+    @Test
+    public void testNewQueueForCachedCohortAfterPrune() throws Exception {
+        DateTime t = DateTime.now();
+        rollingScheme.setNextRoll(t.plusSeconds(10));
+        CountDownLatch creationLatch = factory.getCreationLatch(1);
+        BlockingQueue<String> queue1 = manager.getQueueFor(t.plusSeconds(5));
+        assertSame(queue1, manager.getQueueFor(t.plusSeconds(6)));
+        awaitLatch(creationLatch);
+
+        rollingScheme.setNextRoll(t.plusSeconds(20));
+        factory.exitNextQueue();
+        awaitNextPrune();
+        awaitNextPrune();
+        assertNotSame("Pruned queue should not be served from cache.", queue1, manager.getQueueFor(t.plusSeconds(5)));
+    }
+
+    @Test
+    public void testMultiHourCohortsDoNotDependOnCache() throws Exception {
+        WritingWorkerManager<String> twoHourly = new WritingWorkerManager<>(
+                new BasicFileRollingScheme(rollingScheme.getBaseDirectory().getPath(), "test-", ".log", 0, Duration.standardHours(2)),
+                tracker,
+                factory,
+                PRUNE_INTERVAL_SECONDS,
+                LAUNCH_MORE_WORKERS_THRESHOLD,
+                UNHEALTHY_QUEUE_SIZE);
+        DateTime start = new DateTime(2015, 1, 20, 10, 0, DateTimeZone.UTC);
+        //Later time first, so that the earlier lookup cannot be answered from the cache.
+        BlockingQueue<String> queue = twoHourly.getQueueFor(start.plusMinutes(90));
+        assertSame(queue, twoHourly.getQueueFor(start.plusMinutes(30)));
+        assertSame(queue, twoHourly.getQueueFor(start.plusMinutes(90)));
+        assertSame(queue, twoHourly.getQueueFor(start.plusHours(2).minusMillis(1)));
+        assertNotSame(queue, twoHourly.getQueueFor(start.plusHours(2)));
+    }
+
+    @Test
+    public void testPlainFileRollingSchemeRoutesByLookup() throws Exception {
+        //Implements only FileRollingScheme, as schemes written before PeriodicRollingScheme do.
+        FileRollingScheme plain = new FileRollingScheme() {
+            @Override
+            public boolean isTimeToClose(DateTime startTime) {
+                return rollingScheme.isTimeToClose(startTime);
+            }
+
+            @Override
+            public DateTime getCurrentStartTime() {
+                return rollingScheme.getCurrentStartTime();
+            }
+
+            @Override
+            public DateTime getStartTime(long currentTimeMillis) {
+                return rollingScheme.getStartTime(currentTimeMillis);
+            }
+
+            @Override
+            public File getBaseDirectory() {
+                return rollingScheme.getBaseDirectory();
+            }
+
+            @Override
+            public String makeOutputPathPattern(DateTime startTime) {
+                return rollingScheme.makeOutputPathPattern(startTime);
+            }
+
+            @Override
+            public String getRepresentation(DateTime startTime) {
+                return rollingScheme.getRepresentation(startTime);
+            }
+        };
+        WritingWorkerManager<String> lookingUp = new WritingWorkerManager<>(plain, tracker, factory,
+                PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE);
+        DateTime t = DateTime.now();
+        BlockingQueue<String> first = lookingUp.getQueueFor(t.getMillis());
+        assertSame(first, lookingUp.getQueueFor(t.getMillis()));
+        rollingScheme.setNextRoll(t.plusMinutes(1));
+        assertNotSame(first, lookingUp.getQueueFor(t.plusMinutes(1).getMillis()));
+        assertSame(first, lookingUp.getQueueFor(t.getMillis()));
+    }
+
     @Test
     public void testPruneDeadThreads() throws Exception {
         CountDownLatch creationLatch = factory.getCreationLatch(1);
         manager.record(System.currentTimeMillis(), "foo");
         awaitLatch(creationLatch);
-        assertEquals(1,factory.getThreadsCreated().size());
-        Thread originalWorker = factory.getThreadsCreated().get(0);
+        assertEquals(1,factory.getWorkersCreated().size());
+        Runnable originalWorker = factory.getWorkersCreated().get(0);
         factory.exitNextQueue();
         awaitNextPrune();
-        assertFalse("Dead worker should have been pruned", manager.getWorkerThreadSnapshot().contains(originalWorker));
+        assertFalse("Dead worker should have been pruned", manager.getWorkerSnapshot().contains(originalWorker));
     }
 
     @Test
@@ -95,7 +198,7 @@ public class WritingWorkerManagerTest {
         factory.drainNextQueue();
         awaitNextPrune(); //See worker is not needed and interrupt it.
         awaitNextPrune(); //See worker is not alive and prune it.
-        assertTrue("Worker for stale & empty queue should have been pruned", manager.getWorkerThreadSnapshot().isEmpty());
+        assertTrue("Worker for stale & empty queue should have been pruned", manager.getWorkerSnapshot().isEmpty());
     }
 
     @Test
@@ -106,7 +209,7 @@ public class WritingWorkerManagerTest {
         rollingScheme.setNextRoll(t.plusSeconds(1));
         awaitLatch(creationLatch);
         awaitNextPrune();
-        assertFalse("Worker for stale queue should not be pruned if queue is not empty.", manager.getWorkerThreadSnapshot().isEmpty());
+        assertFalse("Worker for stale queue should not be pruned if queue is not empty.", manager.getWorkerSnapshot().isEmpty());
     }
 
     @Test
@@ -117,7 +220,7 @@ public class WritingWorkerManagerTest {
         factory.drainNextQueue();
         awaitNextPrune();
         assertFalse("Worker for current queue should not be pruned (even if queue empty).",
-                manager.getWorkerThreadSnapshot().isEmpty());
+                manager.getWorkerSnapshot().isEmpty());
     }
 
     @Test
@@ -131,6 +234,34 @@ public class WritingWorkerManagerTest {
         awaitLatch(creationLatch);
     }
 
+    @Test
+    public void testLaunchExtraWorkersBetweenPrunes() throws Exception {
+        DummyWritingWorkerFactory<String> burstFactory = new DummyWritingWorkerFactory<>();
+        WritingWorkerManager<String> burst = new WritingWorkerManager<>(rollingScheme, tracker, burstFactory,
+                3600, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE).withMaxWorkersPerCohort(3);
+        CountDownLatch firstLatch = burstFactory.getCreationLatch(1);
+        CountDownLatch secondLatch = burstFactory.getCreationLatch(2);
+        CountDownLatch thirdLatch = burstFactory.getCreationLatch(3);
+        burst.start();
+        try {
+            long t = System.currentTimeMillis();
+            burst.record(t, "foo");
+            awaitLatch(firstLatch);
+            for (int i = 1; i < LAUNCH_MORE_WORKERS_THRESHOLD; i++)
+                burst.record(t, "foo");
+            assertTrue("Crossing the depth watermark should launch a worker without waiting for a prune.",
+                    secondLatch.await(1, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals("Next watermark scales with worker count.", 2, burst.getWorkerSnapshot().size());
+            for (int i = 0; i < LAUNCH_MORE_WORKERS_THRESHOLD; i++)
+                burst.record(t, "foo");
+            assertTrue(thirdLatch.await(1, TimeUnit.SECONDS));
+        } finally {
+            burstFactory.stop();
+            burst.stop();
+        }
+    }
+
     @Test
     public void testLaunchReplacementWorkerWhenAllWorkersDead() throws Exception {
         CountDownLatch creationLatchFirst = factory.getCreationLatch(1);
@@ -151,7 +282,7 @@ public class WritingWorkerManagerTest {
         factory.drainNextQueue();
         factory.exitNextQueue();
         awaitNextPrune();
-        assertTrue("No additional Thread should have been created.", creationLatchAnother.getCount() > 0);
+        assertTrue("No additional worker should have been created.", creationLatchAnother.getCount() > 0);
     }
 
     @Test
@@ -204,6 +335,468 @@ public class WritingWorkerManagerTest {
 
     }
 
+    @Test
+    public void testDropNewestWhenQueueFull() throws Exception {
+        WritingWorkerManager<String> bounded = boundedManager(QueueFullPolicy.DROP_NEWEST);
+        long t = System.currentTimeMillis();
+        for (String item : Arrays.asList("a", "b", "c", "d"))
+            bounded.record(t, item);
+        assertArrayEquals(new String[]{"a", "b"}, bounded.getQueueFor(t).toArray());
+        assertEquals(2, bounded.droppedMeter.getCount());
+    }
+
+    @Test
+    public void testDropOldestWhenQueueFull() throws Exception {
+        WritingWorkerManager<String> bounded = boundedManager(QueueFullPolicy.DROP_OLDEST);
+        long t = System.currentTimeMillis();
+        for (String item : Arrays.asList("a", "b", "c", "d"))
+            bounded.record(t, item);
+        assertArrayEquals(new String[]{"c", "d"}, bounded.getQueueFor(t).toArray());
+        assertEquals(2, bounded.droppedMeter.getCount());
+    }
+
+    @Test
+    public void testBlockThenDropWhenQueueFull() throws Exception {
+        WritingWorkerManager<String> bounded = boundedManager(QueueFullPolicy.BLOCK);
+        final long t = System.currentTimeMillis();
+        bounded.record(t, "a");
+        bounded.record(t, "b");
+        long before = System.currentTimeMillis();
+        bounded.record(t, "c");
+        assertTrue("Should have waited for space.", System.currentTimeMillis() - before >= 50);
+        assertEquals(1, bounded.droppedMeter.getCount());
+
+        final BlockingQueue<String> queue = bounded.getQueueFor(t);
+        new Thread() {
+            @Override
+            public void run() {
+                queue.poll();
+            }
+        }.start();
+        bounded.withBoundedQueues(2, QueueFullPolicy.BLOCK, 5000L).record(t, "d");
+        assertArrayEquals(new String[]{"b", "d"}, queue.toArray());
+        assertEquals(1, bounded.droppedMeter.getCount());
+    }
+
+    @Test
+    public void testSpillWhenQueueFullThenRecover() throws Exception {
+        Path spillPath = Files.createTempFile(name.getMethodName(), ".spill");
+        try {
+            OverflowSpillFile<String> spillFile = new OverflowSpillFile<>(spillPath, new StringByteSerializer<>(new Serializer<String>() {
+                @Override
+                public String serialize(String item) {
+                    return item;
+                }
+            }));
+            WritingWorkerManager<String> bounded = boundedManager(QueueFullPolicy.SPILL).withSpillFile(spillFile);
+            long t = System.currentTimeMillis();
+            for (String item : Arrays.asList("a", "b", "c", "d"))
+                bounded.record(t, item);
+            spillFile.close();
+            assertEquals(2, bounded.spilledMeter.getCount());
+            assertEquals(0, bounded.droppedMeter.getCount());
+
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(spillPath))) {
+                for (String expected : Arrays.asList("c", "d")) {
+                    assertEquals(t, in.readLong());
+                    byte[] item = new byte[in.readInt()];
+                    in.readFully(item);
+                    assertEquals(expected, new String(item, AbstractWritingWorker.UTF8));
+                }
+                assertEquals(-1, in.read());
+            }
+
+            //A crash mid-spill leaves a partial record, which recovery skips.
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(spillPath, StandardOpenOption.APPEND))) {
+                out.writeLong(t);
+                out.writeInt(10);
+                out.write(new byte[3]);
+            }
+            WritingWorkerManager<String> recovering = new WritingWorkerManager<>(rollingScheme, tracker, factory,
+                    PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE);
+            int recovered = OverflowSpillFile.recover(spillPath, new ByteDeserializer<String>() {
+                @Override
+                public String deserialize(byte[] bytes) {
+                    return new String(bytes, AbstractWritingWorker.UTF8);
+                }
+            }, recovering);
+            assertEquals(2, recovered);
+            assertArrayEquals(new String[]{"c", "d"}, recovering.getQueueFor(t).toArray());
+        } finally {
+            Files.delete(spillPath);
+        }
+    }
+
+    @Test
+    public void testRingBufferQueues() throws Exception {
+        WritingWorkerManager<String> ring = boundedManager(QueueFullPolicy.DROP_NEWEST).withQueueType(QueueType.RING_BUFFER);
+        long t = System.currentTimeMillis();
+        for (String item : Arrays.asList("a", "b", "c"))
+            ring.record(t, item);
+        BlockingQueue<String> queue = ring.getQueueFor(t);
+        assertTrue(queue instanceof RingBufferQueue);
+        assertArrayEquals(new String[]{"a", "b"}, queue.toArray());
+        assertEquals(1, ring.droppedMeter.getCount());
+    }
+
+    @Test
+    public void testRingBufferWithoutBoundWaitsInsteadOfDropping() throws Exception {
+        final WritingWorkerManager<String> ring = new WritingWorkerManager<>(rollingScheme, tracker, factory,
+                PRUNE_INTERVAL_SECONDS, Integer.MAX_VALUE, UNHEALTHY_QUEUE_SIZE).withQueueType(QueueType.RING_BUFFER);
+        final long t = System.currentTimeMillis();
+        for (int i = 0; i < WritingWorkerManager.DEFAULT_RING_BUFFER_CAPACITY; i++)
+            ring.record(t, "x");
+        final CountDownLatch recorded = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                ring.record(t, "last");
+                recorded.countDown();
+            }
+        }.start();
+        assertFalse("Full ring buffer should make record wait.", recorded.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, ring.droppedMeter.getCount());
+        BlockingQueue<String> queue = ring.getQueueFor(t);
+        queue.poll();
+        assertTrue("Record should complete once there is space.", recorded.await(5, TimeUnit.SECONDS));
+        assertEquals(0, ring.droppedMeter.getCount());
+        assertEquals(WritingWorkerManager.DEFAULT_RING_BUFFER_CAPACITY, queue.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSpillRequiresSpillFile() throws Exception {
+        boundedManager(QueueFullPolicy.SPILL).start();
+    }
+
+    @Test
+    public void testSharedWorkerExecutor() throws Exception {
+        ExecutorService shared = Executors.newCachedThreadPool();
+        WritingWorkerManager<String> sharing = new WritingWorkerManager<>(rollingScheme, tracker,
+                new PersistentWritingWorkerFactory(true), PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD,
+                UNHEALTHY_QUEUE_SIZE).withWorkerExecutor(shared);
+        sharing.start();
+        sharing.record(System.currentTimeMillis(), "foo");
+        long launchedBy = System.currentTimeMillis() + 5000L;
+        while (((ThreadPoolExecutor) shared).getActiveCount() == 0 && System.currentTimeMillis() < launchedBy)
+            Thread.sleep(10L);
+        assertEquals("Worker should run on the shared executor.", 1, ((ThreadPoolExecutor) shared).getActiveCount());
+        sharing.stop();
+        assertFalse("Shared executor belongs to the caller.", shared.isShutdown());
+        shared.shutdown();
+        assertTrue("Worker should have exited.", shared.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStopClosesGroupCommitter() throws Exception {
+        AbstractWritingWorkerFactory<String> committing = new FileWritingWorkerFactory<>(IDENTITY, 1);
+        committing.withDurability(DurabilityMode.GROUP_COMMIT, TimeUnit.HOURS.toMillis(1));
+        GroupCommitter committer = committing.getGroupCommitter();
+        //Paths under the scheme's temporary directory, which is deleted afterwards.
+        ManualRollingScheme tempScheme = new ManualRollingScheme() {
+            @Override
+            public String makeOutputPathPattern(DateTime startTime) {
+                return getBaseDirectory().toPath().resolve(getRepresentation(startTime) + "-%d.log").toString();
+            }
+        };
+        WritingWorkerManager<String> fsyncing = new WritingWorkerManager<>(tempScheme, tracker, committing,
+                PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE);
+        try {
+            fsyncing.start();
+            fsyncing.record(System.currentTimeMillis(), "a");
+            fsyncing.stop();
+            assertNotSame("Stop should have closed the committer, so the next start gets a new one.",
+                    committer, committing.getGroupCommitter());
+        } finally {
+            committing.closeGroupCommitter();
+            FileUtils.deleteDirectory(tempScheme.getBaseDirectory());
+        }
+    }
+
+    @Test
+    public void testSizeBoundedSchemeLeavesFactoryAlone() throws Exception {
+        HybridRollingScheme hybrid = new HybridRollingScheme(rollingScheme, 1024L, 0L);
+        FileWritingWorkerFactory<String> unconfigured = new FileWritingWorkerFactory<>(IDENTITY, 1);
+        new WritingWorkerManager<>(hybrid, tracker, unconfigured, PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE);
+        assertNull("Manager should not configure rotation on the caller's factory.", unconfigured.getRollingScheme());
+        assertEquals(0L, unconfigured.getMaxFileBytes());
+
+        FileWritingWorkerFactory<String> configured = new FileWritingWorkerFactory<>(IDENTITY, 1);
+        configured.withRotation(hybrid);
+        assertSame(hybrid, configured.getRollingScheme());
+        assertEquals(1024L, configured.getMaxFileBytes());
+        assertEquals(0L, configured.getMaxFileItems());
+    }
+
+    @Test
+    public void testJournalWhenQueueDeepThenReplay() throws Exception {
+        Path journalDir = Files.createTempDirectory(name.getMethodName());
+        SpillJournal<String> journal = new SpillJournal<>(journalDir, new StringByteSerializer<>(new Serializer<String>() {
+            @Override
+            public String serialize(String item) {
+                return item;
+            }
+        }), new ByteDeserializer<String>() {
+            @Override
+            public String deserialize(byte[] bytes) {
+                return new String(bytes, AbstractWritingWorker.UTF8);
+            }
+        }, 1024);
+        try {
+            WritingWorkerManager<String> journaled = new WritingWorkerManager<>(
+                    rollingScheme,
+                    tracker,
+                    factory,
+                    PRUNE_INTERVAL_SECONDS,
+                    LAUNCH_MORE_WORKERS_THRESHOLD,
+                    UNHEALTHY_QUEUE_SIZE).withSpillJournal(journal, 4, 0L);
+            long t = System.currentTimeMillis();
+            for (String item : Arrays.asList("a", "b", "c", "d", "e", "f"))
+                journaled.record(t, item);
+            BlockingQueue<String> queue = journaled.getQueueFor(t);
+            assertArrayEquals(new String[]{"a", "b", "c", "d"}, queue.toArray());
+            assertEquals(2, journaled.journaledMeter.getCount());
+            assertEquals(2L, journal.size());
+
+            journaled.replayJournal();
+            assertEquals("Queue still deep; nothing should be replayed.", 0, journaled.replayedMeter.getCount());
+
+            queue.clear();
+            journaled.replayJournal();
+            assertArrayEquals(new String[]{"e", "f"}, queue.toArray());
+            assertEquals(2, journaled.replayedMeter.getCount());
+            assertTrue(journal.isEmpty());
+        } finally {
+            journal.close();
+            FileUtils.deleteDirectory(journalDir.toFile());
+        }
+    }
+
+    @Test
+    public void testJournalCommittedOnceReplayedItemsFlushed() throws Exception {
+        Path journalDir = Files.createTempDirectory(name.getMethodName());
+        SpillJournal<String> journal = spy(new SpillJournal<>(journalDir, new StringByteSerializer<>(IDENTITY), new ByteDeserializer<String>() {
+            @Override
+            public String deserialize(byte[] bytes) {
+                return new String(bytes, AbstractWritingWorker.UTF8);
+            }
+        }, 1024));
+        FlushReportingWorkerFactory reporting = new FlushReportingWorkerFactory();
+        try {
+            WritingWorkerManager<String> journaled = new WritingWorkerManager<>(
+                    rollingScheme,
+                    tracker,
+                    reporting,
+                    PRUNE_INTERVAL_SECONDS,
+                    LAUNCH_MORE_WORKERS_THRESHOLD,
+                    UNHEALTHY_QUEUE_SIZE).withSpillJournal(journal, 2, 0L);
+            long t = System.currentTimeMillis();
+            for (String item : Arrays.asList("a", "b", "c"))
+                journaled.record(t, item);
+            BlockingQueue<String> queue = journaled.getQueueFor(t);
+            long launchedBy = System.currentTimeMillis() + 1000;
+            while (journaled.getWorkerSnapshot().isEmpty() && System.currentTimeMillis() < launchedBy)
+                Thread.sleep(10);
+            assertEquals(1, journaled.getWorkerSnapshot().size());
+
+            queue.clear();
+            journaled.replayJournal();
+            assertArrayEquals(new String[]{"c"}, queue.toArray());
+            journaled.commitJournal();
+            verify(journal, never()).commit(anyLong());
+
+            queue.clear(); //as if taken by the worker
+            journaled.commitJournal();
+            verify(journal, never()).commit(anyLong());
+
+            reporting.flushedThroughNanos = System.nanoTime();
+            journaled.commitJournal();
+            verify(journal).commit(anyLong());
+        } finally {
+            reporting.exit.countDown();
+            journal.close();
+            FileUtils.deleteDirectory(journalDir.toFile());
+        }
+    }
+
+    @Test
+    public void testAutoscaleAddsWorkersWhileLatencyHigh() throws Exception {
+        PersistentWritingWorkerFactory stalled = new PersistentWritingWorkerFactory(false);
+        WritingWorkerManager<String> scaled = new WritingWorkerManager<>(rollingScheme, tracker, stalled,
+                PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE).withAutoscaling(1, 3);
+        final List<Integer> added = new CopyOnWriteArrayList<>();
+        scaled.addScalingListener(new RecordingScalingListener(added, null));
+        scaled.start();
+        try {
+            long t = System.currentTimeMillis();
+            for (int i = 0; i < LAUNCH_MORE_WORKERS_THRESHOLD - 1; i++)
+                scaled.record(t, "foo");
+            //Workers drain nothing, so the queue looks stalled until the worker limit is reached.
+            long timeoutAt = System.currentTimeMillis() + 5 * PRUNE_INTERVAL_SECONDS * 1000;
+            while (added.size() < 2 && System.currentTimeMillis() < timeoutAt)
+                Thread.sleep(100);
+            awaitNextPrune();
+            assertEquals(Arrays.asList(2, 3), added);
+            assertEquals(2, scaled.workersAddedMeter.getCount());
+            assertEquals(3, scaled.getWorkerSnapshot().size());
+            assertTrue(scaled.queueLatencyHistogram.getCount() > 0);
+        } finally {
+            scaled.getQueueFor(System.currentTimeMillis()).clear();
+            scaled.stop();
+        }
+    }
+
+    @Test
+    public void testAutoscaleCountsOnlyLaunchedWorkers() throws Exception {
+        PersistentWritingWorkerFactory stalled = new PersistentWritingWorkerFactory(false);
+        WritingWorkerManager<String> scaled = new WritingWorkerManager<String>(rollingScheme, tracker, stalled,
+                PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE) {
+            @Override
+            protected boolean launchNewWorker(BlockingQueue<String> queue, DateTime startTime, int maxCount) {
+                //As if the worker executor rejected every worker after the first.
+                return maxCount == 1 && super.launchNewWorker(queue, startTime, maxCount);
+            }
+        }.withAutoscaling(1, 3);
+        final List<Integer> added = new CopyOnWriteArrayList<>();
+        scaled.addScalingListener(new RecordingScalingListener(added, null));
+        scaled.start();
+        try {
+            long t = System.currentTimeMillis();
+            for (int i = 0; i < LAUNCH_MORE_WORKERS_THRESHOLD - 1; i++)
+                scaled.record(t, "foo");
+            awaitNextPrune();
+            awaitNextPrune();
+            assertEquals(1, scaled.getWorkerSnapshot().size());
+            assertEquals(0, scaled.workersAddedMeter.getCount());
+            assertTrue("Listeners should not hear of workers which were not launched.", added.isEmpty());
+        } finally {
+            scaled.getQueueFor(System.currentTimeMillis()).clear();
+            scaled.stop();
+        }
+    }
+
+    @Test
+    public void testAutoscaleRetiresSurplusWorkers() throws Exception {
+        PersistentWritingWorkerFactory draining = new PersistentWritingWorkerFactory(true);
+        WritingWorkerManager<String> scaled = new WritingWorkerManager<>(rollingScheme, tracker, draining,
+                PRUNE_INTERVAL_SECONDS, LAUNCH_MORE_WORKERS_THRESHOLD, UNHEALTHY_QUEUE_SIZE).withAutoscaling(1000, 3);
+        final List<Integer> retired = new CopyOnWriteArrayList<>();
+        scaled.addScalingListener(new RecordingScalingListener(null, retired));
+        scaled.start();
+        try {
+            long t = System.currentTimeMillis();
+            scaled.record(t, "foo");
+            long launchedBy = System.currentTimeMillis() + 1000;
+            while (scaled.getWorkerSnapshot().isEmpty() && System.currentTimeMillis() < launchedBy)
+                Thread.sleep(10);
+            scaled.launchNewWorker(scaled.getQueueFor(t), rollingScheme.getStartTime(t), 2);
+            long timeoutAt = System.currentTimeMillis() + (RETIRE_WAIT_PRUNES * PRUNE_INTERVAL_SECONDS + 5) * 1000;
+            while (retired.isEmpty() && System.currentTimeMillis() < timeoutAt)
+                Thread.sleep(100);
+            assertEquals(Arrays.asList(1), retired);
+            assertEquals(1, scaled.workersRetiredMeter.getCount());
+            awaitNextPrune();
+            assertEquals("Retired worker should have exited.", 1, scaled.getWorkerSnapshot().size());
+        } finally {
+            scaled.stop();
+        }
+    }
+
+    private static final int RETIRE_WAIT_PRUNES = WritingWorkerManager.RETIRE_AFTER_CALM_PRUNES + 2;
+
+    private static class RecordingScalingListener implements WorkerScalingListener {
+        private final List<Integer> added;
+        private final List<Integer> retired;
+
+        RecordingScalingListener(List<Integer> added, List<Integer> retired) {
+            this.added = added;
+            this.retired = retired;
+        }
+
+        @Override
+        public void workerAdded(DateTime startTime, int workerCount, long estimatedLatencyMillis) {
+            if (added != null)
+                added.add(workerCount);
+        }
+
+        @Override
+        public void workerRetired(DateTime startTime, int workerCount, long estimatedLatencyMillis) {
+            if (retired != null)
+                retired.add(workerCount);
+        }
+    }
+
+    /**
+     * Workers run until interrupted, either discarding items as they arrive or leaving them all on the queue.
+     */
+    private static class PersistentWritingWorkerFactory implements WritingWorkerFactory<String> {
+        private final boolean drain;
+
+        PersistentWritingWorkerFactory(boolean drain) {
+            this.drain = drain;
+        }
+
+        @Override
+        public Runnable buildWorker(final BlockingQueue<String> queue, LogFile logFileRecord, LogFileTracker tracker) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            if (drain)
+                                queue.take();
+                            else
+                                Thread.sleep(Long.MAX_VALUE);
+                        }
+                    } catch (InterruptedException e) {
+                        //exit
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Builds workers which take nothing and report flushes as the test says, until told to exit.
+     */
+    private static class FlushReportingWorkerFactory implements WritingWorkerFactory<String> {
+        final CountDownLatch exit = new CountDownLatch(1);
+        volatile long flushedThroughNanos = System.nanoTime();
+
+        @Override
+        public Runnable buildWorker(BlockingQueue<String> queue, LogFile logFileRecord, LogFileTracker tracker) {
+            return new FlushReportingRunnable();
+        }
+
+        private class FlushReportingRunnable implements Runnable, FlushReporting {
+            @Override
+            public void run() {
+                try {
+                    exit.await();
+                } catch (InterruptedException e) {
+                    //exit
+                }
+            }
+
+            @Override
+            public long getFlushedThroughNanos() {
+                return flushedThroughNanos;
+            }
+        }
+    }
+
+    /**
+     * Unstarted manager with queues of capacity 2; workers consume nothing until {@link #teardown()}.
+     */
+    private WritingWorkerManager<String> boundedManager(QueueFullPolicy policy) {
+        return new WritingWorkerManager<>(
+                rollingScheme,
+                tracker,
+                factory,
+                PRUNE_INTERVAL_SECONDS,
+                LAUNCH_MORE_WORKERS_THRESHOLD,
+                UNHEALTHY_QUEUE_SIZE).withBoundedQueues(2, policy, 100L);
+    }
+
     private void awaitNextPrune() throws InterruptedException {
         LOG.debug("Awaiting prune");
         Thread.sleep(PRUNE_INTERVAL_SECONDS * 1000 + 500);